@@ -93,6 +93,10 @@ trait ExchangeMutations {
   @GraphQLDescription("Add Offering")
   def addOffering(input: AddOffering): Future[Offering]
 
+  @GraphQLField
+  @GraphQLDescription("Add Offerings, each one succeeds or fails on its own")
+  def addOfferings(input: AddOfferings): Future[OfferingsResult]
+
   @GraphQLField
   @GraphQLDescription("Delete Offering")
   def deleteOffering(input: DeleteOffering): Future[DeletedEntity]
@@ -105,6 +109,10 @@ trait ExchangeMutations {
   @GraphQLDescription("Deactivate Offering")
   def deactivateOffering(input: DeactivateOffering): Future[Offering]
 
+  @GraphQLField
+  @GraphQLDescription("Activate or deactivate Offerings, each one succeeds or fails on its own")
+  def changeOfferingsActivation(input: ChangeOfferingsActivation): Future[OfferingsResult]
+
   @GraphQLField
   @GraphQLDescription("Change Offering name")
   def changeOfferingName(input: ChangeOfferingName): Future[Offering]
@@ -217,6 +225,10 @@ trait ExchangeMutations {
   @GraphQLDescription("Subscribe OfferingQuery to Offering")
   def subscribeQueryToOffering(input: SubscribeQueryToOffering): Future[QueryToOfferingSubscription]
 
+  @GraphQLField
+  @GraphQLDescription("Subscribe OfferingQuery to Offerings, each one succeeds or fails on its own")
+  def subscribeQueryToOfferings(input: SubscribeQueryToOfferings): Future[QueryToOfferingSubscriptionsResult]
+
   @GraphQLField
   @GraphQLDescription("Delete Subscription")
   def unsubscribeQueryFromOffering(input: UnsubscribeQueryFromOffering): Future[QueryToOfferingSubscription]
@@ -10,6 +10,8 @@
  */
 package exchange.api
 
+import scala.concurrent.{ExecutionContext, Future}
+
 import sangria.macros.derive.{GraphQLDescription, GraphQLField}
 import microservice.entity.Id
 
@@ -23,6 +25,7 @@ import exchange.api.price._
 import exchange.api.provider._
 import exchange.api.semantics._
 import exchange.api.subscription.{SubscriptionId, Subscriptions}
+import exchange.repo.Projection
 
 @GraphQLDescription("BIG IoT Exchange queries")
 trait ExchangeQueries {
@@ -70,22 +73,6 @@ trait ExchangeQueries {
   @GraphQLDescription("List of all Data types")
   def allDataTypes: RdfAnnotations
 
-  @GraphQLField
-  @GraphQLDescription("List all Organizations")
-  def allOrganizations: List[Organization]
-
-  @GraphQLField
-  @GraphQLDescription("Details about my Organization")
-  def myOrganization: Option[Organization]
-
-  @GraphQLField
-  @GraphQLDescription("Find Organization by id")
-  def organization(id: Id): Option[Organization]
-
-  @GraphQLField
-  @GraphQLDescription("Find Provider by id")
-  def provider(id: Id): Option[Provider]
-
   @GraphQLField
   @GraphQLDescription("List all my Providers")
   def myProviders(offeringCategoryUri: Option[String]): List[Provider]
@@ -102,22 +89,6 @@ trait ExchangeQueries {
   @GraphQLDescription("List all Offerings registered by given Organization")
   def offeringsForOrganization(organizationId: Id, offeringCategoryUri: Option[String], onlyActive: Option[Boolean]): List[Offering]
 
-  @GraphQLField
-  @GraphQLDescription("Find Offering by id")
-  def offering(id: Id): Option[Offering]
-
-  @GraphQLField
-  @GraphQLDescription("Find Offerings matching the OfferingQuery with given id")
-  def matchingOfferings(queryId: Id): List[Offering]
-
-  @GraphQLField
-  @GraphQLDescription("Find Consumer by id")
-  def consumer(id: Id): Option[Consumer]
-
-  @GraphQLField
-  @GraphQLDescription("List all my Consumers")
-  def myConsumers: List[Consumer]
-
   @GraphQLField
   @GraphQLDescription("Find OfferingQuery by id")
   def offeringQuery(id: Id): Option[OfferingQuery]
@@ -133,4 +104,25 @@ trait ExchangeQueries {
   @GraphQLField
   @GraphQLDescription("Find Subscription by id")
   def subscription(id: SubscriptionId): Option[OfferingSubscription]
+
+  // lookups behind the fields of the schema filling only the nested collections their selection projects
+  def allOrganizations(projection: Projection): List[Organization]
+
+  def myOrganization(projection: Projection): Option[Organization]
+
+  def consumer(id: Id, projection: Projection): Option[Consumer]
+
+  def myConsumers(projection: Projection): List[Consumer]
+
+  // batch lookups behind the fetchers and the fields by id of the schema, not exposed as fields
+  def organizations(ids: Seq[OrganizationId], projection: Projection): Seq[Organization]
+
+  def providers(ids: Seq[ProviderId], projection: Projection): Seq[Provider]
+
+  def offerings(ids: Seq[OfferingId]): Seq[Offering]
+
+  def matchingOfferingIds(queryId: Id): Future[List[OfferingId]]
+
+  // runs the lookups of the fetchers and the continuations of the asynchronous ones
+  def executionContext: ExecutionContext
 }
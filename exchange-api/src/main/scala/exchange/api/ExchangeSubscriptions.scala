@@ -0,0 +1,42 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.api
+
+import scala.concurrent.Future
+
+import sangria.macros.derive.{GraphQLDescription, GraphQLField}
+import microservice.entity.Id
+
+import exchange.api.offering.OfferingChange
+import exchange.api.offeringquery.OfferingMatches
+
+/** Subscription operations are executed once when they are started and again for each batch of changes of the
+  * exchange. A field resolves to None if the changes do not concern it, and nothing is pushed to the client then.
+  */
+@GraphQLDescription("BIG IoT Exchange subscriptions, only available over WebSocket")
+trait ExchangeSubscriptions {
+  @GraphQLField
+  @GraphQLDescription("Offerings which start or stop matching the OfferingQuery with given id, all current matches first")
+  def offeringMatched(queryId: Id): Future[Option[OfferingMatches]]
+
+  @GraphQLField
+  @GraphQLDescription("Changes of the Offering with given id, its current state first")
+  def offeringChanged(id: Id): Option[OfferingChange]
+}
+
+object ExchangeSubscriptions {
+  // for the execution of subscription operations outside of a subscription, nothing ever changes
+  val Unchanged: ExchangeSubscriptions = new ExchangeSubscriptions {
+    def offeringMatched(queryId: Id) = Future.successful(None)
+
+    def offeringChanged(id: Id) = None
+  }
+}
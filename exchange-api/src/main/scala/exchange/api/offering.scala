@@ -54,6 +54,9 @@ object offering {
 
   case class BaseOfferingSubscription(id: SubscriptionId, offering: Offering, status: SubscriptionStatus = Active) extends OfferingSubscription
 
+  @GraphQLDescription("Current state of a changed Offering, without offering if it was deleted or is not accessible")
+  case class OfferingChange(id: OfferingId, offering: Option[Offering])
+
   @GraphQLDescription("Activation status and expiration time")
   case class Activation(status: Boolean, expirationTime: Long = 0) {
     def isActive = status && expirationTime >= DateTime.now.clicks
@@ -164,6 +167,14 @@ object offering {
   case class DeactivateOffering(id: OfferingId, meta: Meta = Meta()) extends OfferingCommand
   case class OfferingDeactivated(id: OfferingId, meta: Meta) extends OfferingEvent
 
+  @GraphQLDescription("Activate or deactivate Offerings")
+  case class ChangeOfferingsActivation(ids: List[OfferingId], status: Boolean, expirationTime: Long = 0)
+
+  @GraphQLDescription("Error of the command at index of a bulk mutation")
+  case class BulkError(index: Int, error: String)
+  @GraphQLDescription("Offerings of the successful commands of a bulk mutation and errors of the failed ones")
+  case class OfferingsResult(offerings: List[Offering], errors: List[BulkError])
+
   // Errors
   case class OfferingDoesNotExist(override val id: Id, override val meta: Meta) extends Error(id, "OfferingDoesNotExist", meta = meta)
 }
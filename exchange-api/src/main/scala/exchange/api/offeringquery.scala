@@ -53,6 +53,9 @@ object offeringquery {
   @GraphQLDescription("List of OfferingQueries")
   case class OfferingQueries(offeringQueries: List[OfferingQuery])
 
+  @GraphQLDescription("Offerings which started matching an OfferingQuery or changed while matching, and ids of Offerings which stopped matching")
+  case class OfferingMatches(queryId: OfferingQueryId, matched: List[Offering], unmatched: List[OfferingId])
+
   sealed trait OfferingQueryCommand extends Command
   sealed trait OfferingQueryEvent extends Event
 
@@ -120,6 +123,10 @@ object offeringquery {
   @GraphQLDescription("Subscribe OfferingQuery to Offering")
   case class SubscribeQueryToOffering(id: OfferingQueryId, offeringId: Id, meta: Meta = Meta()) extends OfferingQueryCommand
   case class SubscribedQueryToOffering(id: OfferingQueryId, offeringId: Id, meta: Meta) extends OfferingQueryEvent
+  @GraphQLDescription("Subscribe OfferingQuery to Offerings")
+  case class SubscribeQueryToOfferings(id: OfferingQueryId, offeringIds: List[Id])
+  @GraphQLDescription("Subscriptions of the successful commands of a bulk mutation and errors of the failed ones")
+  case class QueryToOfferingSubscriptionsResult(subscriptions: List[QueryToOfferingSubscription], errors: List[BulkError])
 
   @GraphQLDescription("Unsubscribe OfferingQuery from Offering")
   case class UnsubscribeQueryFromOffering(id: OfferingQueryId, offeringId: Id, meta: Meta = Meta()) extends OfferingQueryCommand
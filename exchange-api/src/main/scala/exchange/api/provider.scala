@@ -63,6 +63,8 @@ object provider {
                          extension1: Option[String] = None, extension2: Option[String] = None, extension3: Option[String] = None,
                          spatialExtent: Option[SpatialExtent] = None, temporalExtent: Option[TemporalExtent] = None,
                          license: License, price: Price, activation: Activation = Inactive, meta: Meta = Meta()) extends ProviderCommand
+  @GraphQLDescription("Add new Offerings")
+  case class AddOfferings(offerings: List[AddOffering])
   case class OfferingAdded(id: ProviderId, name: String, localId: Option[Id], rdfUri: String,
                            rdfContext: Option[RdfContext], accessWhiteList: List[Id] = Nil, endpoints: List[EndpointInput] = Nil,
                            outputs: List[DataFieldInput] = Nil, inputs: List[DataFieldInput] = Nil,
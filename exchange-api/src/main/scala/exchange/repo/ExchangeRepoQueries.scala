@@ -21,17 +21,21 @@ trait ExchangeRepoQueries {
   def show: String
 
   def allOrganizations: List[Organization]
-  def organization(id: OrganizationId): Option[Organization]
+  def allOrganizations(projection: Projection): List[Organization]
+  def organization(id: OrganizationId, projection: Projection = Projection.All): Option[Organization]
+  def organizations(ids: Seq[OrganizationId], projection: Projection = Projection.All): List[Organization]
 
-  def provider(id: ProviderId): Option[Provider]
+  def provider(id: ProviderId, projection: Projection = Projection.All): Option[Provider]
+  def providers(ids: Seq[ProviderId], projection: Projection = Projection.All): List[Provider]
   def providersForOrganization(offeringCategoryUri: Option[String] = None)(organizationId: OrganizationId): List[Provider]
 
   def offering(id: OfferingId): Option[Offering]
+  def offerings(ids: Seq[OfferingId]): List[Offering]
   def allOfferings(offeringCategoryUri: Option[String] = None, onlyActive: Option[Boolean] = None): List[Offering]
   def offeringsForOrganization(offeringCategoryUri: Option[String] = None, onlyActive: Option[Boolean] = None)(organizationId: OrganizationId): List[Offering]
 
-  def consumersForOrganization(organizationId: OrganizationId): List[Consumer]
-  def consumer(id: ConsumerId): Option[Consumer]
+  def consumersForOrganization(organizationId: OrganizationId, projection: Projection = Projection.All): List[Consumer]
+  def consumer(id: ConsumerId, projection: Projection = Projection.All): Option[Consumer]
 
   def offeringQueriesForConsumer(consumerId: ConsumerId): List[OfferingQuery]
   def offeringQuery(id: OfferingQueryId): Option[OfferingQuery]
@@ -10,6 +10,8 @@
  */
 package exchange.repo
 
+import scala.concurrent.{ExecutionContext, Future, blocking}
+
 import microservice.entity.Id
 
 import exchange.api.offering.OfferingCreated
@@ -60,4 +62,22 @@ trait ExchangeSemanticRepo {
   def isOfferingQueryConsistent(ev: OfferingQueryCreated): Boolean
 
   def matchingOfferingIds(queryId: OfferingQueryId): List[Id]
+
+  /** Asynchronous forms of the reads. By default the synchronous read runs on the given context, marked as blocking;
+    * repositories backed by a remote store override them so that no thread waits for the store.
+    */
+  def allOfferingCategoriesAsync(implicit ec: ExecutionContext): Future[OfferingCategory] =
+    Future(blocking(allOfferingCategories))
+
+  def allOfferingCategoryUrisAsync(implicit ec: ExecutionContext): Future[List[String]] =
+    Future(blocking(allOfferingCategoryUris))
+
+  def offeringCategoryAsync(rdfUri: String)(implicit ec: ExecutionContext): Future[Option[OfferingCategory]] =
+    Future(blocking(offeringCategory(rdfUri)))
+
+  def allDataTypesAsync(implicit ec: ExecutionContext): Future[List[RdfAnnotation]] =
+    Future(blocking(allDataTypes))
+
+  def matchingOfferingIdsAsync(queryId: OfferingQueryId)(implicit ec: ExecutionContext): Future[List[Id]] =
+    Future(blocking(matchingOfferingIds(queryId)))
 }
@@ -0,0 +1,28 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.repo
+
+/** Nested collections the repo fills with back references when it returns organizations, providers and consumers.
+  * A collection which is not projected is returned as stored, saving the copies of all its elements.
+  */
+case class Projection(providers: Boolean = true, consumers: Boolean = true, offerings: Boolean = true, queries: Boolean = true) {
+  def ++(other: Projection) = Projection(providers || other.providers, consumers || other.consumers,
+    offerings || other.offerings, queries || other.queries)
+}
+
+object Projection {
+  val All = Projection()
+  val Nothing = Projection(providers = false, consumers = false, offerings = false, queries = false)
+
+  // the collections named anywhere in a selection, regardless of the type they are selected on
+  def of(fieldNames: Set[String]) = Projection(fieldNames("providers"), fieldNames("consumers"),
+    fieldNames("offerings"), fieldNames("queries"))
+}
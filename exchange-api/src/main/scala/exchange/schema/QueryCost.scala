@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.schema
+
+import scala.reflect.ClassTag
+
+import sangria.schema.{Args, ObjectType}
+
+import exchange.api.organization.Organization
+
+/** Estimated number of elements of the list fields of the schema: totals for the lists of the whole exchange and
+  * averages for the nested lists. At least one element is assumed everywhere, so a nearly empty exchange does not
+  * let arbitrarily nested queries through.
+  */
+case class Cardinalities(organizations: Double = 1, providersPerOrganization: Double = 1, consumersPerOrganization: Double = 1,
+                         offeringsPerProvider: Double = 1, queriesPerConsumer: Double = 1,
+                         subscriptionsPerConsumer: Double = 1, subscriptionsPerQuery: Double = 1) {
+  def offeringsPerOrganization = providersPerOrganization * offeringsPerProvider
+  def offerings = organizations * offeringsPerOrganization
+  def consumerSubscriptionsPerOrganization = consumersPerOrganization * subscriptionsPerConsumer
+  def querySubscriptionsPerOrganization = consumersPerOrganization * queriesPerConsumer * subscriptionsPerQuery
+}
+
+object Cardinalities {
+  def of(organizations: List[Organization]) = {
+    val providers = organizations flatMap (_.providers)
+    val consumers = organizations flatMap (_.consumers)
+    val queries = consumers flatMap (_.queries)
+    def average(elements: Int, parents: Int) = math.max(1.0, elements.toDouble / math.max(1, parents))
+
+    Cardinalities(math.max(1.0, organizations.size),
+      average(providers.size, organizations.size), average(consumers.size, organizations.size),
+      average(providers.map(_.offerings.size).sum, providers.size), average(queries.size, consumers.size),
+      average(consumers.map(_.subscriptions.size).sum, consumers.size), average(queries.map(_.subscriptions.size).sum, queries.size))
+  }
+}
+
+case class QueryTooExpensive(cost: Double, maxCost: Double)
+  extends Exception(f"Query cost $cost%.0f exceeds the maximum of $maxCost%.0f")
+
+/** Costs of the list fields for the static complexity analysis (QueryReducer.measureComplexity): a list costs its
+  * own resolution plus the cost of its selection for each of its estimated elements, as given by the cardinalities
+  * of the context. Every other field keeps the default cost of 1 plus its selection.
+  */
+object QueryCost {
+  def list[Ctx](elements: Cardinalities => Double): Option[(Ctx, Args, Double) => Double] =
+    Some((ctx, _, childrenCost) => 1 + elements(cardinalitiesOf(ctx)) * childrenCost)
+
+  // the nested object types are derived without context, the reducer passes them the one of the operation anyway
+  private def cardinalitiesOf(ctx: Any) = ctx match {
+    case ctx: ExchangeCtx => ctx.cardinalities
+    case _ => Cardinalities()
+  }
+
+  def withListCosts[Ctx, Val: ClassTag](objectType: ObjectType[Ctx, Val], costs: (String, Cardinalities => Double)*) = {
+    val elementsOf = costs.toMap
+    objectType.copy(fieldsFn = () => objectType.fieldsFn() map { field =>
+      elementsOf get field.name map (elements => field.copy(complexity = list[Ctx](elements))) getOrElse field
+    })
+  }
+}
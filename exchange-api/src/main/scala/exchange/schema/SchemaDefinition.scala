@@ -10,9 +10,12 @@
  */
 package exchange.schema
 
+import scala.concurrent.{ExecutionContext, Future}
+
 import io.circe.generic.extras.auto._
 import sangria.marshalling.circe._
 import microservice.{Meta, circeConfiguration, decodeAggregateId, encodeAggregateId}
+import sangria.execution.deferred.{DeferredResolver, Fetcher, HasId}
 import sangria.macros.derive._
 import sangria.schema
 import sangria.schema._
@@ -31,8 +34,16 @@ import exchange.api.provider._
 import exchange.api.semantics
 import exchange.api.semantics._
 import exchange.api.subscription._
+import exchange.repo.Projection
+
+// subscription operations and tools run without mutations
+case class ExchangeCtx(queries: ExchangeQueries, mutations: Option[ExchangeMutations],
+                       subscriptions: ExchangeSubscriptions = ExchangeSubscriptions.Unchanged,
+                       cardinalities: Cardinalities = Cardinalities()) {
+  implicit def executionContext: ExecutionContext = queries.executionContext
 
-case class ExchangeCtx(queries: ExchangeQueries, mutations: ExchangeMutations)
+  def availableMutations = mutations getOrElse (throw new UnsupportedOperationException("Mutations are not available here"))
+}
 
 object SchemaDefinition {
   // Object Types
@@ -83,13 +94,17 @@ object SchemaDefinition {
 
   implicit lazy val OfferingIdType = ScalarAlias[OfferingId, String](StringType, _.value, s => Right(OfferingId(s)))
   implicit lazy val ActivationType = deriveObjectType[Unit, Activation]()
+  implicit lazy val OfferingChangeType = deriveObjectType[Unit, OfferingChange]()
+  implicit lazy val BulkErrorType = deriveObjectType[Unit, BulkError]()
+  implicit lazy val OfferingsResultType = deriveObjectType[Unit, OfferingsResult]()
   implicit lazy val OfferingType: schema.ObjectType[Unit, Offering] = deriveObjectType(
     ReplaceField("provider", Field("provider", OptionType(ProviderType), resolve = _.value.provider)))
 
   implicit lazy val ProviderIdType = ScalarAlias[ProviderId, String](StringType, _.value, s => Right(ProviderId(s)))
-  implicit lazy val ProviderType: schema.ObjectType[Unit, Provider] = deriveObjectType(
+  implicit lazy val ProviderType: schema.ObjectType[Unit, Provider] = QueryCost.withListCosts(deriveObjectType[Unit, Provider](
     ExcludeFields("secret"),
-    ReplaceField("organization", Field("organization", OptionType(OrganizationType), resolve = _.value.organization)))
+    ReplaceField("organization", Field("organization", OptionType(OrganizationType), resolve = _.value.organization))),
+    ("offerings", _.offeringsPerProvider))
 
   implicit lazy val SubscriptionIdType = ScalarAlias[SubscriptionId, String](StringType, _.value, s => Right(SubscriptionId(s)))
   implicit lazy val SubscriptionStatusType = deriveEnumType[SubscriptionStatus.Value]()
@@ -100,19 +115,26 @@ object SchemaDefinition {
     ReplaceField("consumer", Field("consumer", OptionType(ConsumerType), resolve = _.value.consumer)))
   implicit lazy val QueryToOfferingSubscriptionType = deriveObjectType[Unit, QueryToOfferingSubscription](
     ReplaceField("query", Field("query", OptionType(OfferingQueryType), resolve = _.value.query)))
-  implicit lazy val SubscriptionsType = deriveObjectType[Unit, Subscriptions]()
+  implicit lazy val SubscriptionsType = QueryCost.withListCosts(deriveObjectType[Unit, Subscriptions](),
+    ("consumerSubscriptions", _.consumerSubscriptionsPerOrganization), ("querySubscriptions", _.querySubscriptionsPerOrganization))
 
   implicit lazy val OfferingQueryIdType = ScalarAlias[OfferingQueryId, String](StringType, _.value, s => Right(OfferingQueryId(s)))
-  implicit lazy val OfferingQueryType: schema.ObjectType[Unit, OfferingQuery] = deriveObjectType(
-    ReplaceField("consumer", Field("consumer", OptionType(ConsumerType), resolve = _.value.consumer)))
+  implicit lazy val OfferingQueryType: schema.ObjectType[Unit, OfferingQuery] = QueryCost.withListCosts(deriveObjectType[Unit, OfferingQuery](
+    ReplaceField("consumer", Field("consumer", OptionType(ConsumerType), resolve = _.value.consumer))),
+    ("subscriptions", _.subscriptionsPerQuery))
   implicit lazy val OfferingQueriesType = deriveObjectType[Unit, OfferingQueries]()
+  implicit lazy val QueryToOfferingSubscriptionsResultType = deriveObjectType[Unit, QueryToOfferingSubscriptionsResult]()
+  implicit lazy val OfferingMatchesType = QueryCost.withListCosts(deriveObjectType[Unit, OfferingMatches](),
+    ("matched", _.offerings))
 
   implicit lazy val ConsumerIdType = ScalarAlias[ConsumerId, String](StringType, _.value, s => Right(ConsumerId(s)))
-  implicit lazy val ConsumerType: schema.ObjectType[Unit, Consumer] = deriveObjectType(
-    ReplaceField("organization", Field("organization", OptionType(OrganizationType), resolve = _.value.organization)))
+  implicit lazy val ConsumerType: schema.ObjectType[Unit, Consumer] = QueryCost.withListCosts(deriveObjectType[Unit, Consumer](
+    ReplaceField("organization", Field("organization", OptionType(OrganizationType), resolve = _.value.organization))),
+    ("queries", _.queriesPerConsumer), ("subscriptions", _.subscriptionsPerConsumer))
 
   implicit lazy val OrganizationIdType = ScalarAlias[OrganizationId, String](StringType, _.value, s => Right(OrganizationId(s)))
-  implicit lazy val OrganizationType: schema.ObjectType[Unit, Organization] = deriveObjectType()
+  implicit lazy val OrganizationType: schema.ObjectType[Unit, Organization] = QueryCost.withListCosts(deriveObjectType[Unit, Organization](),
+    ("providers", _.providersPerOrganization), ("consumers", _.consumersPerOrganization))
   implicit lazy val OrganizationsType: schema.ObjectType[Unit, Organizations] = deriveObjectType()
 
   // Input Object Types
@@ -157,6 +179,7 @@ object SchemaDefinition {
 
   implicit lazy val ActivationInputType = deriveInputObjectType[Activation](InputObjectTypeName("ActivationInput"))
   implicit lazy val AddOfferingInputType = deriveInputObjectType[AddOffering](ExcludeInputFields("meta"))
+  implicit lazy val AddOfferingsInputType = deriveInputObjectType[AddOfferings]()
   implicit lazy val DeleteOfferingInputType = deriveInputObjectType[DeleteOffering](ExcludeInputFields("meta"))
   implicit lazy val ChangeOfferingNameInputType = deriveInputObjectType[ChangeOfferingName](ExcludeInputFields("meta"))
   implicit lazy val ChangeOfferingCategoryInputType = deriveInputObjectType[ChangeOfferingCategory](ExcludeInputFields("meta"))
@@ -173,6 +196,7 @@ object SchemaDefinition {
   implicit lazy val ChangeOfferingExtension3InputType = deriveInputObjectType[ChangeOfferingExtension3](ExcludeInputFields("meta"))
   implicit lazy val ActivateOfferingInputType = deriveInputObjectType[ActivateOffering](ExcludeInputFields("meta"))
   implicit lazy val DeactivateOfferingInputType = deriveInputObjectType[DeactivateOffering](ExcludeInputFields("meta"))
+  implicit lazy val ChangeOfferingsActivationInputType = deriveInputObjectType[ChangeOfferingsActivation]()
 
   implicit lazy val AddConsumerInputType = deriveInputObjectType[AddConsumer](ExcludeInputFields("meta"))
   implicit lazy val DeleteConsumerInputType = deriveInputObjectType[DeleteConsumer](ExcludeInputFields("meta"))
@@ -193,6 +217,7 @@ object SchemaDefinition {
   implicit lazy val ChangeOfferingQueryPriceInputType = deriveInputObjectType[ChangeOfferingQueryPrice](ExcludeInputFields("meta"))
 
   implicit lazy val SubscribeQueryToOfferingInputType = deriveInputObjectType[SubscribeQueryToOffering](ExcludeInputFields("meta"))
+  implicit lazy val SubscribeQueryToOfferingsInputType = deriveInputObjectType[SubscribeQueryToOfferings]()
   implicit lazy val UnsubscribeQueryFromOfferingInputType = deriveInputObjectType[UnsubscribeQueryFromOffering](ExcludeInputFields("meta"))
 
   implicit lazy val AccessReportInputType = deriveInputObjectType[AccessReport](InputObjectTypeName("AccessReportInput"))
@@ -202,11 +227,80 @@ object SchemaDefinition {
   implicit lazy val TrackConsumerAccessesInputType = deriveInputObjectType[TrackConsumerAccesses]()
   implicit lazy val TrackProviderAccessesInputType = deriveInputObjectType[TrackProviderAccesses]()
 
-  val QueryType = deriveContextObjectType[ExchangeCtx, ExchangeQueries, Unit](_.queries,
+  // Fetchers collect the ids of all fields of one level of a query and look them up in one batch
+  // the lookups block on the repo, so they run on the execution context of the queries and not on the executor
+  // organizations and providers are fetched together with the projection of the field asking for them
+  val OrganizationFetcher = Fetcher((ctx: ExchangeCtx, keys: Seq[(OrganizationId, Projection)]) =>
+    Future(projected(keys)(ctx.queries.organizations))(ctx.executionContext))(
+    HasId[(Projection, Organization), (OrganizationId, Projection)] { case (projection, organization) => organization.id -> projection })
+  val ProviderFetcher = Fetcher((ctx: ExchangeCtx, keys: Seq[(ProviderId, Projection)]) =>
+    Future(projected(keys)(ctx.queries.providers))(ctx.executionContext))(
+    HasId[(Projection, Provider), (ProviderId, Projection)] { case (projection, provider) => provider.id -> projection })
+  val OfferingFetcher = Fetcher((ctx: ExchangeCtx, ids: Seq[OfferingId]) =>
+    Future(ctx.queries.offerings(ids))(ctx.executionContext))(HasId(_.id))
+
+  val ExchangeResolver = DeferredResolver.fetchers(OrganizationFetcher, ProviderFetcher, OfferingFetcher)
+
+  // one lookup for the ids of each projection in a batch
+  private def projected[Id, Res](keys: Seq[(Id, Projection)])(lookup: (Seq[Id], Projection) => Seq[Res]) =
+    keys.groupBy(_._2).toSeq flatMap { case (projection, projectionKeys) =>
+      lookup(projectionKeys map (_._1), projection) map (projection -> _)
+    }
+
+  // resolves a field knowing the nested collections of its selection, so that its lookup fills only those
+  def projecting[Res](resolve: (Context[ExchangeCtx, Unit], Projection) => Action[ExchangeCtx, Res]) =
+    Projector[ExchangeCtx, Unit, Res]((ctx, projected) => resolve(ctx, Projection.of(projectedNames(projected))))
+
+  private def projectedNames(projected: Vector[ProjectedName]): Set[String] =
+    projected.flatMap(name => projectedNames(name.children) + name.name).toSet
+
+  val QueryType = QueryCost.withListCosts(deriveContextObjectType[ExchangeCtx, ExchangeQueries, Unit](_.queries,
     ReplaceField("subscription", Field("subscription", OptionType(OfferingSubscriptionType),
-      arguments = Argument("id", SubscriptionIdType) :: Nil, resolve = ctx => ctx.ctx.queries.subscription(ctx.arg("id"))))
-  )
-  val MutationType = deriveContextObjectType[ExchangeCtx, ExchangeMutations, Unit](_.mutations)
-
-  val ExchangeSchema = Schema(QueryType, Some(MutationType), additionalTypes = SpatialExtentType :: Nil)
+      arguments = Argument("id", SubscriptionIdType) :: Nil, resolve = ctx => ctx.ctx.queries.subscription(ctx.arg("id")))),
+    // fields of the schema only: the projecting lookups and the lookups by id, resolved by the fetchers in batches
+    AddFields(
+      Field("allOrganizations", ListType(OrganizationType), Some("List all Organizations"),
+        resolve = projecting[List[Organization]]((ctx, projection) => ctx.ctx.queries.allOrganizations(projection))),
+      Field("myOrganization", OptionType(OrganizationType), Some("Details about my Organization"),
+        resolve = projecting[Option[Organization]]((ctx, projection) => ctx.ctx.queries.myOrganization(projection))),
+      Field("organization", OptionType(OrganizationType), Some("Find Organization by id"),
+        arguments = Argument("id", StringType) :: Nil, resolve = projecting[Option[Organization]] { (ctx, projection) =>
+          DeferredValue(OrganizationFetcher.deferOpt(OrganizationId(ctx.arg[String]("id")) -> projection))
+            .map(_ map (_._2))(ctx.ctx.executionContext)
+        }),
+      Field("provider", OptionType(ProviderType), Some("Find Provider by id"),
+        arguments = Argument("id", StringType) :: Nil, resolve = projecting[Option[Provider]] { (ctx, projection) =>
+          DeferredValue(ProviderFetcher.deferOpt(ProviderId(ctx.arg[String]("id")) -> projection))
+            .map(_ map (_._2))(ctx.ctx.executionContext)
+        }),
+      Field("offering", OptionType(OfferingType), Some("Find Offering by id"),
+        arguments = Argument("id", StringType) :: Nil, resolve = ctx => OfferingFetcher.deferOpt(OfferingId(ctx.arg[String]("id")))),
+      Field("matchingOfferings", ListType(OfferingType), Some("Find Offerings matching the OfferingQuery with given id"),
+        arguments = Argument("queryId", StringType) :: Nil, resolve = ctx =>
+          DeferredFutureValue(ctx.ctx.queries.matchingOfferingIds(ctx.arg[String]("queryId"))
+            .map(OfferingFetcher.deferSeqOpt)(ctx.ctx.executionContext))),
+      Field("consumer", OptionType(ConsumerType), Some("Find Consumer by id"),
+        arguments = Argument("id", StringType) :: Nil,
+        resolve = projecting[Option[Consumer]]((ctx, projection) => ctx.ctx.queries.consumer(ctx.arg[String]("id"), projection))),
+      Field("myConsumers", ListType(ConsumerType), Some("List all my Consumers"),
+        resolve = projecting[List[Consumer]]((ctx, projection) => ctx.ctx.queries.myConsumers(projection))))),
+    ("allOrganizations", _.organizations), ("myProviders", _.providersPerOrganization), ("myConsumers", _.consumersPerOrganization),
+    ("allOfferings", _.offerings), ("myOfferings", _.offeringsPerOrganization),
+    ("offeringsForOrganization", _.offeringsPerOrganization), ("matchingOfferings", _.offerings))
+  val MutationType = deriveContextObjectType[ExchangeCtx, ExchangeMutations, Unit](_.availableMutations)
+  val SubscriptionType = deriveContextObjectType[ExchangeCtx, ExchangeSubscriptions, Unit](_.subscriptions)
+
+  // incremental delivery of query results, executed by the endpoint for clients accepting multipart/mixed and ignored otherwise
+  val DeferDirective = Directive("defer", Some("Deliver the fragment after the rest of the result"),
+    arguments = Argument("label", OptionInputType(StringType), "Label of the deferred part") ::
+      Argument("if", OptionInputType(BooleanType), "Defer only if true, default true") :: Nil,
+    locations = Set(DirectiveLocation.FragmentSpread, DirectiveLocation.InlineFragment))
+  val StreamDirective = Directive("stream", Some("Deliver the elements of the list after the rest of the result"),
+    arguments = Argument("label", OptionInputType(StringType), "Label of the streamed parts") ::
+      Argument("initialCount", OptionInputType(IntType), "Number of elements delivered with the rest of the result, default 0") ::
+      Argument("if", OptionInputType(BooleanType), "Stream only if true, default true") :: Nil,
+    locations = Set(DirectiveLocation.Field))
+
+  val ExchangeSchema = Schema(QueryType, Some(MutationType), Some(SubscriptionType), additionalTypes = SpatialExtentType :: Nil,
+    directives = BuiltinDirectives ++ List(DeferDirective, StreamDirective))
 }
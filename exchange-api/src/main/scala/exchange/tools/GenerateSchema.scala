@@ -26,7 +26,7 @@ import scala.util.{Failure, Success}
 
 object GenerateSchema {
   def main(args: Array[String]) {
-    val ctx = ExchangeCtx(null, null)
+    val ctx = ExchangeCtx(null, None)
     val futureOfSchemaJson = Executor.execute(SchemaDefinition.ExchangeSchema, introspectionQuery, ctx)
 
     val schemaJson = Await.ready(futureOfSchemaJson, 5 second).value.get
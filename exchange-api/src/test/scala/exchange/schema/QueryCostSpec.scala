@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.schema
+
+import scala.concurrent.Await
+import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.duration._
+
+import org.scalatest.{FlatSpec, Matchers}
+import sangria.execution.{Executor, QueryReducer, QueryReducingError}
+import sangria.macros._
+import sangria.marshalling.circe._
+
+import exchange.api.organization.{Organization, OrganizationId}
+import exchange.api.provider.{Provider, ProviderId}
+
+class QueryCostSpec extends FlatSpec with Matchers {
+
+  // queries are rejected before execution, so no queries and mutations are needed
+  val ctx = ExchangeCtx(null, None)
+
+  def rejection(query: sangria.ast.Document, reducer: QueryReducer[ExchangeCtx, _], ctx: ExchangeCtx = ctx) = intercept[QueryReducingError] {
+    Await.result(Executor.execute(SchemaDefinition.ExchangeSchema, query, ctx, queryReducers = reducer :: Nil), 5.seconds)
+  }.cause
+
+  "Cardinalities" should "average the nested lists of the exchange" in {
+    val organizations = List(
+      Organization(OrganizationId("a"), "a", providers = List(Provider(ProviderId("a-p"), "p", secret = ""))),
+      Organization(OrganizationId("b"), "b", providers = List(Provider(ProviderId("b-p"), "p", secret = ""),
+        Provider(ProviderId("b-q"), "q", secret = ""))))
+
+    val cardinalities = Cardinalities.of(organizations)
+    cardinalities.organizations shouldBe 2
+    cardinalities.providersPerOrganization shouldBe 1.5
+    cardinalities.offeringsPerProvider shouldBe 1
+  }
+
+  "QueryCost" should "weigh list fields with their estimated number of elements" in {
+    val cardinalities = Cardinalities(organizations = 10, providersPerOrganization = 2, offeringsPerProvider = 5)
+
+    rejection(graphql"{ allOrganizations { providers { offerings { name } } } }",
+      QueryReducer.rejectComplexQueries[ExchangeCtx](0, (cost, _) => QueryTooExpensive(cost, 0)),
+      ctx.copy(cardinalities = cardinalities)) shouldBe
+      QueryTooExpensive(1 + 10 * (1 + 2 * (1 + 5 * 1)), 0)
+  }
+
+  it should "take the estimates of the context of the operation" in {
+    rejection(graphql"{ allOrganizations { providers { offerings { name } } } }",
+      QueryReducer.rejectComplexQueries[ExchangeCtx](0, (cost, _) => QueryTooExpensive(cost, 0))) shouldBe
+      QueryTooExpensive(1 + 1 * (1 + 1 * (1 + 1 * 1)), 0)
+  }
+
+  it should "reject queries nested too deep" in {
+    rejection(graphql"{ allOrganizations { providers { organization { providers { organization { name } } } } } }",
+      QueryReducer.rejectMaxDepth[ExchangeCtx](4)) shouldBe a[sangria.execution.MaxQueryDepthReachedError]
+  }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.bench
+
+import java.util.concurrent.TimeUnit
+
+import scala.concurrent.Await
+import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.duration._
+
+import akka.util.ByteString
+import microservice.Meta
+import microservice.entity.Sep
+import org.openjdk.jmh.annotations._
+import sangria.execution.Executor
+import sangria.macros._
+
+import exchange.api.access._
+import exchange.api.extent.SpatialExtent
+import exchange.api.license.OPEN_DATA_LICENSE
+import exchange.api.offering.{Inactive, OfferingCreated, OfferingId}
+import exchange.api.organization.{OrganizationCreated, OrganizationId}
+import exchange.api.price._
+import exchange.api.provider.{ProviderCreated, ProviderId}
+import exchange.api.semantics.{DataField, NumberType, RdfAnnotation}
+import exchange.graphql.{ByteStringResultMarshaller, ExchangeQueriesImpl}
+import exchange.repo.inmemory.InMemoryExchangeRepoWithSemantics
+import exchange.schema.{ExchangeCtx, SchemaDefinition}
+
+/** Execution of allOfferings into the bytes of the response, with the circe marshaller and printer as before
+  * and with the ByteStringResultMarshaller. Run with
+  * sbt "exchange-bench/jmh:run -i 10 -wi 5 -f 1 -prof gc ResultMarshallingBenchmark"
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+class ResultMarshallingBenchmark {
+
+  @Param(Array("100", "1000", "10000"))
+  var offerings: Int = _
+
+  var ctx: ExchangeCtx = _
+
+  val Query = graphql"""{
+      allOfferings { id name activation { status expirationTime } rdfAnnotation { uri label }
+        endpoints { endpointType uri accessInterfaceType } outputs { name rdfAnnotation { uri label } }
+        inputs { name rdfAnnotation { uri label } } license price { pricingModel money { amount currency } }
+        spatialExtent { city } provider { id name organization { id name } } }
+    }"""
+
+  @Setup
+  def setup(): Unit = {
+    val repo = InMemoryExchangeRepoWithSemantics()
+    val category = RdfAnnotation("urn:big-iot:ParkingSpaceCategory", "Parking space")
+    val fields = List(DataField("longitude", RdfAnnotation("schema:longitude", "Longitude"), NumberType()),
+      DataField("latitude", RdfAnnotation("schema:latitude", "Latitude"), NumberType()))
+
+    // ten providers per organization, hundred offerings per provider
+    for (o <- 0 until math.max(1, offerings / 1000)) {
+      val organizationId = OrganizationId(s"Organization$o")
+      repo.organizationCreated(OrganizationCreated(organizationId, s"Organization $o", Meta()))
+      for (p <- 0 until math.min(10, math.max(1, offerings / 100))) {
+        val providerId = ProviderId(organizationId.value + Sep + s"Provider$p")
+        repo.providerCreated(ProviderCreated(providerId, organizationId, s"Provider $p", "secret", Meta()))
+        for (i <- 0 until math.min(100, offerings)) {
+          repo.offeringCreated(OfferingCreated(OfferingId(providerId.value + Sep + s"Offering$i"), providerId,
+            s"Parking sensor $i", category.uri, None, Nil, List(Endpoint(HTTP_GET, s"https://provider$p.example.org/parking/$i", BIGIOT_LIB)),
+            fields, fields, None, None, None, Some(SpatialExtent("Barcelona")), None, OPEN_DATA_LICENSE,
+            Price(PER_ACCESS, Some(Money(0.001, EUR))), Inactive, Meta()))
+        }
+      }
+    }
+    ctx = ExchangeCtx(new ExchangeQueriesImpl(None, None, repo, repo), None)
+  }
+
+  @Benchmark
+  def circe(): ByteString = {
+    import sangria.marshalling.circe._
+    val result = Await.result(Executor.execute(SchemaDefinition.ExchangeSchema, Query, ctx,
+      deferredResolver = SchemaDefinition.ExchangeResolver), 1.minute)
+    ByteString(result.noSpaces)
+  }
+
+  @Benchmark
+  def byteString(): ByteString = {
+    implicit val marshaller = new ByteStringResultMarshaller
+    Await.result(Executor.execute(SchemaDefinition.ExchangeSchema, Query, ctx,
+      deferredResolver = SchemaDefinition.ExchangeResolver), 1.minute)
+  }
+}
@@ -13,25 +13,32 @@ package exchange.model;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import exchange.model.vocabs.PREFIXES;
-import org.apache.jena.ontology.OntClass;
-import org.apache.jena.ontology.OntModel;
-import org.apache.jena.ontology.OntModelSpec;
 import org.apache.jena.rdf.model.InfModel;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.ResIterator;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.rdf.model.ResourceFactory;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.rdf.model.StmtIterator;
 import org.apache.jena.reasoner.Reasoner;
 import org.apache.jena.reasoner.rulesys.GenericRuleReasoner;
 import org.apache.jena.reasoner.rulesys.Rule;
-import org.apache.jena.util.iterator.ExtendedIterator;
 import org.apache.jena.vocabulary.RDF;
 import org.apache.jena.vocabulary.RDFS;
 import org.apache.jena.vocabulary.SKOS;
@@ -43,39 +50,71 @@ public class ApplicationModelGenerator {
 	
 	public static final String NS = "urn:big-iot:";
 
+	/**
+	 * Computes the closure of rdfs:subClassOf below sosa:FeatureOfInterest on plain collections,
+	 * yields the same categories as an RDFS inference model without one. A class with several direct
+	 * super classes in the closure gets the category of the first of them by URI as parent.
+	 */
 	public static Model generate(Model domains) {
 		Model app = ModelFactory.createDefaultModel();
 		
 		Resource root = getSKOSCategory("allOfferings", "all offerings (root category)", null, app);
 		root.addProperty(RDF.type, BIGIOT.OfferingCategory);
 		
-		Map<OntClass, Resource> categoryMap = new HashMap<>();
+		// asserted rdfs:subClassOf edges in both directions, read in one pass
+		Map<Resource, Set<Resource>> superClasses = new HashMap<>();
+		Map<Resource, Set<Resource>> subClasses = new HashMap<>();
+		StmtIterator sit = domains.listStatements(null, RDFS.subClassOf, (RDFNode) null);
+		while (sit.hasNext()) {
+			Statement st = sit.next();
+			if (!st.getObject().isResource() || st.getSubject().equals(st.getObject()))
+				continue;
+			Resource sub = st.getSubject();
+			Resource sup = st.getObject().asResource();
+			superClasses.computeIfAbsent(sub, k -> new HashSet<>()).add(sup);
+			subClasses.computeIfAbsent(sup, k -> new HashSet<>()).add(sub);
+		}
+		
+		// hierarchical closure of sosa:FeatureOfInterest
+		Set<Resource> features = new LinkedHashSet<>();
+		Deque<Resource> open = new ArrayDeque<>();
+		open.add(SOSA.FeatureOfInterest);
+		while (!open.isEmpty()) {
+			for (Resource sub : subClasses.getOrDefault(open.poll(), Collections.emptySet())) {
+				if (!sub.equals(SOSA.FeatureOfInterest) && features.add(sub))
+					open.add(sub);
+			}
+		}
 		
-		// to include the hierarchical closure of sosa:FeatureOfInterest
-		OntModel inf = ModelFactory.createOntologyModel(OntModelSpec.RDFS_MEM_RDFS_INF);
-		inf.add(domains);
+		Set<Property> labelProperties = subProperties(domains, RDFS.label);
 		
-		ExtendedIterator<OntClass> it = inf.listClasses();
-		while (it.hasNext()) {
-			OntClass cl = it.next();
+		Map<Resource, Resource> categoryMap = new HashMap<>();
+		for (Resource cl : features) {
+			Resource cat = app.createResource(NS + cl.getLocalName() + "Category");
+			cat.addProperty(RDF.type, SKOS.Concept);
 			
-			if (cl.hasSuperClass(SOSA.FeatureOfInterest) && !cl.equals(SOSA.FeatureOfInterest)) {
-				Resource cat = app.createResource(NS + cl.getLocalName() + "Category");
-				cat.addProperty(RDF.type, SKOS.Concept);
-				
-				String label = cl.getLocalName();
-				if (cl.hasProperty(RDFS.label)) {
-					label = cl.getProperty(RDFS.label).getObject().asLiteral().getLexicalForm().trim();
-				}
-				cat.addProperty(RDFS.label, normalize(label));
-				
-				categoryMap.put(cl, cat);
+			String label = cl.getLocalName();
+			String asserted = label(domains, cl, labelProperties);
+			if (asserted != null) {
+				label = asserted;
 			}
+			cat.addProperty(RDFS.label, normalize(label));
+			
+			categoryMap.put(cl, cat);
+		}
+		
+		// ancestors within the closure, every class is expanded once
+		Map<Resource, Set<Resource>> ancestors = new HashMap<>();
+		for (Resource foi : features) {
+			ancestors(foi, superClasses, features, ancestors);
 		}
 		
-		for (OntClass foi : categoryMap.keySet()) {
-			ExtendedIterator<OntClass> scit = foi.listSuperClasses(true).filterKeep(sc -> sc.hasSuperClass(SOSA.FeatureOfInterest));
-			Resource parent = categoryMap.getOrDefault(scit.next(), root);
+		for (Resource foi : features) {
+			Resource parent = root;
+			for (Resource sc : directSuperClasses(foi, superClasses, features, ancestors)) {
+				parent = categoryMap.getOrDefault(sc, root);
+				break;
+			}
 			
 			Resource cat = categoryMap.get(foi);
 			
@@ -86,7 +125,80 @@ public class ApplicationModelGenerator {
 		return app;
 	}
 	
-	private static Resource getSKOSCategory(String localName, String label, Resource superCategory, Model m) {
+	private static Set<Resource> ancestors(Resource cl, Map<Resource, Set<Resource>> superClasses,
+			Set<Resource> features, Map<Resource, Set<Resource>> ancestors) {
+		Set<Resource> known = ancestors.get(cl);
+		if (known != null)
+			return known;
+		Set<Resource> result = new HashSet<>();
+		// registered before the recursion, so that subclass cycles terminate
+		ancestors.put(cl, result);
+		for (Resource sup : superClasses.getOrDefault(cl, Collections.emptySet())) {
+			if (features.contains(sup)) {
+				result.add(sup);
+				result.addAll(ancestors(sup, superClasses, features, ancestors));
+			}
+		}
+		result.remove(cl);
+		return result;
+	}
+	
+	// asserted super classes inside the closure that are not reachable through another one, the
+	// feature of interest itself only if there is none
+	private static List<Resource> directSuperClasses(Resource cl, Map<Resource, Set<Resource>> superClasses,
+			Set<Resource> features, Map<Resource, Set<Resource>> ancestors) {
+		List<Resource> direct = new ArrayList<>();
+		Set<Resource> candidates = new HashSet<>();
+		for (Resource sup : superClasses.getOrDefault(cl, Collections.emptySet())) {
+			if (features.contains(sup) && !ancestors.get(sup).contains(cl))
+				candidates.add(sup);
+		}
+		for (Resource sup : candidates) {
+			boolean reachable = false;
+			for (Resource other : candidates) {
+				if (!other.equals(sup) && ancestors.get(other).contains(sup)) {
+					reachable = true;
+					break;
+				}
+			}
+			if (!reachable)
+				direct.add(sup);
+		}
+		if (direct.isEmpty())
+			direct.add(SOSA.FeatureOfInterest);
+		// sorted, so that the parent does not depend on the hash order
+		direct.sort(Comparator.comparing(Resource::toString));
+		return direct;
+	}
+	
+	// rdfs:label and its sub properties, as the RDFS reasoner would entail labels from them
+	private static Set<Property> subProperties(Model m, Property property) {
+		Set<Property> result = new LinkedHashSet<>();
+		result.add(property);
+		Deque<Resource> open = new ArrayDeque<>();
+		open.add(property);
+		while (!open.isEmpty()) {
+			ResIterator it = m.listSubjectsWithProperty(RDFS.subPropertyOf, open.poll());
+			while (it.hasNext()) {
+				Resource sub = it.next();
+				if (sub.isURIResource() && result.add(m.createProperty(sub.getURI())))
+					open.add(sub);
+			}
+		}
+		return result;
+	}
+	
+	private static String label(Model m, Resource cl, Set<Property> labelProperties) {
+		for (Property p : labelProperties) {
+			Statement st = m.getProperty(cl, p);
+			if (st != null && st.getObject().isLiteral()) {
+				return st.getObject().asLiteral().getLexicalForm().trim();
+			}
+		}
+		return null;
+	}
+	
+	static Resource getSKOSCategory(String localName, String label, Resource superCategory, Model m) {
 		Resource cat = m.createResource(NS + localName + "Category");
 		cat.addProperty(RDFS.label, label);
 
@@ -99,7 +211,7 @@ public class ApplicationModelGenerator {
 		return cat;
 	}
 	
-	private static String normalize(String camelCase) {
+	static String normalize(String camelCase) {
 		return camelCase.replaceAll("([A-Z])([a-z]+)", " $1$2").trim();
 	}
 	
@@ -44,6 +44,14 @@ public class BIGIOT {
 
     public static Resource DataValue  = ResourceFactory.createResource(PREFIXES.BIGIOT_CORE_NS + "DataValue");
 
+    public static final Resource Endpoint = ResourceFactory.createResource(PREFIXES.BIGIOT_CORE_NS + "Endpoint");
+
+    public static final Resource License = ResourceFactory.createResource(PREFIXES.BIGIOT_CORE_NS + "License");
+
+    public static final Resource Price = ResourceFactory.createResource(PREFIXES.BIGIOT_CORE_NS + "Price");
+
+    public static final Resource Region = ResourceFactory.createResource("http://schema.org/Region");
+
     public static final Resource RootCategory = ResourceFactory.createResource("urn:big-iot:allOfferingsCategory");
 
     public static final Resource DATASCHEMA = ResourceFactory.createResource(PREFIXES.BIGIOT_CORE_NS + "DataSchema");
@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.repo.rdfstore;
+
+import org.apache.jena.query.*;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.tdb.TDBFactory;
+import org.apache.jena.update.UpdateAction;
+
+import java.util.function.Supplier;
+
+/**
+ * Embedded Jena dataset, either kept in memory or persisted with TDB in a local directory.
+ * Every call runs in its own transaction, results are copied before the transaction ends.
+ */
+public class DatasetStore implements RDFStore {
+
+    private final Dataset dataset;
+
+    public DatasetStore(Dataset dataset) {
+        this.dataset = dataset;
+    }
+
+    public static DatasetStore inMemory() {
+        return new DatasetStore(DatasetFactory.createTxnMem());
+    }
+
+    public static DatasetStore tdb(String directory) {
+        return new DatasetStore(TDBFactory.createDataset(directory));
+    }
+
+    private <T> T read(Supplier<T> action) {
+        dataset.begin(ReadWrite.READ);
+        try {
+            return action.get();
+        } finally {
+            dataset.end();
+        }
+    }
+
+    private void write(Runnable action) {
+        dataset.begin(ReadWrite.WRITE);
+        try {
+            action.run();
+            dataset.commit();
+        } finally {
+            dataset.end();
+        }
+    }
+
+    public Model construct(String query) {
+        return construct(org.apache.jena.query.QueryFactory.create(query));
+    }
+
+    public Model construct(Query query) {
+        return read(() -> {
+            try (QueryExecution qexec = QueryExecutionFactory.create(query, dataset)) {
+                return ModelFactory.createDefaultModel().add(qexec.execConstruct());
+            }
+        });
+    }
+
+    public ResultSet select(String query) {
+        return read(() -> {
+            try (QueryExecution qexec = QueryExecutionFactory.create(query, dataset)) {
+                return ResultSetFactory.copyResults(qexec.execSelect());
+            }
+        });
+    }
+
+    // transactions are bound to the calling thread, so the solutions are copied before it ends
+    public SolutionIterator selectIterator(String query) {
+        return SolutionIterator.of(select(query));
+    }
+
+    public boolean ask(String query) {
+        return read(() -> {
+            try (QueryExecution qexec = QueryExecutionFactory.create(query, dataset)) {
+                return qexec.execAsk();
+            }
+        });
+    }
+
+    public void update(String update) {
+        write(() -> UpdateAction.parseExecute(update, dataset));
+    }
+
+    public void add(Model model, String graph) {
+        write(() -> dataset.getNamedModel(graph).add(model));
+    }
+
+    public void clearGraph(String graph) {
+        write(() -> dataset.getNamedModel(graph).removeAll());
+    }
+}
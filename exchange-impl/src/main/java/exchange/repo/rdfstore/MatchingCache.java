@@ -0,0 +1,159 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.repo.rdfstore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import scala.collection.immutable.List;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU cache of matching offering ids per offering query id. Entries are dropped by the events that can change
+ * a match, and after a time to live since the matching also depends on the expiration time of offerings.
+ * A result computed while an invalidation happened is not stored, so a stale match never enters the cache.
+ */
+class MatchingCache {
+
+    final static Logger logger = LoggerFactory.getLogger(MatchingCache.class);
+
+    private static final long STATS_INTERVAL = 1000;
+
+    private static class Entry {
+        final List<String> offeringIds;
+        final long expires;
+
+        Entry(List<String> offeringIds, long expires) {
+            this.offeringIds = offeringIds;
+            this.expires = expires;
+        }
+    }
+
+    private final int maxSize;
+    private final long ttlMillis;
+    private final LinkedHashMap<String, Entry> entries;
+    private long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    MatchingCache(int maxSize, long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > MatchingCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * MATCHING_CACHE_SIZE entries (0 disables the cache) kept for at most MATCHING_CACHE_TTL_SECONDS
+     */
+    static MatchingCache fromEnv() {
+        int size = Integer.parseInt(envOrElse("MATCHING_CACHE_SIZE", "1000"));
+        long ttl = Long.parseLong(envOrElse("MATCHING_CACHE_TTL_SECONDS", "60"));
+        return new MatchingCache(size, ttl * 1000);
+    }
+
+    private static String envOrElse(String key, String defaultValue) {
+        String value = System.getenv(key);
+        return value == null || value.isEmpty() ? defaultValue : value;
+    }
+
+    boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * returns null on a miss
+     */
+    synchronized List<String> get(String queryId) {
+        if (!isEnabled())
+            return null;
+        Entry entry = entries.get(queryId);
+        if (entry != null && entry.expires < System.currentTimeMillis()) {
+            entries.remove(queryId);
+            entry = null;
+        }
+        if (entry != null)
+            hits.incrementAndGet();
+        else
+            misses.incrementAndGet();
+        if ((hits.get() + misses.get()) % STATS_INTERVAL == 0)
+            logger.info("matching cache {}", stats());
+        return entry != null ? entry.offeringIds : null;
+    }
+
+    /**
+     * to be taken before the matching is computed and handed to put
+     */
+    synchronized long generation() {
+        return generation;
+    }
+
+    synchronized void put(String queryId, List<String> offeringIds, long generation) {
+        if (!isEnabled() || generation != this.generation)
+            return;
+        entries.put(queryId, new Entry(offeringIds, System.currentTimeMillis() + ttlMillis));
+    }
+
+    synchronized void invalidateQuery(String queryId) {
+        generation++;
+        if (entries.remove(queryId) != null)
+            invalidations.incrementAndGet();
+    }
+
+    // an offering that is removed or deactivated can only disappear from matches which contain it
+    synchronized void invalidateOffering(String offeringId) {
+        generation++;
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().offeringIds.contains(offeringId)) {
+                it.remove();
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    synchronized void invalidateAll() {
+        generation++;
+        invalidations.addAndGet(entries.size());
+        entries.clear();
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    double getHitRate() {
+        long lookups = hits.get() + misses.get();
+        return lookups == 0 ? 0 : (double) hits.get() / lookups;
+    }
+
+    synchronized String stats() {
+        return String.format("size %d, hits %d, misses %d, hit rate %.2f, evictions %d, invalidations %d",
+                entries.size(), hits.get(), misses.get(), getHitRate(), evictions.get(), invalidations.get());
+    }
+}
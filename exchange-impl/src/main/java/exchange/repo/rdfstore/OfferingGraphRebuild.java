@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.repo.rdfstore;
+
+import exchange.api.consumer.ConsumerCreated;
+import exchange.api.offering.OfferingCreated;
+import exchange.api.offeringquery.OfferingQueryCreated;
+import exchange.api.organization.OrganizationCreated;
+import exchange.api.provider.ProviderCreated;
+import exchange.api.subscription.SubscriptionCreated;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the offering graph for the final state of all entities into a shadow graph, in chunks which are
+ * large enough for the bulk loader of the store, and swaps it in for the offering graph with a single MOVE.
+ * The triples are the same as those written by RDFExchangeRepo for the creation events.
+ */
+public class OfferingGraphRebuild {
+
+    final static Logger logger = LoggerFactory.getLogger(OfferingGraphRebuild.class);
+
+    private final RDFStore store;
+    private final RDFParser rdfParser = new RDFParser();
+    private final String offeringGraph;
+    private final String shadowGraph;
+    private final long chunkSize;
+    private Model chunk = ModelFactory.createDefaultModel();
+    private long triples;
+
+    public OfferingGraphRebuild(long chunkSize) throws Exception {
+        this(RDFServer.get().getStore(), QueryFactory.getOfferingGraph(), chunkSize);
+    }
+
+    OfferingGraphRebuild(RDFStore store, String offeringGraph, long chunkSize) {
+        this.store = store;
+        this.offeringGraph = offeringGraph;
+        this.shadowGraph = offeringGraph + "Rebuild";
+        this.chunkSize = chunkSize;
+        store.update(QueryFactory.deleteGraph(shadowGraph));
+    }
+
+    public void organizationCreated(OrganizationCreated event) {
+        add(rdfParser.organizationCreated(event));
+    }
+
+    public void providerCreated(ProviderCreated event) {
+        add(rdfParser.providerCreated(event));
+    }
+
+    public void offeringCreated(OfferingCreated event) {
+        add(rdfParser.offeringCreated(event));
+    }
+
+    public void consumerCreated(ConsumerCreated event) {
+        add(rdfParser.consumerCreated(event));
+    }
+
+    public void offeringQueryCreated(OfferingQueryCreated event) {
+        add(rdfParser.offeringQueryCreated(event));
+    }
+
+    public void subscriptionCreated(SubscriptionCreated event) {
+        add(rdfParser.subscriptionCreated(event));
+    }
+
+    private void add(Model model) {
+        if (model == null)
+            return;
+        chunk.add(model);
+        if (chunk.size() >= chunkSize)
+            flush();
+    }
+
+    private void flush() {
+        if (chunk.isEmpty())
+            return;
+        long startTime = System.nanoTime();
+        store.add(chunk, shadowGraph);
+        triples += chunk.size();
+        logger.info(String.format("loaded %d triples into %s, %d in total - %.2fms",
+                chunk.size(), shadowGraph, triples, (System.nanoTime() - startTime) / 1.0e6));
+        chunk = ModelFactory.createDefaultModel();
+    }
+
+    /**
+     * loads the remaining triples and replaces the offering graph, returns the number of triples loaded
+     */
+    public long swap() {
+        flush();
+        store.update(QueryFactory.moveGraph(shadowGraph, offeringGraph));
+        logger.info("offering graph replaced by {}", shadowGraph);
+        return triples;
+    }
+}
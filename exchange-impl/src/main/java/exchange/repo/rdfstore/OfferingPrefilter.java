@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.repo.rdfstore;
+
+import exchange.api.extent.SpatialExtent;
+import exchange.api.offering.Offering;
+import exchange.api.offeringquery.OfferingQuery;
+import exchange.api.offeringquery.OfferingQueryId;
+import exchange.api.organization.Organization;
+import exchange.api.price.Money;
+import exchange.api.price.Price;
+import exchange.api.provider.Provider;
+import exchange.model.vocabs.BIGIOT;
+import exchange.repo.ExchangeRepoQueries;
+import exchange.repo.Projection;
+import scala.Option;
+import scala.collection.JavaConverters;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Evaluates the cheap conditions of a matching (activation, expiration time, city, license and price)
+ * against the offerings held in memory, with the same semantics as QueryFactory.findMatchingOfferings.
+ * Only the ontology dependent part then has to be evaluated by the store, restricted to the candidates.
+ */
+class OfferingPrefilter {
+
+    private final ExchangeRepoQueries queries;
+
+    OfferingPrefilter(ExchangeRepoQueries queries) {
+        this.queries = queries;
+    }
+
+    Option<OfferingQuery> offeringQuery(OfferingQueryId id) {
+        return queries.offeringQuery(id);
+    }
+
+    // the offerings are read as stored, without filling the back references of every organization and provider
+    List<String> candidateIds(OfferingQuery query) {
+        long now = System.currentTimeMillis();
+        List<String> ids = new ArrayList<>();
+        for (Organization organization : JavaConverters.seqAsJavaList(queries.allOrganizations(Projection.Nothing()))) {
+            for (Provider provider : JavaConverters.seqAsJavaList(organization.providers())) {
+                for (Offering offering : JavaConverters.seqAsJavaList(provider.offerings())) {
+                    if (matches(offering, query, now))
+                        ids.add(offering.id().value());
+                }
+            }
+        }
+        return ids;
+    }
+
+    static boolean matches(Offering offering, OfferingQuery query, long now) {
+        return offering.activation().status() && offering.activation().expirationTime() >= now
+                && cityMatches(offering, query) && licenseMatches(offering, query) && priceMatches(offering, query);
+    }
+
+    // the city is only compared if the query has no bounding box, which is matched by the spatial filter instead
+    private static boolean cityMatches(Offering offering, OfferingQuery query) {
+        if (!query.spatialExtent().isDefined())
+            return true;
+        SpatialExtent extent = query.spatialExtent().get();
+        if (extent.city().length() == 0 || extent.boundary().isDefined())
+            return true;
+        return offering.spatialExtent().isDefined() && offering.spatialExtent().get().city().equals(extent.city());
+    }
+
+    private static boolean licenseMatches(Offering offering, OfferingQuery query) {
+        if (!query.license().isDefined())
+            return true;
+        String licenseType = BIGIOT.getLicenseType(query.license().get().value());
+        return licenseType != null && licenseType.equals(BIGIOT.getLicenseType(offering.license().value()));
+    }
+
+    // free offerings match any pricing model, but like every other offering only in the currency of the query
+    private static boolean priceMatches(Offering offering, OfferingQuery query) {
+        if (!query.price().isDefined())
+            return true;
+        Price price = query.price().get();
+        String currency = "EUR";
+        double amount = 0;
+        if (price.money().isDefined()) {
+            currency = price.money().get().currency().value();
+            amount = price.money().get().amount().doubleValue();
+        }
+
+        String pricingModel = BIGIOT.getPriceModel(offering.price().pricingModel().toString());
+        if (pricingModel == null || !(pricingModel.equals(BIGIOT.getPriceModel(price.pricingModel().toString()))
+                || pricingModel.equals(BIGIOT.FREE.getURI())))
+            return false;
+        // OFFERING_FREE_PRICE_RULES store 0 EUR for every free offering, also for one without money
+        if (pricingModel.equals(BIGIOT.FREE.getURI()) && currency.equals("EUR") && amount >= 0)
+            return true;
+        if (!offering.price().money().isDefined())
+            return false;
+        Money money = offering.price().money().get();
+        return money.currency().value().equals(currency) && money.amount().doubleValue() <= amount;
+    }
+}
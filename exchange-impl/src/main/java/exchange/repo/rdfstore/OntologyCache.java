@@ -0,0 +1,188 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.repo.rdfstore;
+
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.RiotException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.List;
+
+/**
+ * On-disk cache of the generated domain model and the inferred ontology, stored as RDF Thrift.
+ * Entries are addressed by a hash over the source model URLs, their HTTP validators and the rules,
+ * so an unchanged setup is restored without downloading the sources or running the reasoner.
+ */
+class OntologyCache {
+
+    final static Logger logger = LoggerFactory.getLogger(OntologyCache.class);
+
+    static final String DOMAIN = "domain";
+    static final String INFERRED = "inferred";
+
+    // bump when the generator or the way the ontology is inferred changes
+    private static final String FORMAT_VERSION = "1";
+
+    private final File directory;
+    private final OkHttpClient client = new OkHttpClient();
+
+    OntologyCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * returns null if ONTOLOGY_CACHE_DIR is not set
+     */
+    static OntologyCache fromEnv() {
+        String dir = System.getenv("ONTOLOGY_CACHE_DIR");
+        if (dir == null || dir.isEmpty())
+            return null;
+        File directory = new File(dir);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            logger.error("can not create ontology cache directory {}", dir);
+            return null;
+        }
+        return new OntologyCache(directory);
+    }
+
+    /**
+     * ETag or Last-Modified of every source are used if the server provides them,
+     * otherwise the content is downloaded and hashed. Returns null if a source is not reachable.
+     */
+    String key(List<String> urls, String rules) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, FORMAT_VERSION);
+            update(digest, rules);
+            for (String url : urls) {
+                update(digest, url);
+                update(digest, validator(url));
+            }
+            StringBuilder key = new StringBuilder();
+            for (byte b : digest.digest()) {
+                key.append(String.format("%02x", b));
+            }
+            return key.toString();
+        } catch (Exception e) {
+            logger.error("can not compute ontology cache key {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private String validator(String url) throws IOException {
+        if (url.startsWith(RDFServer.CLASSPATH)) {
+            try (InputStream in = OntologyCache.class.getClassLoader().getResourceAsStream(url.substring(RDFServer.CLASSPATH.length()))) {
+                if (in == null)
+                    throw new IOException("can not load " + url);
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                for (int n = in.read(buffer); n >= 0; n = in.read(buffer))
+                    content.write(buffer, 0, n);
+                return sha256(content.toByteArray());
+            }
+        }
+        Request head = new Request.Builder().head().header("Accept", "text/turtle").url(url).build();
+        Response response = client.newCall(head).execute();
+        String etag = response.header("ETag");
+        String lastModified = response.header("Last-Modified");
+        response.body().close();
+        if (response.isSuccessful() && etag != null)
+            return "etag:" + etag;
+        if (response.isSuccessful() && lastModified != null)
+            return "modified:" + lastModified;
+
+        Request get = new Request.Builder().header("Accept", "text/turtle").url(url).build();
+        Response content = client.newCall(get).execute();
+        if (!content.isSuccessful()) {
+            content.body().close();
+            throw new IOException("can not load " + url + ": " + content.code());
+        }
+        return sha256(content.body().bytes());
+    }
+
+    private static String sha256(byte[] content) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(content);
+            StringBuilder value = new StringBuilder("sha256:");
+            for (byte b : hash) {
+                value.append(String.format("%02x", b));
+            }
+            return value.toString();
+        } catch (java.security.NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private File file(String key, String name) {
+        return new File(directory, key + "." + name + ".rt");
+    }
+
+    boolean contains(String key) {
+        return file(key, DOMAIN).isFile() && file(key, INFERRED).isFile();
+    }
+
+    /**
+     * returns null if the entry can not be read, is corrupt or empty
+     */
+    Model load(String key, String name) {
+        Model model = ModelFactory.createDefaultModel();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file(key, name)))) {
+            RDFDataMgr.read(model, in, Lang.RDFTHRIFT);
+        } catch (IOException | RiotException e) {
+            logger.error("can not read ontology cache entry {} {}: {}", key, name, e.getMessage());
+            return null;
+        }
+        if (model.isEmpty()) {
+            logger.error("ontology cache entry {} {} is empty", key, name);
+            return null;
+        }
+        return model;
+    }
+
+    void store(String key, Model domainModel, Model inferredModel) {
+        try {
+            write(file(key, DOMAIN), domainModel);
+            write(file(key, INFERRED), inferredModel);
+            logger.info("stored inferred ontology in cache {}", key);
+        } catch (IOException e) {
+            e.printStackTrace();
+            logger.error("error {}", e.getMessage());
+        }
+    }
+
+    // written to a temporary file first, so that a crashed write is never taken for a cache entry
+    private void write(File target, Model model) throws IOException {
+        File tmp = File.createTempFile(target.getName(), ".tmp", directory);
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp))) {
+            RDFDataMgr.write(out, model, RDFFormat.RDF_THRIFT);
+        }
+        Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -28,6 +28,7 @@ import exchange.model.vocabs.BIGIOT;
 import exchange.model.vocabs.PREFIXES;
 import exchange.model.vocabs.SCHEMA;
 import org.apache.jena.rdf.model.*;
+import org.apache.jena.riot.Lang;
 import org.apache.jena.vocabulary.RDF;
 import org.apache.jena.vocabulary.XSD;
 import org.slf4j.Logger;
@@ -807,6 +808,86 @@ public class QueryFactory {
                 "           bigiot-core:offeringExpirationTime ?expirationTime;\n" +
                 "           bigiot-core:isActivated \"true\"^^<" + XSD.xboolean.getURI() + ">.\n";
 
+        queryStr += dataFieldPatterns(query);
+
+        logger.debug("check spatial extent:{}",query.spatialExtent());
+        if((query.spatialExtent().isDefined()) && (query.spatialExtent().get().city().length()>0)){
+            if(!query.spatialExtent().get().boundary().isDefined())
+                queryStr += " ?offering schema:spatialCoverage ?area.\n" +
+                        "  ?area rdfs:label \"" + query.spatialExtent().get().city() + "\"^^xsd:string.\n";
+        }
+
+        if(query.price().isDefined()){
+            Option<price.Price> price = query.price();
+            String defaultCurrency = "EUR";
+            double amount = 0;
+            if(price.get().money().isDefined()){
+                logger.debug("price info {}",price);
+                defaultCurrency = price.get().money().get().currency().value();
+                amount = price.get().money().get().amount().doubleValue();
+            }
+
+            queryStr += "?offering schema:priceSpecification ?priceSpec.\n" +
+                    "    ?priceSpec bigiot-core:pricingModel ?pModel.\n" +
+                     "    VALUES ?pModel{\n" +
+                    "       <" + BIGIOT.getPriceModel(price.get().pricingModel().toString()) + "> \n" +
+                    "       bigiot-core:free_price\n" +
+                    "     }\n" +
+                    "           ?priceSpec  schema:priceCurrency \"" + defaultCurrency + "\"^^xsd:string;\n" +
+                    "                       schema:price ?money.\n"+
+                    "           FILTER(?money <=" + amount + ").\n" ;
+            logger.debug("price query {}",price);
+        }
+
+        if(query.license().isDefined()){
+            Option<license.License> license = query.license();
+            queryStr+= "?offering schema:license ?licenseIndiv.\n" +
+                    "   ?licenseIndiv bigiot-core:licenseType <" + BIGIOT.getLicenseType(license.get().value()) + ">. \n";
+        }
+
+        queryStr += categoryPattern(query);
+
+        //check expirationTime
+        Date currentDate = new Date();
+        queryStr+= "FILTER(?expirationTime >= \"" + currentDate.getTime() + "\"^^xsd:long).\n";
+        queryStr = PREFIXES_str +
+                "\n" + queryStr + "}";
+        return queryStr;
+    }
+
+    /**
+     * Only the ontology dependent part of findMatchingOfferings, category and data fields with their value types,
+     * for offerings which already passed the other conditions in memory.
+     */
+    public static String semanticMatchingOfferings(OfferingQuery query, Collection<String> candidateIds) {
+        logger.info("Finding semantically matching offering among {} candidates {}", candidateIds.size(), query);
+        StringBuilder values = new StringBuilder("    VALUES ?id {\n");
+        for (String id : candidateIds) {
+            values.append("       \"").append(id).append("\"^^<").append(XSD.xstring.getURI()).append(">\n");
+        }
+        values.append("    }\n");
+        String queryStr = "SELECT distinct ?id \n" +
+                "FROM <" + OFFERING_GRAPH + "> \n" +
+                "FROM <" + ONTOLOGY_GRAPH + "> \n" +
+                "WHERE{\n" +
+                values +
+                "      ?offering a bigiot-core:Offering;\n" +
+                "           bigiot-core:offeringId ?id.\n";
+        queryStr += dataFieldPatterns(query);
+        queryStr += categoryPattern(query);
+        return PREFIXES_str +
+                "\n" + queryStr + "}";
+    }
+
+    private static String categoryPattern(OfferingQuery query) {
+        if (!query.rdfAnnotation().isDefined())
+            return "";
+        Option<semantics.RdfAnnotation> rdfAnnotation = query.rdfAnnotation();
+        return " ?offering schema:category <" + PREFIXES.getPrefixModel().expandPrefix(rdfAnnotation.get().uri()) +">.\n" ;
+    }
+
+    private static String dataFieldPatterns(OfferingQuery query) {
+        String queryStr = "";
         if (!query.outputs().isEmpty()) {
             logger.info("build output data query {}",query.outputs());
             Collection<DataField> col = asJavaCollection(query.outputs());
@@ -869,52 +950,6 @@ public class QueryFactory {
                 }
             }
         }
-
-        logger.debug("check spatial extent:{}",query.spatialExtent());
-        if((query.spatialExtent().isDefined()) && (query.spatialExtent().get().city().length()>0)){
-            if(!query.spatialExtent().get().boundary().isDefined())
-                queryStr += " ?offering schema:spatialCoverage ?area.\n" +
-                        "  ?area rdfs:label \"" + query.spatialExtent().get().city() + "\"^^xsd:string.\n";
-        }
-
-        if(query.price().isDefined()){
-            Option<price.Price> price = query.price();
-            String defaultCurrency = "EUR";
-            double amount = 0;
-            if(price.get().money().isDefined()){
-                logger.debug("price info {}",price);
-                defaultCurrency = price.get().money().get().currency().value();
-                amount = price.get().money().get().amount().doubleValue();
-            }
-
-            queryStr += "?offering schema:priceSpecification ?priceSpec.\n" +
-                    "    ?priceSpec bigiot-core:pricingModel ?pModel.\n" +
-                     "    VALUES ?pModel{\n" +
-                    "       <" + BIGIOT.getPriceModel(price.get().pricingModel().toString()) + "> \n" +
-                    "       bigiot-core:free_price\n" +
-                    "     }\n" +
-                    "           ?priceSpec  schema:priceCurrency \"" + defaultCurrency + "\"^^xsd:string;\n" +
-                    "                       schema:price ?money.\n"+
-                    "           FILTER(?money <=" + amount + ").\n" ;
-            logger.debug("price query {}",price);
-        }
-
-        if(query.license().isDefined()){
-            Option<license.License> license = query.license();
-            queryStr+= "?offering schema:license ?licenseIndiv.\n" +
-                    "   ?licenseIndiv bigiot-core:licenseType <" + BIGIOT.getLicenseType(license.get().value()) + ">. \n";
-        }
-
-        if(query.rdfAnnotation().isDefined()) {
-            Option<semantics.RdfAnnotation> rdfAnnotation = query.rdfAnnotation();
-            queryStr +=  " ?offering schema:category <" + PREFIXES.getPrefixModel().expandPrefix(rdfAnnotation.get().uri()) +">.\n" ;
-        }
-
-        //check expirationTime
-        Date currentDate = new Date();
-        queryStr+= "FILTER(?expirationTime >= \"" + currentDate.getTime() + "\"^^xsd:long).\n";
-        queryStr = PREFIXES_str +
-                "\n" + queryStr + "}";
         return queryStr;
     }
 
@@ -1400,7 +1435,7 @@ public class QueryFactory {
     public static String offeringCategoryParentChanged(OfferingCategoryParentChanged ev) {
         logger.info("update offering category {} with new parent {}", ev.id(), ev.parent());
         return PREFIXES_str +
-                "WITH <" + QueryFactory.getOfferingGraph() + "> \n" +
+                "WITH <" + QueryFactory.getOntologyGraph() + "> \n" +
                 "DELETE{" +
                 "      ?parent skos:narrower <" + ev.uri() + ">.\n" +
                 "      <" + ev.uri() + "> <" + BIGIOT.expectedAnnotation.getURI() + "> ?expectedDataType.\n" +
@@ -1503,4 +1538,62 @@ public class QueryFactory {
         return "DROP SILENT GRAPH <" + graphName + ">";
     }
 
+    // replaces the target graph with the source graph in one update request
+    public static String moveGraph(String sourceGraph, String targetGraph){
+        return "MOVE SILENT GRAPH <" + sourceGraph + "> TO GRAPH <" + targetGraph + ">";
+    }
+
+    // the N-Triples writer of Jena leaves out xsd:string, but Virtuoso does not take "a" for the
+    // same term as "a"^^xsd:string, which the lookups by id match, so every datatype is written out
+    public static String insertData(Model model, String graphName){
+        StringBuilder triples = new StringBuilder("INSERT DATA { GRAPH <" + graphName + "> {\n");
+        StmtIterator it = model.listStatements();
+        while (it.hasNext()) {
+            org.apache.jena.graph.Triple t = it.next().asTriple();
+            triples.append(term(t.getSubject())).append(' ')
+                    .append(term(t.getPredicate())).append(' ')
+                    .append(term(t.getObject())).append(" .\n");
+        }
+        return triples.append("}}\n").toString();
+    }
+
+    private static String term(org.apache.jena.graph.Node node) {
+        if (node.isURI())
+            return "<" + node.getURI() + ">";
+        if (node.isBlank())
+            return "_:b" + node.getBlankNodeLabel().replaceAll("[^A-Za-z0-9]", "_");
+        String literal = "\"" + escape(node.getLiteralLexicalForm()) + "\"";
+        String language = node.getLiteralLanguage();
+        if (language != null && !language.isEmpty())
+            return literal + "@" + language;
+        return literal + "^^<" + node.getLiteralDatatypeURI() + ">";
+    }
+
+    private static String escape(String lexicalForm) {
+        StringBuilder escaped = new StringBuilder(lexicalForm.length());
+        for (char c : lexicalForm.toCharArray()) {
+            switch (c) {
+                case '\\': escaped.append("\\\\"); break;
+                case '"': escaped.append("\\\""); break;
+                case '\n': escaped.append("\\n"); break;
+                case '\r': escaped.append("\\r"); break;
+                case '\t': escaped.append("\\t"); break;
+                default: escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    // append the insertion of the given model to a DELETE query, so that both are sent
+    // as one update request and never become visible half applied
+    public static String deleteAndInsert(String deleteQuery, Model model){
+        return deleteAndInsert(deleteQuery, model, QueryFactory.getOfferingGraph());
+    }
+
+    public static String deleteAndInsert(String deleteQuery, Model model, String graphName){
+        if(model == null || model.isEmpty())
+            return deleteQuery;
+        return deleteQuery + ";\n" + insertData(model, graphName);
+    }
+
 }
@@ -13,7 +13,6 @@ package exchange.repo.rdfstore;
 import exchange.api.access.AccessInterfaceType;
 import exchange.api.access.EndpointType;
 import exchange.api.consumer.*;
-import exchange.api.extent;
 import exchange.api.license.License;
 import exchange.api.offering;
 import exchange.api.offering.*;
@@ -26,21 +25,25 @@ import exchange.api.semantics.*;
 import exchange.api.subscription.*;
 import exchange.model.vocabs.BIGIOT;
 import exchange.model.vocabs.PREFIXES;
-import exchange.repo.ExchangeSemanticRepo;
 import exchange.repo.ExchangeRepoMutations;
+import exchange.repo.ExchangeRepoQueries;
+import exchange.repo.ExchangeSemanticRepo;
+import exchange.repo.inmemory.CategoryAncestors;
+import exchange.repo.inmemory.InMemoryExchangeRepoQueries;
 import org.apache.commons.collections4.ListUtils;
-import org.apache.jena.query.QuerySolution;
-import org.apache.jena.query.ResultSet;
 import org.apache.jena.rdf.model.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import scala.Option;
-import scala.Some;
 import scala.collection.JavaConverters;
 import scala.collection.immutable.List;
-import virtuoso.jena.driver.VirtuosoQueryExecution;
+import scala.compat.java8.FutureConverters;
+import scala.concurrent.ExecutionContext;
+import scala.concurrent.Future;
 
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 public class RDFExchangeRepo implements ExchangeRepoMutations, ExchangeSemanticRepo {
@@ -53,6 +56,14 @@ public class RDFExchangeRepo implements ExchangeRepoMutations, ExchangeSemanticR
     private final RDFSerializer rdfSerializer;
     private final RDFParser rdfParser;
     private RDFServer rdfServer;
+    private volatile SemanticCatalog catalog;
+    private final MatchingCache matchingCache = MatchingCache.fromEnv();
+    private volatile OfferingPrefilter prefilter;
+    private volatile InMemoryExchangeRepoQueries inMemoryMatching;
+    private volatile CategoryAncestors categoryAncestors;
+
+    // candidates sent to the store per semantic matching query
+    private static final int CANDIDATES_PER_QUERY = 500;
 
     public RDFExchangeRepo() throws Exception {
         this.rdfServer = RDFServer.get();
@@ -67,60 +78,80 @@ public class RDFExchangeRepo implements ExchangeRepoMutations, ExchangeSemanticR
         this.rdfParser = new RDFParser();
     }
 
+    /**
+     * Lets matching check activation, expiration time, city, license and price against the offerings
+     * held by the given repo, so the store only evaluates the ontology dependent part for the remaining candidates.
+     */
+    public void useInMemoryPrefilter(ExchangeRepoQueries queries) {
+        logger.info("matching with in-memory prefilter");
+        this.prefilter = new OfferingPrefilter(queries);
+    }
+
+    /**
+     * Answers matching entirely from the offerings held by the given repo, with the rules of findMatchingOfferings
+     * and the spatial and temporal filters, so matching needs no round trip to the store.
+     */
+    public void useInMemoryMatching(InMemoryExchangeRepoQueries queries) {
+        logger.info("matching in memory");
+        useInMemoryPrefilter(queries);
+        queries.useCategoryAncestors(this::categoryAncestors);
+        this.inMemoryMatching = queries;
+    }
+
+    // ancestors of the categories of the current semantic snapshot, which OFFERING_SUB_CATEGORY_RULES add to offerings
+    private CategoryAncestors categoryAncestors() {
+        SemanticSnapshot snapshot = RDFUtils.getSnapshot();
+        CategoryAncestors current = categoryAncestors;
+        if (current == null || current.version() != snapshot.getVersion()) {
+            java.util.Map<String, java.util.Set<String>> parents = new java.util.HashMap<>();
+            StmtIterator it = snapshot.getCategoryOnlyModel().listStatements(null, BIGIOT.narrower, (RDFNode) null);
+            while (it.hasNext()) {
+                Statement t = it.next();
+                if (t.getSubject().isURIResource() && t.getObject().isURIResource())
+                    parents.computeIfAbsent(t.getObject().asResource().getURI(), k -> new java.util.HashSet<>())
+                            .add(t.getSubject().getURI());
+            }
+            current = CategoryAncestors.fromParents(snapshot.getVersion(), parents);
+            categoryAncestors = current;
+        }
+        return current;
+    }
+
+    // decoded catalog of the current semantic snapshot, rebuilt whenever a semantics change publishes a new version
+    private SemanticCatalog catalog() {
+        SemanticSnapshot snapshot = RDFUtils.getSnapshot();
+        SemanticCatalog current = catalog;
+        if (current == null || current.getVersion() != snapshot.getVersion()) {
+            current = SemanticCatalog.build(snapshot, rdfSerializer);
+            catalog = current;
+        }
+        return current;
+    }
+
     public OfferingCategory allOfferingCategories() {
-        Model m = RDFUtils.getAllOfferingCategoryModel();
-        return rdfSerializer.allOfferingCategories(m);
+        return catalog().allOfferingCategories();
     }
 
     public Option<OfferingCategory> offeringCategory(String rdfUri) {
-        Model m = RDFUtils.getAllOfferingCategoryModel();
-        return rdfSerializer.findOfferingCategory(rdfUri, m);
+        return catalog().offeringCategory(rdfUri);
     }
 
     public List<String> allOfferingCategoryUris() {
-        ArrayList<String> categoryUris = new ArrayList<String>();
-        try {
-            String query = QueryFactory.allCategoryUris();
-            VirtuosoQueryExecution vqe = rdfServer.executeSelectQuery(query);
-            ResultSet results = vqe.execSelect();
-            while (results.hasNext()) {
-                QuerySolution result = results.nextSolution();
-                String category = result.getResource("category").getURI();
-                categoryUris.add(category);
-            }
-            vqe.close();
-        }catch (Exception e){
-            logger.error("allOfferingCategoryUris error " + e);
-        }
+        List<String> categoryUris = catalog().allOfferingCategoryUris();
         logger.debug("allOfferingCategoryUris result size {}", categoryUris.size());
-        return JavaConverters.asScalaBuffer(categoryUris).toList();
+        return categoryUris;
     }
 
     public List<RdfAnnotation> allDataTypes() {
-        String q = QueryFactory.create(BIGIOT.DatatypeAnnotation);
-        Model m = rdfServer.executeConstructQuery(q);
-        m.setNsPrefixes(PREFIXES.getPrefixSet());
-        return rdfSerializer.allRdfAnnotations(m);
+        return catalog().allDataTypes();
     }
 
     public Option<DataField> outputDataField(String typeUri, String categoryUri) {
-//        BindingMap bindings = new BindingMap().withResource("annotation", typeUri);
-//        String q = QueryFactory.create(BIGIOT.DatatypeAnnotation, bindings);
-//        Model m = rdfServer.executeConstructQuery(q);
-        Model m = RDFUtils.getAllDataTypeAnnotationModel();
-        m.setNsPrefixes(PREFIXES.getPrefixSet());
-
-        Option<DataField> dataField = rdfSerializer.findDataField(typeUri,m);
-        return dataField;
+        return catalog().dataField(typeUri);
     }
 
     public Option<DataField> inputDataField(String typeUri, String categoryUri) {
-        Model m = RDFUtils.getAllDataTypeAnnotationModel();
-        m.setNsPrefixes(PREFIXES.getPrefixSet());
-
-//        return Option.empty(); // new Some(new DataField("", rdfAnnotation, new TextType(), "", false)); // TODO fill in default name, value type and required property
-        Option<DataField> dataField = rdfSerializer.findDataField(typeUri,m);
-        return dataField;
+        return catalog().dataField(typeUri);
     }
 
     private Option<OfferingQuery> findOfferingQuery(String id) {
@@ -132,121 +163,233 @@ public class RDFExchangeRepo implements ExchangeRepoMutations, ExchangeSemanticR
         return rdfSerializer.findOfferingQuery(id, m);
     }
 
+    private java.util.List<String> selectIds(String query) {
+        java.util.List<String> ids = new ArrayList<>();
+        try (SolutionIterator results = rdfServer.executeSelectIterator(query)) {
+            while (results.hasNext()) {
+                ids.add(results.next().getLiteral("id").getString());
+            }
+        }
+        return ids;
+    }
+
     //////////////////////////////////////////////////////////////////// Mutations
 
     public List<String> matchingOfferingIds(OfferingQueryId queryId) {
-        ArrayList<String> offeringIds = new ArrayList<String>();
+        List<String> cached = matchingCache.get(queryId.value());
+        if (cached != null) {
+            logger.debug("matching result for {} served from cache", queryId);
+            return cached;
+        }
+        try {
+            return findMatchingOfferingIds(queryId, matchingCache.generation());
+        }catch (Exception e){
+            logger.error("matching offering error " + e);
+            return JavaConverters.asScalaBuffer(new ArrayList<String>()).toList();
+        }
+    }
+
+    // only complete results are cached, without the spatial filter the result is returned unfiltered for this call
+    private List<String> findMatchingOfferingIds(OfferingQueryId queryId, long generation) {
         java.util.List<String> merged = new ArrayList<String>();
+        boolean complete = true;
         logger.debug("find offering query:{}", queryId);
-        Option<OfferingQuery> query = findOfferingQuery(queryId.value());
+        Option<OfferingQuery> query = prefilter != null ? prefilter.offeringQuery(queryId) : Option.empty();
+        if (query.isEmpty())
+            query = findOfferingQuery(queryId.value());
         logger.debug("offering query found:{}", query);
-        try {
-            if (query.isDefined()) {
-                logger.debug("start matching offering process...");
-                ArrayList<String> spatialFilterIds = new ArrayList<String>();
-                try {
-                    Option<extent.SpatialExtent> spatialExtentOption = new Some(query.get().spatialExtent());
-                    if (spatialExtentOption!=null && spatialExtentOption.isDefined()) {
-                        if (query.get().spatialExtent().get().boundary().isDefined()) {
-                            logger.debug("start spatial filtering process...");
-                            String spatialFilterQuery = QueryFactory.spatialFilterOfferings(query.get());
-                            VirtuosoQueryExecution vqe = rdfServer.executeSelectQuery(spatialFilterQuery);
-                            ResultSet results = vqe.execSelect();
-                            while (results.hasNext()) {
-                                QuerySolution result = results.nextSolution();
-                                String id = result.getLiteral("id").getString();
-                                spatialFilterIds.add(id);
-                            }
-                            logger.debug("spatial filtering result size {} and details:{}", spatialFilterIds.size(),
-                                    spatialFilterIds.stream()
-                                            .map(n -> n.toString())
-                                            .collect(Collectors.joining(",")));
-                            if (spatialFilterIds.isEmpty())
-                                return JavaConverters.asScalaBuffer(spatialFilterIds).toList();
-                        }
-                    }
-                }catch(Exception e){
-                    logger.error("spatial matching offering error " + e);
-                }
-                ArrayList<String> temporalFilterIds = new ArrayList<String>();
-                if(query.get().temporalExtent().isDefined()){
-                    if(query.get().temporalExtent().get().from().isDefined() && query.get().temporalExtent().get().to().isDefined()){
-                            logger.debug("start temporal filtering process...");
-                            String temporalFilterQuery = QueryFactory.temporalFilterOfferings(query.get());
-                            VirtuosoQueryExecution vqe = rdfServer.executeSelectQuery(temporalFilterQuery);
-                            ResultSet results = vqe.execSelect();
-                            while (results.hasNext()) {
-                                QuerySolution result = results.nextSolution();
-                                String id = result.getLiteral("id").getString();
-                                temporalFilterIds.add(id);
-                            }
-                            logger.debug("temporal filtering result size {} and details:{}", temporalFilterIds.size(),
-                                    temporalFilterIds.stream()
-                                            .map(n -> n.toString())
-                                            .collect(Collectors.joining(",")));
-                            if (temporalFilterIds.isEmpty())
-                                return JavaConverters.asScalaBuffer(temporalFilterIds).toList();
-                    }
-
-                }
-
-                String q = QueryFactory.findMatchingOfferings(query.get());
-                VirtuosoQueryExecution vqe = rdfServer.executeSelectQuery(q);
-                ResultSet results = vqe.execSelect();
-                while (results.hasNext()) {
-                    QuerySolution result = results.nextSolution();
-                    String id = result.getLiteral("id").getString();
-                    offeringIds.add(id);
-                }
-                logger.debug("semantic matching result size {} and details:{}", offeringIds.size(),
-                                                    offeringIds.stream().map( n -> n.toString() )
-                                                    .collect( Collectors.joining( "," ) ));
-                vqe.close();
-
-                if(spatialFilterIds.isEmpty() && temporalFilterIds.isEmpty()) {
-                    logger.debug("return semantic filter");
-                    merged = offeringIds;
-                }
-                if(!spatialFilterIds.isEmpty() && temporalFilterIds.isEmpty()) {
-                    logger.debug("join spatial and semantic filter");
-                    merged = ListUtils.intersection(offeringIds,spatialFilterIds);
-                }
-                if(spatialFilterIds.isEmpty() && !temporalFilterIds.isEmpty()) {
-                    logger.debug("join temporal and semantic filter");
-                    merged = ListUtils.intersection(offeringIds,temporalFilterIds);
-                }
-                if(!spatialFilterIds.isEmpty() && !temporalFilterIds.isEmpty()) {
-                    logger.debug("join temporal, spatial and semantic filter");
-                    merged = ListUtils.intersection(offeringIds, spatialFilterIds);
-                    merged = ListUtils.intersection(temporalFilterIds, merged);
-                }
+        InMemoryExchangeRepoQueries inMemoryMatching = this.inMemoryMatching;
+        if (query.isDefined() && inMemoryMatching != null) {
+            merged = new ArrayList<>(JavaConverters.seqAsJavaList(
+                    inMemoryMatching.sparqlMatchingOfferingIds(query.get(), System.currentTimeMillis())));
+        } else if (query.isDefined()) {
+            merged = matchOfferings(query.get());
+            complete = merged != null;
+            if (merged == null)
+                merged = matchOfferingsWithin(query.get(), null);
+        }
+        logIds("matching", merged);
+        List<String> offeringIds = JavaConverters.asScalaBuffer(merged).toList();
+        if (complete)
+            matchingCache.put(queryId.value(), offeringIds, generation);
+        return offeringIds;
+    }
+
+    /**
+     * returns null if the spatial filter failed
+     */
+    private java.util.List<String> matchOfferings(OfferingQuery query) {
+        logger.debug("start matching offering process...");
+        java.util.List<String> spatialFilterIds = null;
+        if (hasSpatialFilter(query)) {
+            try {
+                logger.debug("start spatial filtering process...");
+                spatialFilterIds = selectIds(QueryFactory.spatialFilterOfferings(query));
+                logIds("spatial filtering", spatialFilterIds);
+            }catch(Exception e){
+                logger.error("spatial matching offering error " + e);
+                return null;
             }
-        }catch (Exception e){
-            logger.error("matching offering error " + e);
         }
-        logger.debug("matching result size {} and details:{}", merged.size(),
-                merged.stream().map( n -> n.toString() )
-                        .collect( Collectors.joining( "," ) ));
-        return JavaConverters.asScalaBuffer(merged).toList();
+        return matchOfferingsWithin(query, spatialFilterIds);
+    }
+
+    private java.util.List<String> matchOfferingsWithin(OfferingQuery query, java.util.List<String> spatialFilterIds) {
+        if (spatialFilterIds != null && spatialFilterIds.isEmpty())
+            return spatialFilterIds;
+
+        java.util.List<String> temporalFilterIds = null;
+        if (hasTemporalFilter(query)) {
+            logger.debug("start temporal filtering process...");
+            temporalFilterIds = selectIds(QueryFactory.temporalFilterOfferings(query));
+            logIds("temporal filtering", temporalFilterIds);
+            if (temporalFilterIds.isEmpty())
+                return temporalFilterIds;
+        }
+
+        java.util.List<String> offeringIds = selectMatchingIds(query);
+        logIds("semantic matching", offeringIds);
+        return merge(offeringIds, spatialFilterIds, temporalFilterIds);
+    }
+
+    private java.util.List<String> selectMatchingIds(OfferingQuery query) {
+        OfferingPrefilter prefilter = this.prefilter;
+        if (prefilter == null)
+            return selectIds(QueryFactory.findMatchingOfferings(query));
+        java.util.List<String> candidateIds = prefilter.candidateIds(query);
+        logIds("in-memory prefilter", candidateIds);
+        java.util.List<String> offeringIds = new ArrayList<>();
+        for (java.util.List<String> candidates : ListUtils.partition(candidateIds, CANDIDATES_PER_QUERY)) {
+            offeringIds.addAll(selectIds(QueryFactory.semanticMatchingOfferings(query, candidates)));
+        }
+        return offeringIds;
+    }
+
+    /**
+     * Same matching as matchingOfferingIds, with all queries sent through the SPARQL protocol client.
+     * The spatial, temporal and semantic queries run concurrently once the offering query is loaded.
+     */
+    public Future<List<String>> matchingOfferingIdsAsync(OfferingQueryId queryId, ExecutionContext ec) {
+        SparqlHttpClient client = rdfServer.getSparqlClient();
+        if (client == null || inMemoryMatching != null)
+            return ExchangeSemanticRepo.super.matchingOfferingIdsAsync(queryId, ec);
+        List<String> cached = matchingCache.get(queryId.value());
+        if (cached != null)
+            return Future.successful(cached);
+        long generation = matchingCache.generation();
+        AtomicBoolean complete = new AtomicBoolean(true);
+
+        Option<OfferingQuery> known = prefilter != null ? prefilter.offeringQuery(queryId) : Option.empty();
+        CompletableFuture<Option<OfferingQuery>> loaded;
+        if (known.isDefined()) {
+            loaded = CompletableFuture.completedFuture(known);
+        } else {
+            BindingMap bindings = new BindingMap().withLiteral("id", queryId.value());
+            loaded = client.construct(QueryFactory.create(BIGIOT.OfferingQuery, bindings)).thenApply(m -> {
+                m.setNsPrefixes(PREFIXES.getPrefixSet());
+                return rdfSerializer.findOfferingQuery(queryId.value(), m);
+            });
+        }
+        CompletableFuture<java.util.List<String>> matched = loaded
+                .thenCompose(query -> {
+                    if (query.isEmpty())
+                        return CompletableFuture.completedFuture(new ArrayList<String>());
+
+                    CompletableFuture<java.util.List<String>> spatial = hasSpatialFilter(query.get())
+                            ? selectIdsAsync(client, QueryFactory.spatialFilterOfferings(query.get())).exceptionally(e -> {
+                                logger.error("spatial matching offering error " + e);
+                                complete.set(false);
+                                return null;
+                            })
+                            : CompletableFuture.completedFuture(null);
+                    CompletableFuture<java.util.List<String>> temporal = hasTemporalFilter(query.get())
+                            ? selectIdsAsync(client, QueryFactory.temporalFilterOfferings(query.get()))
+                            : CompletableFuture.completedFuture(null);
+                    CompletableFuture<java.util.List<String>> semantic = selectMatchingIdsAsync(client, query.get());
+
+                    return CompletableFuture.allOf(spatial, temporal, semantic)
+                            .thenApply(v -> merge(semantic.join(), spatial.join(), temporal.join()));
+                });
+        return FutureConverters.toScala(matched
+                .thenApply(ids -> {
+                    logIds("matching", ids);
+                    List<String> offeringIds = JavaConverters.asScalaBuffer(ids).toList();
+                    if (complete.get())
+                        matchingCache.put(queryId.value(), offeringIds, generation);
+                    return offeringIds;
+                })
+                .exceptionally(e -> {
+                    logger.error("matching offering error " + e);
+                    return JavaConverters.asScalaBuffer(new ArrayList<String>()).toList();
+                }));
+    }
+
+    private CompletableFuture<java.util.List<String>> selectMatchingIdsAsync(SparqlHttpClient client, OfferingQuery query) {
+        OfferingPrefilter prefilter = this.prefilter;
+        if (prefilter == null)
+            return selectIdsAsync(client, QueryFactory.findMatchingOfferings(query));
+        java.util.List<String> candidateIds = prefilter.candidateIds(query);
+        logIds("in-memory prefilter", candidateIds);
+        java.util.List<CompletableFuture<java.util.List<String>>> chunks = new ArrayList<>();
+        for (java.util.List<String> candidates : ListUtils.partition(candidateIds, CANDIDATES_PER_QUERY)) {
+            chunks.add(selectIdsAsync(client, QueryFactory.semanticMatchingOfferings(query, candidates)));
+        }
+        return CompletableFuture.allOf(chunks.toArray(new CompletableFuture[0]))
+                .thenApply(v -> chunks.stream()
+                        .flatMap(chunk -> chunk.join().stream())
+                        .collect(Collectors.toList()));
+    }
+
+    private static CompletableFuture<java.util.List<String>> selectIdsAsync(SparqlHttpClient client, String query) {
+        return client.select(query).thenApply(solutions -> solutions.stream()
+                .map(solution -> solution.getLiteral("id").getString())
+                .collect(Collectors.toList()));
+    }
+
+    private static boolean hasSpatialFilter(OfferingQuery query) {
+        return query.spatialExtent().isDefined() && query.spatialExtent().get().boundary().isDefined();
+    }
+
+    private static boolean hasTemporalFilter(OfferingQuery query) {
+        return query.temporalExtent().isDefined() && query.temporalExtent().get().from().isDefined()
+                && query.temporalExtent().get().to().isDefined();
+    }
+
+    // a null filter was not applied, an empty filter matches nothing
+    private static java.util.List<String> merge(java.util.List<String> offeringIds, java.util.List<String> spatialFilterIds,
+                                                java.util.List<String> temporalFilterIds) {
+        java.util.List<String> merged = offeringIds;
+        if (spatialFilterIds != null) {
+            logger.debug("join spatial and semantic filter");
+            merged = ListUtils.intersection(merged, spatialFilterIds);
+        }
+        if (temporalFilterIds != null) {
+            logger.debug("join temporal and semantic filter");
+            merged = ListUtils.intersection(temporalFilterIds, merged);
+        }
+        return merged;
+    }
+
+    private static void logIds(String step, java.util.List<String> ids) {
+        if (logger.isDebugEnabled())
+            logger.debug("{} result size {} and details:{}", step, ids.size(), String.join(",", ids));
     }
 
     public void offeringCategoryCreated(OfferingCategoryCreated event) {
         if(event.proposed()) {
             Model m = rdfParser.offeringCategoryCreated(event);
-            rdfServer.executeUpdateQuery(m,QueryFactory.getOntologyGraph());
-            RDFUtils.updateAllOfferingCategoriesModel();
-            RDFUtils.updateCategoryModel();
+            RDFUtils.ontologyTriplesAdded(rdfServer.addToOntologyGraph(m));
         }
     }
 
     public void offeringCategoryDeprecated(OfferingCategoryDeprecated ev) {
         String updateQuery = QueryFactory.offeringCategoryDeprecated(ev);
-        rdfServer.executeUpdateQuery(updateQuery);
+        rdfServer.executeOntologyUpdateQuery(updateQuery);
     }
 
     public void offeringCategoryUndeprecated(OfferingCategoryUndeprecated ev) {
         String updateQuery = QueryFactory.offeringCategoryUndeprecated(ev);
-        rdfServer.executeUpdateQuery(updateQuery);
+        rdfServer.executeOntologyUpdateQuery(updateQuery);
     }
 
     public void offeringCategoryNameChanged(OfferingCategoryNameChanged event) {
@@ -255,48 +398,44 @@ public class RDFExchangeRepo implements ExchangeRepoMutations, ExchangeSemanticR
     }
 
     public void offeringCategoryParentChanged(OfferingCategoryParentChanged event) {
-        String updateQuery = QueryFactory.offeringCategoryParentChanged(event);
-        rdfServer.executeUpdateQuery(updateQuery);
-
         Model m = rdfParser.offeringCategoryParentChanged(event);
-        rdfServer.executeUpdateQuery(m);
+        String updateQuery = QueryFactory.deleteAndInsert(QueryFactory.offeringCategoryParentChanged(event), m,
+                QueryFactory.getOntologyGraph());
+        rdfServer.executeOntologyUpdateQuery(updateQuery);
 
-        RDFUtils.updateAllOfferingCategoriesModel();
-        RDFUtils.updateCategoryModel();
+        RDFUtils.categoryParentRemoved(event.uri());
+        RDFUtils.ontologyTriplesAdded(m);
+        matchingCache.invalidateAll();
     }
 
     public void inputTypeAddedToOfferingCategory(InputTypeAddedToOfferingCategory event) {
         Model m = rdfParser.inputTypeAddedToOfferingCategory(event);
-        rdfServer.executeUpdateQuery(m,QueryFactory.getOntologyGraph());
-        RDFUtils.updateAllOfferingCategoriesModel();
-        RDFUtils.updateDataTypeAnnotationModel();
+        RDFUtils.ontologyTriplesAdded(rdfServer.addToOntologyGraph(m));
     }
 
     public void inputTypeDeprecatedForOfferingCategory(InputTypeDeprecatedForOfferingCategory ev) {
         String updateQuery = QueryFactory.inputTypeDeprecatedForOfferingCategory(ev);
-        rdfServer.executeUpdateQuery(updateQuery);
+        rdfServer.executeOntologyUpdateQuery(updateQuery);
     }
 
     public void inputTypeUndeprecatedForOfferingCategory(InputTypeUndeprecatedForOfferingCategory ev) {
         String updateQuery = QueryFactory.inputTypeUndeprecatedForOfferingCategory(ev);
-        rdfServer.executeUpdateQuery(updateQuery);
+        rdfServer.executeOntologyUpdateQuery(updateQuery);
     }
 
     public void outputTypeAddedToOfferingCategory(OutputTypeAddedToOfferingCategory event) {
         Model m = rdfParser.outputTypeAddedToOfferingCategory(event);
-        rdfServer.executeUpdateQuery(m,QueryFactory.getOntologyGraph());
-        RDFUtils.updateAllOfferingCategoriesModel();
-        RDFUtils.updateDataTypeAnnotationModel();
+        RDFUtils.ontologyTriplesAdded(rdfServer.addToOntologyGraph(m));
     }
 
     public void outputTypeDeprecatedForOfferingCategory(OutputTypeDeprecatedForOfferingCategory ev) {
         String updateQuery = QueryFactory.outputTypeDeprecatedForOfferingCategory(ev);
-        rdfServer.executeUpdateQuery(updateQuery);
+        rdfServer.executeOntologyUpdateQuery(updateQuery);
     }
 
     public void outputTypeUndeprecatedForOfferingCategory(OutputTypeUndeprecatedForOfferingCategory ev) {
         String updateQuery = QueryFactory.outputTypeUndeprecatedForOfferingCategory(ev);
-        rdfServer.executeUpdateQuery(updateQuery);
+        rdfServer.executeOntologyUpdateQuery(updateQuery);
     }
 
     public void organizationCreated(OrganizationCreated event) {
@@ -317,6 +456,7 @@ public class RDFExchangeRepo implements ExchangeRepoMutations, ExchangeSemanticR
     public void providerDeleted(ProviderDeleted ev) {
         String updateQuery = QueryFactory.providerDeleted(ev);
         rdfServer.executeUpdateQuery(updateQuery);
+        matchingCache.invalidateAll();
     }
 
     public void providerNameChanged(ProviderNameChanged ev) {
@@ -327,11 +467,13 @@ public class RDFExchangeRepo implements ExchangeRepoMutations, ExchangeSemanticR
     public void offeringCreated(OfferingCreated event) {
         Model m = rdfParser.offeringCreated(event);
         rdfServer.executeUpdateQuery(m);
+        matchingCache.invalidateAll();
     }
 
     public void offeringDeleted(OfferingDeleted event) {
         String updateQuery = QueryFactory.offeringDeleted(event);
         rdfServer.executeUpdateQuery(updateQuery);
+        matchingCache.invalidateOffering(event.id().value());
     }
 
     public void offeringNameChanged(OfferingNameChanged ev) {
@@ -340,11 +482,10 @@ public class RDFExchangeRepo implements ExchangeRepoMutations, ExchangeSemanticR
     }
 
     public void offeringCategoryChanged(OfferingCategoryChanged ev) {
-        String updateQuery = QueryFactory.offeringCategoryChanged(ev);
-        rdfServer.executeUpdateQuery(updateQuery);
-
         Model dataModel = rdfParser.offeringCategoryChanged(ev);
-        rdfServer.executeUpdateQuery(dataModel);
+        String updateQuery = QueryFactory.deleteAndInsert(QueryFactory.offeringCategoryChanged(ev), dataModel);
+        rdfServer.executeUpdateQuery(updateQuery);
+        matchingCache.invalidateAll();
     }
 
     public void offeringAccessWhiteListChanged(OfferingAccessWhiteListChanged ev) {
@@ -352,48 +493,48 @@ public class RDFExchangeRepo implements ExchangeRepoMutations, ExchangeSemanticR
     }
 
     public void offeringEndpointsChanged(OfferingEndpointsChanged ev) {
-        String updateQuery = QueryFactory.offeringEndpointsDeleted(ev);
-        rdfServer.executeUpdateQuery(updateQuery);
-
         Model endpointModel = rdfParser.offeringEndpointsChanged(ev);
-        rdfServer.executeUpdateQuery(endpointModel);
+        String updateQuery = QueryFactory.deleteAndInsert(QueryFactory.offeringEndpointsDeleted(ev), endpointModel);
+        rdfServer.executeUpdateQuery(updateQuery);
     }
 
     public void offeringInputDataChanged(OfferingInputsChanged ev) {
-        String updateQuery = QueryFactory.offeringInputDataFieldsDeleted(ev);
-        rdfServer.executeUpdateQuery(updateQuery);
-
         Model dataModel = rdfParser.offeringInputDataFieldsChanged(ev);
-        rdfServer.executeUpdateQuery(dataModel);
+        String updateQuery = QueryFactory.deleteAndInsert(QueryFactory.offeringInputDataFieldsDeleted(ev), dataModel);
+        rdfServer.executeUpdateQuery(updateQuery);
+        matchingCache.invalidateAll();
     }
 
     public void offeringOutputDataChanged(OfferingOutputsChanged ev) {
-        String updateQuery = QueryFactory.offeringOutputDataFieldsDeleted(ev);
-        rdfServer.executeUpdateQuery(updateQuery);
-
         Model dataModel = rdfParser.offeringOutputDataFieldsChanged(ev);
-        rdfServer.executeUpdateQuery(dataModel);
+        String updateQuery = QueryFactory.deleteAndInsert(QueryFactory.offeringOutputDataFieldsDeleted(ev), dataModel);
+        rdfServer.executeUpdateQuery(updateQuery);
+        matchingCache.invalidateAll();
     }
 
     public void offeringSpatialExtentChanged(OfferingSpatialExtentChanged ev) {
         String updateQuery = QueryFactory.offeringSpatialExtentChanged(ev);
         rdfServer.executeUpdateQuery(updateQuery);
+        matchingCache.invalidateAll();
     }
 
     public void offeringTemporalExtentChanged(OfferingTemporalExtentChanged ev) {
         logger.info("update offering temporal extent {}",ev);
         String updateQuery = QueryFactory.offeringTemporalExtentChanged(ev);
         rdfServer.executeUpdateQuery(updateQuery);
+        matchingCache.invalidateAll();
     }
 
     public void offeringLicenseChanged(OfferingLicenseChanged ev) {
         String updateQuery = QueryFactory.offeringLicenseChanged(ev);
         rdfServer.executeUpdateQuery(updateQuery);
+        matchingCache.invalidateAll();
     }
 
     public void offeringPriceChanged(OfferingPriceChanged ev) {
         String updateQuery = QueryFactory.offeringPriceChanged(ev);
         rdfServer.executeUpdateQuery(updateQuery);
+        matchingCache.invalidateAll();
     }
 
     public void offeringExtension1Changed(OfferingExtension1Changed ev) {
@@ -411,11 +552,13 @@ public class RDFExchangeRepo implements ExchangeRepoMutations, ExchangeSemanticR
     public void offeringActivated(OfferingActivated event) {
         String updateQuery = QueryFactory.OfferingActivated(event);
         rdfServer.executeUpdateQuery(updateQuery);
+        matchingCache.invalidateAll();
     }
 
     public void offeringDeactivated(OfferingDeactivated event) {
         String updateQuery = QueryFactory.OfferingDeactivated(event);
         rdfServer.executeUpdateQuery(updateQuery);
+        matchingCache.invalidateOffering(event.id().value());
     }
 
     public void consumerCreated(ConsumerCreated event) {
@@ -426,6 +569,7 @@ public class RDFExchangeRepo implements ExchangeRepoMutations, ExchangeSemanticR
     public void consumerDeleted(ConsumerDeleted event) {
         String updateQuery = QueryFactory.consumerDeleted(event);
         rdfServer.executeUpdateQuery(updateQuery);
+        matchingCache.invalidateAll();
     }
 
     public void consumerNameChanged(ConsumerNameChanged ev) {
@@ -436,11 +580,13 @@ public class RDFExchangeRepo implements ExchangeRepoMutations, ExchangeSemanticR
     public void offeringQueryCreated(OfferingQueryCreated event) {
         Model m = rdfParser.offeringQueryCreated(event);
         rdfServer.executeUpdateQuery(m);
+        matchingCache.invalidateQuery(event.id().value());
     }
 
     public void offeringQueryDeleted(OfferingQueryDeleted event) {
         String updateQuery = QueryFactory.offeringQueryDeleted(event);
         rdfServer.executeUpdateQuery(updateQuery);
+        matchingCache.invalidateQuery(event.id().value());
     }
 
     public void offeringQueryNameChanged(OfferingQueryNameChanged ev) {
@@ -451,43 +597,46 @@ public class RDFExchangeRepo implements ExchangeRepoMutations, ExchangeSemanticR
     public void offeringQueryCategoryChanged(OfferingQueryCategoryChanged ev) {
         String updateQuery = QueryFactory.offeringQueryCategoryChanged(ev);
         rdfServer.executeUpdateQuery(updateQuery);
+        matchingCache.invalidateQuery(ev.id().value());
     }
 
     public void offeringQueryInputDataChanged(OfferingQueryInputsChanged ev) {
-        String updateQuery = QueryFactory.offeringQueryInputDataFieldsDeleted(ev);
-        rdfServer.executeUpdateQuery(updateQuery);
-
         Model dataModel = rdfParser.offeringQueryInputDataFieldsChanged(ev);
-        rdfServer.executeUpdateQuery(dataModel);
+        String updateQuery = QueryFactory.deleteAndInsert(QueryFactory.offeringQueryInputDataFieldsDeleted(ev), dataModel);
+        rdfServer.executeUpdateQuery(updateQuery);
+        matchingCache.invalidateQuery(ev.id().value());
     }
 
     public void offeringQueryOutputDataChanged(OfferingQueryOutputsChanged ev) {
-        String updateQuery = QueryFactory.offeringQueryOutputDataFieldsDeleted(ev);
-        rdfServer.executeUpdateQuery(updateQuery);
-
         Model dataModel = rdfParser.offeringQueryOutputDataFieldsChanged(ev);
-        rdfServer.executeUpdateQuery(dataModel);
+        String updateQuery = QueryFactory.deleteAndInsert(QueryFactory.offeringQueryOutputDataFieldsDeleted(ev), dataModel);
+        rdfServer.executeUpdateQuery(updateQuery);
+        matchingCache.invalidateQuery(ev.id().value());
     }
 
     public void offeringQuerySpatialExtentChanged(OfferingQuerySpatialExtentChanged ev) {
         String updateQuery = QueryFactory.offeringQuerySpatialExtentChanged(ev);
         rdfServer.executeUpdateQuery(updateQuery);
+        matchingCache.invalidateQuery(ev.id().value());
     }
 
     public void offeringQueryTemporalExtentChanged(OfferingQueryTemporalExtentChanged ev) {
         logger.info("update offering query temporal extent {}",ev);
         String updateQuery = QueryFactory.offeringQueryTemporalExtentChanged(ev);
         rdfServer.executeUpdateQuery(updateQuery);
+        matchingCache.invalidateQuery(ev.id().value());
     }
 
     public void offeringQueryLicenseChanged(OfferingQueryLicenseChanged ev) {
         String updateQuery = QueryFactory.offeringQueryLicenseChanged(ev);
         rdfServer.executeUpdateQuery(updateQuery);
+        matchingCache.invalidateQuery(ev.id().value());
     }
 
     public void offeringQueryPriceChanged(OfferingQueryPriceChanged ev) {
         String updateQuery = QueryFactory.offeringQueryPriceChanged(ev);
         rdfServer.executeUpdateQuery(updateQuery);
+        matchingCache.invalidateQuery(ev.id().value());
     }
 
     public void subscriptionCreated(SubscriptionCreated event) {
@@ -503,6 +652,7 @@ public class RDFExchangeRepo implements ExchangeRepoMutations, ExchangeSemanticR
     public void offeringGraphDeleted(){
         String deleteGraphQuery = QueryFactory.deleteGraph(QueryFactory.getOfferingGraph());
         rdfServer.executeUpdateQuery(deleteGraphQuery);
+        matchingCache.invalidateAll();
     }
 
     public boolean isOfferingConsistent(OfferingCreated ev) {
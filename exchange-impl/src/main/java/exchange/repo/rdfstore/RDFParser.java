@@ -24,10 +24,8 @@ import exchange.model.vocabs.BIGIOT;
 import exchange.model.vocabs.PREFIXES;
 import exchange.model.vocabs.SCHEMA;
 import org.apache.jena.datatypes.xsd.XSDDatatype;
-import org.apache.jena.ontology.Individual;
-import org.apache.jena.ontology.OntClass;
-import org.apache.jena.ontology.OntModel;
-import org.apache.jena.ontology.OntModelSpec;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
 import org.apache.jena.rdf.model.*;
 import org.apache.jena.reasoner.Reasoner;
 import org.apache.jena.reasoner.rulesys.GenericRuleReasoner;
@@ -43,220 +41,113 @@ import static exchange.api.extent.BoundingBox;
 
 public class RDFParser {
 
-    String SCHEMA_PREFIX = PREFIXES.SCHEMA_NS;
-    String BIGIOT_PREFIX = PREFIXES.BIGIOT_CORE_NS;
-    String BASE_PREFIX = PREFIXES.BIGIOT_BASE_NS;
-
     final static Logger logger = LoggerFactory.getLogger(RDFParser.class);
 
     public Model offeringCreated(OfferingCreated event) {
 
         try {
-            OntModel model = ModelFactory.createOntologyModel(OntModelSpec.OWL_DL_MEM);
-            model.setNsPrefixes(PREFIXES.getPrefixSet());
+            logger.debug("Offering is creating {}",event);
             Model allOfferingCategoryModel = RDFUtils.getAllOfferingCategoryModel();
-            boolean isUpdateCategoryTree = false;
-
-            logger.info("Offering is creating {}",event);
-            //create Offering
-            OntClass offeringClass = model.createClass(BIGIOT_PREFIX + "Offering");
-            Individual offeringIdv = model.createIndividual(BASE_PREFIX + event.id().value(), offeringClass);
-            offeringIdv.addLiteral(BIGIOT.offeringId, event.id().value());
-
-            logger.info("link offering to category");
-            //link offering to category
-            offeringIdv.addProperty(SCHEMA.category, model.createResource(model.expandPrefix(event.rdfUri())));
-            if(!allOfferingCategoryModel.containsResource(ResourceFactory.createResource(model.expandPrefix(event.rdfUri())))){
-                logger.debug("Offering category {} not found",model.expandPrefix(event.rdfUri()));
+            String categoryUri = TripleEmitter.expand(event.rdfUri());
+            if(!allOfferingCategoryModel.containsResource(ResourceFactory.createResource(categoryUri))){
+                logger.debug("Offering category {} not found",categoryUri);
                 return null;
             }
 
-            logger.info("link offering to status");
-            offeringIdv.addLiteral(BIGIOT.isActivated, event.activation().status());
+            Model model = ModelFactory.createDefaultModel();
+            TripleEmitter out = TripleEmitter.into(model);
+
+            //create Offering
+            String offeringUri = PREFIXES.BIGIOT_BASE_NS + event.id().value();
+            Node offering = TripleEmitter.uri(offeringUri);
+            out.type(offering, BIGIOT.Offering);
+            out.literal(offering, BIGIOT.offeringId, event.id().value());
 
-            logger.info("link offering to expirationTime");
-            offeringIdv.addLiteral(BIGIOT.expirationTime, model.createTypedLiteral(event.activation().expirationTime(), XSDDatatype.XSDlong));
+            //link offering to category
+            out.add(offering, SCHEMA.category, TripleEmitter.uri(categoryUri));
+            out.literal(offering, BIGIOT.isActivated, event.activation().status());
+            out.literal(offering, BIGIOT.expirationTime, event.activation().expirationTime(), XSDDatatype.XSDlong);
 
             //add name to offering
-            offeringIdv.addLiteral(SCHEMA.name, event.name());
+            out.literal(offering, SCHEMA.name, event.name());
 
             //link offering to provider
-            OntClass providerClass = model.createClass(BIGIOT_PREFIX + "Provider");
-            Individual providerIns = model.createIndividual(BASE_PREFIX + event.providerId().value(), providerClass);
-            offeringIdv.addProperty(BIGIOT.isProvidedBy, providerIns);
-            providerIns.addProperty(BIGIOT.offering, offeringIdv);
-
-            logger.info("Parse endpoint");
-            if (!event.endpoints().isEmpty() && event.endpoints().size() > 0) {
-                //create Endpoint
-                OntClass endpointClass = model.createClass(BIGIOT_PREFIX + "Endpoint");
-                Iterator<Endpoint> iter = event.endpoints().iterator();
-                while (iter.hasNext()) {
-                    Endpoint endpoint = iter.next();
-                    Individual endpointIns = model.createIndividual(offeringIdv.getURI() + "Endpoint", endpointClass);
-                    //set url property for endpoint
-                    endpointIns.addLiteral(SCHEMA.url, endpoint.uri());
-                    //                System.out.println(endpoint.copy$default$3().toString());
-                    endpointIns.addProperty(BIGIOT.accessInterfaceType,
-                            model.createResource(BIGIOT.getAccessInterfaceType(endpoint.accessInterfaceType().toString())));
-                    endpointIns.addProperty(BIGIOT.endpointType,
-                            model.createResource(BIGIOT.getEndpointType(endpoint.endpointType().toString())));
-
-                    //link offering to endpoint
-                    offeringIdv.addProperty(BIGIOT.endpoint, endpointIns);
-                }
-            }
+            Node provider = TripleEmitter.uri(PREFIXES.BIGIOT_BASE_NS + event.providerId().value());
+            out.type(provider, BIGIOT.Provider);
+            out.add(offering, BIGIOT.isProvidedBy, provider);
+            out.add(provider, BIGIOT.offering, offering);
 
-            logger.info("Parse license");
-            //create License
-            OntClass licenseClass = model.createClass(BIGIOT_PREFIX + "License");
-            Individual openLicenseIns = model.createIndividual(offeringIdv.getURI() + "License", licenseClass);
-            openLicenseIns.addProperty(BIGIOT.licenseType, model.createResource(BIGIOT.getLicenseType(event.license().toString())));
+            endpoints(out, offering, offeringUri, event.endpoints());
 
-            //link license to offering
-            offeringIdv.addProperty(SCHEMA.license, openLicenseIns);
+            //create License
+            Node license = TripleEmitter.uri(offeringUri + "License");
+            out.type(license, BIGIOT.License);
+            out.add(license, BIGIOT.licenseType, TripleEmitter.uri(BIGIOT.getLicenseType(event.license().toString())));
+            out.add(offering, SCHEMA.license, license);
 
-            logger.info("Parse price");
             //create Price
-            OntClass priceClass = model.createClass(BIGIOT_PREFIX + "Price");
-            Individual priceIns = model.createIndividual(offeringIdv.getURI() + "Price", priceClass);
+            Node price = TripleEmitter.uri(offeringUri + "Price");
+            out.type(price, BIGIOT.Price);
             if (event.price().money().isDefined()) {
-                priceIns.addLiteral(SCHEMA.priceCurrency, event.price().money().get().currency().value());
+                out.literal(price, SCHEMA.priceCurrency, event.price().money().get().currency().value());
                 double amount = event.price().money().get().amount().doubleValue();
-                priceIns.addLiteral(SCHEMA.price, model.createTypedLiteral(amount, XSDDatatype.XSDdouble));
+                out.literal(price, SCHEMA.price, amount, XSDDatatype.XSDdouble);
             }
-            //link accounting model to price
-            priceIns.addProperty(model.createDatatypeProperty(BIGIOT_PREFIX + "pricingModel"), model.createResource(BIGIOT.getPriceModel(event.price().pricingModel().toString())));
-            //link price to offering
-            offeringIdv.addProperty(SCHEMA.priceSpecification, priceIns);
+            out.add(price, BIGIOT.pricingModel, TripleEmitter.uri(BIGIOT.getPriceModel(event.price().pricingModel().toString())));
+            out.add(offering, SCHEMA.priceSpecification, price);
 
-            logger.info("Parse spatial extent");
             //create region
             if (event.spatialExtent().isDefined()) {
-                logger.info("Parse spatial extent {}",event.spatialExtent().isDefined());
-                OntClass regionClass = model.createClass(SCHEMA_PREFIX + "Region");
-                Individual regionIns = model.createIndividual(offeringIdv.getURI() + "Region", regionClass);
+                Node region = TripleEmitter.uri(offeringUri + "Region");
+                out.type(region, BIGIOT.Region);
                 if(event.spatialExtent().get().boundary().isDefined()) {
                     BoundingBox boundingBox = event.spatialExtent().get().boundary().get();
-                    regionIns.addProperty(BIGIOT.GEOMETRY,model.createTypedLiteral("BOX("+boundingBox.l1().lng()+" "+ boundingBox.l1().lat() + ","
-                            + boundingBox.l2().lng()+" "+ boundingBox.l2().lat()+ ")","http://www.openlinksw.com/schemas/virtrdf#Geometry"));
-                    regionIns.addLiteral(BIGIOT.LOWER_BOUND_LATITUDE,model.createTypedLiteral(boundingBox.l1().lat(),XSDDatatype.XSDdouble));
-                    regionIns.addLiteral(BIGIOT.LOWER_BOUND_LONGITUDE,model.createTypedLiteral(boundingBox.l1().lng(),XSDDatatype.XSDdouble));
-                    regionIns.addLiteral(BIGIOT.UPPER_BOUND_LATITUDE,model.createTypedLiteral(boundingBox.l2().lat(),XSDDatatype.XSDdouble));
-                    regionIns.addLiteral(BIGIOT.UPPER_BOUND_LONGITUDE,model.createTypedLiteral(boundingBox.l2().lng(),XSDDatatype.XSDdouble));
+                    out.literal(region, BIGIOT.GEOMETRY, "BOX("+boundingBox.l1().lng()+" "+ boundingBox.l1().lat() + ","
+                            + boundingBox.l2().lng()+" "+ boundingBox.l2().lat()+ ")","http://www.openlinksw.com/schemas/virtrdf#Geometry");
+                    boundingBox(out, region, boundingBox);
                 }
-                regionIns.addLabel(model.createTypedLiteral(event.spatialExtent().get().city()));
-                //link region to offering
-                offeringIdv.addProperty(SCHEMA.spatialCoverage, regionIns);
+                out.label(region, event.spatialExtent().get().city());
+                out.add(offering, SCHEMA.spatialCoverage, region);
             }
 
-
             // TODO handle temporalExtent
             if (event.temporalExtent().isDefined()) {
                 if (event.temporalExtent().get().from().isDefined())
-                    offeringIdv.addLiteral(SCHEMA.validFrom, model.createTypedLiteral(event.temporalExtent().get().from().get(), XSDDatatype.XSDlong));
+                    out.literal(offering, SCHEMA.validFrom, event.temporalExtent().get().from().get(), XSDDatatype.XSDlong);
                 else
-                    offeringIdv.addLiteral(SCHEMA.validFrom, model.createTypedLiteral(0, XSDDatatype.XSDlong));
+                    out.literal(offering, SCHEMA.validFrom, 0, XSDDatatype.XSDlong);
                 if (event.temporalExtent().get().to().isDefined())
-                    offeringIdv.addLiteral(SCHEMA.validThrough, model.createTypedLiteral(event.temporalExtent().get().to().get(), XSDDatatype.XSDlong));
+                    out.literal(offering, SCHEMA.validThrough, event.temporalExtent().get().to().get(), XSDDatatype.XSDlong);
                 else
-                    offeringIdv.addLiteral(SCHEMA.validThrough, model.createTypedLiteral(0, XSDDatatype.XSDlong));
+                    out.literal(offering, SCHEMA.validThrough, 0, XSDDatatype.XSDlong);
             }
             else{
-                offeringIdv.addLiteral(SCHEMA.validFrom, model.createTypedLiteral(0, XSDDatatype.XSDlong));
-                offeringIdv.addLiteral(SCHEMA.validThrough, model.createTypedLiteral(0, XSDDatatype.XSDlong));
+                out.literal(offering, SCHEMA.validFrom, 0, XSDDatatype.XSDlong);
+                out.literal(offering, SCHEMA.validThrough, 0, XSDDatatype.XSDlong);
             }
 
-            logger.info("Parse input data");
-            if (!event.inputs().isEmpty()) {
-                OntClass DataClass = model.createClass(BIGIOT_PREFIX + "Data");
-                scala.collection.Iterator<DataField> iter = event.inputs().iterator();
-                while (iter.hasNext()) {
-                    DataField dataField = iter.next();
-                    Individual inputData = DataClass.createIndividual();
-                    inputData.addLiteral(SCHEMA.name, dataField.name());
-                    inputData.addProperty(BIGIOT.rdfAnnotation, model.createResource(model.expandPrefix(dataField.rdfAnnotation().uri())));
-                    Individual value = model.createIndividual(BIGIOT.DataValue);
-                    if(dataField.value() instanceof TextType)
-                        value.addProperty(BIGIOT.valueType,SCHEMA.TEXT);
-                    else if(dataField.value() instanceof NumberType)
-                        value.addProperty(BIGIOT.valueType,SCHEMA.NUMBER);
-                    else if(dataField.value() instanceof IntegerType )
-                        value.addProperty(BIGIOT.valueType,SCHEMA.INTEGER);
-                    else if(dataField.value() instanceof DateTimeType)
-                        value.addProperty(BIGIOT.valueType,SCHEMA.DATETIME);
-                    else if(dataField.value() instanceof BooleanType)
-                        value.addProperty(BIGIOT.valueType,SCHEMA.BOOLEAN);
-                    else if(dataField.value() instanceof ObjectType) {
-                        value.addProperty(BIGIOT.valueType, SCHEMA.OBJECT);
-                        inputData.addProperty(RDF.type,BIGIOT.OBJECTSCHEMA);
-                    }
-
-                    inputData.addProperty(BIGIOT.value,value);
-
-                    Model dataModel = dataTypeAddedToOfferingCategory(event.rdfUri(),dataField.rdfAnnotation().uri(),allOfferingCategoryModel);
-                    if(dataModel!=null) {
-//                        model.add(dataModel);
-                        RDFUtils.getRdfServer().executeUpdateQuery(dataModel,QueryFactory.getOntologyGraph());
-                        isUpdateCategoryTree = true;
-                    }
-
-                    //link offering to input data
-                    offeringIdv.addProperty(BIGIOT.hasInput, inputData);
-                    offeringIdv = addFlattenMember(offeringIdv,BIGIOT.hasFlattenedInput,dataField);
-                }
+            scala.collection.Iterator<DataField> inputs = event.inputs().iterator();
+            while (inputs.hasNext()) {
+                DataField dataField = inputs.next();
+                addProposedDataType(event.rdfUri(), dataField, allOfferingCategoryModel);
+                dataField(out, offering, BIGIOT.hasInput, dataField);
+                flattenMember(out, offering, BIGIOT.hasFlattenedInput, dataField);
             }
 
-            logger.info("Parse output data");
-            //add Output Data
-            if (!event.outputs().isEmpty()) {
-                OntClass DataClass = model.createClass(BIGIOT_PREFIX + "Data");
-                scala.collection.Iterator<DataField> iter = event.outputs().iterator();
-                while (iter.hasNext()) {
-                    DataField dataField = iter.next();
-                    Individual outputData = DataClass.createIndividual();
-                    outputData.addLiteral(SCHEMA.name, dataField.name());
-                    outputData.addProperty(BIGIOT.rdfAnnotation, model.createResource(model.expandPrefix(dataField.rdfAnnotation().uri())));
-
-                    Individual value = model.createIndividual(BIGIOT.DataValue);
-                    if(dataField.value() instanceof TextType)
-                        value.addProperty(BIGIOT.valueType,SCHEMA.TEXT);
-                    else if(dataField.value() instanceof NumberType)
-                        value.addProperty(BIGIOT.valueType,SCHEMA.NUMBER);
-                    else if(dataField.value() instanceof IntegerType )
-                        value.addProperty(BIGIOT.valueType,SCHEMA.INTEGER);
-                    else if(dataField.value() instanceof DateTimeType)
-                        value.addProperty(BIGIOT.valueType,SCHEMA.DATETIME);
-                    else if(dataField.value() instanceof BooleanType)
-                        value.addProperty(BIGIOT.valueType,SCHEMA.BOOLEAN);
-                    else if(dataField.value() instanceof ObjectType) {
-                        value.addProperty(BIGIOT.valueType, SCHEMA.OBJECT);
-                        outputData.addProperty(RDF.type,BIGIOT.OBJECTSCHEMA);
-                    }
-
-                    outputData.addProperty(BIGIOT.value,value);
-
-                    Model dataModel = dataTypeAddedToOfferingCategory(event.rdfUri(),dataField.rdfAnnotation().uri(),allOfferingCategoryModel);
-                    if(dataModel!=null) {
-                        RDFUtils.getRdfServer().executeUpdateQuery(dataModel, QueryFactory.getOntologyGraph());
-                        isUpdateCategoryTree = true;
-                    }
-                    //link offering to input data
-                    offeringIdv.addProperty(BIGIOT.hasOutput, outputData);
-                    offeringIdv = addFlattenMember(offeringIdv,BIGIOT.hasFlattenedOutput,dataField);
-                }
+            scala.collection.Iterator<DataField> outputs = event.outputs().iterator();
+            while (outputs.hasNext()) {
+                DataField dataField = outputs.next();
+                addProposedDataType(event.rdfUri(), dataField, allOfferingCategoryModel);
+                dataField(out, offering, BIGIOT.hasOutput, dataField);
+                flattenMember(out, offering, BIGIOT.hasFlattenedOutput, dataField);
             }
 
             //add accessWhitelist organisation
-            if (!event.accessWhiteList().isEmpty()) {
-                scala.collection.Iterator<String> iter = event.accessWhiteList().iterator();
-                while (iter.hasNext()) {
-                    String orgId = iter.next();
-                    offeringIdv.addProperty(BIGIOT.isAccessedBy, model.createResource(BASE_PREFIX + orgId));
-                }
+            scala.collection.Iterator<String> orgs = event.accessWhiteList().iterator();
+            while (orgs.hasNext()) {
+                out.add(offering, BIGIOT.isAccessedBy, TripleEmitter.uri(PREFIXES.BIGIOT_BASE_NS + orgs.next()));
             }
 
-            logger.info("infer offering category");
             //infer offering category
             List<Rule> rules = Rule.parseRules(BIGIOT.OFFERING_SUB_CATEGORY_RULES);
             rules.add(Rule.parseRule(BIGIOT.OFFERING_FREE_PRICE_RULES));
@@ -264,11 +155,6 @@ public class RDFParser {
             Reasoner engine = new GenericRuleReasoner(rules);
             InfModel inf = ModelFactory.createInfModel(engine, model);
 
-            //trigger update category
-            if(isUpdateCategoryTree){
-                RDFUtils.updateAllOfferingCategoriesModel();
-            }
-
             return inf;
         }catch (Exception e){
             logger.error("Can not create offering {} ",e.toString());
@@ -276,196 +162,182 @@ public class RDFParser {
         return null;
     }
 
-    private Individual addFlattenMember(Individual offering, Property flattenProperty, DataField dataField){
+    private void endpoints(TripleEmitter out, Node offering, String offeringUri, scala.collection.immutable.List<Endpoint> endpoints) {
+        Iterator<Endpoint> iter = endpoints.iterator();
+        while (iter.hasNext()) {
+            Endpoint endpoint = iter.next();
+            Node endpointNode = TripleEmitter.uri(offeringUri + "Endpoint");
+            out.type(endpointNode, BIGIOT.Endpoint);
+            out.literal(endpointNode, SCHEMA.url, endpoint.uri());
+            out.add(endpointNode, BIGIOT.accessInterfaceType,
+                    TripleEmitter.uri(BIGIOT.getAccessInterfaceType(endpoint.accessInterfaceType().toString())));
+            out.add(endpointNode, BIGIOT.endpointType,
+                    TripleEmitter.uri(BIGIOT.getEndpointType(endpoint.endpointType().toString())));
+            //link offering to endpoint
+            out.add(offering, BIGIOT.endpoint, endpointNode);
+        }
+    }
+
+    private void boundingBox(TripleEmitter out, Node region, BoundingBox boundingBox) {
+        out.literal(region, BIGIOT.LOWER_BOUND_LATITUDE, boundingBox.l1().lat(), XSDDatatype.XSDdouble);
+        out.literal(region, BIGIOT.LOWER_BOUND_LONGITUDE, boundingBox.l1().lng(), XSDDatatype.XSDdouble);
+        out.literal(region, BIGIOT.UPPER_BOUND_LATITUDE, boundingBox.l2().lat(), XSDDatatype.XSDdouble);
+        out.literal(region, BIGIOT.UPPER_BOUND_LONGITUDE, boundingBox.l2().lng(), XSDDatatype.XSDdouble);
+    }
+
+    private void dataField(TripleEmitter out, Node owner, Property link, DataField dataField) {
+        Node data = TripleEmitter.blank();
+        out.type(data, BIGIOT.DataField);
+        out.literal(data, SCHEMA.name, dataField.name());
+        out.add(data, BIGIOT.rdfAnnotation, TripleEmitter.uri(TripleEmitter.expand(dataField.rdfAnnotation().uri())));
+
+        Node value = TripleEmitter.blank();
+        out.type(value, BIGIOT.DataValue);
+        if(dataField.value() instanceof TextType)
+            out.add(value, BIGIOT.valueType, SCHEMA.TEXT);
+        else if(dataField.value() instanceof NumberType)
+            out.add(value, BIGIOT.valueType, SCHEMA.NUMBER);
+        else if(dataField.value() instanceof IntegerType)
+            out.add(value, BIGIOT.valueType, SCHEMA.INTEGER);
+        else if(dataField.value() instanceof DateTimeType)
+            out.add(value, BIGIOT.valueType, SCHEMA.DATETIME);
+        else if(dataField.value() instanceof BooleanType)
+            out.add(value, BIGIOT.valueType, SCHEMA.BOOLEAN);
+        else if(dataField.value() instanceof ObjectType) {
+            out.add(value, BIGIOT.valueType, SCHEMA.OBJECT);
+            out.type(data, BIGIOT.OBJECTSCHEMA);
+        }
+
+        out.add(data, BIGIOT.value, value);
+        out.add(owner, link, data);
+    }
+
+    private void flattenMember(TripleEmitter out, Node offering, Property flattenProperty, DataField dataField){
+        out.add(offering, flattenProperty, TripleEmitter.uri(dataField.rdfAnnotation().uri()));
         if(dataField.value() instanceof ObjectType) {
-            offering.addProperty(flattenProperty, ResourceFactory.createResource(dataField.rdfAnnotation().uri()));
             ObjectType ob = (ObjectType) dataField.value();
             scala.collection.Iterator<DataField> iter = ob.members().iterator();
             while (iter.hasNext()) {
-                DataField member = iter.next();
-                offering = addFlattenMember(offering,flattenProperty,member);
+                flattenMember(out, offering, flattenProperty, iter.next());
             }
-        }else
-            offering.addProperty(flattenProperty,ResourceFactory.createResource(dataField.rdfAnnotation().uri()));
-        return offering;
+        }
+    }
+
+    private void addProposedDataType(String categoryUri, DataField dataField, Model allOfferingModel) {
+        Model dataModel = dataTypeAddedToOfferingCategory(categoryUri, dataField.rdfAnnotation().uri(), allOfferingModel);
+        if(dataModel!=null) {
+            RDFUtils.ontologyTriplesAdded(RDFUtils.getRdfServer().addToOntologyGraph(dataModel));
+        }
     }
 
     public Model providerCreated(ProviderCreated event) {
-        OntModel model = ModelFactory.createOntologyModel(OntModelSpec.OWL_DL_MEM);
+        Model model = ModelFactory.createDefaultModel();
+        TripleEmitter out = TripleEmitter.into(model);
 
-        OntClass providerClass = model.createClass(BIGIOT_PREFIX + "Provider");
-        Individual providerIns = model.createIndividual(BASE_PREFIX + event.id().value(),providerClass);
+        Node provider = TripleEmitter.uri(PREFIXES.BIGIOT_BASE_NS + event.id().value());
+        out.type(provider, BIGIOT.Provider);
         //add provider Id
-        providerIns.addLiteral(BIGIOT.providerId, event.id().value());
-        providerIns.addLiteral(SCHEMA.name, event.name());
-        providerIns.addProperty(SCHEMA.sourceOrganization, model.createResource(BASE_PREFIX + event.organizationId().value()));
+        out.literal(provider, BIGIOT.providerId, event.id().value());
+        out.literal(provider, SCHEMA.name, event.name());
+        out.add(provider, SCHEMA.sourceOrganization, TripleEmitter.uri(PREFIXES.BIGIOT_BASE_NS + event.organizationId().value()));
 
         return model;
     }
 
     public Model organizationCreated(OrganizationCreated event) {
-        OntModel model = ModelFactory.createOntologyModel(OntModelSpec.OWL_DL_MEM);
-
-        OntClass orgClass = model.createClass(SCHEMA_PREFIX + "Organization");
-        Individual orgIns = model.createIndividual(BASE_PREFIX + event.id().value(), orgClass);
+        Model model = ModelFactory.createDefaultModel();
+        TripleEmitter out = TripleEmitter.into(model);
 
-
-//        orgIns.addLiteral(model.createProperty(BIGIOT_PREFIX+"organizationId"), model.createLiteral(event.id()));
-        model.add(orgIns, BIGIOT.organizationId,event.id().value());
-        orgIns.addProperty(model.createDatatypeProperty(SCHEMA_PREFIX+"name"),event.name());
+        Node organization = TripleEmitter.uri(PREFIXES.BIGIOT_BASE_NS + event.id().value());
+        out.type(organization, BIGIOT.Organization);
+        out.add(organization, BIGIOT.organizationId, NodeFactory.createLiteral(event.id().value()));
+        out.add(organization, SCHEMA.name, NodeFactory.createLiteral(event.name()));
 
         return model;
     }
 
     public Model consumerCreated(ConsumerCreated event) {
-        OntModel model = ModelFactory.createOntologyModel(OntModelSpec.OWL_DL_MEM);
-
-        OntClass consumerClass = model.createClass(BIGIOT_PREFIX + "Consumer");
-        Individual consInd = consumerClass.createIndividual(BASE_PREFIX + event.id().value());
-        consInd.addLiteral(SCHEMA.name,event.name());
-        consInd.addLiteral(BIGIOT.consumerId, event.id().value());
-        consInd.addProperty(SCHEMA.sourceOrganization, model.createResource(BASE_PREFIX + event.organizationId().value()));
+        Model model = ModelFactory.createDefaultModel();
+        TripleEmitter out = TripleEmitter.into(model);
+
+        Node consumer = TripleEmitter.uri(PREFIXES.BIGIOT_BASE_NS + event.id().value());
+        out.type(consumer, BIGIOT.Consumer);
+        out.literal(consumer, SCHEMA.name, event.name());
+        out.literal(consumer, BIGIOT.consumerId, event.id().value());
+        out.add(consumer, SCHEMA.sourceOrganization, TripleEmitter.uri(PREFIXES.BIGIOT_BASE_NS + event.organizationId().value()));
         return model;
     }
 
     public Model offeringQueryCreated(OfferingQueryCreated event) {
-        logger.info("OfferingQuery is creating {}",event);
+        logger.debug("OfferingQuery is creating {}",event);
         try {
-            OntModel model = ModelFactory.createOntologyModel(OntModelSpec.OWL_DL_MEM);
-            model.setNsPrefixes(PREFIXES.getPrefixSet());
-
-            OntClass offQueryClass = model.createClass(BIGIOT_PREFIX + "OfferingQuery");
-            Individual offQueryInd = offQueryClass.createIndividual(BASE_PREFIX + event.id().value());
-            offQueryInd.addLiteral(BIGIOT.queryId, event.id().value());
-            offQueryInd.addLiteral(SCHEMA.name, event.name());
-            offQueryInd.addProperty(BIGIOT.isRegisteredBy, model.createResource(BASE_PREFIX + event.consumerId().value()));
+            Model model = ModelFactory.createDefaultModel();
+            TripleEmitter out = TripleEmitter.into(model);
+
+            String queryUri = PREFIXES.BIGIOT_BASE_NS + event.id().value();
+            Node query = TripleEmitter.uri(queryUri);
+            out.type(query, BIGIOT.OfferingQuery);
+            out.literal(query, BIGIOT.queryId, event.id().value());
+            out.literal(query, SCHEMA.name, event.name());
+            out.add(query, BIGIOT.isRegisteredBy, TripleEmitter.uri(PREFIXES.BIGIOT_BASE_NS + event.consumerId().value()));
             if (event.rdfUri().isDefined())
-                offQueryInd.addProperty(SCHEMA.category, model.createResource(model.expandPrefix(event.rdfUri().get())));
-
-            //add Input Data
-            if (!event.inputs().isEmpty()) {
-                OntClass DataClass = model.createClass(BIGIOT_PREFIX + "Data");
-                scala.collection.Iterator<DataField> iter = event.inputs().iterator();
-                while (iter.hasNext()) {
-                    DataField dataField = iter.next();
-                    Individual inputData = DataClass.createIndividual();
-                    inputData.addLiteral(SCHEMA.name, dataField.name());
-                    inputData.addProperty(BIGIOT.rdfAnnotation, model.createResource(model.expandPrefix(dataField.rdfAnnotation().uri())));
-
-                    Individual value = model.createIndividual(BIGIOT.DataValue);
-                    if(dataField.value() instanceof TextType)
-                        value.addProperty(BIGIOT.valueType,SCHEMA.TEXT);
-                    else if(dataField.value() instanceof NumberType)
-                        value.addProperty(BIGIOT.valueType,SCHEMA.NUMBER);
-                    else if(dataField.value() instanceof IntegerType )
-                        value.addProperty(BIGIOT.valueType,SCHEMA.INTEGER);
-                    else if(dataField.value() instanceof DateTimeType)
-                        value.addProperty(BIGIOT.valueType,SCHEMA.DATETIME);
-                    else if(dataField.value() instanceof BooleanType)
-                        value.addProperty(BIGIOT.valueType,SCHEMA.BOOLEAN);
-                    else if(dataField.value() instanceof ObjectType) {
-                        value.addProperty(BIGIOT.valueType, SCHEMA.OBJECT);
-                        inputData.addProperty(RDF.type,BIGIOT.OBJECTSCHEMA);
-                    }
-
-                    inputData.addProperty(BIGIOT.value,value);
-                    //link offering to input data
-                    offQueryInd.addProperty(BIGIOT.hasInput, inputData);
-                }
+                out.add(query, SCHEMA.category, TripleEmitter.uri(TripleEmitter.expand(event.rdfUri().get())));
+
+            scala.collection.Iterator<DataField> inputs = event.inputs().iterator();
+            while (inputs.hasNext()) {
+                dataField(out, query, BIGIOT.hasInput, inputs.next());
             }
 
-            //add Output Data
-            if (!event.outputs().isEmpty()) {
-                OntClass DataClass = model.createClass(BIGIOT_PREFIX + "Data");
-                scala.collection.Iterator<DataField> iter = event.outputs().iterator();
-                while (iter.hasNext()) {
-                    DataField dataField = iter.next();
-                    Individual outputData = DataClass.createIndividual();
-                    outputData.addLiteral(SCHEMA.name, dataField.name());
-                    outputData.addProperty(BIGIOT.rdfAnnotation, model.createResource(model.expandPrefix(dataField.rdfAnnotation().uri())));
-
-                    Individual value = model.createIndividual(BIGIOT.DataValue);
-                    if(dataField.value() instanceof TextType)
-                        value.addProperty(BIGIOT.valueType,SCHEMA.TEXT);
-                    else if(dataField.value() instanceof NumberType)
-                        value.addProperty(BIGIOT.valueType,SCHEMA.NUMBER);
-                    else if(dataField.value() instanceof IntegerType )
-                        value.addProperty(BIGIOT.valueType,SCHEMA.INTEGER);
-                    else if(dataField.value() instanceof DateTimeType)
-                        value.addProperty(BIGIOT.valueType,SCHEMA.DATETIME);
-                    else if(dataField.value() instanceof BooleanType)
-                        value.addProperty(BIGIOT.valueType,SCHEMA.BOOLEAN);
-                    else if(dataField.value() instanceof ObjectType) {
-                        value.addProperty(BIGIOT.valueType, SCHEMA.OBJECT);
-                        outputData.addProperty(RDF.type,BIGIOT.OBJECTSCHEMA);
-                    }
-
-                    outputData.addProperty(BIGIOT.value,value);
-                    //link offering to input data
-                    offQueryInd.addProperty(BIGIOT.hasOutput, outputData);
-                }
+            scala.collection.Iterator<DataField> outputs = event.outputs().iterator();
+            while (outputs.hasNext()) {
+                dataField(out, query, BIGIOT.hasOutput, outputs.next());
             }
 
             if (event.license() != null && event.license().toString() != "None") {
-                OntClass licenseClass = model.createClass(BIGIOT_PREFIX + "License");
-                Individual openLicenseIns = model.createIndividual(offQueryInd.getURI() + "License", licenseClass);
-                openLicenseIns.addProperty(BIGIOT.licenseType, model.createResource(BIGIOT.getLicenseType(event.license().toString())));
-
-                //link license to offering
-                offQueryInd.addProperty(SCHEMA.license, openLicenseIns);
+                Node license = TripleEmitter.uri(queryUri + "License");
+                out.type(license, BIGIOT.License);
+                out.add(license, BIGIOT.licenseType, TripleEmitter.uri(BIGIOT.getLicenseType(event.license().toString())));
+                out.add(query, SCHEMA.license, license);
             }
 
             //create region
             if (event.spatialExtent().isDefined() && event.spatialExtent().toString() != "None") {
-                OntClass regionClass = model.createClass(SCHEMA_PREFIX + "Region");
-                Individual regionIns = model.createIndividual(offQueryInd.getURI() + "Region", regionClass);
-                regionIns.addLabel(model.createTypedLiteral(event.spatialExtent().get().city()));
+                Node region = TripleEmitter.uri(queryUri + "Region");
+                out.type(region, BIGIOT.Region);
+                out.label(region, event.spatialExtent().get().city());
                 if(event.spatialExtent().get().boundary().isDefined()) {
-                    BoundingBox boundingBox = event.spatialExtent().get().boundary().get();
-                    regionIns.addLiteral(BIGIOT.LOWER_BOUND_LATITUDE,model.createTypedLiteral(boundingBox.l1().lat(),XSDDatatype.XSDdouble));
-                    regionIns.addLiteral(BIGIOT.LOWER_BOUND_LONGITUDE,model.createTypedLiteral(boundingBox.l1().lng(),XSDDatatype.XSDdouble));
-                    regionIns.addLiteral(BIGIOT.UPPER_BOUND_LATITUDE,model.createTypedLiteral(boundingBox.l2().lat(),XSDDatatype.XSDdouble));
-                    regionIns.addLiteral(BIGIOT.UPPER_BOUND_LONGITUDE,model.createTypedLiteral(boundingBox.l2().lng(),XSDDatatype.XSDdouble));
+                    boundingBox(out, region, event.spatialExtent().get().boundary().get());
                 }
-                //link region to offering
-                offQueryInd.addProperty(SCHEMA.spatialCoverage, regionIns);
+                out.add(query, SCHEMA.spatialCoverage, region);
             }
 
-
             if (event.price().isDefined() && event.price() != null && event.price().toString() != "None") {
                 //create Price
-                OntClass priceClass = model.createClass(BIGIOT_PREFIX + "Price");
-                Individual priceIns = model.createIndividual(offQueryInd.getURI() + "Price", priceClass);
+                Node price = TripleEmitter.uri(queryUri + "Price");
+                out.type(price, BIGIOT.Price);
                 if (event.price().get().money().isDefined()) {
-                    priceIns.addLiteral(SCHEMA.priceCurrency, event.price().get().money().get().currency().value());
+                    out.literal(price, SCHEMA.priceCurrency, event.price().get().money().get().currency().value());
                     double amount = event.price().get().money().get().amount().doubleValue();
-                    priceIns.addLiteral(SCHEMA.price, model.createTypedLiteral(amount, XSDDatatype.XSDdouble));
+                    out.literal(price, SCHEMA.price, amount, XSDDatatype.XSDdouble);
                 }else{
-                    priceIns.addLiteral(SCHEMA.priceCurrency, "EUR");
-                    priceIns.addLiteral(SCHEMA.price, model.createTypedLiteral(0, XSDDatatype.XSDdouble));
+                    out.literal(price, SCHEMA.priceCurrency, "EUR");
+                    out.literal(price, SCHEMA.price, 0, XSDDatatype.XSDdouble);
                 }
-                //link accounting model to price
-                priceIns.addProperty(model.createDatatypeProperty(BIGIOT_PREFIX + "pricingModel"),
-                        model.createResource(BIGIOT.getPriceModel(event.price().get().pricingModel().toString())));
-                //link price to offering
-                offQueryInd.addProperty(SCHEMA.priceSpecification, priceIns);
+                out.add(price, BIGIOT.pricingModel, TripleEmitter.uri(BIGIOT.getPriceModel(event.price().get().pricingModel().toString())));
+                out.add(query, SCHEMA.priceSpecification, price);
             }
 
             // TODO handle temporalExtent
             if (event.temporalExtent().isDefined()) {
                 if (event.temporalExtent().get().from().isDefined())
-                    offQueryInd.addLiteral(SCHEMA.validFrom, model.createTypedLiteral(event.temporalExtent().get().from().get(), XSDDatatype.XSDlong));
+                    out.literal(query, SCHEMA.validFrom, event.temporalExtent().get().from().get(), XSDDatatype.XSDlong);
                 else
-                    offQueryInd.addLiteral(SCHEMA.validFrom, model.createTypedLiteral(0, XSDDatatype.XSDlong));
+                    out.literal(query, SCHEMA.validFrom, 0, XSDDatatype.XSDlong);
                 if (event.temporalExtent().get().to().isDefined())
-                    offQueryInd.addLiteral(SCHEMA.validThrough, model.createTypedLiteral(event.temporalExtent().get().to().get(), XSDDatatype.XSDlong));
+                    out.literal(query, SCHEMA.validThrough, event.temporalExtent().get().to().get(), XSDDatatype.XSDlong);
                 else
-                    offQueryInd.addLiteral(SCHEMA.validThrough, model.createTypedLiteral(0, XSDDatatype.XSDlong));
+                    out.literal(query, SCHEMA.validThrough, 0, XSDDatatype.XSDlong);
             }
-//            else{
-//                offQueryInd.addLiteral(SCHEMA.validFrom, model.createTypedLiteral(0, XSDDatatype.XSDlong));
-//                offQueryInd.addLiteral(SCHEMA.validThrough, model.createTypedLiteral(0, XSDDatatype.XSDlong));
-//            }
 
             return model;
         }catch(Exception e){
@@ -475,340 +347,171 @@ public class RDFParser {
     }
 
     public Model subscriptionCreated(SubscriptionCreated event) {
-        // TODO
-        OntModel model = ModelFactory.createOntologyModel(OntModelSpec.OWL_DL_MEM);
+        Model model = ModelFactory.createDefaultModel();
+        TripleEmitter out = TripleEmitter.into(model);
 
-        OntClass subClass = model.createClass(BIGIOT_PREFIX + "Subscription");
-        Individual subInd = subClass.createIndividual(BASE_PREFIX + event.id().value());
-        subInd.addLiteral(BIGIOT.subscriptionId, event.id().value());
+        Node subscription = TripleEmitter.uri(PREFIXES.BIGIOT_BASE_NS + event.id().value());
+        out.type(subscription, BIGIOT.Subscription);
+        out.literal(subscription, BIGIOT.subscriptionId, event.id().value());
 
-        OntClass offeringClass = model.createClass(BIGIOT_PREFIX + "Offering");
-        Individual offeringIdv = model.createIndividual(BASE_PREFIX + event.subscribableId(),offeringClass);
-        subInd.addProperty(model.createProperty(BIGIOT_PREFIX + "subscribeTo"),offeringIdv);
+        Node offering = TripleEmitter.uri(PREFIXES.BIGIOT_BASE_NS + event.subscribableId());
+        out.type(offering, BIGIOT.Offering);
+        out.add(subscription, BIGIOT.subscribeTo, offering);
 
-        OntClass offQueryClass = model.createClass(BIGIOT_PREFIX + "OfferingQuery");
-        Individual offQueryInd = offQueryClass.createIndividual(BASE_PREFIX + event.subscriberId());
-        subInd.addProperty(model.createProperty(BIGIOT_PREFIX + "subscribedQuery"),offQueryInd);
+        Node query = TripleEmitter.uri(PREFIXES.BIGIOT_BASE_NS + event.subscriberId());
+        out.type(query, BIGIOT.OfferingQuery);
+        out.add(subscription, BIGIOT.subscribedQuery, query);
 
         return model;
     }
 
     public Model offeringEndpointsChanged(OfferingEndpointsChanged ev){
-        OntModel model = ModelFactory.createOntologyModel(OntModelSpec.OWL_DL_MEM);
-        OntClass offeringClass = model.createClass(BIGIOT_PREFIX + "Offering");
-        Individual offeringIdv = model.createIndividual(BASE_PREFIX + ev.id().value(),offeringClass);
-
-        if(!ev.endpoints().isEmpty()) {
-            //create Endpoint
-            OntClass endpointClass = model.createClass(BIGIOT_PREFIX + "Endpoint");
-            Iterator<Endpoint> iter = ev.endpoints().iterator();
-            while (iter.hasNext()) {
-                Endpoint endpoint = iter.next();
-                Individual endpointIns = model.createIndividual(offeringIdv.getURI() + "Endpoint", endpointClass);
-                //set url property for endpoint
-                endpointIns.addLiteral(SCHEMA.url, endpoint.uri());
-                endpointIns.addProperty(BIGIOT.accessInterfaceType,
-                        model.createResource(BIGIOT.getAccessInterfaceType(endpoint.accessInterfaceType().toString())));
-                endpointIns.addProperty(BIGIOT.endpointType,
-                        model.createResource(BIGIOT.getEndpointType(endpoint.endpointType().toString())));
-                //link offering to endpoint
-                offeringIdv.addProperty(BIGIOT.endpoint, endpointIns);
-            }
-        }
+        Model model = ModelFactory.createDefaultModel();
+        TripleEmitter out = TripleEmitter.into(model);
+
+        String offeringUri = PREFIXES.BIGIOT_BASE_NS + ev.id().value();
+        Node offering = TripleEmitter.uri(offeringUri);
+        out.type(offering, BIGIOT.Offering);
+        endpoints(out, offering, offeringUri, ev.endpoints());
         return model;
     }
 
     public Model offeringInputDataFieldsChanged(OfferingInputsChanged ev) {
-        OntModel model = ModelFactory.createOntologyModel(OntModelSpec.OWL_DL_MEM);
-        model.setNsPrefixes(PREFIXES.getPrefixSet());
-        boolean isUpdateCategory = false;
-        OntClass offeringClass = model.createClass(BIGIOT_PREFIX + "Offering");
-        Individual offeringIdv = model.createIndividual(BASE_PREFIX + ev.id().value(),offeringClass);
-
-        if(!ev.inputs().isEmpty()) {
-            Model allOfferingModel = RDFUtils.getAllOfferingCategoryModel();
-            OntClass DataClass = model.createClass(BIGIOT_PREFIX + "Data");
-            scala.collection.Iterator<DataField> iter = ev.inputs().iterator();
-            while (iter.hasNext()) {
-                DataField dataField = iter.next();
-                Model dataModel = dataTypeAddedToOfferingCategory(ev.categoryUri(),dataField.rdfAnnotation().uri(),allOfferingModel);
-                if(dataModel!=null) {
-                    isUpdateCategory = true;
-                    RDFUtils.getRdfServer().executeUpdateQuery(dataModel, QueryFactory.getOntologyGraph());
-//                    model.add(dataModel);
-                }
-                Individual inputData = DataClass.createIndividual();
-                inputData.addLiteral(SCHEMA.name, dataField.name());
-                inputData.addProperty(BIGIOT.rdfAnnotation, model.createResource(model.expandPrefix(dataField.rdfAnnotation().uri())));
-
-                Individual value = model.createIndividual(BIGIOT.DataValue);
-                if(dataField.value() instanceof TextType)
-                    value.addProperty(BIGIOT.valueType,SCHEMA.TEXT);
-                else if(dataField.value() instanceof NumberType)
-                    value.addProperty(BIGIOT.valueType,SCHEMA.NUMBER);
-                else if(dataField.value() instanceof IntegerType )
-                    value.addProperty(BIGIOT.valueType,SCHEMA.INTEGER);
-                else if(dataField.value() instanceof DateTimeType)
-                    value.addProperty(BIGIOT.valueType,SCHEMA.DATETIME);
-                else if(dataField.value() instanceof BooleanType)
-                    value.addProperty(BIGIOT.valueType,SCHEMA.BOOLEAN);
-                else if(dataField.value() instanceof ObjectType) {
-                    value.addProperty(BIGIOT.valueType, SCHEMA.OBJECT);
-                    inputData.addProperty(RDF.type,BIGIOT.OBJECTSCHEMA);
-                }
+        Model model = ModelFactory.createDefaultModel();
+        TripleEmitter out = TripleEmitter.into(model);
 
-                inputData.addProperty(BIGIOT.value,value);
-                //link offering to input data
-                offeringIdv.addProperty(BIGIOT.hasInput, inputData);
-            }
-        }
-        if(isUpdateCategory){
-            RDFUtils.updateAllOfferingCategoriesModel();
-            RDFUtils.updateDataTypeAnnotationModel();
+        Node offering = TripleEmitter.uri(PREFIXES.BIGIOT_BASE_NS + ev.id().value());
+        out.type(offering, BIGIOT.Offering);
+
+        Model allOfferingModel = RDFUtils.getAllOfferingCategoryModel();
+        scala.collection.Iterator<DataField> iter = ev.inputs().iterator();
+        while (iter.hasNext()) {
+            DataField dataField = iter.next();
+            addProposedDataType(ev.categoryUri(), dataField, allOfferingModel);
+            dataField(out, offering, BIGIOT.hasInput, dataField);
         }
         return model;
     }
 
     public Model offeringOutputDataFieldsChanged(OfferingOutputsChanged ev) {
-        OntModel model = ModelFactory.createOntologyModel(OntModelSpec.OWL_DL_MEM);
-        model.setNsPrefixes(PREFIXES.getPrefixSet());
-        boolean isUpdateCategory = false;
-        OntClass offeringClass = model.createClass(BIGIOT_PREFIX + "Offering");
-        Individual offeringIdv = model.createIndividual(BASE_PREFIX + ev.id().value(),offeringClass);
-
-        if(!ev.outputs().isEmpty()) {
-            Model allOfferingModel = RDFUtils.getAllOfferingCategoryModel();
-            OntClass DataClass = model.createClass(BIGIOT_PREFIX + "Data");
-            scala.collection.Iterator<DataField> iter = ev.outputs().iterator();
-            while (iter.hasNext()) {
-                DataField dataField = iter.next();
-                Model dataModel = dataTypeAddedToOfferingCategory(ev.categoryUri(),dataField.rdfAnnotation().uri(),allOfferingModel);
-                if(dataModel!=null) {
-//                    model.add(dataModel);
-                    isUpdateCategory = true;
-                    RDFUtils.getRdfServer().executeUpdateQuery(dataModel, QueryFactory.getOntologyGraph());
-                }
+        Model model = ModelFactory.createDefaultModel();
+        TripleEmitter out = TripleEmitter.into(model);
 
-                Individual outputData = DataClass.createIndividual();
-                outputData.addLiteral(SCHEMA.name, dataField.name());
-                outputData.addProperty(BIGIOT.rdfAnnotation, model.createResource(model.expandPrefix(dataField.rdfAnnotation().uri())));
-
-                Individual value = model.createIndividual(BIGIOT.DataValue);
-                if(dataField.value() instanceof TextType)
-                    value.addProperty(BIGIOT.valueType,SCHEMA.TEXT);
-                else if(dataField.value() instanceof NumberType)
-                    value.addProperty(BIGIOT.valueType,SCHEMA.NUMBER);
-                else if(dataField.value() instanceof IntegerType )
-                    value.addProperty(BIGIOT.valueType,SCHEMA.INTEGER);
-                else if(dataField.value() instanceof DateTimeType)
-                    value.addProperty(BIGIOT.valueType,SCHEMA.DATETIME);
-                else if(dataField.value() instanceof BooleanType)
-                    value.addProperty(BIGIOT.valueType,SCHEMA.BOOLEAN);
-                else if(dataField.value() instanceof ObjectType) {
-                    value.addProperty(BIGIOT.valueType, SCHEMA.OBJECT);
-                    outputData.addProperty(RDF.type,BIGIOT.OBJECTSCHEMA);
-                }
+        Node offering = TripleEmitter.uri(PREFIXES.BIGIOT_BASE_NS + ev.id().value());
+        out.type(offering, BIGIOT.Offering);
 
-                outputData.addProperty(BIGIOT.value,value);
-                //link offering to input data
-                offeringIdv.addProperty(BIGIOT.hasOutput, outputData);
-            }
-        }
-        if(isUpdateCategory){
-            RDFUtils.updateAllOfferingCategoriesModel();
-            RDFUtils.updateDataTypeAnnotationModel();
+        Model allOfferingModel = RDFUtils.getAllOfferingCategoryModel();
+        scala.collection.Iterator<DataField> iter = ev.outputs().iterator();
+        while (iter.hasNext()) {
+            DataField dataField = iter.next();
+            addProposedDataType(ev.categoryUri(), dataField, allOfferingModel);
+            dataField(out, offering, BIGIOT.hasOutput, dataField);
         }
         return model;
     }
 
     public Model offeringQueryInputDataFieldsChanged(OfferingQueryInputsChanged ev) {
-        OntModel model = ModelFactory.createOntologyModel(OntModelSpec.OWL_DL_MEM);
-        model.setNsPrefixes(PREFIXES.getPrefixSet());
-
-        OntClass offeringClass = model.createClass(BIGIOT_PREFIX + "OfferingQuery");
-        Individual offeringIdv = model.createIndividual(BASE_PREFIX + ev.id().value(),offeringClass);
+        Model model = ModelFactory.createDefaultModel();
+        TripleEmitter out = TripleEmitter.into(model);
 
-        if(!ev.inputs().isEmpty()) {
-            //create Endpoint
-            OntClass DataClass = model.createClass(BIGIOT_PREFIX + "Data");
-            scala.collection.Iterator<DataField> iter = ev.inputs().iterator();
-            while (iter.hasNext()) {
-                DataField dataField = iter.next();
-                Individual inputData = DataClass.createIndividual();
-                inputData.addLiteral(SCHEMA.name, dataField.name());
-                inputData.addProperty(BIGIOT.rdfAnnotation, model.createResource(model.expandPrefix(dataField.rdfAnnotation().uri())));
-
-                Individual value = model.createIndividual(BIGIOT.DataValue);
-                if(dataField.value() instanceof TextType)
-                    value.addProperty(BIGIOT.valueType,SCHEMA.TEXT);
-                else if(dataField.value() instanceof NumberType)
-                    value.addProperty(BIGIOT.valueType,SCHEMA.NUMBER);
-                else if(dataField.value() instanceof IntegerType )
-                    value.addProperty(BIGIOT.valueType,SCHEMA.INTEGER);
-                else if(dataField.value() instanceof DateTimeType)
-                    value.addProperty(BIGIOT.valueType,SCHEMA.DATETIME);
-                else if(dataField.value() instanceof BooleanType)
-                    value.addProperty(BIGIOT.valueType,SCHEMA.BOOLEAN);
-                else if(dataField.value() instanceof ObjectType) {
-                    value.addProperty(BIGIOT.valueType, SCHEMA.OBJECT);
-                    inputData.addProperty(RDF.type,BIGIOT.OBJECTSCHEMA);
-                }
+        Node query = TripleEmitter.uri(PREFIXES.BIGIOT_BASE_NS + ev.id().value());
+        out.type(query, BIGIOT.OfferingQuery);
 
-                inputData.addProperty(BIGIOT.value,value);
-                //link offering to input data
-                offeringIdv.addProperty(BIGIOT.hasInput, inputData);
-            }
+        scala.collection.Iterator<DataField> iter = ev.inputs().iterator();
+        while (iter.hasNext()) {
+            dataField(out, query, BIGIOT.hasInput, iter.next());
         }
         return model;
     }
 
     public Model offeringQueryOutputDataFieldsChanged(OfferingQueryOutputsChanged ev) {
-        OntModel model = ModelFactory.createOntologyModel(OntModelSpec.OWL_DL_MEM);
-        model.setNsPrefixes(PREFIXES.getPrefixSet());
+        Model model = ModelFactory.createDefaultModel();
+        TripleEmitter out = TripleEmitter.into(model);
 
-        OntClass offeringClass = model.createClass(BIGIOT_PREFIX + "OfferingQuery");
-        Individual offeringIdv = model.createIndividual(BASE_PREFIX + ev.id().value(),offeringClass);
-
-        if(!ev.outputs().isEmpty()) {
-            //create Endpoint
-            OntClass DataClass = model.createClass(BIGIOT_PREFIX + "Data");
-            scala.collection.Iterator<DataField> iter = ev.outputs().iterator();
-            while (iter.hasNext()) {
-                DataField dataField = iter.next();
-                Individual outputData = DataClass.createIndividual();
-                outputData.addLiteral(SCHEMA.name, dataField.name());
-                outputData.addProperty(BIGIOT.rdfAnnotation, model.createResource(model.expandPrefix(dataField.rdfAnnotation().uri())));
-
-                Individual value = model.createIndividual(BIGIOT.DataValue);
-                if(dataField.value() instanceof TextType)
-                    value.addProperty(BIGIOT.valueType,SCHEMA.TEXT);
-                else if(dataField.value() instanceof NumberType)
-                    value.addProperty(BIGIOT.valueType,SCHEMA.NUMBER);
-                else if(dataField.value() instanceof IntegerType )
-                    value.addProperty(BIGIOT.valueType,SCHEMA.INTEGER);
-                else if(dataField.value() instanceof DateTimeType)
-                    value.addProperty(BIGIOT.valueType,SCHEMA.DATETIME);
-                else if(dataField.value() instanceof BooleanType)
-                    value.addProperty(BIGIOT.valueType,SCHEMA.BOOLEAN);
-                else if(dataField.value() instanceof ObjectType) {
-                    value.addProperty(BIGIOT.valueType, SCHEMA.OBJECT);
-                    outputData.addProperty(RDF.type,BIGIOT.OBJECTSCHEMA);
-                }
+        Node query = TripleEmitter.uri(PREFIXES.BIGIOT_BASE_NS + ev.id().value());
+        out.type(query, BIGIOT.OfferingQuery);
 
-                outputData.addProperty(BIGIOT.value,value);
-                //link offering to input data
-                offeringIdv.addProperty(BIGIOT.hasOutput, outputData);
-            }
+        scala.collection.Iterator<DataField> iter = ev.outputs().iterator();
+        while (iter.hasNext()) {
+            dataField(out, query, BIGIOT.hasOutput, iter.next());
         }
         return model;
     }
 
 
     public Model offeringCategoryChanged(OfferingCategoryChanged ev) {
-        OntModel model = ModelFactory.createOntologyModel(OntModelSpec.OWL_DL_MEM);
-        model.setNsPrefixes(PREFIXES.getPrefixSet());
-        OntClass offeringClass = model.createClass(PREFIXES.BIGIOT_CORE_NS + "Offering");
-        Individual offeringIdv = model.createIndividual(PREFIXES.BIGIOT_BASE_NS + ev.id().value(), offeringClass);
+        Model model = ModelFactory.createDefaultModel();
+        TripleEmitter out = TripleEmitter.into(model);
+
+        Node offering = TripleEmitter.uri(PREFIXES.BIGIOT_BASE_NS + ev.id().value());
+        out.type(offering, BIGIOT.Offering);
 
         //link offering to category
-        offeringIdv.addProperty(SCHEMA.category, model.createResource(model.expandPrefix(ev.rdfUri())));
+        out.add(offering, SCHEMA.category, TripleEmitter.uri(TripleEmitter.expand(ev.rdfUri())));
         model.add(RDFUtils.getCategoryOnlyModel());
 
         List<Rule> rules = Rule.parseRules(BIGIOT.OFFERING_SUB_CATEGORY_RULES);
         Reasoner engine = new GenericRuleReasoner(rules);
         InfModel inf = ModelFactory.createInfModel(engine, model);
 
-        Model entails = ModelFactory.createDefaultModel();
-        entails = inf.difference(RDFServer.domainModel);
-        return entails;
+        return inf.difference(RDFServer.domainModel);
     }
 
     public Model offeringCategoryCreated(OfferingCategoryCreated ev) {
         logger.debug("create new offering category {} ",ev);
-        OntModel model = ModelFactory.createOntologyModel(OntModelSpec.OWL_DL_MEM);
-        model.setNsPrefixes(PREFIXES.getPrefixSet());
-
-        Individual parentOfferingCategoryIdv = model.createIndividual(model.expandPrefix(ev.parent()), BIGIOT.OfferingCategory);
-
-        Individual proposedOfferingCategoryIdv = model.createIndividual(ev.uri(),BIGIOT.OfferingCategory);
-
         Model allOfferingModel = RDFUtils.getAllOfferingCategoryModel();
-        if(allOfferingModel.containsResource(proposedOfferingCategoryIdv)) {
-            logger.debug("Proposed category exists",ev);
+        if(allOfferingModel.containsResource(ResourceFactory.createResource(ev.uri()))) {
+            logger.debug("Proposed category exists {}",ev);
             return null;
         }
 
-        proposedOfferingCategoryIdv.addRDFType(BIGIOT.ProposedOfferingCategory);
+        Model model = ModelFactory.createDefaultModel();
+        TripleEmitter out = TripleEmitter.into(model);
 
-        parentOfferingCategoryIdv.addProperty(model.createProperty(PREFIXES.SKOS_NS + "narrower"),proposedOfferingCategoryIdv);
+        String parentUri = TripleEmitter.expand(ev.parent());
+        Node parent = TripleEmitter.uri(parentUri);
+        out.type(parent, BIGIOT.OfferingCategory);
 
-        proposedOfferingCategoryIdv.addLabel(model.createLiteral(ev.name()));
+        Node proposed = TripleEmitter.uri(ev.uri());
+        out.type(proposed, BIGIOT.OfferingCategory);
+        out.type(proposed, BIGIOT.ProposedOfferingCategory);
+        out.add(parent, BIGIOT.narrower, proposed);
+        out.label(proposed, ev.name());
+        out.literal(proposed, BIGIOT.isDeprecated, false);
 
-        proposedOfferingCategoryIdv.addLiteral(BIGIOT.isDeprecated,false);
-
-
-        NodeIterator iter = allOfferingModel.listObjectsOfProperty(allOfferingModel.getResource(parentOfferingCategoryIdv.getURI()),
-                            BIGIOT.expectedAnnotation);
-        while(iter.hasNext()){
-            RDFNode node = iter.next();
-            model.add(proposedOfferingCategoryIdv,BIGIOT.expectedAnnotation,node);
-        }
+        inheritExpectedAnnotations(out, proposed, parentUri, allOfferingModel);
 
         return model;
     }
 
     public Model offeringCategoryParentChanged(OfferingCategoryParentChanged ev) {
-        OntModel model = ModelFactory.createOntologyModel(OntModelSpec.OWL_DL_MEM);
-        model.setNsPrefixes(PREFIXES.getPrefixSet());
+        Model model = ModelFactory.createDefaultModel();
+        TripleEmitter out = TripleEmitter.into(model);
 
-        Individual parentOfferingCategoryIdv = model.createIndividual(model.expandPrefix(ev.parent()), BIGIOT.OfferingCategory);
+        String parentUri = TripleEmitter.expand(ev.parent());
+        Node parent = TripleEmitter.uri(parentUri);
+        out.type(parent, BIGIOT.OfferingCategory);
 
-        Individual proposedOfferingCategoryIdv = model.createIndividual(ev.uri(),BIGIOT.OfferingCategory);
+        Node category = TripleEmitter.uri(ev.uri());
+        out.type(category, BIGIOT.OfferingCategory);
+        out.add(parent, BIGIOT.narrower, category);
 
-        parentOfferingCategoryIdv.addProperty(model.createProperty(PREFIXES.SKOS_NS + "narrower"),proposedOfferingCategoryIdv);
+        inheritExpectedAnnotations(out, category, parentUri, RDFUtils.getAllOfferingCategoryModel());
 
-        Model allOfferingModel = RDFUtils.getAllOfferingCategoryModel();
+        return model;
+    }
 
-        NodeIterator iter = allOfferingModel.listObjectsOfProperty(allOfferingModel.getResource(parentOfferingCategoryIdv.getURI()),
+    private void inheritExpectedAnnotations(TripleEmitter out, Node category, String parentUri, Model allOfferingModel) {
+        NodeIterator iter = allOfferingModel.listObjectsOfProperty(allOfferingModel.getResource(parentUri),
                 BIGIOT.expectedAnnotation);
         while(iter.hasNext()){
-            RDFNode node = iter.next();
-            model.add(proposedOfferingCategoryIdv,BIGIOT.expectedAnnotation,node);
+            out.add(category, BIGIOT.expectedAnnotation, iter.next());
         }
-
-        return model;
     }
 
     public Model inputTypeAddedToOfferingCategory(InputTypeAddedToOfferingCategory event) {
         try {
-            Model allOfferingModel = RDFUtils.getAllOfferingCategoryModel();
-            String dataTypeURI = allOfferingModel.expandPrefix(event.rdfAnnotation().uri());
-            if (allOfferingModel.containsResource(ResourceFactory.createResource(dataTypeURI))) {
-                Resource res = allOfferingModel.getResource(dataTypeURI);
-                if (res.hasProperty(RDF.type, BIGIOT.DatatypeAnnotation) || res.hasProperty(RDF.type, BIGIOT.OfferingCategory)) {
-                    logger.debug("Proposed type is not valid or already exists {}", event.rdfAnnotation().uri());
-                    return null;
-                }
-            }
-            OntModel model = ModelFactory.createOntologyModel(OntModelSpec.OWL_DL_MEM);
-            model.setNsPrefixes(PREFIXES.getPrefixSet());
-
-            Individual proposedInputType = model.createIndividual(dataTypeURI, BIGIOT.DatatypeAnnotation);
-            proposedInputType.addRDFType(BIGIOT.ProposedDatatypeAnnotation);
-            proposedInputType.addLabel(model.createLiteral(event.rdfAnnotation().label()));
-            proposedInputType.addLiteral(BIGIOT.isDeprecated,false);
-
-            Individual offeringCategoryIdv = model.createIndividual(event.uri(), BIGIOT.OfferingCategory);
-            offeringCategoryIdv.addProperty(BIGIOT.expectedAnnotation, proposedInputType);
-
-            NodeIterator iter = allOfferingModel.listObjectsOfProperty(allOfferingModel.getResource(offeringCategoryIdv.getURI()),
-                    BIGIOT.narrower);
-            while (iter.hasNext()) {
-                RDFNode node = iter.next();
-                model.add(node.asResource(), BIGIOT.expectedAnnotation, proposedInputType);
-            }
-
-            return model;
+            return proposedTypeAdded(event.uri(), event.rdfAnnotation());
         }catch (Exception e){
             logger.error("can not create data type " + e.getMessage());
             return null;
@@ -817,73 +520,68 @@ public class RDFParser {
 
     public Model outputTypeAddedToOfferingCategory(OutputTypeAddedToOfferingCategory event) {
         try {
-            Model allOfferingModel = RDFUtils.getAllOfferingCategoryModel();
-            String dataTypeURI = allOfferingModel.expandPrefix(event.rdfAnnotation().uri());
-            if (allOfferingModel.containsResource(ResourceFactory.createResource(dataTypeURI))) {
-                Resource res = allOfferingModel.getResource(allOfferingModel.expandPrefix(event.rdfAnnotation().uri()));
-                if (res.hasProperty(RDF.type, BIGIOT.DatatypeAnnotation) || res.hasProperty(RDF.type, BIGIOT.OfferingCategory)) {
-                    logger.debug("Proposed type is not valid or already exists {}", event.rdfAnnotation().uri());
-                    return null;
-                }
-            }
-            OntModel model = ModelFactory.createOntologyModel(OntModelSpec.OWL_DL_MEM);
-            model.setNsPrefixes(PREFIXES.getPrefixSet());
-
-            Individual proposedInputType = model.createIndividual(dataTypeURI, BIGIOT.DatatypeAnnotation);
-
-            proposedInputType.addRDFType(BIGIOT.ProposedDatatypeAnnotation);
-            proposedInputType.addLabel(model.createLiteral(event.rdfAnnotation().label()));
-            proposedInputType.addLiteral(BIGIOT.isDeprecated,false);
-
-            Individual offeringCategoryIdv = model.createIndividual(event.uri(), BIGIOT.OfferingCategory);
-            offeringCategoryIdv.addProperty(BIGIOT.expectedAnnotation, proposedInputType);
-
-            NodeIterator iter = allOfferingModel.listObjectsOfProperty(allOfferingModel.getResource(offeringCategoryIdv.getURI()),
-                    BIGIOT.narrower);
-            while (iter.hasNext()) {
-                RDFNode node = iter.next();
-                model.add(node.asResource(), BIGIOT.expectedAnnotation, proposedInputType);
-            }
-
-            return model;
+            return proposedTypeAdded(event.uri(), event.rdfAnnotation());
         }catch(Exception e){
             logger.error("can not create data type " + e.getMessage());
             return null;
         }
     }
 
-    public Model dataTypeAddedToOfferingCategory(String categoryURI, String dataTypeURI, Model allOfferingModel) {
-        try{
-            allOfferingModel.setNsPrefixes(PREFIXES.getPrefixSet());
-            if (allOfferingModel.containsResource(ResourceFactory.createResource(allOfferingModel.expandPrefix(dataTypeURI)))) {
-                Resource res = allOfferingModel.getResource(dataTypeURI);
-                if (res.hasProperty(RDF.type, BIGIOT.DatatypeAnnotation) || res.hasProperty(RDF.type, BIGIOT.OfferingCategory)) {
-                    logger.debug("Proposed type is not valid or already exists {}", dataTypeURI);
-                    return null;
-                }
-            }
-            logger.debug("Creating proposed type {}", dataTypeURI);
-            OntModel model = ModelFactory.createOntologyModel(OntModelSpec.OWL_DL_MEM);
-            model.setNsPrefixes(PREFIXES.getPrefixSet());
+    private Model proposedTypeAdded(String categoryUri, RdfAnnotation rdfAnnotation) {
+        Model allOfferingModel = RDFUtils.getAllOfferingCategoryModel();
+        String dataTypeURI = allOfferingModel.expandPrefix(rdfAnnotation.uri());
+        if (isKnownType(dataTypeURI, allOfferingModel)) {
+            logger.debug("Proposed type is not valid or already exists {}", rdfAnnotation.uri());
+            return null;
+        }
+        Model model = ModelFactory.createDefaultModel();
+        TripleEmitter out = TripleEmitter.into(model);
 
-            Individual proposedInputType = model.createIndividual(model.expandPrefix(dataTypeURI), BIGIOT.DatatypeAnnotation);
-            proposedInputType.addRDFType(BIGIOT.ProposedDatatypeAnnotation);
-            proposedInputType.addLiteral(BIGIOT.isDeprecated,false);
+        Node proposed = proposedType(out, dataTypeURI, categoryUri, allOfferingModel);
+        out.label(proposed, rdfAnnotation.label());
 
-            Individual offeringCategoryIdv = model.createIndividual(categoryURI, BIGIOT.OfferingCategory);
-            offeringCategoryIdv.addProperty(BIGIOT.expectedAnnotation, proposedInputType);
+        return model;
+    }
 
-            NodeIterator iter = allOfferingModel.listObjectsOfProperty(allOfferingModel.getResource(offeringCategoryIdv.getURI()),
-                    BIGIOT.narrower);
-            while (iter.hasNext()) {
-                RDFNode node = iter.next();
-                model.add(node.asResource(), BIGIOT.expectedAnnotation, proposedInputType);
+    public Model dataTypeAddedToOfferingCategory(String categoryURI, String dataTypeURI, Model allOfferingModel) {
+        try{
+            if (isKnownType(dataTypeURI, allOfferingModel)) {
+                logger.debug("Proposed type is not valid or already exists {}", dataTypeURI);
+                return null;
             }
-
+            logger.debug("Creating proposed type {}", dataTypeURI);
+            Model model = ModelFactory.createDefaultModel();
+            proposedType(TripleEmitter.into(model), TripleEmitter.expand(dataTypeURI), categoryURI, allOfferingModel);
             return model;
         }catch (Exception e){
             logger.error("can not create data type " + e.getMessage());
             return null;
         }
     }
+
+    private boolean isKnownType(String dataTypeURI, Model allOfferingModel) {
+        if (!allOfferingModel.containsResource(ResourceFactory.createResource(allOfferingModel.expandPrefix(dataTypeURI))))
+            return false;
+        Resource res = allOfferingModel.getResource(dataTypeURI);
+        return res.hasProperty(RDF.type, BIGIOT.DatatypeAnnotation) || res.hasProperty(RDF.type, BIGIOT.OfferingCategory);
+    }
+
+    // the proposed type is expected by the category and all of its sub categories
+    private Node proposedType(TripleEmitter out, String dataTypeURI, String categoryURI, Model allOfferingModel) {
+        Node proposed = TripleEmitter.uri(dataTypeURI);
+        out.type(proposed, BIGIOT.DatatypeAnnotation);
+        out.type(proposed, BIGIOT.ProposedDatatypeAnnotation);
+        out.literal(proposed, BIGIOT.isDeprecated, false);
+
+        Node category = TripleEmitter.uri(categoryURI);
+        out.type(category, BIGIOT.OfferingCategory);
+        out.add(category, BIGIOT.expectedAnnotation, proposed);
+
+        NodeIterator iter = allOfferingModel.listObjectsOfProperty(allOfferingModel.getResource(categoryURI),
+                BIGIOT.narrower);
+        while (iter.hasNext()) {
+            out.add(iter.next().asNode(), BIGIOT.expectedAnnotation, proposed);
+        }
+        return proposed;
+    }
 }
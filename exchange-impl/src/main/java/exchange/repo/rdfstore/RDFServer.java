@@ -15,34 +15,26 @@ import com.squareup.okhttp.Request;
 import com.squareup.okhttp.Response;
 import exchange.model.ApplicationModelGenerator;
 import exchange.model.vocabs.BIGIOT;
+import exchange.model.vocabs.PREFIXES;
 
 import exchange.repo.rdfstore.rulebuiltins.SimpleTypeChecker;
 import exchange.repo.rdfstore.rulebuiltins.ValueTypeMatcher;
 
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.Credentials;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.CredentialsProvider;
-import org.apache.http.client.HttpClient;
-import org.apache.http.impl.client.BasicCredentialsProvider;
-import org.apache.http.impl.client.HttpClients;
 import org.apache.jena.query.Query;
-import org.apache.jena.query.QueryExecution;
-import org.apache.jena.query.QueryExecutionFactory;
-import org.apache.jena.rdf.model.InfModel;
-import org.apache.jena.rdf.model.Model;
-import org.apache.jena.rdf.model.ModelFactory;
-import org.apache.jena.reasoner.Reasoner;
+import org.apache.jena.rdf.listeners.StatementListener;
+import org.apache.jena.rdf.model.*;
+import org.apache.jena.reasoner.rulesys.BasicForwardRuleInfGraph;
 import org.apache.jena.reasoner.rulesys.BuiltinRegistry;
 import org.apache.jena.reasoner.rulesys.GenericRuleReasoner;
 import org.apache.jena.reasoner.rulesys.Rule;
-import org.apache.jena.riot.web.HttpOp;
+import org.apache.jena.vocabulary.RDF;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import virtuoso.jena.driver.*;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
 import java.util.List;
 
 import static exchange.repo.rdfstore.QueryFactory.*;
@@ -59,9 +51,28 @@ public class RDFServer {
 
     private static RDFServer instance = null;
 
+    private final RDFStore store;
+
+    // non blocking reads over the SPARQL protocol, only for a remote store with RDF_ENDPOINT
+    private final SparqlHttpClient sparqlClient;
+
     public static Model coreModel, domainModel, exModel, environmentModel, schemaModel, commonModel;
 
-    public static InfModel inf;
+    // materialized result of the application rules over all models
+    public static Model inf;
+
+    // forward chaining network kept alive to derive triples for runtime additions to the ontology
+    private InfModel reasoningModel;
+
+    private final boolean incrementalReasoning = Boolean.parseBoolean(envOrElse("INCREMENTAL_REASONING", "false"));
+
+    private static final String IS_SIMPLE_VALUE_TYPE = PREFIXES.BIGIOT_CORE_NS + "isSimpleValueType";
+
+    static final String CLASSPATH = "classpath:";
+    private static final String VOCABULARIES = "vocabularies/";
+
+    // marks the cache key of the inferred ontology currently loaded into the ontology graph
+    private static final String ONTOLOGY_FINGERPRINT = "urn:bigiot:ontologyFingerprint";
 
     public static RDFServer get() throws Exception {
         if (instance == null) {
@@ -76,31 +87,66 @@ public class RDFServer {
         this.DB_PASS = System.getenv("RDF_PASS");
         this.endpointURL = System.getenv("RDF_ENDPOINT");
 
-        this.coreModelURL = System.getenv("CORE_MODEL");
-        this.envModelURL = System.getenv("ENVIRONMENT_MODEL");
-        this.commonModelURL = System.getenv("COMMON_MODEL");
-        this.mobilityModelURL = System.getenv("MOBILITY_MODEL");
-        this.schemaURL = System.getenv("SCHEMA");
-
-        QueryFactory.setOfferingGraph(System.getenv("OFFERING_GRAPH"));
-        QueryFactory.setOntologyGraph(System.getenv("MODEL_GRAPH"));
-        logger.info("Connecting to RDF repo:{}", this.DB_USERNAME + "," + this.DB_PASS + "," + this.endpointURL);
+        QueryFactory.setOfferingGraph(envOrElse("OFFERING_GRAPH", "urn:bigiot:offerings"));
+        QueryFactory.setOntologyGraph(envOrElse("MODEL_GRAPH", "urn:bigiot:model"));
+        this.store = createStore(envOrElse("REPO", "RDFSTORE").toUpperCase());
+
+        this.coreModelURL = modelSource("CORE_MODEL", "core.ttl");
+        this.envModelURL = modelSource("ENVIRONMENT_MODEL", "environment.ttl");
+        this.commonModelURL = modelSource("COMMON_MODEL", "common.ttl");
+        this.mobilityModelURL = modelSource("MOBILITY_MODEL", "mobility.ttl");
+        this.schemaURL = modelSource("SCHEMA", "schema.ttl");
+        this.sparqlClient = store instanceof VirtuosoStore && endpointURL != null && !endpointURL.isEmpty()
+                ? new SparqlHttpClient(endpointURL, DB_USERNAME, DB_PASS,
+                    Integer.parseInt(envOrElse("SPARQL_MAX_REQUESTS", "64")),
+                    Long.parseLong(envOrElse("SPARQL_TIMEOUT_SECONDS", "30")))
+                : null;
         init();
     }
 
+    // REPO=RDFSTORE uses Virtuoso, RDFMEM an in-memory dataset and RDFTDB a TDB dataset in RDF_TDB_DIR
+    private RDFStore createStore(String repo) {
+        switch (repo) {
+            case "RDFMEM":
+                logger.info("Using in-memory RDF dataset");
+                return DatasetStore.inMemory();
+            case "RDFTDB":
+                String directory = envOrElse("RDF_TDB_DIR", "tdb");
+                logger.info("Using TDB RDF dataset in {}", directory);
+                return DatasetStore.tdb(directory);
+            default:
+                logger.info("Connecting to RDF repo:{}", this.DB_USERNAME + "," + this.DB_PASS + "," + this.endpointURL);
+                return new VirtuosoStore(JDBC_URL, DB_USERNAME, DB_PASS, endpointURL);
+        }
+    }
+
+    /**
+     * the URL of a source model, an embedded store reads the models which are not configured from
+     * vocabularies/ on the classpath
+     */
+    private String modelSource(String key, String fixture) {
+        String url = System.getenv(key);
+        if ((url == null || url.isEmpty()) && !(store instanceof VirtuosoStore))
+            return CLASSPATH + VOCABULARIES + fixture;
+        return url;
+    }
+
+    public RDFStore getStore() {
+        return store;
+    }
+
+    /**
+     * returns null if the store is embedded, reads are then served synchronously
+     */
+    public SparqlHttpClient getSparqlClient() {
+        return sparqlClient;
+    }
+
     public String getEndpoint() {
         return endpointURL;
     }
 
     private void init(){
-        CredentialsProvider credsProvider = new BasicCredentialsProvider();
-        Credentials credentials = new UsernamePasswordCredentials(DB_USERNAME, DB_PASS);
-        credsProvider.setCredentials(AuthScope.ANY, credentials);
-        HttpClient httpclient = HttpClients.custom()
-                .setDefaultCredentialsProvider(credsProvider)
-                .build();
-        HttpOp.setDefaultHttpClient(httpclient);
-
         initModel();
 
         //create offering graph if not exsits
@@ -133,7 +179,50 @@ public class RDFServer {
     private void initModel(){
     	
     	registerBuiltins();
-    	
+
+        OntologyCache cache = OntologyCache.fromEnv();
+        String key = cache == null ? null : cache.key(Arrays.asList(this.coreModelURL, this.mobilityModelURL,
+                this.envModelURL, this.commonModelURL, this.schemaURL), BIGIOT.APPLICATION_INFERRED_RULES);
+
+        Model cachedDomain = null, cachedInf = null;
+        if (key != null && cache.contains(key)) {
+            logger.info("loading inferred bigiot models from cache {}", key);
+            cachedDomain = cache.load(key, OntologyCache.DOMAIN);
+            cachedInf = cache.load(key, OntologyCache.INFERRED);
+        }
+        if (cachedDomain != null && cachedInf != null) {
+            domainModel = cachedDomain;
+            inf = cachedInf;
+        } else {
+            // nothing cached or an unreadable entry, which is replaced
+            inferModel();
+            if (key != null)
+                cache.store(key, domainModel, inf);
+        }
+
+        if (key != null && isOntologyGraphLoaded(key)) {
+            logger.info("ontology graph is up to date");
+            return;
+        }
+        clearGraph(getOntologyGraph());
+        executeUpdateQuery(inf, getOntologyGraph());
+        // only a complete ontology graph is marked, a failed insert throws before
+        if (key != null && inf != null && !inf.isEmpty())
+            executeUpdateQuery("INSERT DATA { GRAPH <" + getOntologyGraph() + "> {<" + ONTOLOGY_FINGERPRINT + "> <" +
+                    ONTOLOGY_FINGERPRINT + "> \"" + key + "\".}}");
+    }
+
+    private boolean isOntologyGraphLoaded(String key) {
+        try {
+            return executeASKQuery("ASK FROM <" + getOntologyGraph() + "> WHERE { <" + ONTOLOGY_FINGERPRINT + "> <" +
+                    ONTOLOGY_FINGERPRINT + "> \"" + key + "\". }");
+        } catch (Exception e) {
+            logger.error("error {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private void inferModel(){
         logger.info("initialising bigiot models");
         coreModel = getModelFromURL(this.coreModelURL);
 
@@ -154,12 +243,87 @@ public class RDFServer {
         coreModel.add(domainModel);
 
         logger.info("loading bigiot categories rules");
+        InfModel infModel = createReasoningModel(coreModel);
+        infModel.rebind();
+        inf = ModelFactory.createDefaultModel().add(infModel);
+        if (incrementalReasoning)
+            reasoningModel = infModel;
+    }
+
+    private InfModel createReasoningModel(Model model) {
         List<Rule> rules = Rule.parseRules(BIGIOT.APPLICATION_INFERRED_RULES);
-        Reasoner engine = new GenericRuleReasoner(rules);
-        inf = ModelFactory.createInfModel(engine, coreModel);
-        inf.rebind();
-        clearGraph(getOntologyGraph());
-        executeUpdateQuery(inf, getOntologyGraph());
+        GenericRuleReasoner engine = new GenericRuleReasoner(rules);
+        if (incrementalReasoning)
+            engine.setMode(GenericRuleReasoner.FORWARD_RETE);
+        return ModelFactory.createInfModel(engine, model);
+    }
+
+    /**
+     * Writes the model to the ontology graph and returns the written triples. With INCREMENTAL_REASONING
+     * the triples are also fed through the persistent RETE network of the application rules and the
+     * newly derived category and data type triples are written along.
+     */
+    public synchronized Model addToOntologyGraph(Model model) {
+        if (model == null)
+            return null;
+        Model written = model;
+        if (incrementalReasoning) {
+            written = ModelFactory.createDefaultModel().add(model).add(inferIncrementally(model));
+        }
+        executeUpdateQuery(written, getOntologyGraph());
+        return written;
+    }
+
+    /**
+     * Runs an update which removes or replaces triples of the ontology graph. The rule network only
+     * learns additions, so with INCREMENTAL_REASONING it is dropped and built again from the current
+     * ontology graph on the next addition, instead of deriving from triples which are gone.
+     */
+    public synchronized void executeOntologyUpdateQuery(String query) {
+        executeUpdateQuery(query);
+        if (reasoningModel != null) {
+            logger.info("dropping rule network after a removal from the ontology graph");
+            reasoningModel = null;
+        }
+    }
+
+    private Model inferIncrementally(Model added) {
+        long startTime = System.nanoTime();
+        if (reasoningModel == null) {
+            // ontology was restored from cache or changed by a removal, the network is built on first use
+            logger.info("building rule network for incremental reasoning");
+            reasoningModel = createReasoningModel(executeConstructQuery(
+                    "CONSTRUCT { ?s ?p ?o } FROM <" + getOntologyGraph() + "> WHERE { ?s ?p ?o }"));
+            reasoningModel.prepare();
+        }
+        Model derived = ModelFactory.createDefaultModel();
+        Model deductions = ModelFactory.createModelForGraph(
+                ((BasicForwardRuleInfGraph) reasoningModel.getGraph()).getCurrentDeductionsGraph());
+        StatementListener listener = new StatementListener() {
+            @Override
+            public void addedStatement(Statement t) {
+                if (isDerivedOntologyTriple(t))
+                    derived.add(t);
+            }
+        };
+        deductions.register(listener);
+        try {
+            reasoningModel.add(added);
+            reasoningModel.prepare();
+        } finally {
+            deductions.unregister(listener);
+        }
+        derived.remove(added);
+        long finishTime = System.nanoTime();
+        logger.info(String.format("incremental reasoning derived %d triples in %.2fms", derived.size(), (finishTime - startTime) / 1.0e6));
+        return derived;
+    }
+
+    private static boolean isDerivedOntologyTriple(Statement t) {
+        Property p = t.getPredicate();
+        if (p.equals(RDF.type))
+            return t.getObject().equals(BIGIOT.OfferingCategory) || t.getObject().equals(BIGIOT.DatatypeAnnotation);
+        return p.equals(BIGIOT.expectedAnnotation) || p.equals(BIGIOT.hasMember) || p.getURI().equals(IS_SIMPLE_VALUE_TYPE);
     }
 
 	private void registerBuiltins() {
@@ -169,6 +333,8 @@ public class RDFServer {
 
 
     public Model getModelFromURL(String url){
+        if (url != null && url.startsWith(CLASSPATH))
+            return getModelFromClasspath(url);
         Model model = null ;
         try {
             OkHttpClient client = new OkHttpClient();
@@ -190,6 +356,22 @@ public class RDFServer {
         return model;
     }
 
+    private Model getModelFromClasspath(String url) {
+        try (InputStream in = RDFServer.class.getClassLoader().getResourceAsStream(url.substring(CLASSPATH.length()))) {
+            if (in == null) {
+                logger.error("model {} not found", url);
+                return null;
+            }
+            Model model = ModelFactory.createDefaultModel();
+            model.read(in, url, "turtle");
+            return model;
+        } catch (IOException e) {
+            e.printStackTrace();
+            logger.error("error {}",e.getMessage());
+            return null;
+        }
+    }
+
     public Model executeConstructQuery(String query) {
         Model constructModel = ModelFactory.createDefaultModel();
         try {
@@ -199,9 +381,7 @@ public class RDFServer {
             logger.info("executing query :{}", logStr);
             long startTime = System.nanoTime();
 
-            VirtGraph set = new VirtGraph (JDBC_URL, DB_USERNAME, DB_PASS);
-            VirtuosoQueryExecution vqe = VirtuosoQueryExecutionFactory.create (query, set);
-            constructModel = vqe.execConstruct();
+            constructModel = store.construct(query);
 
             long finishTime = System.nanoTime();
             double time = (finishTime - startTime) / 1.0e6;
@@ -223,14 +403,11 @@ public class RDFServer {
             logger.info("executing query:{}", logStr);
             long startTime = System.nanoTime();
 
-            VirtGraph set = new VirtGraph (JDBC_URL, DB_USERNAME, DB_PASS);
-            VirtuosoQueryExecution vqe = VirtuosoQueryExecutionFactory.create (query, set);
-            constructModel = vqe.execConstruct();
+            constructModel = store.construct(query);
 
             long finishTime = System.nanoTime();
             double time = (finishTime - startTime) / 1.0e6;
             logger.info(String.format("FINISH - %.2fms", time));
-            vqe.close();
 
             logger.info("Construct query result size:{}", constructModel.size());
         } catch (Exception e) {
@@ -240,27 +417,19 @@ public class RDFServer {
         return constructModel;
     }
 
-    public VirtuosoQueryExecution executeSelectQuery(String queryStr) {
-        String logStr = queryStr;
-        logStr = logStr.replace("\n", "").replace("\r", "");
-
-        logger.info("executing query select query:{}", logStr);
-        long startTime = System.nanoTime();
-        VirtuosoQueryExecution qexec = null;
+    /**
+     * Streams the solutions of a SELECT query, the query execution is closed when the iterator is
+     * exhausted or closed. Falls back to an empty result if the query fails.
+     */
+    public SolutionIterator executeSelectIterator(String queryStr) {
+        logger.info("executing streamed select query:{}", queryStr.replace("\n", "").replace("\r", ""));
         try {
-
-            VirtGraph graph = new VirtGraph(JDBC_URL, DB_USERNAME, DB_PASS);
-//            Query sparql = QueryFactory.create(queryStr);
-            qexec = VirtuosoQueryExecutionFactory.create (queryStr, graph);
-
-            long finishTime = System.nanoTime();
-            double time = (finishTime - startTime) / 1.0e6;
-            logger.info(String.format("FINISH - %.2fms", time));
+            return store.selectIterator(queryStr);
         } catch (Exception e) {
             e.printStackTrace();
             logger.error("error {}",e.getMessage());
+            return SolutionIterator.empty();
         }
-        return qexec;
     }
 
     public void executeUpdateQuery(String query) {
@@ -268,12 +437,7 @@ public class RDFServer {
         logStr = logStr.replace("\n", "").replace("\r", "");
 
         logger.info("executing update query to {} {}", exchange.repo.rdfstore.QueryFactory.getOfferingGraph(), logStr);
-        long startTime = System.nanoTime();
-
-        VirtGraph graph = new VirtGraph(JDBC_URL, DB_USERNAME, DB_PASS);
-        VirtuosoUpdateRequest vur = VirtuosoUpdateFactory.create(query, graph);
-        vur.exec();
-        graph.close();
+        store.update(query);
     }
 
     public void executeUpdateQuery(Model model) {
@@ -284,9 +448,7 @@ public class RDFServer {
             return;
         }
 
-        VirtModel vm = VirtModel.openDatabaseModel(getOfferingGraph(), JDBC_URL, DB_USERNAME, DB_PASS);
-        vm.add(model.listStatements().toList());
-        vm.close();
+        store.add(model, getOfferingGraph());
         long finishTime = System.nanoTime();
         double time = (finishTime - startTime) / 1.0e6;
         logger.info(String.format("Model update finished: %.2fms", time));
@@ -298,30 +460,18 @@ public class RDFServer {
             logger.debug("model is empty");
             return;
         }
-        VirtModel vm = VirtModel.openDatabaseModel(graph, JDBC_URL, DB_USERNAME, DB_PASS);
-        vm.add(model.listStatements().toList());
-        vm.close();
+        store.add(model, graph);
     }
 
     public void clearGraph(String graph) {
         logger.info("clear graph {}",graph);
-        VirtModel vm = VirtModel.openDatabaseModel(graph, JDBC_URL, DB_USERNAME, DB_PASS);
-        vm.removeAll();
-        vm.close();
+        store.clearGraph(graph);
     }
 
     public boolean executeASKQuery(String query){
-        QueryExecution qexec = null;
-
         logger.info("executing ask query {}", query);
-        long startTime = System.nanoTime();
-        try {
-            qexec = QueryExecutionFactory.sparqlService(endpointURL, query);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        boolean rs = qexec.execAsk();
-        logger.info(String.format("ASK query result: {}",rs));
+        boolean rs = store.ask(query);
+        logger.info("ASK query result: {}",rs);
         return  rs;
     }
 
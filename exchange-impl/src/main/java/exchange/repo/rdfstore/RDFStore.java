@@ -0,0 +1,44 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.repo.rdfstore;
+
+import org.apache.jena.query.Query;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.Model;
+
+/**
+ * Triple store used by RDFServer, all graphs are addressed explicitly by the queries
+ */
+public interface RDFStore {
+
+    Model construct(String query);
+
+    Model construct(Query query);
+
+    /**
+     * returns the complete result, the underlying query execution is already closed
+     */
+    ResultSet select(String query);
+
+    /**
+     * returns the solutions as they are read from the store, the caller has to close the iterator
+     * unless it is read to the end
+     */
+    SolutionIterator selectIterator(String query);
+
+    boolean ask(String query);
+
+    void update(String update);
+
+    void add(Model model, String graph);
+
+    void clearGraph(String graph);
+}
@@ -12,26 +12,46 @@ package exchange.repo.rdfstore;
 
 import com.github.jsonldjava.core.RDFDataset;
 import exchange.api.semantics.DataField;
+import exchange.model.vocabs.BIGIOT;
 import exchange.model.vocabs.PREFIXES;
+import exchange.model.vocabs.SCHEMA;
 import org.apache.jena.ontology.OntModel;
 import org.apache.jena.ontology.OntModelSpec;
 import org.apache.jena.rdf.model.*;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.Array;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import static exchange.repo.rdfstore.RDFServer.*;
 
 class RDFUtils {
+    final static Logger logger = LoggerFactory.getLogger(RDFUtils.class);
+
     private static RDFServer rdfServer;
 
-    public static OntModel prefixModel = ModelFactory.createOntologyModel(OntModelSpec.OWL_DL_MEM);
+    // cached models are patched with event deltas, a full reload only runs as periodic consistency check
+    private static final long RELOAD_PERIOD_MINUTES = envOrElse("RDF_CACHE_RELOAD_MINUTES", 60);
 
-    private static Model categoryOnlyModel = ModelFactory.createOntologyModel(OntModelSpec.OWL_DL_MEM);
+    private static final ScheduledExecutorService reloadExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "rdf-cache-reload");
+        t.setDaemon(true);
+        return t;
+    });
 
-    private static Model allOfferingCategoryModel = ModelFactory.createOntologyModel(OntModelSpec.OWL_DL_MEM);
+    public static OntModel prefixModel = ModelFactory.createOntologyModel(OntModelSpec.OWL_DL_MEM);
 
-    private static Model allDataTypeAnnotationModel = ModelFactory.createOntologyModel(OntModelSpec.OWL_DL_MEM);
+    // readers take the current snapshot without locking, writers are serialized and publish a new version
+    private static final AtomicReference<SemanticSnapshot> snapshot = new AtomicReference<>(SemanticSnapshot.EMPTY);
 
     static {
         try {
@@ -40,9 +60,28 @@ class RDFUtils {
 
         }
         prefixModel.setNsPrefixes(PREFIXES.getPrefixSet());
-        updateAllOfferingCategoriesModel();
-        updateCategoryModel();
-        updateDataTypeAnnotationModel();
+        reloadAll();
+        scheduleReload();
+    }
+
+    private static long envOrElse(String key, long defaultValue) {
+        try {
+            return Long.parseLong(System.getenv(key));
+        } catch (Exception e) {
+            return defaultValue;
+        }
+    }
+
+    private static void scheduleReload() {
+        if (RELOAD_PERIOD_MINUTES <= 0)
+            return;
+        reloadExecutor.scheduleAtFixedRate(() -> {
+            try {
+                reloadAll();
+            } catch (Exception e) {
+                logger.error("cache consistency reload failed {}", e.getMessage());
+            }
+        }, RELOAD_PERIOD_MINUTES, RELOAD_PERIOD_MINUTES, TimeUnit.MINUTES);
     }
 
     public static Model toJenaModel(RDFDataset dataset, String graphName) {
@@ -109,7 +148,6 @@ class RDFUtils {
         String q = QueryFactory.allOfferingCategories(isProposed);
         Model m = rdfServer.executeConstructQuery(q);
         m.setNsPrefixes(PREFIXES.getPrefixSet());
-        allOfferingCategoryModel = m;
         return m;
     }
 
@@ -117,7 +155,6 @@ class RDFUtils {
         String q = QueryFactory.getDataTypeAnnotationTree();
         Model m = rdfServer.executeConstructQuery(q);
         m.setNsPrefixes(PREFIXES.getPrefixSet());
-        allDataTypeAnnotationModel = m;
         return m;
     }
 
@@ -129,31 +166,121 @@ class RDFUtils {
         String q = QueryFactory.getCategoriesTree(isProposed);
         Model m = rdfServer.executeConstructQuery(q);
         m.setNsPrefixes(PREFIXES.getPrefixSet());
-        categoryOnlyModel = m;
         return m;
     }
 
+    public static SemanticSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
     public static Model getCategoryOnlyModel() {
-        return categoryOnlyModel;
+        return snapshot.get().getCategoryOnlyModel();
     }
 
     public static Model getAllDataTypeAnnotationModel() {
-        return allDataTypeAnnotationModel;
+        return snapshot.get().getAllDataTypeAnnotationModel();
+    }
+
+    public static Model getAllOfferingCategoryModel(){return snapshot.get().getAllOfferingCategoryModel();}
+
+    public static synchronized void updateCategoryModel(){
+        publish(snapshot.get().withCategoryOnlyModel(categoriesTreeOnlyModel(true)));
     }
 
-    public static void updateCategoryModel(){
-        categoryOnlyModel = categoriesTreeOnlyModel(true);
+    public static synchronized void updateAllOfferingCategoriesModel(){
+        publish(snapshot.get().withAllOfferingCategoryModel(allOfferingCategoriesModel(true)));
     }
 
-    public static void updateAllOfferingCategoriesModel(){
-        allOfferingCategoryModel = allOfferingCategoriesModel(true);
+    public static synchronized void updateDataTypeAnnotationModel(){
+        publish(snapshot.get().withAllDataTypeAnnotationModel(allDataTypeAnnotationsModel()));
     }
 
-    public static void updateDataTypeAnnotationModel(){
-        allDataTypeAnnotationModel = allDataTypeAnnotationsModel();
+    public static synchronized void reloadAll() {
+        logger.info("reloading semantic caches from ontology graph");
+        publish(snapshot.get().with(categoriesTreeOnlyModel(true), allOfferingCategoriesModel(true), allDataTypeAnnotationsModel()));
     }
 
-    public static Model getAllOfferingCategoryModel(){return allOfferingCategoryModel;}
+    /**
+     * triggers a reload on the background thread, readers keep using the current snapshot meanwhile
+     */
+    public static void refreshAsync() {
+        reloadExecutor.execute(() -> {
+            try {
+                reloadAll();
+            } catch (Exception e) {
+                logger.error("cache reload failed {}", e.getMessage());
+            }
+        });
+    }
+
+    private static void publish(SemanticSnapshot next) {
+        snapshot.set(next);
+        logger.debug("semantic cache version {}", next.getVersion());
+    }
+
+    /**
+     * patches the cached models with triples which were added to the ontology graph
+     */
+    public static synchronized void ontologyTriplesAdded(Model delta) {
+        if (delta == null || delta.isEmpty())
+            return;
+        publish(snapshot.get().patched(
+                m -> addMatching(delta, m, t -> isCategoryTreeTriple(t, delta, m)),
+                m -> addMatching(delta, m, t -> isCategoryTreeTriple(t, delta, m) || isCategoryAnnotationTriple(t, delta, m)),
+                m -> addMatching(delta, m, t -> isDataTypeAnnotationTriple(t, delta, m))));
+    }
+
+    /**
+     * removes the same triples from the cached models as QueryFactory.offeringCategoryParentChanged from the ontology graph
+     */
+    public static synchronized void categoryParentRemoved(String categoryUri) {
+        Resource category = ResourceFactory.createResource(categoryUri);
+        Consumer<Model> removeParent = m -> {
+            m.removeAll(null, BIGIOT.narrower, category);
+            m.removeAll(category, BIGIOT.expectedAnnotation, null);
+        };
+        publish(snapshot.get().patched(removeParent, removeParent, null));
+    }
+
+    private static void addMatching(Model delta, Model cached, Predicate<Statement> matches) {
+        StmtIterator it = delta.listStatements();
+        while (it.hasNext()) {
+            Statement t = it.next();
+            if (matches.test(t))
+                cached.add(t);
+        }
+    }
+
+    private static boolean isTyped(Resource s, Resource type, Model delta, Model cached) {
+        return delta.contains(s, RDF.type, type) || cached.contains(s, RDF.type, type);
+    }
+
+    private static boolean isCategoryTreeTriple(Statement t, Model delta, Model cached) {
+        Property p = t.getPredicate();
+        if (p.equals(RDF.type))
+            return t.getObject().equals(BIGIOT.OfferingCategory) || t.getObject().equals(BIGIOT.ProposedOfferingCategory);
+        if (p.equals(RDFS.label))
+            return isTyped(t.getSubject(), BIGIOT.OfferingCategory, delta, cached);
+        return p.equals(BIGIOT.narrower);
+    }
+
+    private static boolean isCategoryAnnotationTriple(Statement t, Model delta, Model cached) {
+        Property p = t.getPredicate();
+        if (p.equals(RDF.type))
+            return t.getObject().equals(BIGIOT.DatatypeAnnotation) || t.getObject().equals(BIGIOT.ProposedDatatypeAnnotation);
+        if (p.equals(RDFS.label))
+            return isTyped(t.getSubject(), BIGIOT.DatatypeAnnotation, delta, cached);
+        return p.equals(BIGIOT.expectedAnnotation);
+    }
+
+    private static boolean isDataTypeAnnotationTriple(Statement t, Model delta, Model cached) {
+        Property p = t.getPredicate();
+        if (p.equals(RDF.type))
+            return t.getObject().equals(BIGIOT.DatatypeAnnotation) || t.getObject().equals(BIGIOT.ProposedDatatypeAnnotation);
+        if (p.equals(RDFS.label) || p.equals(SCHEMA.rangeIncludes) || p.equals(BIGIOT.hasMember))
+            return isTyped(t.getSubject(), BIGIOT.DatatypeAnnotation, delta, cached);
+        return false;
+    }
 
     public static RDFServer getRdfServer() {
         return rdfServer;
@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.repo.rdfstore;
+
+import exchange.api.semantics.DataField;
+import exchange.api.semantics.OfferingCategory;
+import exchange.api.semantics.RdfAnnotation;
+import exchange.model.vocabs.BIGIOT;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ResIterator;
+import org.apache.jena.vocabulary.RDF;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import scala.Option;
+import scala.collection.JavaConverters;
+import scala.collection.immutable.List;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Offering categories and data types decoded from one SemanticSnapshot version,
+ * so that catalog queries neither hit the RDF store nor walk Jena models.
+ */
+class SemanticCatalog {
+
+    final static Logger logger = LoggerFactory.getLogger(SemanticCatalog.class);
+
+    private final long version;
+    private final Model categoryModel;
+    private final Model dataTypeModel;
+    private final RDFSerializer rdfSerializer;
+
+    private final OfferingCategory rootCategory;
+    private final Map<String, OfferingCategory> categories;
+    private final List<String> categoryUris;
+    private final List<RdfAnnotation> dataTypes;
+    private final Map<String, Option<DataField>> dataFields = new ConcurrentHashMap<>();
+
+    private SemanticCatalog(SemanticSnapshot snapshot, RDFSerializer rdfSerializer) {
+        this.version = snapshot.getVersion();
+        this.categoryModel = snapshot.getAllOfferingCategoryModel();
+        this.dataTypeModel = snapshot.getAllDataTypeAnnotationModel();
+        this.rdfSerializer = rdfSerializer;
+
+        Map<String, OfferingCategory> categoryMap = new HashMap<>();
+        OfferingCategory root = null;
+        if (categoryModel.containsResource(BIGIOT.RootCategory)) {
+            root = rdfSerializer.allOfferingCategories(categoryModel);
+            addCategories(root, categoryMap);
+        }
+        this.rootCategory = root;
+        this.categories = categoryMap;
+
+        ArrayList<String> uris = new ArrayList<>();
+        ResIterator it = categoryModel.listSubjectsWithProperty(RDF.type, BIGIOT.OfferingCategory);
+        while (it.hasNext()) {
+            uris.add(it.next().getURI());
+        }
+        this.categoryUris = JavaConverters.asScalaBuffer(uris).toList();
+
+        this.dataTypes = rdfSerializer.allRdfAnnotations(dataTypeModel);
+        logger.debug("semantic catalog version {}: {} categories, {} data types", version, uris.size(), dataTypes.size());
+    }
+
+    static SemanticCatalog build(SemanticSnapshot snapshot, RDFSerializer rdfSerializer) {
+        return new SemanticCatalog(snapshot, rdfSerializer);
+    }
+
+    private static void addCategories(OfferingCategory category, Map<String, OfferingCategory> categoryMap) {
+        categoryMap.put(category.rdfAnnotation().uri(), category);
+        scala.collection.Iterator<OfferingCategory> iter = category.subCategories().iterator();
+        while (iter.hasNext()) {
+            addCategories(iter.next(), categoryMap);
+        }
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public OfferingCategory allOfferingCategories() {
+        return rootCategory != null ? rootCategory : rdfSerializer.allOfferingCategories(categoryModel);
+    }
+
+    public List<String> allOfferingCategoryUris() {
+        return categoryUris;
+    }
+
+    public List<RdfAnnotation> allDataTypes() {
+        return dataTypes;
+    }
+
+    public Option<OfferingCategory> offeringCategory(String uri) {
+        OfferingCategory category = categories.get(categoryModel.expandPrefix(uri));
+        if (category != null)
+            return Option.apply(category);
+        // categories outside of the tree below the root category
+        return rdfSerializer.findOfferingCategory(uri, categoryModel);
+    }
+
+    public Option<DataField> dataField(String typeUri) {
+        return dataFields.computeIfAbsent(dataTypeModel.expandPrefix(typeUri), uri -> rdfSerializer.findDataField(uri, dataTypeModel));
+    }
+}
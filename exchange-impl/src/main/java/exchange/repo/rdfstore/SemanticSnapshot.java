@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.repo.rdfstore;
+
+import exchange.model.vocabs.PREFIXES;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.compose.Delta;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.sparql.graph.GraphReadOnly;
+
+import java.util.function.Consumer;
+
+/**
+ * Versioned set of the semantic models cached by RDFUtils.
+ * The models of a published snapshot are read-only. An event delta is applied to a layer over the models of the
+ * current snapshot, which records only the added and removed triples and leaves the current snapshot as it is, so
+ * a patch costs the size of the delta. Reads go through the layers, after MAX_LAYERS patches the models are
+ * flattened into plain models again.
+ */
+class SemanticSnapshot {
+
+    static final int MAX_LAYERS = 32;
+
+    static final SemanticSnapshot EMPTY = new SemanticSnapshot(0, 0, freeze(emptyModel()), freeze(emptyModel()), freeze(emptyModel()));
+
+    private final long version;
+    private final int layers;
+    private final Model categoryOnlyModel;
+    private final Model allOfferingCategoryModel;
+    private final Model allDataTypeAnnotationModel;
+
+    private SemanticSnapshot(long version, int layers, Model categoryOnlyModel, Model allOfferingCategoryModel, Model allDataTypeAnnotationModel) {
+        this.version = version;
+        this.layers = layers;
+        this.categoryOnlyModel = categoryOnlyModel;
+        this.allOfferingCategoryModel = allOfferingCategoryModel;
+        this.allDataTypeAnnotationModel = allDataTypeAnnotationModel;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    int getLayers() {
+        return layers;
+    }
+
+    public Model getCategoryOnlyModel() {
+        return categoryOnlyModel;
+    }
+
+    public Model getAllOfferingCategoryModel() {
+        return allOfferingCategoryModel;
+    }
+
+    public Model getAllDataTypeAnnotationModel() {
+        return allDataTypeAnnotationModel;
+    }
+
+    SemanticSnapshot withCategoryOnlyModel(Model m) {
+        return new SemanticSnapshot(version + 1, layers, freeze(m), allOfferingCategoryModel, allDataTypeAnnotationModel);
+    }
+
+    SemanticSnapshot withAllOfferingCategoryModel(Model m) {
+        return new SemanticSnapshot(version + 1, layers, categoryOnlyModel, freeze(m), allDataTypeAnnotationModel);
+    }
+
+    SemanticSnapshot withAllDataTypeAnnotationModel(Model m) {
+        return new SemanticSnapshot(version + 1, layers, categoryOnlyModel, allOfferingCategoryModel, freeze(m));
+    }
+
+    SemanticSnapshot with(Model categoryOnly, Model allOfferingCategory, Model allDataTypeAnnotation) {
+        return new SemanticSnapshot(version + 1, 0, freeze(categoryOnly), freeze(allOfferingCategory), freeze(allDataTypeAnnotation));
+    }
+
+    /**
+     * the next version with the changes applied to layers over the models, null leaves a model unchanged
+     */
+    SemanticSnapshot patched(Consumer<Model> categoryOnly, Consumer<Model> allOfferingCategory, Consumer<Model> allDataTypeAnnotation) {
+        if (layers + 1 >= MAX_LAYERS)
+            return with(patch(copy(categoryOnlyModel), categoryOnly), patch(copy(allOfferingCategoryModel), allOfferingCategory),
+                    patch(copy(allDataTypeAnnotationModel), allDataTypeAnnotation));
+        return new SemanticSnapshot(version + 1, layers + 1, layer(categoryOnlyModel, categoryOnly),
+                layer(allOfferingCategoryModel, allOfferingCategory), layer(allDataTypeAnnotationModel, allDataTypeAnnotation));
+    }
+
+    private static Model patch(Model m, Consumer<Model> change) {
+        if (change != null)
+            change.accept(m);
+        return m;
+    }
+
+    private static Model layer(Model m, Consumer<Model> change) {
+        if (change == null)
+            return m;
+        Model layer = ModelFactory.createModelForGraph(new Delta(m.getGraph()));
+        layer.setNsPrefixes(PREFIXES.getPrefixSet());
+        change.accept(layer);
+        return freeze(layer);
+    }
+
+    private static Model freeze(Model m) {
+        Graph readOnly = new GraphReadOnly(m.getGraph());
+        return ModelFactory.createModelForGraph(readOnly);
+    }
+
+    static Model emptyModel() {
+        Model m = ModelFactory.createDefaultModel();
+        m.setNsPrefixes(PREFIXES.getPrefixSet());
+        return m;
+    }
+
+    static Model copy(Model m) {
+        return emptyModel().add(m);
+    }
+}
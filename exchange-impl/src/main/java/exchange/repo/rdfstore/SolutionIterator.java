@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.repo.rdfstore;
+
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Solutions of a SELECT query read one by one from the store. The underlying query execution
+ * is released when the last solution was read, when reading fails or when closed early,
+ * whichever comes first; closing more than once is harmless.
+ */
+public class SolutionIterator implements Iterator<QuerySolution>, AutoCloseable {
+
+    final static Logger logger = LoggerFactory.getLogger(SolutionIterator.class);
+
+    private final ResultSet results;
+    private final AutoCloseable resource;
+    private boolean closed;
+
+    public SolutionIterator(ResultSet results, AutoCloseable resource) {
+        this.results = results;
+        this.resource = resource;
+    }
+
+    /**
+     * for results which are already complete in memory
+     */
+    public static SolutionIterator of(ResultSet results) {
+        return new SolutionIterator(results, null);
+    }
+
+    public static SolutionIterator empty() {
+        SolutionIterator it = new SolutionIterator(null, null);
+        it.closed = true;
+        return it;
+    }
+
+    public boolean hasNext() {
+        if (closed)
+            return false;
+        boolean more;
+        try {
+            more = results.hasNext();
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+        if (!more)
+            close();
+        return more;
+    }
+
+    public QuerySolution next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        try {
+            return results.nextSolution();
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        if (resource != null) {
+            try {
+                resource.close();
+            } catch (Exception e) {
+                logger.error("error {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.repo.rdfstore;
+
+import com.squareup.okhttp.*;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.query.ResultSetFactory;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.sparql.resultset.XMLInput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Non blocking client for read queries of the SPARQL 1.1 Protocol. Requests are sent by the okhttp dispatcher,
+ * responses are parsed from the body stream on its threads, so no caller thread waits for the store.
+ */
+public class SparqlHttpClient {
+
+    final static Logger logger = LoggerFactory.getLogger(SparqlHttpClient.class);
+
+    private static final MediaType FORM = MediaType.parse("application/x-www-form-urlencoded");
+    private static final String SPARQL_RESULTS_XML = "application/sparql-results+xml";
+    private static final String N_TRIPLES = "application/n-triples";
+
+    private final String endpointURL;
+    private final String credentials;
+    private final OkHttpClient client = new OkHttpClient();
+
+    public SparqlHttpClient(String endpointURL, String username, String password, int maxRequests, long timeoutSeconds) {
+        this.endpointURL = endpointURL;
+        this.credentials = username == null || username.isEmpty() ? null : Credentials.basic(username, password);
+        client.getDispatcher().setMaxRequests(maxRequests);
+        client.getDispatcher().setMaxRequestsPerHost(maxRequests);
+        client.setConnectTimeout(timeoutSeconds, TimeUnit.SECONDS);
+        client.setReadTimeout(timeoutSeconds, TimeUnit.SECONDS);
+    }
+
+    public CompletableFuture<List<QuerySolution>> select(String query) {
+        return execute(query, SPARQL_RESULTS_XML, in -> {
+            List<QuerySolution> solutions = new ArrayList<>();
+            ResultSet results = ResultSetFactory.fromXML(in);
+            while (results.hasNext()) {
+                solutions.add(results.nextSolution());
+            }
+            return solutions;
+        });
+    }
+
+    public CompletableFuture<Model> construct(String query) {
+        return execute(query, N_TRIPLES, in -> {
+            Model model = ModelFactory.createDefaultModel();
+            RDFDataMgr.read(model, in, Lang.NTRIPLES);
+            return model;
+        });
+    }
+
+    public CompletableFuture<Boolean> ask(String query) {
+        return execute(query, SPARQL_RESULTS_XML, XMLInput::booleanFromXML);
+    }
+
+    private <T> CompletableFuture<T> execute(String query, String accept, Function<InputStream, T> parser) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Request.Builder builder = new Request.Builder()
+                .url(endpointURL)
+                .header("Accept", accept)
+                .post(RequestBody.create(FORM, "query=" + encode(query)));
+        if (credentials != null)
+            builder.header("Authorization", credentials);
+
+        long startTime = System.nanoTime();
+        client.newCall(builder.build()).enqueue(new Callback() {
+            public void onFailure(Request request, IOException e) {
+                logger.error("error {}", e.getMessage());
+                result.completeExceptionally(e);
+            }
+
+            public void onResponse(Response response) {
+                try (ResponseBody body = response.body()) {
+                    if (!response.isSuccessful()) {
+                        result.completeExceptionally(new IOException("SPARQL endpoint returned " + response.code() + ": " + body.string()));
+                        return;
+                    }
+                    try (InputStream in = body.byteStream()) {
+                        T value = parser.apply(in);
+                        logger.debug(String.format("FINISH - %.2fms", (System.nanoTime() - startTime) / 1.0e6));
+                        result.complete(value);
+                    }
+                } catch (Exception e) {
+                    logger.error("error {}", e.getMessage());
+                    result.completeExceptionally(e);
+                }
+            }
+        });
+        return result;
+    }
+
+    private static String encode(String value) {
+        try {
+            return java.net.URLEncoder.encode(value, "UTF-8");
+        } catch (java.io.UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.repo.rdfstore;
+
+import exchange.model.vocabs.PREFIXES;
+import org.apache.jena.datatypes.RDFDatatype;
+import org.apache.jena.datatypes.TypeMapper;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.rdf.model.Literal;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.shared.PrefixMapping;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+
+/**
+ * Writes triples of an event directly as nodes to a StreamRDF, without an ontology model
+ * and without Resource or Individual wrappers.
+ */
+class TripleEmitter {
+
+    private static final PrefixMapping prefixes = PrefixMapping.Factory.create()
+            .setNsPrefixes(PREFIXES.getPrefixSet()).lock();
+
+    private final StreamRDF out;
+
+    TripleEmitter(StreamRDF out) {
+        this.out = out;
+    }
+
+    /**
+     * emits into the graph of the given model
+     */
+    static TripleEmitter into(Model model) {
+        return new TripleEmitter(StreamRDFLib.graph(model.getGraph()));
+    }
+
+    static String expand(String uri) {
+        return prefixes.expandPrefix(uri);
+    }
+
+    static Node uri(String uri) {
+        return NodeFactory.createURI(uri);
+    }
+
+    static Node blank() {
+        return NodeFactory.createBlankNode();
+    }
+
+    TripleEmitter add(Node subject, Property property, Node object) {
+        out.triple(Triple.create(subject, property.asNode(), object));
+        return this;
+    }
+
+    TripleEmitter add(Node subject, Property property, RDFNode object) {
+        return add(subject, property, object.asNode());
+    }
+
+    TripleEmitter type(Node subject, Resource type) {
+        return add(subject, RDF.type, type.asNode());
+    }
+
+    TripleEmitter label(Node subject, String label) {
+        return add(subject, RDFS.label, NodeFactory.createLiteral(label));
+    }
+
+    /**
+     * typed by the java class of the value, as Resource.addLiteral does
+     */
+    TripleEmitter literal(Node subject, Property property, Object value) {
+        if (value instanceof Literal)
+            return add(subject, property, ((Literal) value).asNode());
+        return add(subject, property, NodeFactory.createLiteralByValue(value, TypeMapper.getInstance().getTypeByValue(value)));
+    }
+
+    TripleEmitter literal(Node subject, Property property, Object value, RDFDatatype datatype) {
+        return add(subject, property, NodeFactory.createLiteralByValue(value, datatype));
+    }
+
+    TripleEmitter literal(Node subject, Property property, String lexicalForm, String datatypeURI) {
+        return add(subject, property, NodeFactory.createLiteral(lexicalForm, TypeMapper.getInstance().getSafeTypeByName(datatypeURI)));
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.repo.rdfstore;
+
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.Credentials;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.HttpClient;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.jena.query.*;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.riot.web.HttpOp;
+import virtuoso.jena.driver.*;
+
+/**
+ * Remote Virtuoso server accessed via JDBC, ASK queries go to the SPARQL endpoint
+ */
+public class VirtuosoStore implements RDFStore {
+
+    private static final long INSERT_DATA_LIMIT = 10000;
+
+    private final String jdbcUrl;
+    private final String username;
+    private final String password;
+    private final String endpointURL;
+
+    public VirtuosoStore(String jdbcUrl, String username, String password, String endpointURL) {
+        this.jdbcUrl = jdbcUrl;
+        this.username = username;
+        this.password = password;
+        this.endpointURL = endpointURL;
+
+        CredentialsProvider credsProvider = new BasicCredentialsProvider();
+        Credentials credentials = new UsernamePasswordCredentials(username, password);
+        credsProvider.setCredentials(AuthScope.ANY, credentials);
+        HttpClient httpclient = HttpClients.custom()
+                .setDefaultCredentialsProvider(credsProvider)
+                .build();
+        HttpOp.setDefaultHttpClient(httpclient);
+    }
+
+    public Model construct(String query) {
+        VirtGraph graph = new VirtGraph(jdbcUrl, username, password);
+        try {
+            VirtuosoQueryExecution vqe = VirtuosoQueryExecutionFactory.create(query, graph);
+            try {
+                return vqe.execConstruct();
+            } finally {
+                vqe.close();
+            }
+        } finally {
+            graph.close();
+        }
+    }
+
+    public Model construct(Query query) {
+        VirtGraph graph = new VirtGraph(jdbcUrl, username, password);
+        try {
+            VirtuosoQueryExecution vqe = VirtuosoQueryExecutionFactory.create(query, graph);
+            try {
+                return vqe.execConstruct();
+            } finally {
+                vqe.close();
+            }
+        } finally {
+            graph.close();
+        }
+    }
+
+    public ResultSet select(String query) {
+        VirtGraph graph = new VirtGraph(jdbcUrl, username, password);
+        try {
+            VirtuosoQueryExecution vqe = VirtuosoQueryExecutionFactory.create(query, graph);
+            try {
+                return ResultSetFactory.copyResults(vqe.execSelect());
+            } finally {
+                vqe.close();
+            }
+        } finally {
+            graph.close();
+        }
+    }
+
+    public SolutionIterator selectIterator(String query) {
+        VirtGraph graph = new VirtGraph(jdbcUrl, username, password);
+        VirtuosoQueryExecution vqe = null;
+        try {
+            vqe = VirtuosoQueryExecutionFactory.create(query, graph);
+            VirtuosoQueryExecution execution = vqe;
+            return new SolutionIterator(execution.execSelect(), () -> {
+                execution.close();
+                graph.close();
+            });
+        } catch (RuntimeException e) {
+            if (vqe != null)
+                vqe.close();
+            graph.close();
+            throw e;
+        }
+    }
+
+    public boolean ask(String query) {
+        QueryExecution qexec = QueryExecutionFactory.sparqlService(endpointURL, query);
+        try {
+            return qexec.execAsk();
+        } finally {
+            qexec.close();
+        }
+    }
+
+    public void update(String update) {
+        VirtGraph graph = new VirtGraph(jdbcUrl, username, password);
+        try {
+            VirtuosoUpdateFactory.create(update, graph).exec();
+        } finally {
+            graph.close();
+        }
+    }
+
+    // the triples of an event are streamed as one INSERT DATA request, only large models
+    // like the ontology go through the bulk loader of the JDBC driver
+    public void add(Model model, String graph) {
+        if (model.size() <= INSERT_DATA_LIMIT) {
+            update(QueryFactory.insertData(model, graph));
+            return;
+        }
+        VirtModel vm = VirtModel.openDatabaseModel(graph, jdbcUrl, username, password);
+        try {
+            vm.add(model);
+        } finally {
+            vm.close();
+        }
+    }
+
+    public void clearGraph(String graph) {
+        VirtModel vm = VirtModel.openDatabaseModel(graph, jdbcUrl, username, password);
+        try {
+            vm.removeAll();
+        } finally {
+            vm.close();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.graphql
+
+import akka.util.ByteString
+import sangria.marshalling.{ArrayMapBuilder, ResultMarshaller, ScalarValueInfo}
+
+/** Marshals GraphQL results directly into their compact JSON encoding. Every node is the encoded ByteString of its
+  * value and a map or list is the concatenation of the nodes of its elements, which ByteString does without copying.
+  * The result goes to the wire as it is, without a JSON AST and without a String of the whole response.
+  *
+  * An instance serves one execution. Maps are built bottom-up and the order of the maps is up to the executor, so it
+  * remembers the fields of the maps holding "data" or "errors" and tells the errors and data of the result given the
+  * node the execution returned. An instance created with the names of a path through the data also remembers the
+  * fields of the maps holding one of these names, and finds the value at that path of the result.
+  */
+class ByteStringResultMarshaller(capture: Seq[String] = Nil) extends ResultMarshaller {
+  import ByteStringResultMarshaller._
+
+  type Node = ByteString
+  type MapBuilder = ArrayMapBuilder[Node]
+
+  private val capturedKeys = capture.toSet + "data" + "errors"
+  private val captured = new java.util.IdentityHashMap[Node, Seq[(String, Node)]]
+
+  private def fields(node: Node): Option[Seq[(String, Node)]] = Option(captured.synchronized(captured.get(node)))
+
+  def hasErrors(result: Node) = errors(result).nonEmpty
+
+  def errors(result: Node): Option[Node] = fields(result) flatMap (_ collectFirst { case ("errors", errors) => errors })
+
+  /** The value at the given prefix of the captured path below the data of the result */
+  def dataAt(result: Node, path: Seq[String]): Option[Node] =
+    path.foldLeft(fields(result) flatMap (_ collectFirst { case ("data", data) => data })) { (node, name) =>
+      node flatMap fields flatMap (_ collectFirst { case (`name`, value) => value })
+    }
+
+  def emptyMapNode(keys: Seq[String]) = new ArrayMapBuilder[Node](keys)
+
+  def addMapNodeElem(builder: MapBuilder, key: String, value: Node, optional: Boolean) = builder.add(key, value)
+
+  def mapNode(builder: MapBuilder) = mapNode(builder.toSeq)
+
+  def mapNode(keyValues: Seq[(String, Node)]) = {
+    val fields = keyValues.iterator map { case (key, value) => string(key) ++ Colon ++ value }
+    val node = OpenBrace ++ join(fields) ++ CloseBrace
+    if (keyValues exists (keyValue => capturedKeys(keyValue._1)))
+      captured.synchronized(captured.put(node, keyValues))
+    node
+  }
+
+  def arrayNode(values: Vector[Node]) = OpenBracket ++ join(values.iterator) ++ CloseBracket
+
+  def optionalArrayNodeValue(value: Option[Node]) = value getOrElse nullNode
+
+  def scalarNode(value: Any, typeName: String, info: Set[ScalarValueInfo]) = value match {
+    case v: String => string(v)
+    case v: Boolean => if (v) True else False
+    case v: Int => ByteString(v.toString)
+    case v: Long => ByteString(v.toString)
+    case v: Double => if (v.isNaN || v.isInfinite) Null else ByteString(v.toString)
+    case v: Float => if (v.isNaN || v.isInfinite) Null else ByteString(v.toString)
+    case v: BigInt => ByteString(v.toString)
+    case v: BigDecimal => ByteString(v.toString)
+    case v => string(v.toString)
+  }
+
+  def enumNode(value: String, typeName: String) = string(value)
+
+  def nullNode = Null
+
+  def renderCompact(node: Node) = node.utf8String
+
+  def renderPretty(node: Node) = node.utf8String
+}
+
+object ByteStringResultMarshaller {
+  private val OpenBrace = ByteString("{")
+  private val CloseBrace = ByteString("}")
+  private val OpenBracket = ByteString("[")
+  private val CloseBracket = ByteString("]")
+  private val Colon = ByteString(":")
+  private val Comma = ByteString(",")
+  private val True = ByteString("true")
+  private val False = ByteString("false")
+  private val Null = ByteString("null")
+
+  private def join(nodes: Iterator[ByteString]) = {
+    val builder = ByteString.newBuilder
+    if (nodes.hasNext) builder ++= nodes.next()
+    nodes foreach { node =>
+      builder ++= Comma
+      builder ++= node
+    }
+    builder.result()
+  }
+
+  def string(value: String): ByteString = {
+    val builder = new java.lang.StringBuilder(value.length + 2).append('"')
+    var i = 0
+    while (i < value.length) {
+      value.charAt(i) match {
+        case '"' => builder.append("\\\"")
+        case '\\' => builder.append("\\\\")
+        case '\n' => builder.append("\\n")
+        case '\r' => builder.append("\\r")
+        case '\t' => builder.append("\\t")
+        case '\b' => builder.append("\\b")
+        case '\f' => builder.append("\\f")
+        case c if c < ' ' => builder.append(f"\\u${c.toInt}%04x")
+        case c => builder.append(c)
+      }
+      i += 1
+    }
+    ByteString(builder.append('"').toString)
+  }
+}
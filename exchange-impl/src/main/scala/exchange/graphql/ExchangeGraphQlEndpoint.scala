@@ -10,26 +10,34 @@
  */
 package exchange.graphql
 
+import java.util.concurrent.atomic.AtomicReference
+
 import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.Future
+import scala.concurrent.duration._
 import scala.util.{Failure, Success}
 import akka.actor.ActorSystem
+import akka.http.scaladsl.model.{ContentTypes, HttpEntity, HttpResponse, StatusCode}
 import akka.http.scaladsl.model.StatusCodes._
+import akka.http.scaladsl.model.headers.ETag
 import akka.http.scaladsl.server.Directives._
-import akka.http.scaladsl.server.Route
+import akka.http.scaladsl.server.{MalformedRequestContentRejection, Route}
 import akka.stream.scaladsl.GraphDSL.Implicits._
 import akka.stream.scaladsl.{GraphDSL, RunnableGraph, Sink}
 import akka.stream.{ActorMaterializer, ClosedShape}
+import akka.util.ByteString
 
-import io.circe.Json
+import io.circe.{DecodingFailure, Json}
 import io.circe.generic.auto._
+import io.circe.syntax._
 import microservice.persistence.CassandraEventSource
 import microservice.{encodeAggregateId, cmdTopic, envSuffix, errorTopic}
 import microservice.{MessageQueue, PendingRequest, PendingRequestHandler, SourceQueue, TopicSource}
 import org.slf4j.LoggerFactory
 import sangria.execution._
-import sangria.marshalling.circe._
-import sangria.parser.QueryParser
+import sangria.marshalling.circe.CirceInputUnmarshaller
 import sangria.renderer.SchemaRenderer
+import sangria.validation.QueryValidator
 
 import exchange.api
 import exchange.api.consumer.ConsumerCommand
@@ -40,12 +48,19 @@ import exchange.api.provider.ProviderCommand
 import exchange.api.semantics.SemanticsCommand
 import exchange.api.subscription.SubscriptionCommand
 import exchange.repo.{ExchangeRepoMutations, ExchangeRepoQueries, ExchangeSemanticRepo}
-import exchange.schema.{ExchangeCtx, SchemaDefinition}
+import exchange.schema.{Cardinalities, ExchangeCtx, QueryTooExpensive, SchemaDefinition}
 import exchange.server.Exchange
 
-case class GraphQLRequest(query: String, operationName: Option[String], variables: Option[Json])
+case class GraphQLRequest(query: Option[String], operationName: Option[String], variables: Option[Json],
+                          extensions: Option[Json] = None) {
+  // persisted query id as sent by Apollo clients, extensions: { persistedQuery: { version: 1, sha256Hash: "..." } }
+  def persistedQueryHash: Option[String] =
+    extensions flatMap (_.hcursor.downField("persistedQuery").get[String]("sha256Hash").toOption)
+}
 case class GraphQLError(error: String)
 
+case class EncodedResult(status: StatusCode, body: ByteString, hasErrors: Boolean)
+
 case class CommandQueues(implicit system: ActorSystem, mat: ActorMaterializer) {
   val semantics = MessageQueue(cmdTopic[SemanticsCommand](api.semantics.serviceName), "CommandQueues.semantics")
   val organization = MessageQueue(cmdTopic[OrganizationCommand](api.organization.serviceName), "CommandQueues.organization")
@@ -64,13 +79,71 @@ object ExchangeGraphQlEndpoint {
     case (m, e: Throwable) => HandledException(e.getMessage)
   }
 
+  val queryCache = new QueryCache(SchemaDefinition.ExchangeSchema, sys.env.getOrElse("GRAPHQL_QUERY_CACHE_SIZE", "1000").toInt)
+
+  // queries nested deeper or estimated more expensive are rejected before execution
+  val maxDepth = sys.env.getOrElse("GRAPHQL_MAX_DEPTH", "15").toInt
+  val maxCost = sys.env.getOrElse("GRAPHQL_MAX_COST", "100000").toDouble
+  val cardinalitiesRefresh = sys.env.getOrElse("GRAPHQL_CARDINALITIES_REFRESH_SECONDS", "60").toInt.seconds
+
+  val queryReducers: List[QueryReducer[ExchangeCtx, _]] = List(
+    QueryReducer.rejectMaxDepth[ExchangeCtx](maxDepth),
+    QueryReducer.rejectComplexQueries[ExchangeCtx](maxCost, (cost, _) => QueryTooExpensive(cost, maxCost)))
+
+  // operations per POST of an array of them
+  val maxBatchSize = sys.env.getOrElse("GRAPHQL_MAX_BATCH_SIZE", "50").toInt
+
+  val SubscriptionsOverWebSocket = "Subscriptions are only available over WebSocket"
+
+  def jsonResponse(status: StatusCode, body: ByteString) =
+    HttpResponse(status, entity = HttpEntity(ContentTypes.`application/json`, body))
+
+  // a single operation or an array of them, a malformed single operation is rejected as by entity(as[GraphQLRequest])
+  def operations(body: Json)(single: GraphQLRequest => Route)(batch: Vector[GraphQLRequest] => Route): Route = {
+    import de.heikoseeberger.akkahttpcirce.FailFastCirceSupport._
+
+    body.asArray match {
+      case Some(requests) if requests.size > maxBatchSize ⇒
+        complete(BadRequest -> GraphQLError(s"Batch of ${requests.size} operations exceeds the maximum of $maxBatchSize"))
+      case Some(requests) ⇒
+        requests.foldRight[Either[DecodingFailure, Vector[GraphQLRequest]]](Right(Vector.empty)) { (request, decoded) ⇒
+          for (tail <- decoded; head <- request.as[GraphQLRequest]) yield head +: tail
+        } match {
+          case Right(decoded) ⇒ batch(decoded)
+          case Left(error) ⇒ complete(BadRequest -> GraphQLError(error.getMessage))
+        }
+      case None ⇒
+        body.as[GraphQLRequest] match {
+          case Right(request) ⇒ single(request)
+          case Left(error) ⇒ reject(MalformedRequestContentRejection(error.getMessage, error))
+        }
+    }
+  }
+
+  // the operations of a batch run concurrently, their results are returned as array in the same order
+  def batchResponse(requests: Vector[GraphQLRequest])(run: GraphQLRequest => Future[ByteString]): Future[HttpResponse] =
+    Future.sequence(requests map run) map { results ⇒
+      jsonResponse(OK, results.foldLeft(ByteString.empty) { (body, result) ⇒
+        body ++ (if (body.isEmpty) ByteString("[") else ByteString(",")) ++ result
+      } ++ ByteString(if (results.isEmpty) "[]" else "]"))
+    }
+
+  // If-None-Match holds a list of quoted, possibly weak entity tags or *
+  def etagMatches(ifNoneMatch: String, etag: String) =
+    ifNoneMatch.trim == "*" || (ifNoneMatch.split(",") map (_.trim.stripPrefix("W/")) contains "\"" + etag + "\"")
+
   def apply(queryRepo: ExchangeRepoQueries, semanticRepo: ExchangeSemanticRepo, mutationRepos: Seq[ExchangeRepoMutations])
            (implicit system: ActorSystem, mat: ActorMaterializer) = {
+    val versions = new ViewVersions
+    val responseCache = new ResponseCache(versions, sys.env.getOrElse("GRAPHQL_RESPONSE_CACHE_SIZE", "1000").toInt,
+      sys.env.getOrElse("GRAPHQL_RESPONSE_CACHE_TTL_SECONDS", "60").toLong * 1000)
+    val changes = new ViewChanges(sys.env.getOrElse("GRAPHQL_VIEW_CHANGES_BUFFER_SIZE", "256").toInt)
+
     val pendingRequestQueue = RunnableGraph.fromGraph(GraphDSL.create(SourceQueue[PendingRequest]) { implicit b =>
       addQueue =>
         val events = b.add(CassandraEventSource(Exchange.tag))
         val errors = b.add(TopicSource(errorTopic, "ExchangeGraphQlEndpoint.PendingRequestHandler" + envSuffix))
-        val view = b.add(ExchangeView(mutationRepos, queryRepo, semanticRepo))
+        val view = b.add(ExchangeView(mutationRepos, queryRepo, semanticRepo, versions, Some(changes)))
         val pending = b.add(PendingRequestHandler("ExchangeGraphQlEndpoint" + envSuffix))
 
         addQueue ~> pending.add
@@ -83,37 +156,193 @@ object ExchangeGraphQlEndpoint {
 
     val commandQueues = CommandQueues()
 
-    val route: Route =
-      (post & path("graphql") & optionalHeaderValueByName("requesterId") & optionalHeaderValueByName("organizationId")) {
-        (requesterId, requesterOrgId) =>
-          import de.heikoseeberger.akkahttpcirce.FailFastCirceSupport._
+    // estimates of the list sizes for the cost of the operations, each operation takes the latest ones with its context
+    val cardinalities = new AtomicReference(Cardinalities())
+    system.scheduler.schedule(0.seconds, cardinalitiesRefresh) {
+      cardinalities.set(Cardinalities.of(queryRepo.allOrganizations))
+    }
+
+    def queries(requesterId: Option[String], requesterOrgId: Option[String]) =
+      new ExchangeQueriesImpl(requesterId, requesterOrgId.map(OrganizationId(_)), queryRepo, semanticRepo)
+
+    // the mutations of an operation send their commands with the request id of the operation
+    def mutations(requesterId: Option[String], requesterOrgId: Option[String]) =
+      new ExchangeMutationsImpl(requesterId, requesterOrgId, commandQueues, pendingRequestQueue, system.scheduler)
 
-          entity(as[GraphQLRequest]) { case GraphQLRequest(query, operation, vars) ⇒
-            log.info(s"requesterId: $requesterId, requesterOrgId: $requesterOrgId, operation: $operation, vars: ${vars.toString.replace("\r\n", " ").replace("\n", " ")}")
-            QueryParser.parse(query) match {
-              // query parsed successfully, time to execute it!
-              case Success(queryAst) ⇒
-                val ctx = ExchangeCtx(new ExchangeQueriesImpl(requesterId, requesterOrgId.map(OrganizationId(_)), queryRepo, semanticRepo),
-                  new ExchangeMutationsImpl(requesterId, requesterOrgId, commandQueues, pendingRequestQueue))
-                complete(Executor.execute(SchemaDefinition.ExchangeSchema, queryAst, ctx, variables = vars.getOrElse(Json.obj()),
-                  operationName = operation, exceptionHandler = exceptionHandler)
-                  .map(OK -> _)
-                  .recover {
-                    case error: QueryAnalysisError =>
-                      log.warn(s"QueryAnalysisError: ${error.resolveError}")
-                      BadRequest -> error.resolveError
-                    case error: ErrorWithResolver =>
-                      log.warn(s"ErrorWithResolver: ${error.resolveError}")
-                      InternalServerError -> error.resolveError
+    def context(requesterId: Option[String], requesterOrgId: Option[String]) =
+      ExchangeCtx(queries(requesterId, requesterOrgId), Some(mutations(requesterId, requesterOrgId)), cardinalities = cardinalities.get)
+
+    // results are encoded while they are resolved, see ByteStringResultMarshaller
+    def execute(document: CachedDocument, operation: Option[String], variables: Json, ctx: ExchangeCtx,
+                resultMarshaller: ByteStringResultMarshaller = new ByteStringResultMarshaller,
+                middleware: List[Middleware[ExchangeCtx]] = Nil,
+                reducers: List[QueryReducer[ExchangeCtx, _]] = queryReducers): Future[EncodedResult] = {
+      implicit val marshaller = resultMarshaller
+      Executor.execute(SchemaDefinition.ExchangeSchema, document.document, ctx, variables = variables,
+        operationName = operation, exceptionHandler = exceptionHandler, deferredResolver = SchemaDefinition.ExchangeResolver,
+        queryReducers = reducers, middleware = middleware,
+        queryValidator = if (document.validated) QueryValidator.empty else QueryValidator.default)
+        .map(body ⇒ EncodedResult(OK, body, marshaller.hasErrors(body)))
+        .recover(failed)
+    }
+
+    // the operation is checked against the limits without executing it
+    def reduce(document: CachedDocument, operation: Option[String], variables: Json, ctx: ExchangeCtx): Future[Option[EncodedResult]] = {
+      implicit val marshaller = new ByteStringResultMarshaller
+      Executor.prepare(SchemaDefinition.ExchangeSchema, document.document, ctx, variables = variables,
+        operationName = operation, exceptionHandler = exceptionHandler, queryReducers = queryReducers,
+        queryValidator = if (document.validated) QueryValidator.empty else QueryValidator.default)
+        .map(_ ⇒ Option.empty[EncodedResult])
+        .recover(failed andThen (Some(_)))
+    }
+
+    def failed(implicit marshaller: ByteStringResultMarshaller): PartialFunction[Throwable, EncodedResult] = {
+      case error: QueryAnalysisError =>
+        log.warn(s"QueryAnalysisError: ${error.resolveError.utf8String}")
+        EncodedResult(BadRequest, error.resolveError, hasErrors = true)
+      case error: ErrorWithResolver =>
+        log.warn(s"ErrorWithResolver: ${error.resolveError.utf8String}")
+        EncodedResult(InternalServerError, error.resolveError, hasErrors = true)
+    }
+
+    // the result of a cacheable operation is cached if it succeeded and the view did not change meanwhile
+    def executeCached(document: CachedDocument, operation: Option[String], variables: Json, ctx: ExchangeCtx,
+                      key: String, kinds: Set[ViewVersions.Kind]): Future[Either[EncodedResult, CachedResponse]] = {
+      val stamp = responseCache.stamp(kinds)
+      execute(document, operation, variables, ctx) map {
+        case EncodedResult(OK, body, false) ⇒ Right(responseCache.put(key, kinds, stamp, body))
+        case failed ⇒ Left(failed)
+      }
+    }
+
+    def cachedResponse(cached: CachedResponse) =
+      HttpResponse(OK, headers = List(ETag(cached.etag)), entity = HttpEntity(ContentTypes.`application/json`, cached.body))
+
+    // the initial result as soon as it is resolved, deferred fragments and streamed lists follow in the same response.
+    // The limits apply to the whole operation rather than to each of its parts, which are executed without them
+    def incremental(plan: IncrementalPlan, document: CachedDocument, operation: Option[String], variables: Json,
+                    ctx: ExchangeCtx): Future[HttpResponse] =
+      reduce(document, operation, variables, ctx) flatMap {
+        case Some(rejected) ⇒
+          Future.successful(jsonResponse(rejected.status, rejected.body))
+        case None ⇒
+          val delivery = new IncrementalDelivery(plan, (rewritten, marshaller, middleware) ⇒
+            execute(document.copy(document = rewritten), operation, variables, ctx, marshaller, middleware, reducers = Nil))
+          delivery.initial map {
+            case EncodedResult(OK, body, _) ⇒
+              HttpResponse(OK, entity = HttpEntity.Chunked.fromData(IncrementalDelivery.MultipartContentType, delivery.parts(body)))
+            case result ⇒
+              jsonResponse(result.status, result.body)
+          }
+      }
+
+    def single(request: GraphQLRequest, requesterId: Option[String], requesterOrgId: Option[String], ifNoneMatch: Option[String],
+               accept: Option[String]): Route = {
+      import de.heikoseeberger.akkahttpcirce.FailFastCirceSupport._
+
+      val GraphQLRequest(query, operation, vars, _) = request
+      log.info(s"requesterId: $requesterId, requesterOrgId: $requesterOrgId, operation: $operation, vars: ${vars.toString.replace("\r\n", " ").replace("\n", " ")}")
+      queryCache.document(query, request.persistedQueryHash) match {
+        // query parsed successfully, time to execute it!
+        case Success(document) ⇒
+          val variables = vars.getOrElse(Json.obj())
+          // @defer and @stream are ignored unless the client accepts the result in parts
+          val plan =
+            if (document.validated && (accept exists IncrementalDelivery.accepts)) IncrementalDelivery.plan(document.document, operation, variables)
+            else None
+          if (ExchangeSubscriptionsSocket.isSubscription(document.document, operation))
+            complete(BadRequest -> GraphQLError(SubscriptionsOverWebSocket))
+          else if (plan.isDefined)
+            complete(incremental(plan.get, document, operation, variables, context(requesterId, requesterOrgId)))
+          else responseCache.kinds(document.document, operation) match {
+            // query operation reading entities whose changes are tracked by the view
+            case Some(kinds) ⇒
+              val key = ResponseCache.key(document.hash, operation, variables, requesterOrgId)
+              responseCache.get(key, kinds) match {
+                case Some(cached) if ifNoneMatch exists (etagMatches(_, cached.etag)) ⇒
+                  complete(HttpResponse(NotModified, headers = List(ETag(cached.etag))))
+                case Some(cached) ⇒
+                  complete(cachedResponse(cached))
+                case None ⇒
+                  complete(executeCached(document, operation, variables, context(requesterId, requesterOrgId), key, kinds) map {
+                    case Right(cached) ⇒ cachedResponse(cached)
+                    case Left(result) ⇒ jsonResponse(result.status, result.body)
                   })
+              }
 
-              // can't parse GraphQL query, return error
-              case Failure(error) ⇒
-                log.error(s"PARSE FAILURE: ${error.getMessage}")
-                complete(BadRequest -> GraphQLError(error.getMessage))
-            }
+            case None ⇒
+              complete(execute(document, operation, variables, context(requesterId, requesterOrgId)) map { result ⇒
+                jsonResponse(result.status, result.body)
+              })
+          }
+
+        // only the hash was sent and the query is not known (anymore), the client has to send the text
+        case Failure(error: PersistedQueryNotFound) ⇒
+          log.info(s"${error.getMessage}, query cache ${queryCache.stats}")
+          complete(BadRequest -> GraphQLError("PersistedQueryNotFound"))
+
+        // can't parse GraphQL query, return error
+        case Failure(error) ⇒
+          log.error(s"PARSE FAILURE: ${error.getMessage}")
+          complete(BadRequest -> GraphQLError(error.getMessage))
+      }
+    }
+
+    // one operation of a batch, encoded as the body of the response to it alone, errors included
+    def batched(request: GraphQLRequest, ctx: ExchangeCtx, requesterOrgId: Option[String]): Future[ByteString] = {
+      def error(message: String) = Future.successful(ByteString(GraphQLError(message).asJson.noSpaces))
+      val operation = request.operationName
+      queryCache.document(request.query, request.persistedQueryHash) match {
+        case Success(document) if ExchangeSubscriptionsSocket.isSubscription(document.document, operation) ⇒
+          error(SubscriptionsOverWebSocket)
+        case Success(document) ⇒
+          val variables = request.variables.getOrElse(Json.obj())
+          responseCache.kinds(document.document, operation) match {
+            case Some(kinds) ⇒
+              val key = ResponseCache.key(document.hash, operation, variables, requesterOrgId)
+              responseCache.get(key, kinds) match {
+                case Some(cached) ⇒ Future.successful(cached.body)
+                case None ⇒ executeCached(document, operation, variables, ctx, key, kinds) map {
+                  case Right(cached) ⇒ cached.body
+                  case Left(result) ⇒ result.body
+                }
+              }
+            case None ⇒
+              execute(document, operation, variables, ctx) map (_.body)
+          }
+        case Failure(_: PersistedQueryNotFound) ⇒
+          error("PersistedQueryNotFound")
+        case Failure(e) ⇒
+          error(e.getMessage)
+      }
+    }
+
+    // the operations of a batch run concurrently and share their queries, their results are returned in the same order
+    def batch(requests: Vector[GraphQLRequest], requesterId: Option[String], requesterOrgId: Option[String]): Route = {
+      log.info(s"requesterId: $requesterId, requesterOrgId: $requesterOrgId, batch of ${requests.size} operations: ${requests.map(_.operationName.getOrElse("")).mkString(", ")}")
+      val shared = queries(requesterId, requesterOrgId)
+      complete(batchResponse(requests) { request ⇒
+        batched(request, ExchangeCtx(shared, Some(mutations(requesterId, requesterOrgId)), cardinalities = cardinalities.get), requesterOrgId)
+      })
+    }
+
+    val subscriptionsSocket = new ExchangeSubscriptionsSocket(changes, queries)
+
+    val route: Route =
+      (post & path("graphql") & optionalHeaderValueByName("requesterId") & optionalHeaderValueByName("organizationId") &
+        optionalHeaderValueByName("If-None-Match") & optionalHeaderValueByName("Accept")) {
+        (requesterId, requesterOrgId, ifNoneMatch, accept) =>
+          import de.heikoseeberger.akkahttpcirce.FailFastCirceSupport._
+
+          entity(as[Json]) { body ⇒
+            operations(body)(single(_, requesterId, requesterOrgId, ifNoneMatch, accept))(batch(_, requesterId, requesterOrgId))
           }
       } ~
+        (get & path("graphql") & optionalHeaderValueByName("requesterId") & optionalHeaderValueByName("organizationId")) {
+          (requesterId, requesterOrgId) =>
+            log.info(s"requesterId: $requesterId, requesterOrgId: $requesterOrgId, subscriptions over WebSocket")
+            handleWebSocketMessagesForProtocol(subscriptionsSocket.flow(requesterId, requesterOrgId), ExchangeSubscriptionsSocket.Protocol)
+        } ~
         (get & path("schema")) {
           complete(OK, SchemaRenderer.renderSchema(SchemaDefinition.ExchangeSchema))
         } ~
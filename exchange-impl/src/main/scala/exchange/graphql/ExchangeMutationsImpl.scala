@@ -10,7 +10,13 @@
  */
 package exchange.graphql
 
-import scala.concurrent.Promise
+import scala.concurrent.duration._
+import scala.concurrent.{ExecutionContext, Future, Promise, TimeoutException}
+import scala.util.Success
+import scala.util.control.NonFatal
+import akka.actor.Scheduler
+import akka.pattern.after
+import akka.stream.QueueOfferResult
 import akka.stream.scaladsl.SourceQueue
 
 import microservice._
@@ -25,17 +31,36 @@ import exchange.api.provider._
 import exchange.api.semantics._
 import exchange.api.subscription._
 
+case class BulkTooLarge(size: Int, maxSize: Int)
+  extends Exception(s"Bulk of $size commands exceeds the maximum of $maxSize")
+
 class ExchangeMutationsImpl(requesterId: Option[Id], organizationId: Option[Id],
-                            commands: CommandQueues, pending: SourceQueue[PendingRequest]) extends ExchangeMutations {
+                            commands: CommandQueues, pending: SourceQueue[PendingRequest], scheduler: Scheduler)
+                           (implicit ec: ExecutionContext) extends ExchangeMutations {
+  import ExchangeMutationsImpl._
 
   val meta = Meta(requesterId, organizationId)
 
-  private def promise[E] = {
+  private def promise[E]: Future[E] = promise[E](meta)
+
+  private def promise[E](meta: Meta): Future[E] = {
     val promise = Promise[E]
-    pending.offer(PendingRequest(meta.requestId, promise.asInstanceOf[Promise[Entity]]))
+    // a request which is not pending is never answered
+    pending.offer(PendingRequest(meta.requestId, promise.asInstanceOf[Promise[Entity]])) onComplete {
+      case Success(QueueOfferResult.Enqueued) =>
+      case result => promise.tryFailure(new IllegalStateException(s"request ${meta.requestId} not pending: $result"))
+    }
     promise.future
   }
 
+  // each command of a bulk mutation is sent with its own request id
+  private def bulk[C, E](cmds: List[C])(offer: (C, Meta) => Unit): Future[(List[E], List[BulkError])] =
+    ExchangeMutationsImpl.bulk[C, E](cmds, maxBulkSize, bulkCommandTimeout, scheduler) { cmd =>
+      val meta = Meta(requesterId, organizationId)
+      offer(cmd, meta)
+      promise[E](meta)
+    }
+
   def createOfferingCategory(cmd: CreateOfferingCategory) = {
     commands.semantics.offer(cmd.copy(meta = meta))
     promise[OfferingCategory]
@@ -121,6 +146,11 @@ class ExchangeMutationsImpl(requesterId: Option[Id], organizationId: Option[Id],
     promise[Offering]
   }
 
+  def addOfferings(cmds: AddOfferings) =
+    bulk[AddOffering, Offering](cmds.offerings) { (cmd, meta) =>
+      commands.provider.offer(cmd.copy(meta = meta))
+    } map { case (offerings, errors) => OfferingsResult(offerings, errors) }
+
   def deleteOffering(cmd: DeleteOffering) = {
     commands.offering.offer(cmd.copy(meta = meta))
     promise[DeletedEntity]
@@ -136,6 +166,12 @@ class ExchangeMutationsImpl(requesterId: Option[Id], organizationId: Option[Id],
     promise[Offering]
   }
 
+  def changeOfferingsActivation(cmds: ChangeOfferingsActivation) =
+    bulk[OfferingId, Offering](cmds.ids) { (id, meta) =>
+      if (cmds.status) commands.offering.offer(ActivateOffering(id, cmds.expirationTime, meta))
+      else commands.offering.offer(DeactivateOffering(id, meta))
+    } map { case (offerings, errors) => OfferingsResult(offerings, errors) }
+
   def changeOfferingName(cmd: ChangeOfferingName) = {
     commands.offering.offer(cmd.copy(meta = meta))
     promise[Offering]
@@ -236,6 +272,11 @@ def subscribeQueryToOffering(cmd: SubscribeQueryToOffering) = {
     promise[QueryToOfferingSubscription]
   }
 
+  def subscribeQueryToOfferings(cmds: SubscribeQueryToOfferings) =
+    bulk[Id, QueryToOfferingSubscription](cmds.offeringIds) { (offeringId, meta) =>
+      commands.query.offer(SubscribeQueryToOffering(cmds.id, offeringId, meta))
+    } map { case (subscriptions, errors) => QueryToOfferingSubscriptionsResult(subscriptions, errors) }
+
   def unsubscribeQueryFromOffering(cmd: UnsubscribeQueryFromOffering) = {
     commands.query.offer(cmd.copy(meta = meta))
     promise[QueryToOfferingSubscription]
@@ -292,3 +333,21 @@ def subscribeQueryToOffering(cmd: SubscribeQueryToOffering) = {
   }
 }
 
+object ExchangeMutationsImpl {
+  val maxBulkSize = sys.env.getOrElse("GRAPHQL_MAX_BULK_SIZE", "100").toInt
+  val bulkCommandTimeout = sys.env.getOrElse("GRAPHQL_BULK_COMMAND_TIMEOUT_SECONDS", "60").toInt.seconds
+
+  // the commands of a bulk mutation are sent at once and succeed or fail on their own, a command which cannot be sent
+  // or is not answered within the timeout fails at its index instead of holding up the whole mutation
+  def bulk[C, E](cmds: List[C], maxSize: Int, timeout: FiniteDuration, scheduler: Scheduler)(send: C => Future[E])
+                (implicit ec: ExecutionContext): Future[(List[E], List[BulkError])] =
+    if (cmds.size > maxSize) Future.failed(BulkTooLarge(cmds.size, maxSize))
+    else Future.sequence(cmds.zipWithIndex map { case (cmd, index) =>
+      val sent = try send(cmd) catch { case NonFatal(e) => Future.failed(e) }
+      val answered = Future.firstCompletedOf(List(sent,
+        after(timeout, scheduler)(Future.failed(new TimeoutException(s"no answer within $timeout")))))
+      answered.map[Either[BulkError, E]](Right(_)) recover { case e => Left(BulkError(index, e.getMessage)) }
+    }) map { results =>
+      (results collect { case Right(entity) => entity }, results collect { case Left(error) => error })
+    }
+}
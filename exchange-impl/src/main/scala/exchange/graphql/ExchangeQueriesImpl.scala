@@ -10,6 +10,8 @@
  */
 package exchange.graphql
 
+import scala.concurrent.{ExecutionContext, Future}
+
 import io.funcqrs.AggregateId
 import microservice._
 import microservice.entity.Id
@@ -25,10 +27,11 @@ import exchange.api.price._
 import exchange.api.provider.ProviderId
 import exchange.api.semantics._
 import exchange.api.subscription.{SubscriptionId, Subscriptions}
-import exchange.repo.{ExchangeRepoQueries, ExchangeSemanticRepo}
+import exchange.repo.{ExchangeRepoQueries, ExchangeSemanticRepo, Projection}
 
 class ExchangeQueriesImpl(requesterId: Option[String], requesterOrgId: Option[OrganizationId],
-                          queryRepo: ExchangeRepoQueries, semanticRepo: ExchangeSemanticRepo) extends ExchangeQueries {
+                          queryRepo: ExchangeRepoQueries, semanticRepo: ExchangeSemanticRepo)
+                         (implicit ec: ExecutionContext) extends ExchangeQueries {
   def allCurrencies = currencies
 
   def allPricingModels = pricingModels
@@ -51,13 +54,9 @@ class ExchangeQueriesImpl(requesterId: Option[String], requesterOrgId: Option[Or
 
   def allDataTypes = RdfAnnotations(semanticRepo.allDataTypes)
 
-  def allOrganizations = queryRepo.allOrganizations
-
-  def myOrganization = my(queryRepo.organization, None)
-
-  def organization(id: Id) = queryRepo.organization(id)
+  def allOrganizations(projection: Projection) = queryRepo.allOrganizations(projection)
 
-  def provider(id: Id) = authorize(queryRepo.provider, ProviderId(id), None)
+  def myOrganization(projection: Projection) = my(queryRepo.organization(_, projection), None)
 
   def myProviders(offeringCategoryUri: Option[String]) =
     my(queryRepo.providersForOrganization(offeringCategoryUri), Nil)
@@ -71,14 +70,9 @@ class ExchangeQueriesImpl(requesterId: Option[String], requesterOrgId: Option[Or
   def offeringsForOrganization(organizationId: Id, offeringCategoryUri: Option[String], onlyActive: Option[Boolean]) =
     queryRepo.offeringsForOrganization(offeringCategoryUri, onlyActive)(organizationId) filter accessControl
 
-  def offering(id: Id) = queryRepo.offering(id) filter accessControl
-
-  def matchingOfferings(queryId: Id) =
-    authorize(semanticRepo.matchingOfferingIds, OfferingQueryId(queryId), Nil).flatMap(offering(_).toList) filter accessControl
-
-  def consumer(id: Id) = authorize(queryRepo.consumer, ConsumerId(id), None)
+  def consumer(id: Id, projection: Projection) = authorize(queryRepo.consumer(_: ConsumerId, projection), ConsumerId(id), None)
 
-  def myConsumers = my(queryRepo.consumersForOrganization, Nil)
+  def myConsumers(projection: Projection) = my(queryRepo.consumersForOrganization(_, projection), Nil)
 
   def offeringQuery(id: Id) = authorize(queryRepo.offeringQuery, OfferingQueryId(id), None)
 
@@ -88,6 +82,18 @@ class ExchangeQueriesImpl(requesterId: Option[String], requesterOrgId: Option[Or
 
   def subscription(id: SubscriptionId) = authorize(queryRepo.subscription, id, None)
 
+  def organizations(ids: Seq[OrganizationId], projection: Projection) = queryRepo.organizations(ids, projection)
+
+  def providers(ids: Seq[ProviderId], projection: Projection) = queryRepo.providers(ids, projection)
+
+  def offerings(ids: Seq[OfferingId]) = queryRepo.offerings(ids) filter accessControl
+
+  def matchingOfferingIds(queryId: Id) =
+    authorize((id: OfferingQueryId) => semanticRepo.matchingOfferingIdsAsync(id), OfferingQueryId(queryId), Future.successful(Nil))
+      .map(_ map (OfferingId(_)))
+
+  def executionContext = ec
+
   // helper
   private def authorize[I <: AggregateId, T](f: I => T, id: I, empty: T) =
 //    if (hasWrongOrganization(requesterId, requesterOrgId.map(_.value), id))
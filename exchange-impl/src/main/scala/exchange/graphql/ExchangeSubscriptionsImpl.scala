@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.graphql
+
+import scala.concurrent.{ExecutionContext, Future}
+
+import microservice._
+import microservice.entity.Id
+
+import exchange.api.{ExchangeQueries, ExchangeSubscriptions}
+import exchange.api.consumer.ConsumerDeleted
+import exchange.api.offering._
+import exchange.api.offeringquery.{OfferingMatches, OfferingQueryEvent, OfferingQueryId}
+import exchange.api.provider.ProviderDeleted
+import exchange.api.semantics.SemanticsEvent
+
+/** State of one started subscription. The executions of its document are sequential, each one sees the events
+  * applied since the one before and pushes the difference to what was pushed so far.
+  */
+class ExchangeSubscriptionsImpl(queries: ExchangeQueries)(implicit ec: ExecutionContext) extends ExchangeSubscriptions {
+  // None before the first execution, which pushes the current state
+  @volatile private var changes: Option[Seq[Event]] = None
+  @volatile private var matches = Map.empty[Id, Set[OfferingId]]
+  // offerings pushed as existing, deleting their provider deletes them without events of their own
+  @volatile private var existing = Set.empty[Id]
+
+  def changed(events: Seq[Event]) = changes = Some(events)
+
+  private def changedOfferings = changes.getOrElse(Nil) collect { case event: OfferingEvent => event.id.value }
+
+  private def providerDeleted = changes exists (_ exists (_.isInstanceOf[ProviderDeleted]))
+
+  def offeringMatched(queryId: Id) = {
+    // changes of any offering or of the semantics may change the matches, of the queries only changes of this one,
+    // deleted providers and consumers take their offerings and queries along
+    val relevant = changes forall (_ exists {
+      case _: OfferingEvent | _: SemanticsEvent | _: ProviderDeleted | _: ConsumerDeleted => true
+      case event: OfferingQueryEvent => event.id.value == queryId
+      case _ => false
+    })
+    if (!relevant) Future.successful(None)
+    else queries.matchingOfferingIds(queryId) flatMap { ids =>
+      val previous = matches.getOrElse(queryId, Set.empty)
+      val changedIds = changedOfferings.toSet
+      matches += queryId -> ids.toSet
+
+      val matched = ids filter (id => !previous(id) || changedIds(id.value))
+      val unmatched = (previous -- ids).toList
+      if (changes.isDefined && matched.isEmpty && unmatched.isEmpty) Future.successful(None)
+      else Future(Some(OfferingMatches(OfferingQueryId(queryId), queries.offerings(matched).toList, unmatched)))
+    }
+  }
+
+  def offeringChanged(id: Id) = {
+    val changedOffering = changes.isEmpty || (changedOfferings contains id)
+    if (!changedOffering && !(providerDeleted && existing(id))) None
+    else {
+      val offering = queries.offerings(Seq(OfferingId(id))).headOption
+      existing = if (offering.isDefined) existing + id else existing - id
+      if (changedOffering || offering.isEmpty) Some(OfferingChange(OfferingId(id), offering)) else None
+    }
+  }
+}
+
+object ExchangeSubscriptionsImpl {
+  // events which may concern a subscription field, other ones do not execute the subscriptions at all
+  def concerns(event: Event) = event match {
+    case _: OfferingEvent | _: OfferingQueryEvent | _: SemanticsEvent | _: ProviderDeleted | _: ConsumerDeleted => true
+    case _ => false
+  }
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.graphql
+
+import scala.collection.concurrent.TrieMap
+import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.duration._
+import scala.util.{Failure, Success}
+import akka.NotUsed
+import akka.http.scaladsl.model.ws.{BinaryMessage, Message, TextMessage}
+import akka.stream.scaladsl.{Flow, Sink, Source}
+import akka.stream.{ActorMaterializer, BufferOverflowException, KillSwitch, KillSwitches, OverflowStrategy}
+
+import io.circe.Json
+import io.circe.generic.auto._
+import io.circe.parser.decode
+import org.slf4j.LoggerFactory
+import sangria.ast
+import sangria.execution.Executor
+import sangria.marshalling.circe._
+import sangria.validation.QueryValidator
+
+import exchange.api.ExchangeQueries
+import exchange.schema.{ExchangeCtx, SchemaDefinition}
+
+case class OperationMessage(`type`: String, id: Option[String] = None, payload: Option[Json] = None) {
+  def json = Json.fromFields(Seq("type" -> Json.fromString(`type`)) ++ id.map("id" -> Json.fromString(_)) ++ payload.map("payload" -> _))
+}
+
+/** GraphQL subscriptions over WebSocket with the graphql-ws protocol of the Apollo clients (subscriptions-transport-ws).
+  * A started subscription executes its document once for the current state and again for each batch of changes
+  * of the ExchangeView which may concern it, and pushes a result whenever its field has news. Changes queue up per
+  * subscription while its previous result is executed or sent; a subscription which falls behind by more than
+  * bufferSize changes fails with an error and has to be started again.
+  */
+class ExchangeSubscriptionsSocket(changes: ViewChanges, queriesFor: (Option[String], Option[String]) => ExchangeQueries)
+                                 (implicit mat: ActorMaterializer) {
+  import ExchangeSubscriptionsSocket._
+
+  val bufferSize = sys.env.getOrElse("GRAPHQL_SUBSCRIPTION_BUFFER_SIZE", "1000").toInt
+  val maxSubscriptions = sys.env.getOrElse("GRAPHQL_SUBSCRIPTIONS_PER_CONNECTION", "100").toInt
+  val keepAlive = sys.env.getOrElse("GRAPHQL_WEBSOCKET_KEEP_ALIVE_SECONDS", "30").toInt.seconds
+
+  def flow(requesterId: Option[String], requesterOrgId: Option[String]): Flow[Message, Message, NotUsed] = {
+    val connection = KillSwitches.shared("ExchangeSubscriptionsSocket")
+    val running = TrieMap.empty[String, KillSwitch]
+
+    Flow[Message]
+      .mapAsync(1) {
+        case message: TextMessage => message.textStream.runFold("")(_ + _) map (Some(_))
+        case message: BinaryMessage => message.dataStream.runWith(Sink.ignore) map (_ => None)
+      }
+      .collect { case Some(text) => decode[OperationMessage](text) }
+      .alsoTo(Sink.onComplete(_ => connection.shutdown()))
+      .flatMapMerge(maxSubscriptions, {
+        case Right(OperationMessage(ConnectionInit, _, _)) =>
+          Source.single(OperationMessage(ConnectionAck))
+
+        case Right(OperationMessage(Start, Some(id), Some(payload))) =>
+          payload.as[GraphQLRequest] match {
+            case Right(request) =>
+              running.remove(id) foreach (_.shutdown())
+              subscription(id, request, queriesFor(requesterId, requesterOrgId))
+                .viaMat(KillSwitches.single[OperationMessage])((_, killSwitch) => running.put(id, killSwitch))
+                .concat(Source.single(OperationMessage(Complete, Some(id))))
+                .mapMaterializedValue(_ => NotUsed)
+            case Left(error) =>
+              Source.single(errorMessage(Some(id), error.getMessage))
+          }
+
+        case Right(OperationMessage(Stop, Some(id), _)) =>
+          running.remove(id) foreach (_.shutdown())
+          Source.empty
+
+        case Right(OperationMessage(ConnectionTerminate, _, _)) =>
+          connection.shutdown()
+          Source.empty
+
+        case Right(message) =>
+          Source.single(errorMessage(message.id, s"unexpected message ${message.`type`}"))
+        case Left(error) =>
+          Source.single(OperationMessage(ConnectionError, payload = Some(Json.obj("message" -> Json.fromString(error.getMessage)))))
+      })
+      .merge(Source.tick(keepAlive, keepAlive, OperationMessage(KeepAlive)), eagerComplete = true)
+      .via(connection.flow)
+      .map(message => TextMessage(message.json.noSpaces))
+  }
+
+  private def subscription(id: String, request: GraphQLRequest, queries: ExchangeQueries): Source[OperationMessage, NotUsed] =
+    ExchangeGraphQlEndpoint.queryCache.document(request.query, request.persistedQueryHash) match {
+      case Success(document) if isSubscription(document.document, request.operationName) =>
+        log.info(s"starting subscription $id, operation: ${request.operationName}")
+        val subscriptions = new ExchangeSubscriptionsImpl(queries)
+        // subscription operations have no access to mutations
+        val ctx = ExchangeCtx(queries, None, subscriptions)
+
+        changes.source
+          .filter(ExchangeSubscriptionsImpl.concerns)
+          .buffer(bufferSize, OverflowStrategy.fail)
+          .batch(bufferSize, Vector(_))(_ :+ _)
+          .map(Some(_))
+          .prepend(Source.single(None))
+          .mapAsync(1) { events =>
+            events foreach subscriptions.changed
+            Executor.execute(SchemaDefinition.ExchangeSchema, document.document, ctx,
+              variables = request.variables.getOrElse(Json.obj()), operationName = request.operationName,
+              exceptionHandler = ExchangeGraphQlEndpoint.exceptionHandler, deferredResolver = SchemaDefinition.ExchangeResolver,
+              queryReducers = ExchangeGraphQlEndpoint.queryReducers,
+              queryValidator = if (document.validated) QueryValidator.empty else QueryValidator.default)
+          }
+          .filter(hasNews)
+          .map(result => OperationMessage(Data, Some(id), Some(result)))
+          .recover {
+            case _: BufferOverflowException =>
+              log.warn(s"subscription $id fell behind by more than $bufferSize changes")
+              errorMessage(Some(id), s"subscription fell behind by more than $bufferSize changes, start it again")
+            case error =>
+              errorMessage(Some(id), error.getMessage)
+          }
+
+      case Success(_) =>
+        Source.single(errorMessage(Some(id), "only subscription operations can be started, send queries and mutations with POST"))
+      case Failure(error) =>
+        Source.single(errorMessage(Some(id), error.getMessage))
+    }
+}
+
+object ExchangeSubscriptionsSocket {
+  val log = LoggerFactory.getLogger(this.getClass)
+
+  val Protocol = "graphql-ws"
+
+  // client messages
+  val ConnectionInit = "connection_init"
+  val Start = "start"
+  val Stop = "stop"
+  val ConnectionTerminate = "connection_terminate"
+
+  // server messages
+  val ConnectionAck = "connection_ack"
+  val ConnectionError = "connection_error"
+  val KeepAlive = "ka"
+  val Data = "data"
+  val Error = "error"
+  val Complete = "complete"
+
+  def errorMessage(id: Option[String], message: String) =
+    OperationMessage(Error, id, Some(Json.obj("message" -> Json.fromString(message))))
+
+  def isSubscription(document: ast.Document, operationName: Option[String]) =
+    document.operation(operationName) exists (_.operationType == ast.OperationType.Subscription)
+
+  // a result is pushed if its field resolved to something or the execution reported errors
+  def hasNews(result: Json) =
+    result.asObject exists { fields =>
+      fields.contains("errors") || (fields("data") flatMap (_.asObject) exists (_.values exists (!_.isNull)))
+    }
+}
@@ -30,7 +30,8 @@ import exchange.api.subscription._
 import exchange.model.vocabs.BIGIOT
 import exchange.repo.{ExchangeRepoMutations, ExchangeRepoQueries, ExchangeSemanticRepo}
 
-case class ExchangeView(allMutationRepos: Seq[ExchangeRepoMutations], queryRepo: ExchangeRepoQueries, semanticRepo: ExchangeSemanticRepo)
+case class ExchangeView(allMutationRepos: Seq[ExchangeRepoMutations], queryRepo: ExchangeRepoQueries, semanticRepo: ExchangeSemanticRepo,
+                        versions: ViewVersions = new ViewVersions, changes: Option[ViewChanges] = None)
                        (implicit system: ActorSystem, mat: ActorMaterializer) extends GraphStage[FlowShape[EventEnvelope2, CompletedRequest]] {
   val in = Inlet[EventEnvelope2]("ExchangeView.in")
   val out = Outlet[CompletedRequest]("ExchangeView.out")
@@ -44,122 +45,15 @@ case class ExchangeView(allMutationRepos: Seq[ExchangeRepoMutations], queryRepo:
       setHandler(shape.in, new InHandler {
         def updateRepos(event: Event) =
           try {
-            event match {
-              case ev: OfferingCategoryCreated =>
-                semanticRepo.offeringCategoryCreated(ev)
-              case ev: OfferingCategoryDeprecated =>
-                semanticRepo.offeringCategoryDeprecated(ev)
-              case ev: OfferingCategoryUndeprecated =>
-                semanticRepo.offeringCategoryUndeprecated(ev)
-              case ev: OfferingCategoryNameChanged =>
-                semanticRepo.offeringCategoryNameChanged(ev)
-              case ev: OfferingCategoryParentChanged =>
-                semanticRepo.offeringCategoryParentChanged(ev)
-
-              case ev: InputTypeAddedToOfferingCategory =>
-                semanticRepo.inputTypeAddedToOfferingCategory(ev)
-              case ev: InputTypeDeprecatedForOfferingCategory =>
-                semanticRepo.inputTypeDeprecatedForOfferingCategory(ev)
-              case ev: InputTypeUndeprecatedForOfferingCategory =>
-                semanticRepo.inputTypeUndeprecatedForOfferingCategory(ev)
-
-              case ev: OutputTypeAddedToOfferingCategory =>
-                semanticRepo.outputTypeAddedToOfferingCategory(ev)
-              case ev: OutputTypeDeprecatedForOfferingCategory =>
-                semanticRepo.outputTypeDeprecatedForOfferingCategory(ev)
-              case ev: OutputTypeUndeprecatedForOfferingCategory =>
-                semanticRepo.outputTypeUndeprecatedForOfferingCategory(ev)
-
-              case ev: OrganizationCreated =>
-                mutationRepos.foreach(_.organizationCreated(ev))
-              case ev: OrganizationNameChanged =>
-                mutationRepos.foreach(_.organizationNameChanged(ev))
-
-              case ev: ProviderCreated =>
-                mutationRepos.foreach(_.providerCreated(ev))
-              case ev: ProviderDeleted =>
-                mutationRepos.foreach(_.providerDeleted(ev))
-              case ev: ProviderNameChanged =>
-                mutationRepos.foreach(_.providerNameChanged(ev))
-
-              case ev: ConsumerCreated =>
-                mutationRepos.foreach(_.consumerCreated(ev))
-              case ev: ConsumerDeleted =>
-                mutationRepos.foreach(_.consumerDeleted(ev))
-              case ev: ConsumerNameChanged =>
-                mutationRepos.foreach(_.consumerNameChanged(ev))
-
-              case ev: OfferingCreated =>
-                mutationRepos.foreach(_.offeringCreated(ev))
-              case ev: OfferingDeleted =>
-                mutationRepos.foreach(_.offeringDeleted(ev))
-              case ev: OfferingNameChanged =>
-                mutationRepos.foreach(_.offeringNameChanged(ev))
-              case ev: OfferingCategoryChanged =>
-                mutationRepos.foreach(_.offeringCategoryChanged(ev))
-              case ev: OfferingEndpointsChanged =>
-                mutationRepos.foreach(_.offeringEndpointsChanged(ev))
-              case ev: OfferingAccessWhiteListChanged =>
-                mutationRepos.foreach(_.offeringAccessWhiteListChanged(ev))
-              case ev: OfferingInputsChanged =>
-                mutationRepos.foreach(_.offeringInputDataChanged(ev))
-              case ev: OfferingOutputsChanged =>
-                mutationRepos.foreach(_.offeringOutputDataChanged(ev))
-              case ev: OfferingExtension1Changed =>
-                mutationRepos.foreach(_.offeringExtension1Changed(ev))
-              case ev: OfferingExtension2Changed =>
-                mutationRepos.foreach(_.offeringExtension2Changed(ev))
-              case ev: OfferingExtension3Changed =>
-                mutationRepos.foreach(_.offeringExtension3Changed(ev))
-              case ev: OfferingSpatialExtentChanged =>
-                mutationRepos.foreach(_.offeringSpatialExtentChanged(ev))
-              case ev: OfferingTemporalExtentChanged =>
-                mutationRepos.foreach(_.offeringTemporalExtentChanged(ev))
-              case ev: OfferingLicenseChanged =>
-                mutationRepos.foreach(_.offeringLicenseChanged(ev))
-              case ev: OfferingPriceChanged =>
-                mutationRepos.foreach(_.offeringPriceChanged(ev))
-              case ev: OfferingActivated =>
-                mutationRepos.foreach(_.offeringActivated(ev))
-              case ev: OfferingDeactivated =>
-                mutationRepos.foreach(_.offeringDeactivated(ev))
-
-              case ev: OfferingQueryCreated =>
-                mutationRepos.foreach(_.offeringQueryCreated(ev))
-              case ev: OfferingQueryDeleted =>
-                mutationRepos.foreach(_.offeringQueryDeleted(ev))
-              case ev: OfferingQueryNameChanged =>
-                mutationRepos.foreach(_.offeringQueryNameChanged(ev))
-              case ev: OfferingQueryCategoryChanged =>
-                mutationRepos.foreach(_.offeringQueryCategoryChanged(ev))
-              case ev: OfferingQueryInputsChanged =>
-                mutationRepos.foreach(_.offeringQueryInputDataChanged(ev))
-              case ev: OfferingQueryOutputsChanged =>
-                mutationRepos.foreach(_.offeringQueryOutputDataChanged(ev))
-              case ev: OfferingQuerySpatialExtentChanged =>
-                mutationRepos.foreach(_.offeringQuerySpatialExtentChanged(ev))
-              case ev: OfferingQueryTemporalExtentChanged =>
-                mutationRepos.foreach(_.offeringQueryTemporalExtentChanged(ev))
-              case ev: OfferingQueryLicenseChanged =>
-                mutationRepos.foreach(_.offeringQueryLicenseChanged(ev))
-              case ev: OfferingQueryPriceChanged =>
-                mutationRepos.foreach(_.offeringQueryPriceChanged(ev))
-
-              case ev: SubscriptionCreated =>
-                mutationRepos.foreach(_.subscriptionCreated(ev))
-              case ev: SubscriptionDeleted =>
-                mutationRepos.foreach(_.subscriptionDeleted(ev))
-
-              case ev: Unchanged =>
-              // ignore
-              case ev if event.meta.delay > 0 =>
-              // don't log delayed events
-
-              case ev =>
-                log.debug(s"ignoring $ev")
-            }
+            if (ExchangeView.updateRepos(event, semanticRepo, mutationRepos)) {
+              versions.updated(event)
+              if (!recovering) changes foreach (_.published(event))
+            } else
+              log.debug(s"ignoring $event")
           } catch {
             case e: Throwable =>
+              // the repos may be partially updated
+              versions.updated(event)
               log.error(s"Exception thrown in updateRepos: ${e.getMessage}")
               e.getStackTrace foreach { element => log.error("   " + element.toString)}
           }
@@ -221,3 +115,123 @@ case class ExchangeView(allMutationRepos: Seq[ExchangeRepoMutations], queryRepo:
     }
 
 }
+
+object ExchangeView {
+
+  /** Applies an event to the repos, returns false for events which are not handled by them */
+  def updateRepos(event: Event, semanticRepo: ExchangeSemanticRepo, mutationRepos: Seq[ExchangeRepoMutations]): Boolean = {
+    val update: PartialFunction[Event, Unit] = {
+      case ev: OfferingCategoryCreated =>
+        semanticRepo.offeringCategoryCreated(ev)
+      case ev: OfferingCategoryDeprecated =>
+        semanticRepo.offeringCategoryDeprecated(ev)
+      case ev: OfferingCategoryUndeprecated =>
+        semanticRepo.offeringCategoryUndeprecated(ev)
+      case ev: OfferingCategoryNameChanged =>
+        semanticRepo.offeringCategoryNameChanged(ev)
+      case ev: OfferingCategoryParentChanged =>
+        semanticRepo.offeringCategoryParentChanged(ev)
+
+      case ev: InputTypeAddedToOfferingCategory =>
+        semanticRepo.inputTypeAddedToOfferingCategory(ev)
+      case ev: InputTypeDeprecatedForOfferingCategory =>
+        semanticRepo.inputTypeDeprecatedForOfferingCategory(ev)
+      case ev: InputTypeUndeprecatedForOfferingCategory =>
+        semanticRepo.inputTypeUndeprecatedForOfferingCategory(ev)
+
+      case ev: OutputTypeAddedToOfferingCategory =>
+        semanticRepo.outputTypeAddedToOfferingCategory(ev)
+      case ev: OutputTypeDeprecatedForOfferingCategory =>
+        semanticRepo.outputTypeDeprecatedForOfferingCategory(ev)
+      case ev: OutputTypeUndeprecatedForOfferingCategory =>
+        semanticRepo.outputTypeUndeprecatedForOfferingCategory(ev)
+
+      case ev: OrganizationCreated =>
+        mutationRepos.foreach(_.organizationCreated(ev))
+      case ev: OrganizationNameChanged =>
+        mutationRepos.foreach(_.organizationNameChanged(ev))
+
+      case ev: ProviderCreated =>
+        mutationRepos.foreach(_.providerCreated(ev))
+      case ev: ProviderDeleted =>
+        mutationRepos.foreach(_.providerDeleted(ev))
+      case ev: ProviderNameChanged =>
+        mutationRepos.foreach(_.providerNameChanged(ev))
+
+      case ev: ConsumerCreated =>
+        mutationRepos.foreach(_.consumerCreated(ev))
+      case ev: ConsumerDeleted =>
+        mutationRepos.foreach(_.consumerDeleted(ev))
+      case ev: ConsumerNameChanged =>
+        mutationRepos.foreach(_.consumerNameChanged(ev))
+
+      case ev: OfferingCreated =>
+        mutationRepos.foreach(_.offeringCreated(ev))
+      case ev: OfferingDeleted =>
+        mutationRepos.foreach(_.offeringDeleted(ev))
+      case ev: OfferingNameChanged =>
+        mutationRepos.foreach(_.offeringNameChanged(ev))
+      case ev: OfferingCategoryChanged =>
+        mutationRepos.foreach(_.offeringCategoryChanged(ev))
+      case ev: OfferingEndpointsChanged =>
+        mutationRepos.foreach(_.offeringEndpointsChanged(ev))
+      case ev: OfferingAccessWhiteListChanged =>
+        mutationRepos.foreach(_.offeringAccessWhiteListChanged(ev))
+      case ev: OfferingInputsChanged =>
+        mutationRepos.foreach(_.offeringInputDataChanged(ev))
+      case ev: OfferingOutputsChanged =>
+        mutationRepos.foreach(_.offeringOutputDataChanged(ev))
+      case ev: OfferingExtension1Changed =>
+        mutationRepos.foreach(_.offeringExtension1Changed(ev))
+      case ev: OfferingExtension2Changed =>
+        mutationRepos.foreach(_.offeringExtension2Changed(ev))
+      case ev: OfferingExtension3Changed =>
+        mutationRepos.foreach(_.offeringExtension3Changed(ev))
+      case ev: OfferingSpatialExtentChanged =>
+        mutationRepos.foreach(_.offeringSpatialExtentChanged(ev))
+      case ev: OfferingTemporalExtentChanged =>
+        mutationRepos.foreach(_.offeringTemporalExtentChanged(ev))
+      case ev: OfferingLicenseChanged =>
+        mutationRepos.foreach(_.offeringLicenseChanged(ev))
+      case ev: OfferingPriceChanged =>
+        mutationRepos.foreach(_.offeringPriceChanged(ev))
+      case ev: OfferingActivated =>
+        mutationRepos.foreach(_.offeringActivated(ev))
+      case ev: OfferingDeactivated =>
+        mutationRepos.foreach(_.offeringDeactivated(ev))
+
+      case ev: OfferingQueryCreated =>
+        mutationRepos.foreach(_.offeringQueryCreated(ev))
+      case ev: OfferingQueryDeleted =>
+        mutationRepos.foreach(_.offeringQueryDeleted(ev))
+      case ev: OfferingQueryNameChanged =>
+        mutationRepos.foreach(_.offeringQueryNameChanged(ev))
+      case ev: OfferingQueryCategoryChanged =>
+        mutationRepos.foreach(_.offeringQueryCategoryChanged(ev))
+      case ev: OfferingQueryInputsChanged =>
+        mutationRepos.foreach(_.offeringQueryInputDataChanged(ev))
+      case ev: OfferingQueryOutputsChanged =>
+        mutationRepos.foreach(_.offeringQueryOutputDataChanged(ev))
+      case ev: OfferingQuerySpatialExtentChanged =>
+        mutationRepos.foreach(_.offeringQuerySpatialExtentChanged(ev))
+      case ev: OfferingQueryTemporalExtentChanged =>
+        mutationRepos.foreach(_.offeringQueryTemporalExtentChanged(ev))
+      case ev: OfferingQueryLicenseChanged =>
+        mutationRepos.foreach(_.offeringQueryLicenseChanged(ev))
+      case ev: OfferingQueryPriceChanged =>
+        mutationRepos.foreach(_.offeringQueryPriceChanged(ev))
+
+      case ev: SubscriptionCreated =>
+        mutationRepos.foreach(_.subscriptionCreated(ev))
+      case ev: SubscriptionDeleted =>
+        mutationRepos.foreach(_.subscriptionDeleted(ev))
+
+      case ev: Unchanged =>
+      // ignore
+      case ev if ev.meta.delay > 0 =>
+      // don't log delayed events
+    }
+    update.lift(event).isDefined
+  }
+
+}
@@ -0,0 +1,277 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.graphql
+
+import scala.collection.concurrent.TrieMap
+import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.Future
+import akka.NotUsed
+import akka.http.scaladsl.model.{ContentType, MediaTypes}
+import akka.stream.scaladsl.Source
+import akka.util.ByteString
+
+import io.circe.Json
+import sangria.ast
+import sangria.execution.{BeforeFieldResult, Middleware, MiddlewareAfterField, MiddlewareQueryContext}
+import sangria.schema.{Context, ListType, ObjectLikeType, OptionType, OutputType, Value}
+
+import exchange.schema.{ExchangeCtx, SchemaDefinition}
+
+case class Deferred(label: Option[String], path: Vector[String], document: ast.Document)
+case class Streamed(key: String, label: Option[String], path: Vector[String], initialCount: Int, document: ast.Document)
+
+/** A query operation split by its @defer and @stream directives: the initial document without the deferred fragments
+  * and with the streamed lists cut to their initial count, and one document per deferred fragment or streamed list
+  * which selects only the path to it.
+  */
+case class IncrementalPlan(initial: ast.Document, deferred: Vector[Deferred], streamed: Vector[Streamed])
+
+/** Cuts the lists of the streamed fields of an execution to a slice. All executions of a result slice the list the
+  * first of them resolved, so the chunks of a list neither miss nor repeat elements while the view changes, and the
+  * executions after the first one take their slice without resolving the list again.
+  */
+class StreamSlices(lists: TrieMap[String, Seq[Any]], slices: Map[String, (Int, Int)]) extends MiddlewareAfterField[ExchangeCtx] {
+  type QueryVal = Unit
+  type FieldVal = Unit
+
+  def beforeQuery(context: MiddlewareQueryContext[ExchangeCtx, _, _]) = ()
+
+  def afterQuery(queryVal: QueryVal, context: MiddlewareQueryContext[ExchangeCtx, _, _]) = ()
+
+  def beforeField(queryVal: QueryVal, mctx: MiddlewareQueryContext[ExchangeCtx, _, _], ctx: Context[ExchangeCtx, _]) =
+    slice(ctx) flatMap { case (key, (from, until)) => lists.get(key) map (_.slice(from, until)) } match {
+      case Some(list) =>
+        val value = ctx.field.fieldType match {
+          case _: OptionType[_] => Some(list)
+          case _ => list
+        }
+        BeforeFieldResult((), Some(Value[ExchangeCtx, Any](value)))
+      case None =>
+        continue
+    }
+
+  def afterField(queryVal: QueryVal, fieldVal: FieldVal, value: Any, mctx: MiddlewareQueryContext[ExchangeCtx, _, _],
+                 ctx: Context[ExchangeCtx, _]) =
+    slice(ctx) flatMap {
+      case (key, (from, until)) =>
+        value match {
+          case list: Seq[_] => Some(lists.getOrElseUpdate(key, list).slice(from, until))
+          case Some(list: Seq[_]) => Some(Some(lists.getOrElseUpdate(key, list).slice(from, until)))
+          case _ => None
+        }
+    }
+
+  private def slice(ctx: Context[ExchangeCtx, _]) =
+    ctx.astFields.flatMap(field => IncrementalDelivery.streamKey(field)).headOption flatMap (key => slices.get(key) map (key -> _))
+}
+
+/** Delivers the result of a query operation in parts as multipart/mixed with the payloads of the incremental delivery
+  * (deferSpec=20220824) the Apollo clients request: the initial result first, then the data of each deferred fragment
+  * and the items of each streamed list in chunks, each as soon as it is resolved, and a last part without next ones.
+  */
+class IncrementalDelivery(plan: IncrementalPlan,
+                          execute: (ast.Document, ByteStringResultMarshaller, List[Middleware[ExchangeCtx]]) => Future[EncodedResult]) {
+  import IncrementalDelivery._
+
+  private val lists = TrieMap.empty[String, Seq[Any]]
+
+  def initial: Future[EncodedResult] =
+    execute(plan.initial, new ByteStringResultMarshaller,
+      List(new StreamSlices(lists, plan.streamed.map(streamed => streamed.key -> (0, streamed.initialCount)).toMap)))
+
+  /** The body of the response given the body of the initial result, deferred fragments and streamed lists interleave */
+  def parts(initial: ByteString): Source[ByteString, NotUsed] =
+    Source.single(part(initial.dropRight(1) ++ HasNext))
+      .concat(Source(plan.deferred).mapAsyncUnordered(parallelism)(data).map(part)
+        .merge(Source(plan.streamed).flatMapMerge(parallelism, chunks)))
+      .concat(Source.single(part(Done) ++ End))
+
+  private def data(deferred: Deferred): Future[ByteString] = {
+    val marshaller = new ByteStringResultMarshaller(deferred.path)
+    execute(deferred.document, marshaller, Nil)
+      .map(result => payload("data", marshaller.dataAt(result.body, deferred.path), marshaller.errors(result.body), deferred.path, None, deferred.label))
+      .recover { case error => payload("data", None, Some(errorNode(error.getMessage)), deferred.path, None, deferred.label) }
+  }
+
+  // the chunks of a list follow each other, the list was resolved by the initial execution
+  private def chunks(streamed: Streamed): Source[ByteString, NotUsed] = {
+    val size = lists.get(streamed.key).fold(0)(_.size)
+    Source(streamed.initialCount until size by chunkSize).mapAsync(1) { from =>
+      val marshaller = new ByteStringResultMarshaller(streamed.path)
+      val slice = Map(streamed.key -> (from, math.min(from + chunkSize, size)))
+      execute(streamed.document, marshaller, List(new StreamSlices(lists, slice)))
+        .map(result => payload("items", marshaller.dataAt(result.body, streamed.path), marshaller.errors(result.body), streamed.path, Some(from), streamed.label))
+        .recover { case error => payload("items", None, Some(errorNode(error.getMessage)), streamed.path, Some(from), streamed.label) }
+    } map part
+  }
+}
+
+object IncrementalDelivery {
+  val chunkSize = sys.env.getOrElse("GRAPHQL_STREAM_CHUNK_SIZE", "100").toInt
+  val parallelism = sys.env.getOrElse("GRAPHQL_INCREMENTAL_PARALLELISM", "4").toInt
+
+  val Boundary = "graphql"
+  val MultipartContentType = ContentType(MediaTypes.`multipart/mixed`.withParams(Map("boundary" -> Boundary, "deferSpec" -> "20220824")))
+
+  private val PartHeader = ByteString(s"\r\n--$Boundary\r\nContent-Type: application/json; charset=utf-8\r\n\r\n")
+  private val End = ByteString(s"\r\n--$Boundary--\r\n")
+  private val HasNext = ByteString(""","hasNext":true}""")
+  private val Done = ByteString("""{"hasNext":false}""")
+
+  // the label argument of a streamed field is replaced by its key in the documents of the plan
+  private val StreamKeyPrefix = "stream:"
+
+  def accepts(accept: String) = accept contains "multipart/mixed"
+
+  def part(payload: ByteString) = PartHeader ++ payload
+
+  def streamKey(field: ast.Field): Option[String] =
+    field.directives find (_.name == "stream") flatMap (_.arguments find (_.name == "label")) map (_.value) collect {
+      case label: ast.StringValue if label.value startsWith StreamKeyPrefix => label.value
+    }
+
+  def payload(kind: String, value: Option[ByteString], errors: Option[ByteString], path: Vector[String], index: Option[Int],
+              label: Option[String]): ByteString = {
+    val marshaller = new ByteStringResultMarshaller
+    val pathNode = marshaller.arrayNode((path map ByteStringResultMarshaller.string) ++
+      (index map (marshaller.scalarNode(_, "Int", Set.empty))))
+    val fields = Seq(kind -> (value getOrElse marshaller.nullNode), "path" -> pathNode) ++
+      (label map ("label" -> ByteStringResultMarshaller.string(_))) ++ (errors map ("errors" -> _))
+    marshaller.mapNode(Seq("incremental" -> marshaller.arrayNode(Vector(marshaller.mapNode(fields))),
+      "hasNext" -> marshaller.scalarNode(true, "Boolean", Set.empty)))
+  }
+
+  private def errorNode(message: String) = {
+    val marshaller = new ByteStringResultMarshaller
+    marshaller.arrayNode(Vector(marshaller.mapNode(Seq("message" -> ByteStringResultMarshaller.string(message)))))
+  }
+
+  /** The plan of a query operation with enabled @defer or @stream directives outside of lists. Directives within the
+    * elements of a list or within a deferred fragment are left to the executor, which ignores them, so these parts
+    * are delivered with the part around them.
+    */
+  def plan(document: ast.Document, operationName: Option[String], variables: Json): Option[IncrementalPlan] =
+    document.operation(operationName) filter (_.operationType == ast.OperationType.Query) flatMap { operation =>
+      val fragments = document.fragments
+      def enclosed(selections: Vector[ast.Selection]) =
+        document.copy(definitions = operation.copy(selections = selections) +: fragments.values.toVector)
+
+      val planner = new Planner(fragments, variables)
+      val selections = planner.rewrite(operation.selections, SchemaDefinition.QueryType, Vector.empty, enclosed)
+      val deferred = planner.deferred.result()
+      val streamed = planner.streamed.result()
+      if (deferred.isEmpty && streamed.isEmpty) None else Some(IncrementalPlan(enclosed(selections), deferred, streamed))
+    }
+
+  private class Planner(fragments: Map[String, ast.FragmentDefinition], variables: Json) {
+    val deferred = Vector.newBuilder[Deferred]
+    val streamed = Vector.newBuilder[Streamed]
+
+    /** The selections of an object without its deferred fragments, enclosed wraps selections of the object into
+      * the operation
+      */
+    def rewrite(selections: Vector[ast.Selection], parentType: OutputType[_], path: Vector[String],
+                enclosed: Vector[ast.Selection] => ast.Document): Vector[ast.Selection] =
+      selections flatMap (selection => rewriteSelection(selection, parentType, path, enclosed))
+
+    private def rewriteSelection(selection: ast.Selection, parentType: OutputType[_], path: Vector[String],
+                                 enclosed: Vector[ast.Selection] => ast.Document): Option[ast.Selection] = selection match {
+      case field: ast.Field =>
+        val fieldPath = path :+ field.outputName
+        fieldType(parentType, field.name) match {
+          case Some(tpe) if isList(tpe) =>
+            field.directives find (directive => directive.name == "stream" && enabled(directive)) match {
+              case Some(stream) =>
+                val key = StreamKeyPrefix + fieldPath.mkString(".")
+                val keyed = field.copy(directives = field.directives map { directive =>
+                  if (directive eq stream)
+                    directive.copy(arguments = directive.arguments.filterNot(_.name == "label") :+ ast.Argument("label", ast.StringValue(key)))
+                  else directive
+                })
+                val initialCount = argument(stream, "initialCount") flatMap (_.asNumber) flatMap (_.toInt) getOrElse 0
+                streamed += Streamed(key, label(stream), fieldPath, math.max(0, initialCount), enclosed(Vector(keyed)))
+                Some(keyed)
+              case None =>
+                Some(field)
+            }
+          case Some(tpe) if field.selections.nonEmpty =>
+            Some(field.copy(selections = rewrite(field.selections, named(tpe), fieldPath,
+              selections => enclosed(Vector(field.copy(selections = selections))))))
+          case _ =>
+            Some(field)
+        }
+
+      case fragment: ast.InlineFragment =>
+        rewriteFragment(fragment, parentType, path, enclosed)
+
+      case spread: ast.FragmentSpread =>
+        fragments.get(spread.name) match {
+          case Some(definition) =>
+            rewriteFragment(ast.InlineFragment(Some(definition.typeCondition), spread.directives, definition.selections),
+              parentType, path, enclosed)
+          case None =>
+            Some(spread)
+        }
+    }
+
+    private def rewriteFragment(fragment: ast.InlineFragment, parentType: OutputType[_], path: Vector[String],
+                                enclosed: Vector[ast.Selection] => ast.Document): Option[ast.Selection] =
+      fragment.directives find (directive => directive.name == "defer" && enabled(directive)) match {
+        case Some(defer) =>
+          deferred += Deferred(label(defer), path, enclosed(Vector(fragment.copy(directives = fragment.directives filterNot (_ eq defer)))))
+          None
+        case None =>
+          val fragmentType = fragment.typeCondition match {
+            case Some(condition) => SchemaDefinition.ExchangeSchema.outputTypes.get(condition.name)
+            case None => Some(parentType)
+          }
+          fragmentType match {
+            case Some(tpe) =>
+              Some(fragment.copy(selections = rewrite(fragment.selections, tpe, path,
+                selections => enclosed(Vector(fragment.copy(selections = selections))))))
+            case None =>
+              Some(fragment)
+          }
+      }
+
+    private def argument(directive: ast.Directive, name: String): Option[Json] =
+      directive.arguments find (_.name == name) flatMap (argument => value(argument.value))
+
+    private def value(value: ast.Value): Option[Json] = value match {
+      case variable: ast.VariableValue => variables.hcursor.downField(variable.name).focus
+      case int: ast.IntValue => Some(Json.fromInt(int.value))
+      case boolean: ast.BooleanValue => Some(Json.fromBoolean(boolean.value))
+      case string: ast.StringValue => Some(Json.fromString(string.value))
+      case _ => None
+    }
+
+    private def enabled(directive: ast.Directive) = argument(directive, "if") flatMap (_.asBoolean) getOrElse true
+
+    private def label(directive: ast.Directive) = argument(directive, "label") flatMap (_.asString)
+  }
+
+  private def fieldType(parentType: OutputType[_], name: String): Option[OutputType[_]] = parentType match {
+    case objectLike: ObjectLikeType[_, _] => objectLike.getField(SchemaDefinition.ExchangeSchema, name).headOption map (_.fieldType)
+    case _ => None
+  }
+
+  private def isList(tpe: OutputType[_]): Boolean = tpe match {
+    case OptionType(ofType) => isList(ofType)
+    case _: ListType[_] => true
+    case _ => false
+  }
+
+  private def named(tpe: OutputType[_]): OutputType[_] = tpe match {
+    case OptionType(ofType) => named(ofType)
+    case ListType(ofType) => named(ofType)
+    case _ => tpe
+  }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.graphql
+
+import java.nio.charset.StandardCharsets
+import java.security.MessageDigest
+import java.util.concurrent.atomic.AtomicLong
+
+import scala.util.{Failure, Success, Try}
+
+import sangria.ast.Document
+import sangria.parser.QueryParser
+import sangria.schema.Schema
+import sangria.validation.QueryValidator
+
+case class CachedDocument(hash: String, document: Document, validated: Boolean)
+
+case class PersistedQueryNotFound(hash: String) extends Exception(s"PersistedQueryNotFound: $hash")
+case class PersistedQueryHashMismatch(hash: String) extends Exception(s"provided sha256Hash $hash does not match query")
+
+/** LRU cache of parsed documents which passed the validation against the schema, keyed by the SHA-256 hash of the
+  * query text. Parsing and validation do not depend on the operation name or the variables, so one entry serves
+  * every operation of a document. The hash doubles as persisted query id: a client which sent a query once can
+  * send only its hash as long as the document stays in the cache, and has to send the text again otherwise.
+  */
+class QueryCache(schema: Schema[_, _], maxSize: Int) {
+  private val documents = new java.util.LinkedHashMap[String, Document](16, 0.75f, true) {
+    override def removeEldestEntry(eldest: java.util.Map.Entry[String, Document]) = size > maxSize
+  }
+
+  private val hits = new AtomicLong
+  private val misses = new AtomicLong
+
+  private def get(hash: String) = documents.synchronized(Option(documents.get(hash)))
+
+  private def put(hash: String, document: Document) = if (maxSize > 0) documents.synchronized(documents.put(hash, document))
+
+  /** The parsed document of a query given by its text, its hash or both, and whether it is known to be valid.
+    * Invalid documents are not cached, they are validated again by the executor to report the violations.
+    */
+  def document(query: Option[String], persistedHash: Option[String]): Try[CachedDocument] = query match {
+    case None =>
+      (persistedHash flatMap get) match {
+        case Some(document) =>
+          hits.incrementAndGet()
+          Success(CachedDocument(persistedHash.get, document, validated = true))
+        case None =>
+          misses.incrementAndGet()
+          Failure(PersistedQueryNotFound(persistedHash getOrElse ""))
+      }
+
+    case Some(text) =>
+      val hash = QueryCache.sha256(text)
+      if (persistedHash exists (_ != hash))
+        Failure(PersistedQueryHashMismatch(persistedHash.get))
+      else get(hash) match {
+        case Some(document) =>
+          hits.incrementAndGet()
+          Success(CachedDocument(hash, document, validated = true))
+        case None =>
+          misses.incrementAndGet()
+          QueryParser.parse(text) map { document =>
+            val valid = QueryValidator.default.validateQuery(schema, document).isEmpty
+            if (valid) put(hash, document)
+            CachedDocument(hash, document, valid)
+          }
+      }
+  }
+
+  def stats = s"size ${documents.synchronized(documents.size)}, hits ${hits.get}, misses ${misses.get}"
+}
+
+object QueryCache {
+  def sha256(text: String) =
+    MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8)).map("%02x" format _).mkString
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.graphql
+
+import java.util.concurrent.atomic.AtomicLong
+
+import akka.util.ByteString
+import io.circe.Json
+import sangria.ast
+
+import exchange.graphql.ViewVersions._
+
+case class CachedResponse(etag: String, stamp: Long, expires: Long, body: ByteString)
+
+/** LRU cache of the encoded responses of query operations, keyed by document, operation, variables and organization
+  * of the requester. An entry is valid while the ViewVersions stamp of the kinds of entities its root fields read
+  * is unchanged, and at most for a time to live since offerings also expire without an event. The stamp is part of
+  * the ETag, so a client revalidating with If-None-Match gets a 304 without any execution.
+  */
+class ResponseCache(versions: ViewVersions, maxSize: Int, ttlMillis: Long) {
+  import ResponseCache._
+
+  private val entries = new java.util.LinkedHashMap[String, CachedResponse](16, 0.75f, true) {
+    override def removeEldestEntry(eldest: java.util.Map.Entry[String, CachedResponse]) = size > maxSize
+  }
+
+  private val hits = new AtomicLong
+  private val misses = new AtomicLong
+
+  // the stamps start over with each start of the view
+  private val epoch = java.lang.Long.toHexString(System.currentTimeMillis)
+
+  def isEnabled = maxSize > 0
+
+  /** Kinds of entities the operation reads, None if it is not cacheable */
+  def kinds(document: ast.Document, operationName: Option[String]): Option[Set[Kind]] =
+    if (!isEnabled) None
+    else document.operation(operationName) filter (_.operationType == ast.OperationType.Query) flatMap { operation =>
+      val rootFields = operation.selections map {
+        case field: ast.Field => rootFieldKinds.get(field.name)
+        case _ => None
+      }
+      if (rootFields forall (_.isDefined)) Some(rootFields.flatten.flatten.toSet) else None
+    }
+
+  def stamp(kinds: Set[Kind]) = versions.stamp(kinds)
+
+  def get(key: String, kinds: Set[Kind]): Option[CachedResponse] = {
+    val stamp = versions.stamp(kinds)
+    val now = System.currentTimeMillis
+    val response = entries.synchronized {
+      Option(entries.get(key)) filter (response => response.stamp == stamp && response.expires >= now)
+    }
+    (if (response.isDefined) hits else misses).incrementAndGet()
+    response
+  }
+
+  /** Caches a response without errors computed at the given stamp unless the view changed in the meantime */
+  def put(key: String, kinds: Set[Kind], stamp: Long, body: ByteString): CachedResponse = {
+    val response = CachedResponse(s"${key.take(16)}-$epoch-$stamp", stamp, System.currentTimeMillis + ttlMillis, body)
+    if (versions.stamp(kinds) == stamp)
+      entries.synchronized(entries.put(key, response))
+    response
+  }
+
+  def stats = s"size ${entries.synchronized(entries.size)}, hits ${hits.get}, misses ${misses.get}"
+}
+
+object ResponseCache {
+
+  // most entities embed the others through their back references, so they depend on all kinds of entities
+  val rootFieldKinds: Map[String, Set[Kind]] = Map(
+    "__schema" -> Set.empty[Kind], "__type" -> Set.empty[Kind], "__typename" -> Set.empty[Kind],
+    "allCurrencies" -> Set.empty[Kind], "allPricingModels" -> Set.empty[Kind], "allLicenses" -> Set.empty[Kind],
+    "allEndpointTypes" -> Set.empty[Kind], "allAccessInterfaceTypes" -> Set.empty[Kind],
+    "allOfferingCategories" -> Set(Semantics), "allOfferingCategoryUris" -> Set(Semantics), "offeringCategory" -> Set(Semantics),
+    "inputDataField" -> Set(Semantics), "outputDataField" -> Set(Semantics), "allDataTypes" -> Set(Semantics),
+    "allOfferings" -> AllKinds, "myOfferings" -> AllKinds, "offeringsForOrganization" -> AllKinds, "myProviders" -> AllKinds,
+    "offering" -> Entities, "allOrganizations" -> Entities, "myOrganization" -> Entities, "organization" -> Entities,
+    "provider" -> Entities, "consumer" -> Entities, "myConsumers" -> Entities, "offeringQuery" -> Entities,
+    "subscriptionsForOffering" -> Entities, "mySubscriptions" -> Entities, "subscription" -> Entities)
+
+  def key(documentHash: String, operationName: Option[String], variables: Json, organizationId: Option[String]) =
+    QueryCache.sha256(Seq(documentHash, operationName.getOrElse(""), variables.noSpaces, organizationId.getOrElse("")).mkString("\n"))
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.graphql
+
+import akka.NotUsed
+import akka.stream.scaladsl.{BroadcastHub, Keep, Sink, Source, SourceQueueWithComplete}
+import akka.stream.{Materializer, OverflowStrategy}
+
+import microservice._
+import org.slf4j.LoggerFactory
+
+/** Events the ExchangeView applied to the repos after its recovery, broadcast to every subscription.
+  * The hub always drains into Sink.ignore, so nothing is retained without subscriptions and a slow subscription
+  * never holds up the view. Each subscription has to buffer for itself (see ExchangeSubscriptionsSocket).
+  * If the events still overflow the queue, no event is dropped unnoticed: the hub fails with a
+  * BufferOverflowException, which ends the running subscriptions with an error, and a new hub takes the next events.
+  */
+class ViewChanges(bufferSize: Int)(implicit mat: Materializer) {
+  import ViewChanges._
+
+  @volatile private var current = open()
+
+  private def open(): (SourceQueueWithComplete[Event], Source[Event, NotUsed]) = {
+    val (queue, hub) = Source.queue[Event](bufferSize, OverflowStrategy.fail)
+      .toMat(BroadcastHub.sink(bufferSize))(Keep.both)
+      .run()
+    hub.runWith(Sink.ignore)
+    queue.watchCompletion().failed.foreach { error =>
+      log.warn(s"view changes overflowed, failing the running subscriptions: ${error.getMessage}")
+      current = open()
+    }(mat.executionContext)
+    (queue, hub)
+  }
+
+  def published(event: Event): Unit = current._1.offer(event)
+
+  def source: Source[Event, NotUsed] = current._2
+}
+
+object ViewChanges {
+  val log = LoggerFactory.getLogger(this.getClass)
+}
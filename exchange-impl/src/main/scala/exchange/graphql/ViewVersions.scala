@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.graphql
+
+import java.util.concurrent.atomic.AtomicLong
+
+import microservice._
+
+import exchange.api.consumer.ConsumerEvent
+import exchange.api.offering.OfferingEvent
+import exchange.api.offeringquery.OfferingQueryEvent
+import exchange.api.organization.OrganizationEvent
+import exchange.api.provider.ProviderEvent
+import exchange.api.semantics.SemanticsEvent
+import exchange.api.subscription.SubscriptionEvent
+
+/** Number of events the ExchangeView applied per kind of entity. A result computed from the view is still current
+  * as long as the stamp of the kinds it was computed from has not changed.
+  */
+class ViewVersions {
+  import ViewVersions._
+
+  private val counters: Map[Kind, AtomicLong] = AllKinds.map(_ -> new AtomicLong).toMap
+
+  def updated(event: Event) = kindOf(event) foreach (counters(_).incrementAndGet())
+
+  // counters only grow, so the sum changes with each of them
+  def stamp(kinds: Set[Kind]): Long = kinds.toSeq.map(counters(_).get).sum
+}
+
+object ViewVersions {
+  sealed trait Kind
+  case object Semantics extends Kind
+  case object Organizations extends Kind
+  case object Providers extends Kind
+  case object Consumers extends Kind
+  case object Offerings extends Kind
+  case object OfferingQueries extends Kind
+  case object Subscriptions extends Kind
+
+  val AllKinds: Set[Kind] = Set(Semantics, Organizations, Providers, Consumers, Offerings, OfferingQueries, Subscriptions)
+  val Entities: Set[Kind] = AllKinds - Semantics
+
+  def kindOf(event: Event): Option[Kind] = event match {
+    case _: Unchanged => None
+    case _: SemanticsEvent => Some(Semantics)
+    case _: OrganizationEvent => Some(Organizations)
+    case _: ProviderEvent => Some(Providers)
+    case _: ConsumerEvent => Some(Consumers)
+    case _: OfferingEvent => Some(Offerings)
+    case _: OfferingQueryEvent => Some(OfferingQueries)
+    case _: SubscriptionEvent => Some(Subscriptions)
+    case _ => None
+  }
+}
@@ -20,7 +20,7 @@ import exchange.api.organization._
 import exchange.api.provider._
 import exchange.api.semantics.{OfferingCategory, RdfAnnotation, RootOfferingCategoryUri}
 import exchange.api.subscription.{SubscriptionId, Subscriptions}
-import exchange.repo.{ExchangeRepoQueries, ExchangeSemanticRepo}
+import exchange.repo.{ExchangeRepoQueries, ExchangeSemanticRepo, Projection}
 
 @Lenses
 case class Exchange(organizations: List[Organization])
@@ -32,12 +32,22 @@ trait InMemoryExchangeRepoQueries extends ExchangeRepoQueries {
 
   def show = ("Exchange:" +: exchange.organizations.map(_.show("  "))).mkString("\n")
 
-  def allOrganizations = exchange.organizations map fillOrganization
+  def allOrganizations = allOrganizations(Projection.All)
 
-  def organization(id: OrganizationId) = exchange.organizations find entitiesMatch(id) map fillOrganization
+  def allOrganizations(projection: Projection) = exchange.organizations map fillOrganization(projection)
 
-  private def fillOrganization(organization: Organization) =
-    organization.copy(providers = providersFor(organization), consumers = consumersFor(organization))
+  def organization(id: OrganizationId, projection: Projection) =
+    exchange.organizations find entitiesMatch(id) map fillOrganization(projection)
+
+  def organizations(ids: Seq[OrganizationId], projection: Projection) = {
+    val idSet = ids.toSet
+    exchange.organizations filter (idSet contains _.id) map fillOrganization(projection)
+  }
+
+  // collections which are not projected are left as stored
+  private def fillOrganization(projection: Projection)(organization: Organization) = organization.copy(
+    providers = if (projection.providers) providersFor(organization, projection) else organization.providers,
+    consumers = if (projection.consumers) consumersFor(organization, projection) else organization.consumers)
 
   protected def organizationForProvider(providerId: ProviderId) =
     exchange.organizations find { org => org.providers exists entitiesMatch(providerId) }
@@ -45,17 +55,27 @@ trait InMemoryExchangeRepoQueries extends ExchangeRepoQueries {
   protected def organizationForConsumer(consumerId: ConsumerId) =
     exchange.organizations find { org => org.consumers exists entitiesMatch(consumerId) }
 
-  def providersFor(organization: Organization) =
+  def providersFor(organization: Organization, projection: Projection = Projection.All) =
     organization.providers map { provider =>
       val providerWithOrganization = provider.copy(organization = Some(organization))
-      providerWithOrganization.copy(offerings = offeringsFor(providerWithOrganization))
+      if (projection.offerings) providerWithOrganization.copy(offerings = offeringsFor(providerWithOrganization))
+      else providerWithOrganization
     }
 
-  def provider(id: ProviderId) = (for {
-    organization <- exchange.organizations
-    provider <- providersFor(organization) if entitiesMatch(id)(provider)
+  def provider(id: ProviderId, projection: Projection) = (for {
+    organization <- exchange.organizations if organization.providers exists entitiesMatch(id)
+    provider <- providersFor(organization, projection) if entitiesMatch(id)(provider)
   } yield provider).headOption
 
+  // one pass for all ids, filling only the organizations which contain one of them
+  def providers(ids: Seq[ProviderId], projection: Projection) = {
+    val idSet = ids.toSet
+    for {
+      organization <- exchange.organizations if organization.providers exists (idSet contains _.id)
+      provider <- providersFor(organization, projection) if idSet contains provider.id
+    } yield provider
+  }
+
   def providersForOrganization(categoryUriOpt: Option[String])(organizationId: OrganizationId) = (for {
     offeringCategoryUri <- categoryUriOpt orElse Some(RootOfferingCategoryUri)
     category <- semanticRepo.offeringCategory(offeringCategoryUri)
@@ -73,6 +93,17 @@ trait InMemoryExchangeRepoQueries extends ExchangeRepoQueries {
     offering <- offeringsFor(provider) if entitiesMatch(id)(offering)
   } yield offering).headOption
 
+  // one pass for all ids, filling only the organizations and providers which contain one of them
+  def offerings(ids: Seq[OfferingId]) = {
+    val idSet = ids.toSet
+    def containsOffering(provider: Provider) = provider.offerings exists (idSet contains _.id)
+    for {
+      organization <- exchange.organizations if organization.providers exists containsOffering
+      provider <- providersFor(organization) if containsOffering(provider)
+      offering <- provider.offerings if idSet contains offering.id
+    } yield offering
+  }
+
   private def isChild(parent: OfferingCategory, child: RdfAnnotation): Boolean =
     (parent.rdfAnnotation.uri == child.uri) || (parent.subCategories exists { subCategory => isChild(subCategory, child) })
 
@@ -96,16 +127,19 @@ trait InMemoryExchangeRepoQueries extends ExchangeRepoQueries {
     offering <- offeringsFor(provider) if isChild(category, offering.rdfAnnotation) && (showInactive || offering.activation.isActive)
   } yield offering) getOrElse Nil
 
-  private def consumersFor(organization: Organization) = organization.consumers map { consumer =>
-    val consumerWithOrganization = consumer.copy(organization = Some(organization))
-    consumerWithOrganization.copy(queries = queriesFor(consumerWithOrganization))
-  }
+  private def consumersFor(organization: Organization, projection: Projection = Projection.All) =
+    organization.consumers map { consumer =>
+      val consumerWithOrganization = consumer.copy(organization = Some(organization))
+      if (projection.queries) consumerWithOrganization.copy(queries = queriesFor(consumerWithOrganization))
+      else consumerWithOrganization
+    }
 
-  def consumersForOrganization(organizationId: OrganizationId) = organization(organizationId).toList flatMap consumersFor
+  def consumersForOrganization(organizationId: OrganizationId, projection: Projection) =
+    organization(organizationId, projection).toList flatMap (consumersFor(_, projection))
 
-  def consumer(id: ConsumerId) = (for {
-    organization <- exchange.organizations
-    consumer <- consumersFor(organization) if entitiesMatch(id)(consumer)
+  def consumer(id: ConsumerId, projection: Projection) = (for {
+    organization <- exchange.organizations if organization.consumers exists entitiesMatch(id)
+    consumer <- consumersFor(organization, projection) if entitiesMatch(id)(consumer)
   } yield consumer).headOption
 
   private def queriesFor(consumer: Consumer) = consumer.queries map (_.copy(consumer = Some(consumer)))
@@ -126,6 +160,16 @@ trait InMemoryExchangeRepoQueries extends ExchangeRepoQueries {
 
   def subscriptionsForQuery(queryId: OfferingQueryId) = offeringQuery(queryId).toList flatMap subscriptionsFor
 
+  @volatile private var sparqlMatching = new MatchingIndex.Cache(MatchingIndex.SparqlRules)
+
+  /** Matches the categories of offerings with their ancestors in the given category tree, as the RDF repo does */
+  def useCategoryAncestors(categories: () => CategoryAncestors): Unit =
+    sparqlMatching = new MatchingIndex.Cache(new MatchingIndex.SparqlRules(categories))
+
+  // matching with the rules of the RDF repo, answered from the offerings held here instead of the store
+  def sparqlMatchingOfferingIds(query: OfferingQuery, now: Long): List[String] =
+    sparqlMatching(exchange).matchingOfferingIds(query, now)
+
   def consumerSubscriptionsForOffering(offeringId: OfferingId) = {
     for {
       organization <- exchange.organizations
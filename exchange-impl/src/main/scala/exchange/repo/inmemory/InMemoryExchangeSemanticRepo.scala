@@ -16,10 +16,8 @@ import akka.http.scaladsl.model.DateTime
 import monocle.Lens
 import microservice.entity.normalize
 
-import exchange.api.extent.SpatialExtent
 import exchange.api.offering._
 import exchange.api.offeringquery._
-import exchange.api.price._
 import exchange.api.semantics._
 import exchange.repo.{ExchangeRepoQueries, ExchangeSemanticRepo}
 
@@ -188,43 +186,10 @@ trait InMemoryExchangeSemanticRepo extends ExchangeSemanticRepo {
     defaultDataFields.get(rdfAnnotation.uri)
   }
 
-  private def priceMatches(queryPriceOpt: Option[Price], offeringPrice: Price) =
-    queryPriceOpt forall { queryPrice =>
-      (queryPrice, offeringPrice) match {
-        case (_, Price(FREE, _)) => true
-        case (Price(queryModel, Some(Money(querygAmount, queryCurrency))),
-        Price(offeringModel, Some(Money(offeringAmount, offeringCurrency))))
-          if queryModel == offeringModel && queryCurrency == offeringCurrency => offeringAmount <= querygAmount
-        case _ => false
-      }
-    }
-
-  private def offeringMatchesQuery(offering: Offering, query: OfferingQuery) = {
-    val annotationMatches = query.rdfAnnotation forall (_.uri.trim == offering.rdfAnnotation.uri.trim)
-    val outputsMatch = query.outputs forall (output => offering.outputs exists (_.rdfAnnotation.uri == output.rdfAnnotation.uri))
-    val inputsMatch = query.inputs forall (input => offering.inputs exists (_.rdfAnnotation.uri == input.rdfAnnotation.uri))
-    val spatialExtentMatches = (query.spatialExtent, offering.spatialExtent) match {
-      case (None, _) =>
-        true
-      case (Some(SpatialExtent(queryCity, _)), Some(SpatialExtent(offeringCity, _))) =>
-        queryCity.isEmpty || queryCity.trim == offeringCity.trim
-      case _ =>
-        false
-    }
-    val licenseMatches = query.license forall (_ == offering.license)
-    val active = offering.activation.status && offering.activation.expirationTime > DateTime.now.clicks
-    active && annotationMatches && outputsMatch && inputsMatch && spatialExtentMatches && licenseMatches &&
-      priceMatches(query.price, offering.price)
-  }
-
-  private def offeringIdsMatchingQuery(query: OfferingQuery) = for {
-    organization <- exchange.organizations
-    provider <- organization.providers
-    offering <- provider.offerings if offeringMatchesQuery(offering, query)
-  } yield offering.id.value
+  private val matchingIndex = new MatchingIndex.Cache(MatchingIndex.InMemoryRules)
 
   def matchingOfferingIds(queryId: OfferingQueryId) =
-    queryRepo.offeringQuery(queryId).toList flatMap offeringIdsMatchingQuery
+    queryRepo.offeringQuery(queryId).toList flatMap (matchingIndex(exchange).matchingOfferingIds(_, DateTime.now.clicks))
 
   def isOfferingConsistent(ev: OfferingCreated) = true
   def isOfferingQueryConsistent(ev: OfferingQueryCreated) = true
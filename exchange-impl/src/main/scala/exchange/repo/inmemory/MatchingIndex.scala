@@ -0,0 +1,234 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.repo.inmemory
+
+import scala.collection.JavaConverters._
+import scala.collection.immutable.BitSet
+import scala.collection.mutable
+
+import exchange.api.extent.{BoundingBox, SpatialExtent}
+import exchange.api.license.licenses
+import exchange.api.offering.Offering
+import exchange.api.offeringquery.OfferingQuery
+import exchange.api.price.{EUR, FREE, Money, Price, pricingModels}
+import exchange.api.semantics._
+import exchange.model.vocabs.PREFIXES
+
+/** The ancestors of every category of one version of the category tree, by expanded URI. The SPARQL matching finds
+  * an offering by the ancestors of its category as well, as OFFERING_SUB_CATEGORY_RULES store them with the offering.
+  */
+case class CategoryAncestors(version: Long, ancestors: Map[String, Set[String]]) {
+  def withAncestors(category: String): List[String] = category :: (ancestors.getOrElse(category, Set.empty) - category).toList
+}
+
+object CategoryAncestors {
+  val Empty = CategoryAncestors(0, Map.empty)
+
+  /** The closure of the given parents of each category */
+  def fromParents(version: Long, parents: java.util.Map[String, java.util.Set[String]]): CategoryAncestors = {
+    val direct = parents.asScala.map { case (category, categoryParents) => category -> categoryParents.asScala.toSet }.toMap
+    val known = mutable.Map.empty[String, Set[String]]
+    // the categories on the path are skipped, so that cycles terminate
+    def ancestors(category: String, path: Set[String]): Set[String] = known.getOrElse(category, {
+      val result = (direct.getOrElse(category, Set.empty) -- path - category) flatMap (parent => ancestors(parent, path + category) + parent)
+      known(category) = result
+      result
+    })
+    CategoryAncestors(version, direct.keys.map(category => category -> ancestors(category, Set.empty)).toMap)
+  }
+}
+
+/** Offerings indexed by the terms a matching compares exactly: category and input and output annotations.
+  * A query intersects the offerings of its terms and checks the remaining conditions of the rules on those
+  * candidates only.
+  */
+class MatchingIndex private(offerings: IndexedSeq[Offering], postings: Map[MatchingIndex.Term, BitSet],
+                            rules: MatchingIndex.Rules) {
+
+  private val allOfferings = BitSet(offerings.indices: _*)
+
+  def matchingOfferingIds(query: OfferingQuery, now: Long): List[String] = {
+    val candidates = (rules.queryTerms(query) foldLeft allOfferings) { (acc, term) =>
+      acc & postings.getOrElse(term, BitSet.empty)
+    }
+    candidates.toList map offerings filter (rules.matches(_, query, now)) map (_.id.value)
+  }
+}
+
+object MatchingIndex {
+
+  private[inmemory] case class Term(kind: String, uri: String, valueType: Option[String] = None)
+
+  trait Rules {
+    // the index is built again when the version of what the terms of an offering depend on changes
+    private[inmemory] def version: Long = 0
+    private[inmemory] def offeringTerms(offering: Offering): List[Term]
+    private[inmemory] def queryTerms(query: OfferingQuery): List[Term]
+    private[inmemory] def matches(offering: Offering, query: OfferingQuery, now: Long): Boolean
+  }
+
+  def apply(offerings: Seq[Offering], rules: Rules): MatchingIndex = {
+    val indexed = offerings.toIndexedSeq
+    val postings = (for {
+      (offering, idx) <- indexed.zipWithIndex
+      term <- rules.offeringTerms(offering)
+    } yield term -> idx) groupBy (_._1) map { case (term, idxs) => term -> BitSet(idxs map (_._2): _*) }
+    new MatchingIndex(indexed, postings, rules)
+  }
+
+  /** Index of the offerings of an exchange, rebuilt only when a mutation replaced the immutable exchange */
+  class Cache(rules: Rules) {
+    @volatile private var current: Option[(Exchange, Long, MatchingIndex)] = None
+
+    def apply(exchange: Exchange): MatchingIndex = {
+      val version = rules.version
+      current filter { case (cached, cachedVersion, _) => (cached eq exchange) && cachedVersion == version } map (_._3) getOrElse {
+        val index = MatchingIndex(for {
+          organization <- exchange.organizations
+          provider <- organization.providers
+          offering <- provider.offerings
+        } yield offering, rules)
+        current = Some((exchange, version, index))
+        index
+      }
+    }
+  }
+
+  /** The rules the in-memory semantic repo has always matched with: categories and annotations compared as given,
+    * the city of the query has to be the one of the offering, and free offerings match any price.
+    */
+  object InMemoryRules extends Rules {
+
+    private[inmemory] def offeringTerms(offering: Offering) =
+      Term("category", offering.rdfAnnotation.uri.trim) ::
+        (offering.outputs.map(output => Term("output", output.rdfAnnotation.uri)) ++
+          offering.inputs.map(input => Term("input", input.rdfAnnotation.uri)))
+
+    private[inmemory] def queryTerms(query: OfferingQuery) =
+      query.rdfAnnotation.toList.map(rdfAnnotation => Term("category", rdfAnnotation.uri.trim)) ++
+        query.outputs.map(output => Term("output", output.rdfAnnotation.uri)) ++
+        query.inputs.map(input => Term("input", input.rdfAnnotation.uri))
+
+    private def spatialExtentMatches(offering: Offering, query: OfferingQuery) = (query.spatialExtent, offering.spatialExtent) match {
+      case (None, _) =>
+        true
+      case (Some(SpatialExtent(queryCity, _)), Some(SpatialExtent(offeringCity, _))) =>
+        queryCity.isEmpty || queryCity.trim == offeringCity.trim
+      case _ =>
+        false
+    }
+
+    private def priceMatches(offering: Offering, query: OfferingQuery) = query.price forall { queryPrice =>
+      (queryPrice, offering.price) match {
+        case (_, Price(FREE, _)) => true
+        case (Price(queryModel, Some(Money(queryAmount, queryCurrency))),
+        Price(offeringModel, Some(Money(offeringAmount, offeringCurrency))))
+          if queryModel == offeringModel && queryCurrency == offeringCurrency => offeringAmount <= queryAmount
+        case _ => false
+      }
+    }
+
+    private[inmemory] def matches(offering: Offering, query: OfferingQuery, now: Long) =
+      offering.activation.status && offering.activation.expirationTime > now &&
+        spatialExtentMatches(offering, query) && (query.license forall (_ == offering.license)) && priceMatches(offering, query)
+  }
+
+  /** The rules of the SPARQL matching of the RDF repo (QueryFactory.findMatchingOfferings together with the spatial
+    * and temporal filters), with URIs expanded as they are stored and value types compared as written by RDFParser.
+    * An offering is indexed under its category and all ancestors of it in the current category tree, and indexed
+    * again when the tree changes.
+    */
+  class SparqlRules(categories: () => CategoryAncestors) extends Rules {
+
+    def expand(uri: String) = PREFIXES.getPrefixModel.expandPrefix(uri)
+
+    override private[inmemory] def version = categories().version
+
+    // value types as written by RDFParser, other types are stored without one
+    private def storedValueType(value: ValueType) = value match {
+      case _: TextType | _: NumberType | _: IntegerType | _: DateTimeType | _: BooleanType | _: ObjectType => Some(value.`type`)
+      case _ => None
+    }
+
+    // value types as asked for by findMatchingOfferings, which falls back to text for types it does not know
+    private def queriedValueType(value: ValueType) = value match {
+      case _: UndefinedType => None
+      case _ => storedValueType(value) orElse Some(Text)
+    }
+
+    private def dataFieldTerms(kind: String, dataField: DataField) = {
+      val uri = expand(dataField.rdfAnnotation.uri)
+      Term(kind, uri) :: (storedValueType(dataField.value).toList map (valueType => Term(kind, uri, Some(valueType))))
+    }
+
+    private[inmemory] def offeringTerms(offering: Offering) =
+      categories().withAncestors(expand(offering.rdfAnnotation.uri)).map(Term("category", _)) ++
+        offering.outputs.flatMap(dataFieldTerms("output", _)) ++ offering.inputs.flatMap(dataFieldTerms("input", _))
+
+    private[inmemory] def queryTerms(query: OfferingQuery) =
+      query.rdfAnnotation.toList.map(rdfAnnotation => Term("category", expand(rdfAnnotation.uri))) ++
+        query.outputs.map(output => Term("output", expand(output.rdfAnnotation.uri), queriedValueType(output.value))) ++
+        query.inputs.map(input => Term("input", expand(input.rdfAnnotation.uri), queriedValueType(input.value)))
+
+    // the city is only compared if the query has no bounding box, which is matched by the spatial filter instead
+    private def cityMatches(offering: Offering, query: OfferingQuery) = query.spatialExtent forall { queryExtent =>
+      queryExtent.city.isEmpty || queryExtent.boundary.isDefined || (offering.spatialExtent exists (_.city == queryExtent.city))
+    }
+
+    private def intersect(a: BoundingBox, b: BoundingBox) = {
+      def overlaps(a1: Double, a2: Double, b1: Double, b2: Double) =
+        math.min(a1, a2) <= math.max(b1, b2) && math.min(b1, b2) <= math.max(a1, a2)
+      overlaps(a.l1.lng, a.l2.lng, b.l1.lng, b.l2.lng) && overlaps(a.l1.lat, a.l2.lat, b.l1.lat, b.l2.lat)
+    }
+
+    private def boundaryMatches(offering: Offering, query: OfferingQuery) =
+      query.spatialExtent.flatMap(_.boundary) forall { queryBoundary =>
+        offering.spatialExtent.flatMap(_.boundary) exists (intersect(_, queryBoundary))
+      }
+
+    // same cases as QueryFactory.temporalFilterOfferings, missing bounds of an offering are stored as 0
+    private def temporalMatches(offering: Offering, query: OfferingQuery, now: Long) = query.temporalExtent match {
+      case Some(queryExtent) if queryExtent.from.isDefined && queryExtent.to.isDefined =>
+        val (from, to) = (queryExtent.from.get, queryExtent.to.get)
+        val validFrom = offering.temporalExtent.flatMap(_.from) getOrElse 0L
+        val validThrough = offering.temporalExtent.flatMap(_.to) getOrElse 0L
+        if (from > 0 && to > 0) (validFrom <= to && validThrough >= from) || (validThrough == 0 && validFrom != 0)
+        else if (from > 0) validThrough >= from || validThrough == 0
+        else if (to > 0) (validThrough <= to && validThrough != 0) || (validFrom <= to && validFrom != 0)
+        else validThrough == 0 || validThrough >= now
+      case _ =>
+        true
+    }
+
+    // the license type of the query is looked up with BIGIOT.getLicenseType, unknown licenses match nothing
+    private def licenseMatches(offering: Offering, query: OfferingQuery) =
+      query.license forall (license => (licenses contains license) && license == offering.license)
+
+    // free offerings match any pricing model, but like all others only with an amount in the currency of the query.
+    // OFFERING_FREE_PRICE_RULES store 0 EUR for every free offering, also for one without money
+    private def priceMatches(offering: Offering, query: OfferingQuery) = query.price forall { queryPrice =>
+      val (currency, amount) = queryPrice.money map (money => (money.currency.value, money.amount.doubleValue)) getOrElse (("EUR", 0.0))
+      val pricingModel = offering.price.pricingModel
+      val offered = offering.price.money.toList ++ (if (pricingModel == FREE) List(Money(0, EUR)) else Nil)
+      (pricingModels contains pricingModel) && (pricingModel == queryPrice.pricingModel || pricingModel == FREE) &&
+        (offered exists (money => money.currency.value == currency && money.amount.doubleValue <= amount))
+    }
+
+    private[inmemory] def matches(offering: Offering, query: OfferingQuery, now: Long) =
+      offering.activation.status && offering.activation.expirationTime >= now &&
+        cityMatches(offering, query) && boundaryMatches(offering, query) && temporalMatches(offering, query, now) &&
+        licenseMatches(offering, query) && priceMatches(offering, query)
+  }
+
+  /** The SPARQL rules without a category tree, categories are compared as given */
+  object SparqlRules extends SparqlRules(() => CategoryAncestors.Empty)
+
+}
@@ -41,10 +41,14 @@ object Exchange extends App {
   val tag = Tags.aggregateTag("Exchange")
 
   val (queryRepo: ExchangeRepoQueries, semanticRepo: ExchangeSemanticRepo, mutationRepos: Seq[ExchangeRepoMutations]) =
-    if (sys.env.getOrElse("REPO", "").toUpperCase == "RDFSTORE") {
+    if (Set("RDFSTORE", "RDFMEM", "RDFTDB") contains sys.env.getOrElse("REPO", "").toUpperCase) {
       log.info("Using RDFExchangeRepo as semantic Repo")
       val rdfRepo = new RDFExchangeRepo(sys.env.getOrElse("MARKETENV", "local"))
       val inMemoryRepo = new InMemoryExchangeRepoWithoutSemantics(rdfRepo)
+      if (sys.env.getOrElse("MATCHING_IN_MEMORY", "false").toBoolean)
+        rdfRepo.useInMemoryMatching(inMemoryRepo)
+      else if (sys.env.getOrElse("MATCHING_PREFILTER", "true").toBoolean)
+        rdfRepo.useInMemoryPrefilter(inMemoryRepo)
       (inMemoryRepo, rdfRepo, List(inMemoryRepo, rdfRepo))
     }
     else {
@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.server
+
+import scala.concurrent.Await
+import scala.concurrent.duration._
+import scala.util.control.NonFatal
+import akka.actor.ActorSystem
+import akka.persistence.cassandra.query.scaladsl.CassandraReadJournal
+import akka.persistence.query.{NoOffset, PersistenceQuery}
+import akka.stream.ActorMaterializer
+
+import io.funcqrs.Tags
+import microservice._
+import org.slf4j.LoggerFactory
+
+import exchange.api.consumer.ConsumerCreated
+import exchange.api.offering.OfferingCreated
+import exchange.api.offeringquery.OfferingQueryCreated
+import exchange.api.organization.OrganizationCreated
+import exchange.api.provider.ProviderCreated
+import exchange.api.semantics.SemanticsEvent
+import exchange.api.subscription.SubscriptionCreated
+import exchange.graphql.ExchangeView
+import exchange.repo.inmemory.InMemoryExchangeRepoWithoutSemantics
+import exchange.repo.rdfstore.{OfferingGraphRebuild, RDFExchangeRepo}
+
+/** Offline rebuild of the RDF offering graph from the event log, instead of deleting the graph and replaying
+  * every event through RDFExchangeRepo with one update each. The current events are folded into the final state
+  * in memory, written into a shadow graph in large chunks and swapped in with one MOVE at the end.
+  * The ontology graph is kept as it is, so semantics events are skipped.
+  *
+  * Run it with the configuration of the exchange while the exchange is stopped, e.g.
+  * bin/exchange-impl -main exchange.server.RebuildOfferingGraph
+  */
+object RebuildOfferingGraph extends App {
+  val log = LoggerFactory.getLogger(this.getClass)
+
+  implicit val system: ActorSystem = ActorSystem("RebuildOfferingGraph")
+  implicit val materializer: ActorMaterializer = ActorMaterializer()
+
+  val chunkSize = sys.env.getOrElse("REBUILD_CHUNK_TRIPLES", "100000").toLong
+  val startTime = System.nanoTime
+
+  val rdfRepo = new RDFExchangeRepo(sys.env.getOrElse("MARKETENV", "local"))
+  val state = new InMemoryExchangeRepoWithoutSemantics(rdfRepo)
+  val mutationRepos = List(state)
+
+  val readJournal = PersistenceQuery(system).readJournalFor[CassandraReadJournal](CassandraReadJournal.Identifier)
+  val replayed = readJournal.currentEventsByTag(Tags.aggregateTag("Exchange").value, NoOffset)
+    .map(_.event)
+    .collect { case event: Event if !event.isInstanceOf[SemanticsEvent] => event }
+    .runFold(0L) { (count, event) =>
+      ExchangeView.updateRepos(event, rdfRepo, mutationRepos)
+      count + 1
+    }
+
+  val rebuilt = try {
+    val events = Await.result(replayed, Duration.Inf)
+    log.info(f"folded $events events in ${(System.nanoTime - startTime) / 1.0e9}%.1fs")
+
+    val rebuild = new OfferingGraphRebuild(chunkSize)
+    for (organization <- state.allOrganizations) {
+      rebuild.organizationCreated(OrganizationCreated(organization.id, organization.name, Meta()))
+
+      for (provider <- organization.providers) {
+        rebuild.providerCreated(ProviderCreated(provider.id, organization.id, provider.name, provider.secret, Meta()))
+        for (offering <- provider.offerings) {
+          rebuild.offeringCreated(OfferingCreated(offering.id, provider.id, offering.name, offering.rdfAnnotation.uri,
+            offering.rdfContext, offering.accessWhiteList, offering.endpoints, offering.outputs, offering.inputs,
+            offering.extension1, offering.extension2, offering.extension3, offering.spatialExtent, offering.temporalExtent,
+            offering.license, offering.price, offering.activation, Meta()))
+        }
+      }
+
+      for (consumer <- organization.consumers) {
+        rebuild.consumerCreated(ConsumerCreated(consumer.id, organization.id, consumer.name, "", Meta()))
+        for (query <- state.offeringQueriesForConsumer(consumer.id)) {
+          rebuild.offeringQueryCreated(OfferingQueryCreated(query.id, consumer.id, query.name, query.rdfAnnotation.map(_.uri),
+            query.rdfContext, query.outputs, query.inputs, query.spatialExtent, query.temporalExtent, query.license, query.price, Meta()))
+          for (subscription <- state.subscriptionsForQuery(query.id)) {
+            rebuild.subscriptionCreated(SubscriptionCreated(subscription.id, query.id.value, subscription.offering.id.value,
+              subscription.accessToken, Meta()))
+          }
+        }
+        for (subscription <- state.subscriptionsForConsumer(consumer.id)) {
+          rebuild.subscriptionCreated(SubscriptionCreated(subscription.id, consumer.id.value, subscription.offering.id.value,
+            subscription.accessToken, Meta()))
+        }
+      }
+    }
+
+    val triples = rebuild.swap()
+    log.info(f"rebuilt offering graph with $triples triples in ${(System.nanoTime - startTime) / 1.0e9}%.1fs")
+    true
+  } catch {
+    case NonFatal(e) =>
+      log.error(s"rebuild of offering graph failed: ${e.getMessage}", e)
+      false
+  } finally {
+    Await.ready(system.terminate(), 1.minute)
+  }
+
+  // the offering graph is only replaced by the final MOVE, so after a failure the old graph is still in place
+  if (!rebuilt)
+    sys.exit(1)
+}
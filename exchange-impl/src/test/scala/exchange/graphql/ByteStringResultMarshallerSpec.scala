@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.graphql
+
+import scala.concurrent.Await
+import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.duration._
+
+import io.circe.parser.parse
+import microservice.Meta
+import org.scalatest.{FlatSpec, Matchers}
+import sangria.ast.Document
+import sangria.execution.Executor
+import sangria.macros._
+
+import exchange.ExchangeSpec
+import exchange.api.offering.{Inactive, OfferingCreated}
+import exchange.api.organization.OrganizationCreated
+import exchange.api.provider.ProviderCreated
+import exchange.repo.inmemory.InMemoryExchangeRepoWithSemantics
+import exchange.schema.{ExchangeCtx, SchemaDefinition}
+
+class ByteStringResultMarshallerSpec extends FlatSpec with Matchers with ExchangeSpec {
+
+  val repo = InMemoryExchangeRepoWithSemantics()
+  repo.organizationCreated(OrganizationCreated(OrgId, OrgName, Meta()))
+  repo.providerCreated(ProviderCreated(ProvId, OrgId, ProviderName, Secret, Meta()))
+  repo.offeringCreated(OfferingCreated(OffId, ProvId, "Offering \"quoted\"\n\u0001ü", CategoryUri, None, NoOfferingAccessWhiteList,
+    OfferingEndpoints, OutputDataFields, InputDataFields, None, None, None, SpatialExtent, TemporalExtent, DefaultLicense, EUR5, Inactive, Meta()))
+
+  val ctx = ExchangeCtx(new ExchangeQueriesImpl(None, None, repo, repo), None)
+
+  val Query = graphql"""{
+      allOfferings { id name activation { status expirationTime } endpoints { endpointType uri accessInterfaceType }
+        outputs { name rdfAnnotation { uri label } } license price { pricingModel money { amount currency } }
+        spatialExtent { city } temporalExtent { from } provider { id name organization { id name } } }
+      allOfferingCategoryUris
+    }"""
+
+  def circe(query: Document) = {
+    import sangria.marshalling.circe._
+    Await.result(Executor.execute(SchemaDefinition.ExchangeSchema, query, ctx, deferredResolver = SchemaDefinition.ExchangeResolver), 5.seconds)
+  }
+
+  def encoded(query: Document) = {
+    implicit val marshaller = new ByteStringResultMarshaller
+    Await.result(Executor.execute(SchemaDefinition.ExchangeSchema, query, ctx, deferredResolver = SchemaDefinition.ExchangeResolver), 5.seconds)
+  }
+
+  "ByteStringResultMarshaller" should "encode results like the circe marshaller" in {
+    parse(encoded(Query).utf8String) shouldBe Right(circe(Query))
+  }
+
+  it should "escape strings" in {
+    ByteStringResultMarshaller.string("a\"b\\c\nd\u0001ü").utf8String shouldBe "\"a\\\"b\\\\c\\nd\\u0001ü\""
+  }
+
+  it should "know whether the result has errors whichever map was built last" in {
+    val marshaller = new ByteStringResultMarshaller
+    val failed = marshaller.mapNode(Seq("data" -> marshaller.nullNode, "errors" -> marshaller.arrayNode(Vector(marshaller.nullNode))))
+    val nested = marshaller.mapNode(Seq("errors" -> marshaller.nullNode))
+    val succeeded = marshaller.mapNode(Seq("data" -> nested))
+    marshaller.mapNode(Seq("data" -> marshaller.nullNode, "errors" -> marshaller.nullNode))
+    marshaller.hasErrors(succeeded) shouldBe false
+    marshaller.hasErrors(failed) shouldBe true
+    marshaller.errors(succeeded) shouldBe None
+  }
+
+  it should "find the value at a captured path of the result" in {
+    val marshaller = new ByteStringResultMarshaller(Seq("allOrganizations"))
+    val organizations = marshaller.arrayNode(Vector(ByteStringResultMarshaller.string(OrgId.value)))
+    val result = marshaller.mapNode(Seq("data" -> marshaller.mapNode(Seq("allOrganizations" -> organizations))))
+    marshaller.mapNode(Seq("data" -> marshaller.mapNode(Seq("allOrganizations" -> marshaller.nullNode))))
+    marshaller.dataAt(result, Seq("allOrganizations")) shouldBe Some(organizations)
+  }
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.graphql
+
+import scala.concurrent.Future
+
+import akka.http.scaladsl.model.StatusCodes._
+import akka.http.scaladsl.model.{ContentTypes, HttpEntity}
+import akka.http.scaladsl.server.Directives._
+import akka.http.scaladsl.server.{MalformedRequestContentRejection, Route}
+import akka.http.scaladsl.testkit.ScalatestRouteTest
+import akka.util.ByteString
+import de.heikoseeberger.akkahttpcirce.FailFastCirceSupport._
+import io.circe.Json
+import io.circe.parser.parse
+import org.scalatest.{FlatSpec, Matchers}
+
+import exchange.graphql.ExchangeGraphQlEndpoint._
+
+class ExchangeGraphQlEndpointSpec extends FlatSpec with Matchers with ScalatestRouteTest {
+
+  // operations resolve to their query, the first one last, or fail if their query is "fail"
+  def run(request: GraphQLRequest) = request.query match {
+    case Some("fail") => Future.successful(ByteString("""{"error":"failed"}"""))
+    case Some(query) => Future {
+      if (query == "first") Thread.sleep(100)
+      ByteString(s"""{"data":"$query"}""")
+    }
+    case None => Future.successful(ByteString("null"))
+  }
+
+  val route = Route.seal(post {
+    entity(as[Json]) { body =>
+      operations(body)(operation => complete(jsonResponse(OK, ByteString(s"""{"single":"${operation.query.get}"}"""))))(requests =>
+        complete(batchResponse(requests)(run)))
+    }
+  })
+
+  def request(body: String) = Post("/graphql", HttpEntity(ContentTypes.`application/json`, body))
+
+  def json(text: String) = parse(text).right.get
+
+  "The GraphQL endpoint" should "execute a single operation" in {
+    request("""{"query": "q"}""") ~> route ~> check {
+      status shouldBe OK
+      json(responseAs[String]) shouldBe json("""{"single": "q"}""")
+    }
+  }
+
+  it should "return the results of a batch in the order of its operations" in {
+    request("""[{"query": "first"}, {"query": "second"}]""") ~> route ~> check {
+      status shouldBe OK
+      json(responseAs[String]) shouldBe json("""[{"data": "first"}, {"data": "second"}]""")
+    }
+  }
+
+  it should "return the failures of operations of a batch along with the results of the other ones" in {
+    request("""[{"query": "first"}, {"query": "fail"}, {"query": "third"}]""") ~> route ~> check {
+      status shouldBe OK
+      json(responseAs[String]) shouldBe json("""[{"data": "first"}, {"error": "failed"}, {"data": "third"}]""")
+    }
+  }
+
+  it should "return an empty array for an empty batch" in {
+    request("[]") ~> route ~> check {
+      status shouldBe OK
+      responseAs[String] shouldBe "[]"
+    }
+  }
+
+  it should "reject batches exceeding the maximum size and batches of anything but operations" in {
+    request(Json.arr(Seq.fill(maxBatchSize + 1)(Json.obj("query" -> Json.fromString("q"))): _*).noSpaces) ~> route ~> check {
+      status shouldBe BadRequest
+    }
+    request("""[{"query": "q"}, 1]""") ~> route ~> check {
+      status shouldBe BadRequest
+      json(responseAs[String]).hcursor.downField("error").succeeded shouldBe true
+    }
+  }
+
+  it should "reject a malformed single operation as malformed request content" in {
+    val unsealed = post(entity(as[Json])(body => operations(body)(_ => complete(OK))(_ => complete(OK))))
+
+    request("""{"query": 1}""") ~> route ~> check {
+      status shouldBe BadRequest
+      responseAs[String] should startWith("The request content was malformed")
+    }
+    request("""{"query": 1}""") ~> unsealed ~> check {
+      rejection shouldBe a[MalformedRequestContentRejection]
+    }
+  }
+}
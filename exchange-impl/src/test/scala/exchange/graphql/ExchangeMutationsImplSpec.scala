@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.graphql
+
+import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.duration._
+import scala.concurrent.{Await, Future, Promise}
+
+import akka.actor.ActorSystem
+import org.scalatest.{BeforeAndAfterAll, FlatSpec, Matchers}
+
+import exchange.api.offering.BulkError
+
+class ExchangeMutationsImplSpec extends FlatSpec with Matchers with BeforeAndAfterAll {
+
+  val system = ActorSystem("ExchangeMutationsImplSpec")
+
+  override def afterAll() = system.terminate()
+
+  def bulk(cmds: List[String], maxSize: Int = 10, timeout: FiniteDuration = 1.second)(send: String => Future[String]) =
+    Await.result(ExchangeMutationsImpl.bulk(cmds, maxSize, timeout, system.scheduler)(send), 5.seconds)
+
+  "A bulk mutation" should "return the results of the successful commands and the errors of the failed ones" in {
+    bulk(List("a", "fail", "c", "fail")) {
+      case "fail" => Future.failed(new IllegalArgumentException("invalid"))
+      case cmd => Future.successful(cmd.toUpperCase)
+    } shouldBe ((List("A", "C"), List(BulkError(1, "invalid"), BulkError(3, "invalid"))))
+  }
+
+  it should "fail the commands which could not be sent at their index" in {
+    bulk(List("a", "b")) {
+      case "b" => throw new IllegalStateException("queue closed")
+      case cmd => Future.successful(cmd)
+    } shouldBe ((List("a"), List(BulkError(1, "queue closed"))))
+  }
+
+  it should "fail the commands without an answer within the timeout instead of waiting for them" in {
+    val (results, errors) = bulk(List("a", "lost"), timeout = 100.millis) {
+      case "lost" => Promise[String].future
+      case cmd => Future.successful(cmd)
+    }
+    results shouldBe List("a")
+    errors.map(_.index) shouldBe List(1)
+  }
+
+  it should "reject more commands than the maximum at once" in {
+    var sent = 0
+    a[BulkTooLarge] should be thrownBy bulk(List("a", "b", "c"), maxSize = 2) { cmd => sent += 1; Future.successful(cmd) }
+    sent shouldBe 0
+  }
+
+  it should "return nothing for no commands" in {
+    bulk(Nil)(Future.successful) shouldBe ((Nil, Nil))
+  }
+}
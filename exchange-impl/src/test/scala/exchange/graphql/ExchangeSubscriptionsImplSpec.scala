@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.graphql
+
+import scala.concurrent.Await
+import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.duration._
+
+import akka.http.scaladsl.model.DateTime
+import microservice.Meta
+import org.scalatest.{FlatSpec, Matchers}
+
+import exchange.ExchangeSpec
+import exchange.api.consumer.{ConsumerCreated, ConsumerDeleted}
+import exchange.api.offering.{Activation, OfferingCreated, OfferingDeactivated, OfferingNameChanged}
+import exchange.api.offeringquery.{OfferingMatches, OfferingQueryCreated}
+import exchange.api.organization.{OrganizationCreated, OrganizationNameChanged}
+import exchange.api.provider.{ProviderCreated, ProviderDeleted}
+import exchange.repo.inmemory.InMemoryExchangeRepoWithSemantics
+
+class ExchangeSubscriptionsImplSpec extends FlatSpec with Matchers with ExchangeSpec {
+
+  def exchange() = {
+    val repo = InMemoryExchangeRepoWithSemantics()
+    repo.organizationCreated(OrganizationCreated(OrgId, OrgName, Meta()))
+    repo.providerCreated(ProviderCreated(ProvId, OrgId, ProviderName, Secret, Meta()))
+    Seq(OffId -> OfferingName, OtherOfferingId -> OtherOfferingName) foreach { case (id, name) =>
+      repo.offeringCreated(OfferingCreated(id, ProvId, name, CategoryUri, None, NoOfferingAccessWhiteList, OfferingEndpoints,
+        OutputDataFields, InputDataFields, None, None, None, SpatialExtent, TemporalExtent, DefaultLicense, DefaultPrice,
+        Activation(status = true, DateTime.now.clicks + 3600 * 1000), Meta()))
+    }
+    repo.consumerCreated(ConsumerCreated(ConsId, OrgId, ConsumerName, Secret, Meta()))
+    repo.offeringQueryCreated(OfferingQueryCreated(QueryId, ConsId, OfferingQueryName, Some(CategoryUri), None,
+      OutputDataFields, InputDataFields, SpatialExtent, TemporalExtent, DefaultLicenseOption, DefaultPriceOption, Meta()))
+    (repo, new ExchangeSubscriptionsImpl(new ExchangeQueriesImpl(None, None, repo, repo)))
+  }
+
+  def matched(subscriptions: ExchangeSubscriptionsImpl) =
+    Await.result(subscriptions.offeringMatched(QueryId.value), 5.seconds) map {
+      case OfferingMatches(_, offerings, unmatched) => (offerings.map(_.id).toSet, unmatched.toSet)
+    }
+
+  "ExchangeSubscriptionsImpl" should "push all matches first and then only the offerings which start or stop matching" in {
+    val (repo, subscriptions) = exchange()
+    matched(subscriptions) shouldBe Some((Set(OffId, OtherOfferingId), Set()))
+
+    val deactivated = OfferingDeactivated(OffId, Meta())
+    repo.offeringDeactivated(deactivated)
+    subscriptions.changed(Seq(deactivated))
+    matched(subscriptions) shouldBe Some((Set(), Set(OffId)))
+
+    val renamed = OfferingNameChanged(OtherOfferingId, ChangedOfferingName, Meta())
+    repo.offeringNameChanged(renamed)
+    subscriptions.changed(Seq(renamed))
+    matched(subscriptions) shouldBe Some((Set(OtherOfferingId), Set()))
+  }
+
+  it should "push nothing for changes which do not concern the matches" in {
+    val (repo, subscriptions) = exchange()
+    matched(subscriptions)
+
+    val renamed = OrganizationNameChanged(OrgId, ChangedOrgName, Meta())
+    repo.organizationNameChanged(renamed)
+    subscriptions.changed(Seq(renamed))
+    matched(subscriptions) shouldBe None
+  }
+
+  it should "unmatch all offerings when the consumer of the query is deleted" in {
+    val (repo, subscriptions) = exchange()
+    matched(subscriptions)
+
+    val deleted = ConsumerDeleted(ConsId, OrgId, Meta())
+    repo.consumerDeleted(deleted)
+    subscriptions.changed(Seq(deleted))
+    matched(subscriptions) shouldBe Some((Set(), Set(OffId, OtherOfferingId)))
+  }
+
+  it should "push the changes of the offering only" in {
+    val (repo, subscriptions) = exchange()
+    subscriptions.offeringChanged(OffId.value) map (_.offering map (_.name)) shouldBe Some(Some(OfferingName))
+
+    val other = OfferingNameChanged(OtherOfferingId, ChangedOfferingName, Meta())
+    repo.offeringNameChanged(other)
+    subscriptions.changed(Seq(other))
+    subscriptions.offeringChanged(OffId.value) shouldBe None
+
+    val renamed = OfferingNameChanged(OffId, ChangedOfferingName, Meta())
+    repo.offeringNameChanged(renamed)
+    subscriptions.changed(Seq(renamed))
+    subscriptions.offeringChanged(OffId.value) map (_.offering map (_.name)) shouldBe Some(Some(ChangedOfferingName))
+  }
+
+  it should "push the deletion of the offering with its provider" in {
+    val (repo, subscriptions) = exchange()
+    subscriptions.offeringChanged(OffId.value) should not be empty
+
+    val deleted = ProviderDeleted(ProvId, OrgId, Meta())
+    repo.providerDeleted(deleted)
+    subscriptions.changed(Seq(deleted))
+    subscriptions.offeringChanged(OffId.value) map (_.offering) shouldBe Some(None)
+
+    subscriptions.changed(Seq(deleted))
+    subscriptions.offeringChanged(OffId.value) shouldBe None
+  }
+
+  it should "only be executed for events which may concern a subscription" in {
+    ExchangeSubscriptionsImpl.concerns(OfferingDeactivated(OffId, Meta())) shouldBe true
+    ExchangeSubscriptionsImpl.concerns(ProviderDeleted(ProvId, OrgId, Meta())) shouldBe true
+    ExchangeSubscriptionsImpl.concerns(ConsumerDeleted(ConsId, OrgId, Meta())) shouldBe true
+    ExchangeSubscriptionsImpl.concerns(OrganizationNameChanged(OrgId, ChangedOrgName, Meta())) shouldBe false
+    ExchangeSubscriptionsImpl.concerns(ConsumerCreated(ConsId, OrgId, ConsumerName, Secret, Meta())) shouldBe false
+  }
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.graphql
+
+import akka.http.scaladsl.model.ws.TextMessage
+import akka.http.scaladsl.server.Directives._
+import akka.http.scaladsl.testkit.{ScalatestRouteTest, WSProbe}
+import akka.stream.ActorMaterializer
+import io.circe.Json
+import io.circe.parser.parse
+import microservice.Meta
+import org.scalatest.{FlatSpec, Matchers}
+
+import exchange.ExchangeSpec
+import exchange.api.offering.{Inactive, OfferingCreated, OfferingNameChanged}
+import exchange.api.organization.{OrganizationCreated, OrganizationNameChanged}
+import exchange.api.provider.ProviderCreated
+import exchange.graphql.ExchangeSubscriptionsSocket._
+import exchange.repo.inmemory.InMemoryExchangeRepoWithSemantics
+
+class ExchangeSubscriptionsSocketRouteSpec extends FlatSpec with Matchers with ScalatestRouteTest with ExchangeSpec {
+
+  implicit val mat = ActorMaterializer()
+
+  val repo = InMemoryExchangeRepoWithSemantics()
+  repo.organizationCreated(OrganizationCreated(OrgId, OrgName, Meta()))
+  repo.providerCreated(ProviderCreated(ProvId, OrgId, ProviderName, Secret, Meta()))
+  repo.offeringCreated(OfferingCreated(OffId, ProvId, OfferingName, CategoryUri, None, NoOfferingAccessWhiteList, OfferingEndpoints,
+    OutputDataFields, InputDataFields, None, None, None, SpatialExtent, TemporalExtent, DefaultLicense, EUR5, Inactive, Meta()))
+
+  val changes = new ViewChanges(16)
+  val socket = new ExchangeSubscriptionsSocket(changes, (_, _) => new ExchangeQueriesImpl(None, None, repo, repo))
+  val route = path("graphql") {
+    handleWebSocketMessagesForProtocol(socket.flow(None, None), Protocol)
+  }
+
+  def send(client: WSProbe, message: OperationMessage) = client.sendMessage(message.json.noSpaces)
+
+  def receive(client: WSProbe) = client.expectMessage() match {
+    case TextMessage.Strict(text) => parse(text).right.get
+    case message => fail(s"unexpected $message")
+  }
+
+  def offeringName(message: Json) =
+    message.hcursor.downField("payload").downField("data").downField("offeringChanged").downField("offering").get[String]("name")
+
+  val Subscription = Json.obj("query" -> Json.fromString(s"""subscription { offeringChanged(id: "${OffId.value}") { id offering { name } } }"""))
+
+  "The subscriptions socket" should "push the current state and then the changes of the subscribed field" in {
+    val client = WSProbe()
+    WS("/graphql", client.flow, List(Protocol)) ~> route ~> check {
+      isWebSocketUpgrade shouldBe true
+
+      send(client, OperationMessage(ConnectionInit))
+      receive(client) shouldBe OperationMessage(ConnectionAck).json
+
+      send(client, OperationMessage(Start, Some("1"), Some(Subscription)))
+      val initial = receive(client)
+      initial.hcursor.get[String]("type") shouldBe Right(Data)
+      offeringName(initial) shouldBe Right(OfferingName)
+
+      // give the subscription time to attach to the hub of the changes
+      Thread.sleep(500)
+      changes.published(OrganizationNameChanged(OrgId, ChangedOrgName, Meta()))
+      val renamed = OfferingNameChanged(OffId, ChangedOfferingName, Meta())
+      repo.offeringNameChanged(renamed)
+      changes.published(renamed)
+      offeringName(receive(client)) shouldBe Right(ChangedOfferingName)
+
+      send(client, OperationMessage(Stop, Some("1")))
+      receive(client) shouldBe OperationMessage(Complete, Some("1")).json
+
+      client.sendCompletion()
+      client.expectCompletion()
+    }
+  }
+
+  it should "reject operations other than subscriptions" in {
+    val client = WSProbe()
+    WS("/graphql", client.flow, List(Protocol)) ~> route ~> check {
+      send(client, OperationMessage(Start, Some("1"), Some(Json.obj("query" -> Json.fromString("{ allLicenses }")))))
+      receive(client).hcursor.get[String]("type") shouldBe Right(Error)
+      receive(client) shouldBe OperationMessage(Complete, Some("1")).json
+
+      client.sendCompletion()
+      client.expectCompletion()
+    }
+  }
+}
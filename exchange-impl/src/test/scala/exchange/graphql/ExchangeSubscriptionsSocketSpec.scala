@@ -0,0 +1,40 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.graphql
+
+import io.circe.Json
+import io.circe.parser.parse
+import org.scalatest.{FlatSpec, Matchers}
+import sangria.macros._
+
+import exchange.graphql.ExchangeSubscriptionsSocket._
+
+class ExchangeSubscriptionsSocketSpec extends FlatSpec with Matchers {
+
+  def json(text: String) = parse(text).right.get
+
+  "ExchangeSubscriptionsSocket" should "start subscription operations only" in {
+    isSubscription(graphql"subscription { offeringChanged(id: \"o\") { id } }", None) shouldBe true
+    isSubscription(graphql"{ offering(id: \"o\") { id } }", None) shouldBe false
+    isSubscription(graphql"subscription S { offeringChanged(id: \"o\") { id } } query Q { allLicenses }", Some("Q")) shouldBe false
+  }
+
+  it should "push results with news or errors only" in {
+    hasNews(json("""{"data": {"offeringChanged": null}}""")) shouldBe false
+    hasNews(json("""{"data": {"offeringChanged": {"id": "o", "offering": null}}}""")) shouldBe true
+    hasNews(json("""{"data": null, "errors": [{"message": "failed"}]}""")) shouldBe true
+  }
+
+  it should "leave out absent id and payload of messages" in {
+    OperationMessage(ConnectionAck).json shouldBe Json.obj("type" -> Json.fromString("connection_ack"))
+    OperationMessage(Complete, Some("1")).json shouldBe Json.obj("type" -> Json.fromString("complete"), "id" -> Json.fromString("1"))
+  }
+}
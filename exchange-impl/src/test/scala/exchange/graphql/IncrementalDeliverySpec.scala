@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.graphql
+
+import java.util.concurrent.atomic.AtomicInteger
+
+import scala.concurrent.Await
+import scala.concurrent.ExecutionContext.Implicits.global
+import scala.concurrent.duration._
+
+import akka.actor.ActorSystem
+import akka.http.scaladsl.model.StatusCodes.OK
+import akka.stream.ActorMaterializer
+import akka.util.ByteString
+import io.circe.Json
+import io.circe.parser.parse
+import microservice.Meta
+import org.scalatest.{BeforeAndAfterAll, FlatSpec, Matchers}
+import sangria.ast
+import sangria.execution.{Executor, Middleware}
+import sangria.macros._
+import sangria.parser.QueryParser
+
+import exchange.ExchangeSpec
+import exchange.api.offering.{Inactive, OfferingCreated}
+import exchange.api.organization.OrganizationCreated
+import exchange.api.provider.ProviderCreated
+import exchange.repo.inmemory.InMemoryExchangeRepoWithSemantics
+import exchange.schema.{ExchangeCtx, SchemaDefinition}
+
+class IncrementalDeliverySpec extends FlatSpec with Matchers with BeforeAndAfterAll with ExchangeSpec {
+
+  implicit val system = ActorSystem("IncrementalDeliverySpec")
+  implicit val mat = ActorMaterializer()
+
+  override def afterAll() = system.terminate()
+
+  val repo = InMemoryExchangeRepoWithSemantics()
+  repo.organizationCreated(OrganizationCreated(OrgId, OrgName, Meta()))
+  repo.providerCreated(ProviderCreated(ProvId, OrgId, ProviderName, Secret, Meta()))
+  Seq(OffId -> OfferingName, OtherOfferingId -> OtherOfferingName) foreach { case (id, name) =>
+    repo.offeringCreated(OfferingCreated(id, ProvId, name, CategoryUri, None, NoOfferingAccessWhiteList, OfferingEndpoints,
+      OutputDataFields, InputDataFields, None, None, None, SpatialExtent, TemporalExtent, DefaultLicense, EUR5, Inactive, Meta()))
+  }
+
+  val ctx = ExchangeCtx(new ExchangeQueriesImpl(None, None, repo, repo), None)
+
+  def execute(document: ast.Document, marshaller: ByteStringResultMarshaller, middleware: List[Middleware[ExchangeCtx]]) =
+    executeIn(ctx)(document, marshaller, middleware)
+
+  def executeIn(ctx: ExchangeCtx)(document: ast.Document, marshaller: ByteStringResultMarshaller,
+                                  middleware: List[Middleware[ExchangeCtx]]) = {
+    implicit val resultMarshaller = marshaller
+    Executor.execute(SchemaDefinition.ExchangeSchema, document, ctx, deferredResolver = SchemaDefinition.ExchangeResolver,
+      middleware = middleware) map (body => EncodedResult(OK, body, marshaller.hasErrors(body)))
+  }
+
+  def payloads(body: ByteString): Seq[Json] =
+    body.utf8String.split("\r\n--" + IncrementalDelivery.Boundary).toSeq filter (_ contains "\r\n\r\n") map { part =>
+      parse(part.substring(part.indexOf("\r\n\r\n") + 4)).right.get
+    }
+
+  def fieldNames(document: ast.Document) = document.operations.values.head.selections collect { case field: ast.Field => field.name }
+
+  val Query = graphql"""{
+      allLicenses
+      ... @defer(label: "organizations") { allOrganizations { id } }
+      allOfferings @stream(initialCount: 1) { id }
+    }"""
+
+  "IncrementalDelivery" should "split deferred fragments and streamed lists from the initial document" in {
+    val plan = IncrementalDelivery.plan(Query, None, Json.obj()).get
+
+    fieldNames(plan.initial) shouldBe Vector("allLicenses", "allOfferings")
+    plan.deferred map (deferred => (deferred.label, deferred.path)) shouldBe Vector(Some("organizations") -> Vector())
+    plan.streamed map (streamed => (streamed.key, streamed.path, streamed.initialCount)) shouldBe
+      Vector(("stream:allOfferings", Vector("allOfferings"), 1))
+    fieldNames(plan.streamed.head.document) shouldBe Vector("allOfferings")
+  }
+
+  it should "leave directives within lists or disabled ones to the executor" in {
+    IncrementalDelivery.plan(graphql"{ allOfferings { id ... on Offering @defer { name } } }", None, Json.obj()) shouldBe None
+    IncrementalDelivery.plan(QueryParser.parse("query Q($defer: Boolean) { ... @defer(if: $defer) { allLicenses } }").get, None,
+      Json.obj("defer" -> Json.False)) shouldBe None
+    IncrementalDelivery.plan(graphql"{ allLicenses }", None, Json.obj()) shouldBe None
+  }
+
+  it should "deliver the initial result, the deferred data and the streamed items in parts" in {
+    val delivery = new IncrementalDelivery(IncrementalDelivery.plan(Query, None, Json.obj()).get, execute)
+    val initial = Await.result(delivery.initial, 5.seconds)
+    val body = Await.result(delivery.parts(initial.body).runFold(ByteString.empty)(_ ++ _), 5.seconds)
+    val parts = payloads(body)
+
+    parts.head.hcursor.downField("data").downField("allOfferings").values.get should have size 1
+    parts.head.hcursor.get[Boolean]("hasNext") shouldBe Right(true)
+    parts.last shouldBe Json.obj("hasNext" -> Json.False)
+
+    val incremental = parts.slice(1, parts.size - 1) flatMap (_.hcursor.downField("incremental").values.get)
+    val items = incremental find (_.hcursor.downField("items").succeeded)
+    items.get.hcursor.downField("path").as[Json] shouldBe Right(Json.arr(Json.fromString("allOfferings"), Json.fromInt(1)))
+    val ids = (parts.head.hcursor.downField("data").downField("allOfferings").values.get ++
+      items.get.hcursor.downField("items").values.get) flatMap (_.hcursor.get[String]("id").toOption)
+    ids.toSet shouldBe Set(OffId.value, OtherOfferingId.value)
+
+    val deferred = incremental find (_.hcursor.downField("data").succeeded)
+    deferred.get.hcursor.get[String]("label") shouldBe Right("organizations")
+    deferred.get.hcursor.downField("data").downField("allOrganizations").values.get should have size 1
+  }
+
+  it should "resolve a streamed list once and take the chunks from it" in {
+    val resolved = new AtomicInteger
+    val queries = new ExchangeQueriesImpl(None, None, repo, repo) {
+      override def allOfferings(offeringCategoryUri: Option[String], onlyActive: Option[Boolean]) = {
+        resolved.incrementAndGet()
+        super.allOfferings(offeringCategoryUri, onlyActive)
+      }
+    }
+    val delivery = new IncrementalDelivery(IncrementalDelivery.plan(Query, None, Json.obj()).get, executeIn(ExchangeCtx(queries, None)))
+    val initial = Await.result(delivery.initial, 5.seconds)
+    val items = payloads(Await.result(delivery.parts(initial.body).runFold(ByteString.empty)(_ ++ _), 5.seconds)) flatMap
+      (_.hcursor.downField("incremental").values.toSeq.flatten) flatMap (_.hcursor.downField("items").values.toSeq.flatten)
+
+    items should have size 1
+    resolved.get shouldBe 1
+  }
+}
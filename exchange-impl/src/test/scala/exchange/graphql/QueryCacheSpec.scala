@@ -0,0 +1,59 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.graphql
+
+import org.scalatest.{FlatSpec, Matchers}
+
+import exchange.schema.SchemaDefinition
+
+class QueryCacheSpec extends FlatSpec with Matchers {
+
+  val Query = "{ allOrganizations { id name } }"
+  val InvalidQuery = "{ allOrganizations { unknownField } }"
+
+  "QueryCache" should "return the same validated document for the same query text" in {
+    val cache = new QueryCache(SchemaDefinition.ExchangeSchema, 10)
+    val first = cache.document(Some(Query), None).get
+    val second = cache.document(Some(Query), None).get
+
+    first.validated shouldBe true
+    second.validated shouldBe true
+    second.document should be theSameInstanceAs first.document
+  }
+
+  it should "return a cached document for its hash only" in {
+    val cache = new QueryCache(SchemaDefinition.ExchangeSchema, 10)
+    val hash = QueryCache.sha256(Query)
+
+    cache.document(None, Some(hash)).failed.get shouldBe PersistedQueryNotFound(hash)
+    val document = cache.document(Some(Query), Some(hash)).get.document
+    cache.document(None, Some(hash)).get.document should be theSameInstanceAs document
+  }
+
+  it should "reject a hash which does not match the query text" in {
+    val cache = new QueryCache(SchemaDefinition.ExchangeSchema, 10)
+    cache.document(Some(Query), Some("0" * 64)).isFailure shouldBe true
+  }
+
+  it should "not cache invalid documents" in {
+    val cache = new QueryCache(SchemaDefinition.ExchangeSchema, 10)
+    cache.document(Some(InvalidQuery), None).get.validated shouldBe false
+    cache.document(None, Some(QueryCache.sha256(InvalidQuery))).isFailure shouldBe true
+  }
+
+  it should "evict the least recently used document" in {
+    val cache = new QueryCache(SchemaDefinition.ExchangeSchema, 1)
+    cache.document(Some(Query), None)
+    cache.document(Some("{ allLicenses }"), None)
+
+    cache.document(None, Some(QueryCache.sha256(Query))).isFailure shouldBe true
+  }
+}
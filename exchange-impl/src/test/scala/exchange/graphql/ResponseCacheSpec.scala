@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.graphql
+
+import akka.util.ByteString
+import io.circe.Json
+import org.scalatest.{FlatSpec, Matchers, OptionValues}
+import sangria.macros._
+
+import microservice.Meta
+
+import exchange.api.organization.{OrganizationCreated, OrganizationId}
+import exchange.api.semantics.{OfferingCategoryId, OfferingCategoryNameChanged}
+import exchange.graphql.ViewVersions._
+
+class ResponseCacheSpec extends FlatSpec with Matchers with OptionValues {
+
+  val Result = ByteString("""{"data":{"allLicenses":["CREATIVE_COMMONS"]}}""")
+
+  def organizationEvent = OrganizationCreated(OrganizationId("Organization"), "Organization", Meta())
+  def semanticsEvent = OfferingCategoryNameChanged(OfferingCategoryId("category"), "urn:category", "Category", Meta())
+
+  "ResponseCache" should "cache query operations with known root fields only" in {
+    val cache = new ResponseCache(new ViewVersions, 10, 60000)
+
+    cache.kinds(graphql"{ allLicenses allOfferingCategoryUris }", None).value shouldBe Set(Semantics)
+    cache.kinds(graphql"{ allOrganizations { name } }", None).value shouldBe Entities
+    cache.kinds(graphql"{ matchingOfferings(queryId: \"q\") { name } }", None) shouldBe None
+    cache.kinds(graphql"mutation { deleteOffering(input: {id: \"o\"}) { id } }", None) shouldBe None
+  }
+
+  it should "invalidate a response by events of the kinds it reads" in {
+    val versions = new ViewVersions
+    val cache = new ResponseCache(versions, 10, 60000)
+    val key = ResponseCache.key("hash", None, Json.obj(), None)
+    val kinds = Set[Kind](Semantics)
+
+    val stored = cache.put(key, kinds, cache.stamp(kinds), Result)
+    cache.get(key, kinds).value.etag shouldBe stored.etag
+
+    versions.updated(organizationEvent)
+    cache.get(key, kinds).value.etag shouldBe stored.etag
+
+    versions.updated(semanticsEvent)
+    cache.get(key, kinds) shouldBe None
+  }
+
+  it should "not cache a response computed while the view changed" in {
+    val versions = new ViewVersions
+    val cache = new ResponseCache(versions, 10, 60000)
+    val key = ResponseCache.key("hash", None, Json.obj(), None)
+    val kinds = Set[Kind](Organizations)
+
+    val stamp = cache.stamp(kinds)
+    versions.updated(organizationEvent)
+    cache.put(key, kinds, stamp, Result)
+    cache.get(key, kinds) shouldBe None
+  }
+
+  "etagMatches" should "accept lists, weak tags and the wildcard" in {
+    ExchangeGraphQlEndpoint.etagMatches("\"a-1\", W/\"b-2\"", "b-2") shouldBe true
+    ExchangeGraphQlEndpoint.etagMatches("*", "b-2") shouldBe true
+    ExchangeGraphQlEndpoint.etagMatches("\"a-1\"", "b-2") shouldBe false
+  }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.model
+
+import java.io.StringReader
+
+import scala.collection.JavaConverters._
+
+import org.apache.jena.rdf.model.{Model, ModelFactory}
+import org.apache.jena.vocabulary.SKOS
+import org.scalatest.{FlatSpec, Matchers}
+
+class ApplicationModelGeneratorSpec extends FlatSpec with Matchers {
+
+  val vocabulary =
+    """@prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#> .
+      |@prefix sosa: <http://www.w3.org/ns/sosa/> .
+      |@prefix skos: <http://www.w3.org/2004/02/skos/core#> .
+      |@prefix ex: <http://example.org/> .
+      |
+      |ex:Place rdfs:subClassOf sosa:FeatureOfInterest .
+      |ex:ParkingSite rdfs:subClassOf ex:Place ; rdfs:label " parking site " .
+      |ex:OnStreetParking rdfs:subClassOf ex:ParkingSite, ex:Place .
+      |ex:Vehicle rdfs:subClassOf sosa:FeatureOfInterest, ex:Thing .
+      |ex:ElectricVehicle rdfs:subClassOf ex:Vehicle ; skos:prefLabel "EV" .
+      |skos:prefLabel rdfs:subPropertyOf rdfs:label .
+      |ex:Unrelated rdfs:subClassOf ex:Thing .
+      |""".stripMargin
+
+  def model(turtle: String): Model =
+    ModelFactory.createDefaultModel().read(new StringReader(turtle), null, "TTL")
+
+  "ApplicationModelGenerator" should "generate the same categories as the RDFS inference model" in {
+    val domains = model(vocabulary)
+    val generated = ApplicationModelGenerator.generate(domains)
+    val inferred = InferredApplicationModel.generate(domains)
+
+    generated.isIsomorphicWith(inferred) shouldBe true
+  }
+
+  it should "take the first of several direct super classes by URI as parent" in {
+    val domains = model(
+      """@prefix rdfs: <http://www.w3.org/2000/01/rdf-schema#> .
+        |@prefix sosa: <http://www.w3.org/ns/sosa/> .
+        |@prefix ex: <http://example.org/> .
+        |
+        |ex:Vehicle rdfs:subClassOf sosa:FeatureOfInterest .
+        |ex:Charger rdfs:subClassOf sosa:FeatureOfInterest .
+        |ex:ChargingVehicle rdfs:subClassOf ex:Vehicle, ex:Charger .
+        |""".stripMargin)
+    val category = ApplicationModelGenerator.NS + "ChargingVehicleCategory"
+
+    val parents = (1 to 5) map { _ =>
+      val generated = ApplicationModelGenerator.generate(domains)
+      generated.listSubjectsWithProperty(SKOS.narrower, generated.getResource(category)).toList.asScala.map(_.getURI)
+    }
+    parents.distinct shouldBe Seq(Seq(ApplicationModelGenerator.NS + "ChargerCategory"))
+  }
+
+  it should "generate the same categories for the configured vocabularies" in {
+    val urls = Seq("CORE_MODEL", "MOBILITY_MODEL", "ENVIRONMENT_MODEL", "COMMON_MODEL", "SCHEMA").flatMap(sys.env.get)
+    assume(urls.nonEmpty, "vocabulary urls are not configured")
+
+    val domains = ModelFactory.createDefaultModel()
+    urls.foreach(url => domains.read(url, "TTL"))
+
+    def measure(generator: Model => Model): (Model, Long) = {
+      val start = System.nanoTime()
+      val result = generator(domains)
+      (result, (System.nanoTime() - start) / 1000000)
+    }
+
+    // warm up both, then take the best of a few runs
+    val runs = 5
+    (1 to 2).foreach { _ =>
+      ApplicationModelGenerator.generate(domains)
+      InferredApplicationModel.generate(domains)
+    }
+    val closure = (1 to runs).map(_ => measure(ApplicationModelGenerator.generate))
+    val inference = (1 to runs).map(_ => measure(InferredApplicationModel.generate))
+
+    info(s"${domains.size} domain triples, ${closure.head._1.size} category triples")
+    info(s"transitive closure: ${closure.map(_._2).min} ms, RDFS inference: ${inference.map(_._2).min} ms")
+
+    closure.head._1.isIsomorphicWith(inference.head._1) shouldBe true
+  }
+}
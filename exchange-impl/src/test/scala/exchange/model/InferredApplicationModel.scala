@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.model
+
+import scala.collection.JavaConverters._
+
+import org.apache.jena.ontology.{OntClass, OntModelSpec}
+import org.apache.jena.rdf.model.{Model, ModelFactory, Resource}
+import org.apache.jena.vocabulary.{RDF, RDFS, SKOS}
+
+import exchange.model.vocabs.{BIGIOT, SOSA}
+
+/** The previous ApplicationModelGenerator on an RDFS inference model, the reference the generator is compared to.
+  * Of several direct super classes the first by URI is the parent, as in the generator.
+  */
+object InferredApplicationModel {
+
+  def generate(domains: Model): Model = {
+    val app = ModelFactory.createDefaultModel()
+
+    val root = ApplicationModelGenerator.getSKOSCategory("allOfferings", "all offerings (root category)", null, app)
+    root.addProperty(RDF.`type`, BIGIOT.OfferingCategory)
+
+    // to include the hierarchical closure of sosa:FeatureOfInterest
+    val inf = ModelFactory.createOntologyModel(OntModelSpec.RDFS_MEM_RDFS_INF)
+    inf.add(domains)
+
+    val categories: Map[OntClass, Resource] = inf.listClasses().asScala
+      .filter(cl => cl.hasSuperClass(SOSA.FeatureOfInterest) && !cl.equals(SOSA.FeatureOfInterest))
+      .map { cl =>
+        val cat = app.createResource(ApplicationModelGenerator.NS + cl.getLocalName + "Category")
+        cat.addProperty(RDF.`type`, SKOS.Concept)
+        val label = if (cl.hasProperty(RDFS.label)) cl.getProperty(RDFS.label).getObject.asLiteral.getLexicalForm.trim else cl.getLocalName
+        cat.addProperty(RDFS.label, ApplicationModelGenerator.normalize(label))
+        cl -> cat
+      }.toMap
+
+    categories foreach { case (foi, cat) =>
+      val parents = foi.listSuperClasses(true).asScala.filter(_.hasSuperClass(SOSA.FeatureOfInterest)).toSeq.sortBy(_.toString)
+      val parent = parents.headOption flatMap categories.get getOrElse root
+
+      app.add(parent, SKOS.narrower, cat)
+      app.add(cat, BIGIOT.refersTo, foi)
+    }
+
+    app
+  }
+}
@@ -10,6 +10,7 @@
  */
 package exchange.repo
 
+import akka.http.scaladsl.model.DateTime
 import microservice.Meta
 
 import exchange.ExchangeRepoSpec
@@ -25,7 +26,7 @@ trait MatchingSpec extends ExchangeRepoSpec {
     repos.foreach(_.organizationCreated(OrganizationCreated(OrgId, OrgName, Meta())))
     repos.foreach(_.providerCreated(ProviderCreated(ProvId, OrgId, ProviderName, Secret, Meta())))
     repos.foreach(_.offeringCreated(OfferingCreated(OffId, ProvId, OfferingName, CategoryUri, None, NoOfferingAccessWhiteList, OfferingEndpoints,
-      OutputDataFields, InputDataFields, None, None, None, SpatialExtent, TemporalExtent, DefaultLicense, DefaultPrice, Activation(status = true), Meta())))
+      OutputDataFields, InputDataFields, None, None, None, SpatialExtent, TemporalExtent, DefaultLicense, DefaultPrice, Activation(status = true, DateTime.now.clicks + 3600 * 1000), Meta())))
     repos.foreach(_.consumerCreated(ConsumerCreated(ConsId, OrgId, ConsumerName, Secret, Meta())))
     repos.foreach(_.offeringQueryCreated(OfferingQueryCreated(QueryId, ConsId, OfferingQueryName, Some(CategoryUri), None,
       OutputDataFields, InputDataFields, SpatialExtent, TemporalExtent, DefaultLicenseOption, DefaultPriceOption, Meta())))
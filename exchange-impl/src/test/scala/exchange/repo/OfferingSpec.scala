@@ -39,6 +39,12 @@ trait OfferingSpec extends ExchangeRepoSpec {
     f.queryRepo.allOfferings(None, None).length shouldBe 2
   }
 
+  it should "return all requested Offerings in one lookup" in { f =>
+    f.queryRepo.offerings(List(OffId, OtherOfferingId, OfferingId("unknown"))).map(_.id) should contain theSameElementsAs
+      List(OffId, OtherOfferingId)
+    f.queryRepo.offerings(List(OffId)).head.provider.value.id shouldBe ProvId
+  }
+
   it should "contain all Offerings in the same category after creation" ignore { f =>
     f.queryRepo.allOfferings(Some(CategoryUri), None).length shouldBe 1
   }
@@ -34,6 +34,12 @@ trait ProviderSpec extends ExchangeRepoSpec {
     f.queryRepo.providersForOrganization()(OrgId).length shouldBe 2
   }
 
+  it should "fill the Providers of an Organization only if they are projected" in { f =>
+    f.queryRepo.organization(OrgId, Projection.Nothing).value.providers.flatMap(_.organization) shouldBe empty
+    f.queryRepo.organization(OrgId, Projection.Nothing.copy(providers = true)).value.providers
+      .flatMap(_.organization.map(_.id)) shouldBe List(OrgId, OrgId)
+  }
+
   it should "allow changing Provider name" in { f =>
     f.mutationRepos.foreach(_.providerNameChanged(ProviderNameChanged(ProvId, ChangedProviderName, Meta())))
     f.queryRepo.provider(ProvId).value should matchPattern {
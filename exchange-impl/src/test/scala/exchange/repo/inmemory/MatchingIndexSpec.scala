@@ -0,0 +1,194 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.repo.inmemory
+
+import scala.collection.JavaConverters._
+
+import org.scalatest.{FlatSpec, Matchers}
+
+import exchange.ExchangeSpec
+import exchange.api.extent.{BoundingBox, Location, TemporalExtent, SpatialExtent => Extent}
+import exchange.api.license._
+import exchange.api.offering.{Activation, Offering, OfferingId}
+import exchange.api.offeringquery.OfferingQuery
+import exchange.api.price._
+import exchange.api.semantics.{DataField, IntegerType, NumberType, RdfAnnotation, UndefinedType}
+
+class MatchingIndexSpec extends FlatSpec with Matchers with ExchangeSpec {
+
+  val Now = 1000000L
+
+  val Base = Offering(OffId, OfferingName, None, Activation(status = true, Now + 1000), Category, None,
+    outputs = OutputDataFields, inputs = InputDataFields, spatialExtent = SpatialExtent, temporalExtent = None,
+    license = DefaultLicense, price = EUR5)
+
+  val AnyQuery = OfferingQuery(QueryId, OfferingQueryName, None, None, None, license = None, price = None)
+
+  def offering(name: String) = Base.copy(id = OfferingId(name), name = name)
+
+  def matching(rules: MatchingIndex.Rules, query: OfferingQuery, offerings: Offering*) =
+    MatchingIndex(offerings, rules).matchingOfferingIds(query, Now)
+
+  def matches(rules: MatchingIndex.Rules, offering: Offering, query: OfferingQuery) =
+    matching(rules, query, offering.copy(id = OfferingId("o"))) == List("o")
+
+  // OtherCategory as the parent of Category
+  def categoryTree(version: Long) = {
+    val expand = MatchingIndex.SparqlRules.expand _
+    CategoryAncestors.fromParents(version, Map(expand(CategoryUri) -> Set(expand(OtherCategoryUri)).asJava).asJava)
+  }
+
+  "A MatchingIndex" should "intersect the offerings of all query terms" in {
+    val other = offering("other").copy(rdfAnnotation = OtherCategory)
+    val noOutputs = offering("noOutputs").copy(outputs = Nil)
+    val query = AnyQuery.copy(rdfAnnotation = Some(Category), outputs = OutputDataFields)
+
+    Seq(MatchingIndex.InMemoryRules, MatchingIndex.SparqlRules) foreach { rules =>
+      matching(rules, query, offering("a"), other, noOutputs, offering("b")).sorted shouldBe List("a", "b")
+      matching(rules, AnyQuery, offering("a"), other, noOutputs).sorted shouldBe List("a", "noOutputs", "other")
+    }
+  }
+
+  it should "only match active offerings which are not expired" in {
+    Seq(MatchingIndex.InMemoryRules, MatchingIndex.SparqlRules) foreach { rules =>
+      matches(rules, Base.copy(activation = Activation(status = false, Now + 1000)), AnyQuery) shouldBe false
+      matches(rules, Base.copy(activation = Activation(status = true, Now - 1)), AnyQuery) shouldBe false
+    }
+    matches(MatchingIndex.InMemoryRules, Base.copy(activation = Activation(status = true, Now)), AnyQuery) shouldBe false
+    matches(MatchingIndex.SparqlRules, Base.copy(activation = Activation(status = true, Now)), AnyQuery) shouldBe true
+  }
+
+  it should "rebuild the index only for a changed exchange" in {
+    val cache = new MatchingIndex.Cache(MatchingIndex.InMemoryRules)
+    val exchange = Exchange(Nil)
+
+    cache(exchange) should be theSameInstanceAs cache(exchange)
+    cache(Exchange(Nil)) should not be theSameInstanceAs(cache(exchange))
+  }
+
+  "The in-memory rules" should "compare categories trimmed and annotations without value types" in {
+    val rules = MatchingIndex.InMemoryRules
+    val padded = Base.copy(rdfAnnotation = Category.copy(uri = CategoryUri + " "))
+
+    matches(rules, padded, AnyQuery.copy(rdfAnnotation = Some(Category))) shouldBe true
+    matches(rules, Base, AnyQuery.copy(outputs = List(DataField("outfield", Category, IntegerType())))) shouldBe true
+  }
+
+  it should "require the city of the query to be the trimmed city of the offering" in {
+    val rules = MatchingIndex.InMemoryRules
+
+    matches(rules, Base, AnyQuery.copy(spatialExtent = Some(Extent(" City ")))) shouldBe true
+    matches(rules, Base, AnyQuery.copy(spatialExtent = Some(Extent("City2")))) shouldBe false
+    matches(rules, Base, AnyQuery.copy(spatialExtent = Some(Extent("")))) shouldBe true
+    matches(rules, Base.copy(spatialExtent = None), AnyQuery.copy(spatialExtent = Some(Extent("")))) shouldBe false
+  }
+
+  it should "match free offerings for any price and others in the same pricing model and currency" in {
+    val rules = MatchingIndex.InMemoryRules
+
+    matches(rules, Base.copy(price = Free), AnyQuery.copy(price = Some(Price(PER_ACCESS, Some(Money(1, EUR)))))) shouldBe true
+    matches(rules, Base, AnyQuery.copy(price = Some(Price(PER_MONTH, Some(Money(5, EUR)))))) shouldBe true
+    matches(rules, Base, AnyQuery.copy(price = Some(Price(PER_MONTH, Some(Money(4, EUR)))))) shouldBe false
+    matches(rules, Base, AnyQuery.copy(price = Some(Price(PER_ACCESS, Some(Money(5, EUR)))))) shouldBe false
+    matches(rules, Base, AnyQuery.copy(price = Some(Price(PER_MONTH, None)))) shouldBe false
+  }
+
+  it should "compare licenses as given" in {
+    val rules = MatchingIndex.InMemoryRules
+
+    matches(rules, Base, AnyQuery.copy(license = DefaultLicenseOption)) shouldBe true
+    matches(rules, Base, AnyQuery.copy(license = ChangedLicenseOption)) shouldBe false
+  }
+
+  "The SPARQL rules" should "compare the value types of typed query annotations" in {
+    val rules = MatchingIndex.SparqlRules
+
+    matches(rules, Base, AnyQuery.copy(outputs = List(DataField("outfield", Category, NumberType())))) shouldBe true
+    matches(rules, Base, AnyQuery.copy(outputs = List(DataField("outfield", Category, IntegerType())))) shouldBe false
+    matches(rules, Base, AnyQuery.copy(outputs = List(DataField("outfield", Category, UndefinedType())))) shouldBe true
+  }
+
+  it should "compare prefixed and expanded annotation URIs" in {
+    val rules = MatchingIndex.SparqlRules
+    val prefixed = RdfAnnotation("schema:latitude", "Latitude")
+    val expanded = RdfAnnotation(rules.expand(prefixed.uri), "Latitude")
+
+    matches(rules, Base.copy(outputs = List(DataField("latitude", prefixed, NumberType()))),
+      AnyQuery.copy(outputs = List(DataField("latitude", expanded, NumberType())))) shouldBe true
+  }
+
+  it should "compare the city only without a bounding box and intersect bounding boxes" in {
+    val rules = MatchingIndex.SparqlRules
+    val box = Some(BoundingBox(Location(0, 0), Location(2, 2)))
+    val inBox = Base.copy(spatialExtent = Some(Extent("City", Some(BoundingBox(Location(1, 1), Location(3, 3))))))
+    val outOfBox = Base.copy(spatialExtent = Some(Extent("City", Some(BoundingBox(Location(5, 5), Location(6, 6))))))
+
+    matches(rules, Base, AnyQuery.copy(spatialExtent = Some(Extent("City2")))) shouldBe false
+    matches(rules, Base.copy(spatialExtent = None), AnyQuery.copy(spatialExtent = Some(Extent("")))) shouldBe true
+    matches(rules, inBox, AnyQuery.copy(spatialExtent = Some(Extent("City2", box)))) shouldBe true
+    matches(rules, outOfBox, AnyQuery.copy(spatialExtent = Some(Extent("City", box)))) shouldBe false
+    matches(rules, Base, AnyQuery.copy(spatialExtent = Some(Extent("City", box)))) shouldBe false
+  }
+
+  it should "filter by the temporal extent of the query" in {
+    val rules = MatchingIndex.SparqlRules
+    val valid = Base.copy(temporalExtent = Some(TemporalExtent(Some(100L), Some(200L))))
+    def during(from: Long, to: Long) = AnyQuery.copy(temporalExtent = Some(TemporalExtent(Some(from), Some(to))))
+
+    matches(rules, valid, during(150, 300)) shouldBe true
+    matches(rules, valid, during(300, 400)) shouldBe false
+    matches(rules, valid, during(300, 0)) shouldBe false
+    matches(rules, Base, during(300, 0)) shouldBe true
+    matches(rules, valid, AnyQuery.copy(temporalExtent = Some(TemporalExtent(Some(300L), None)))) shouldBe true
+  }
+
+  it should "only match offerings with an amount in the currency of the query" in {
+    val rules = MatchingIndex.SparqlRules
+
+    matches(rules, Base.copy(price = Price(FREE, Some(Money(0, EUR)))),
+      AnyQuery.copy(price = Some(Price(PER_ACCESS, Some(Money(1, EUR)))))) shouldBe true
+    matches(rules, Base, AnyQuery.copy(price = Some(Price(PER_MONTH, Some(Money(10, Currency("USD"))))))) shouldBe false
+  }
+
+  it should "match free offerings without money as 0 EUR" in {
+    val rules = MatchingIndex.SparqlRules
+
+    matches(rules, Base.copy(price = Free), AnyQuery.copy(price = Some(Price(PER_ACCESS, Some(Money(1, EUR)))))) shouldBe true
+    matches(rules, Base.copy(price = Free), AnyQuery.copy(price = Some(Price(PER_ACCESS, Some(Money(1, Currency("USD"))))))) shouldBe false
+  }
+
+  it should "match offerings of a subcategory for a query on the parent category" in {
+    val rules = new MatchingIndex.SparqlRules(() => categoryTree(1))
+
+    matches(rules, Base, AnyQuery.copy(rdfAnnotation = Some(OtherCategory))) shouldBe true
+    matches(rules, Base, AnyQuery.copy(rdfAnnotation = Some(Category))) shouldBe true
+    matches(rules, Base.copy(rdfAnnotation = OtherCategory), AnyQuery.copy(rdfAnnotation = Some(Category))) shouldBe false
+    matches(MatchingIndex.SparqlRules, Base, AnyQuery.copy(rdfAnnotation = Some(OtherCategory))) shouldBe false
+  }
+
+  it should "rebuild the index when the category tree changed" in {
+    var categories = CategoryAncestors.Empty
+    val cache = new MatchingIndex.Cache(new MatchingIndex.SparqlRules(() => categories))
+    val exchange = Exchange(Nil)
+    val before = cache(exchange)
+
+    cache(exchange) should be theSameInstanceAs before
+    categories = categoryTree(1)
+    cache(exchange) should not be theSameInstanceAs(before)
+  }
+
+  it should "match nothing for an unknown license" in {
+    val rules = MatchingIndex.SparqlRules
+
+    matches(rules, Base, AnyQuery.copy(license = DefaultLicenseOption)) shouldBe true
+    matches(rules, Base.copy(license = License("OTHER")), AnyQuery.copy(license = Some(License("OTHER")))) shouldBe false
+  }
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.repo.rdfstore
+
+import org.apache.jena.rdf.model.ResourceFactory
+import org.apache.jena.vocabulary.{RDF, RDFS}
+import org.scalatest.{FlatSpec, Matchers}
+
+import exchange.model.vocabs.{BIGIOT, PREFIXES, SCHEMA}
+
+class DataTypeCatalogSpec extends FlatSpec with Matchers {
+
+  if (QueryFactory.getOntologyGraph == null)
+    QueryFactory.setOntologyGraph("http://localhost/ontology")
+
+  def resource(name: String) = ResourceFactory.createResource(PREFIXES.BIGIOT_BASE_NS + name)
+
+  val Latitude = resource("latitude")
+  val Address = resource("address")
+  val Street = resource("street")
+  val Proposed = resource("proposedType")
+  val Parking = resource("Parking")
+
+  val store = DatasetStore.inMemory()
+  store.add({
+    val model = SemanticSnapshot.emptyModel()
+    model.add(Latitude, RDF.`type`, BIGIOT.DatatypeAnnotation)
+    model.add(Latitude, RDFS.label, "Latitude")
+    model.add(Latitude, SCHEMA.rangeIncludes, SCHEMA.NUMBER)
+    model.add(Address, RDF.`type`, BIGIOT.DatatypeAnnotation)
+    model.add(Address, BIGIOT.hasMember, Street)
+    model.add(Street, RDF.`type`, BIGIOT.DatatypeAnnotation)
+    model.add(Street, RDFS.label, "Street")
+    model.add(Proposed, RDF.`type`, BIGIOT.DatatypeAnnotation)
+    model.add(Proposed, RDF.`type`, BIGIOT.ProposedDatatypeAnnotation)
+    model.add(Parking, RDF.`type`, BIGIOT.OfferingCategory)
+    model.add(Parking, BIGIOT.expectedAnnotation, Latitude)
+    model
+  }, QueryFactory.getOntologyGraph)
+
+  val serializer = new RDFSerializer()
+
+  "allDataTypes" should "decode the same annotations from the cached model as from the construct query" in {
+    val queried = serializer.allRdfAnnotations(store.construct(QueryFactory.create(BIGIOT.DatatypeAnnotation)))
+    val cached = serializer.allRdfAnnotations(store.construct(QueryFactory.getDataTypeAnnotationTree))
+
+    queried should not be empty
+    cached should contain theSameElementsAs queried
+  }
+
+  it should "not pick up triples of categories for the cached model" in {
+    val cached = store.construct(QueryFactory.getDataTypeAnnotationTree)
+
+    cached.contains(Parking, null) shouldBe false
+    serializer.allRdfAnnotations(cached) map (_.uri) should contain theSameElementsAs
+      Seq(Latitude, Address, Street, Proposed).map(_.getURI)
+  }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.repo.rdfstore
+
+import java.nio.file.Files
+
+import scala.collection.JavaConverters._
+
+import org.apache.jena.rdf.model.ResourceFactory
+import org.apache.jena.vocabulary.{RDF, RDFS}
+import org.scalatest.{FlatSpec, Matchers}
+
+import exchange.model.vocabs.{BIGIOT, PREFIXES}
+
+class DatasetStoreSpec extends FlatSpec with Matchers {
+
+  val Graph = "urn:test:graph"
+
+  def resource(name: String) = ResourceFactory.createResource(PREFIXES.BIGIOT_BASE_NS + name)
+
+  def offerings(names: String*) = {
+    val model = SemanticSnapshot.emptyModel()
+    names foreach { name =>
+      model.add(resource(name), RDF.`type`, BIGIOT.Offering)
+      model.add(resource(name), RDFS.label, name)
+    }
+    model
+  }
+
+  val SelectLabels = s"SELECT ?label FROM <$Graph> WHERE { ?s <${RDFS.label.getURI}> ?label } ORDER BY ?label"
+
+  def labels(store: RDFStore) = store.select(SelectLabels).asScala.map(_.getLiteral("label").getString).toList
+
+  def behaveLikeAStore(createStore: => RDFStore) {
+
+    it should "answer construct, select and ask queries on added models" in {
+      val store = createStore
+      store.add(offerings("a", "b"), Graph)
+
+      store.ask(s"ASK FROM <$Graph> WHERE { ?s ?p ?o }") shouldBe true
+      labels(store) shouldBe List("a", "b")
+      store.construct(s"CONSTRUCT { ?s a ?t } FROM <$Graph> WHERE { ?s a ?t }").size shouldBe 2
+    }
+
+    it should "stream select solutions and release them when read to the end" in {
+      val store = createStore
+      store.add(offerings("a", "b", "c"), Graph)
+
+      val solutions = store.selectIterator(SelectLabels)
+      solutions.asScala.map(_.getLiteral("label").getString).toList shouldBe List("a", "b", "c")
+      solutions.hasNext shouldBe false
+      solutions.close()
+    }
+
+    it should "apply updates and clear graphs" in {
+      val store = createStore
+      store.add(offerings("a"), Graph)
+      store.update(s"INSERT DATA { GRAPH <$Graph> { <${resource("b")}> <${RDFS.label.getURI}> 'b' } }")
+
+      labels(store) shouldBe List("a", "b")
+
+      store.clearGraph(Graph)
+      store.ask(s"ASK FROM <$Graph> WHERE { ?s ?p ?o }") shouldBe false
+    }
+  }
+
+  "An in-memory DatasetStore" should behave like behaveLikeAStore(DatasetStore.inMemory())
+
+  "A TDB DatasetStore" should behave like behaveLikeAStore(
+    DatasetStore.tdb(Files.createTempDirectory("tdb").toString))
+}
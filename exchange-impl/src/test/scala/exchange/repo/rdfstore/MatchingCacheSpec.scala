@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.repo.rdfstore
+
+import org.scalatest.{FlatSpec, Matchers}
+
+class MatchingCacheSpec extends FlatSpec with Matchers {
+
+  def cache(maxSize: Int = 10, ttlMillis: Long = 60000) = new MatchingCache(maxSize, ttlMillis)
+
+  def put(cache: MatchingCache, queryId: String, offeringIds: String*) =
+    cache.put(queryId, offeringIds.toList, cache.generation())
+
+  "MatchingCache" should "serve stored matches and count hits and misses" in {
+    val c = cache()
+    c.get("q1") shouldBe null
+    put(c, "q1", "o1", "o2")
+
+    c.get("q1") shouldBe List("o1", "o2")
+    c.getHits shouldBe 1
+    c.getMisses shouldBe 1
+  }
+
+  it should "evict the least recently used query" in {
+    val c = cache(maxSize = 2)
+    put(c, "q1", "o1")
+    put(c, "q2", "o2")
+    c.get("q1")
+    put(c, "q3", "o3")
+
+    c.get("q2") shouldBe null
+    c.get("q1") shouldBe List("o1")
+    c.get("q3") shouldBe List("o3")
+  }
+
+  it should "drop matches after the time to live" in {
+    val c = cache(ttlMillis = 10)
+    put(c, "q1", "o1")
+    Thread.sleep(50)
+
+    c.get("q1") shouldBe null
+  }
+
+  it should "not store a result computed while an invalidation happened" in {
+    val c = cache()
+    val generation = c.generation()
+    c.invalidateQuery("other")
+    c.put("q1", List("o1"), generation)
+
+    c.get("q1") shouldBe null
+  }
+
+  it should "only drop the matches containing a removed offering" in {
+    val c = cache()
+    put(c, "q1", "o1")
+    put(c, "q2", "o2")
+    c.invalidateOffering("o1")
+
+    c.get("q1") shouldBe null
+    c.get("q2") shouldBe List("o2")
+  }
+
+  it should "drop a single query or all matches" in {
+    val c = cache()
+    put(c, "q1", "o1")
+    put(c, "q2", "o2")
+    c.invalidateQuery("q1")
+
+    c.get("q1") shouldBe null
+    c.get("q2") shouldBe List("o2")
+
+    c.invalidateAll()
+    c.get("q2") shouldBe null
+  }
+
+  it should "store nothing when disabled" in {
+    val c = cache(maxSize = 0)
+    put(c, "q1", "o1")
+
+    c.isEnabled shouldBe false
+    c.get("q1") shouldBe null
+  }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.repo.rdfstore
+
+import scala.collection.mutable.ListBuffer
+
+import microservice.Meta
+import org.apache.jena.query.DatasetFactory
+import org.apache.jena.rdf.model.Model
+import org.scalatest.{FlatSpec, Matchers}
+
+import exchange.ExchangeSpec
+import exchange.api.consumer.ConsumerCreated
+import exchange.api.organization.{OrganizationCreated, OrganizationId}
+import exchange.api.provider.ProviderCreated
+import exchange.model.vocabs.BIGIOT
+
+class OfferingGraphRebuildSpec extends FlatSpec with Matchers with ExchangeSpec {
+
+  val OfferingGraph = "urn:test:offerings"
+  val ShadowGraph = OfferingGraph + "Rebuild"
+
+  class RecordingStore extends DatasetStore(DatasetFactory.createTxnMem()) {
+    val loaded = ListBuffer.empty[(String, Long)]
+
+    override def add(model: Model, graph: String) = {
+      loaded += graph -> model.size
+      super.add(model, graph)
+    }
+  }
+
+  def count(store: RDFStore, graph: String) =
+    store.select(s"SELECT (COUNT(*) AS ?n) FROM <$graph> WHERE { ?s ?p ?o }").next().getLiteral("n").getLong
+
+  def organizations(rebuild: OfferingGraphRebuild, n: Int) = (1 to n) foreach { i =>
+    rebuild.organizationCreated(OrganizationCreated(OrganizationId(OrgName + i), OrgName + i, Meta()))
+  }
+
+  "OfferingGraphRebuild" should "load the triples into the shadow graph in chunks" in {
+    val store = new RecordingStore
+    val rebuild = new OfferingGraphRebuild(store, OfferingGraph, 6)
+    organizations(rebuild, 5)
+
+    store.loaded.map(_._1).distinct shouldBe List(ShadowGraph)
+    store.loaded.map(_._2) foreach (_ should be >= 6L)
+    count(store, OfferingGraph) shouldBe 0
+  }
+
+  it should "replace the offering graph with the shadow graph on swap" in {
+    val store = new RecordingStore
+    store.add(SemanticSnapshot.emptyModel().add(BIGIOT.Offering, BIGIOT.offeringId, "stale"), OfferingGraph)
+    val rebuild = new OfferingGraphRebuild(store, OfferingGraph, 6)
+    organizations(rebuild, 5)
+    rebuild.providerCreated(ProviderCreated(ProvId, OrganizationId(OrgName + 1), ProviderName, Secret, Meta()))
+    rebuild.consumerCreated(ConsumerCreated(ConsId, OrganizationId(OrgName + 1), ConsumerName, Secret, Meta()))
+
+    val triples = rebuild.swap()
+
+    count(store, OfferingGraph) shouldBe triples
+    count(store, ShadowGraph) shouldBe 0
+    store.ask(s"ASK FROM <$OfferingGraph> WHERE { ?s ?p 'stale' }") shouldBe false
+    store.ask(s"ASK FROM <$OfferingGraph> WHERE { ?s a <${BIGIOT.Consumer.getURI}> }") shouldBe true
+  }
+
+  it should "start from an empty shadow graph" in {
+    val store = new RecordingStore
+    store.add(SemanticSnapshot.emptyModel().add(BIGIOT.Offering, BIGIOT.offeringId, "leftover"), ShadowGraph)
+
+    new OfferingGraphRebuild(store, OfferingGraph, 6).swap() shouldBe 0
+    count(store, OfferingGraph) shouldBe 0
+  }
+}
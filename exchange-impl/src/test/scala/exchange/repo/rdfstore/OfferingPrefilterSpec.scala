@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.repo.rdfstore
+
+import org.scalatest.{FlatSpec, Matchers}
+
+import exchange.ExchangeSpec
+import exchange.api.extent.{BoundingBox, Location, SpatialExtent => Extent}
+import exchange.api.license._
+import exchange.api.offering.{Activation, Offering}
+import exchange.api.offeringquery.OfferingQuery
+import exchange.api.price._
+
+class OfferingPrefilterSpec extends FlatSpec with Matchers with ExchangeSpec {
+
+  val Now = 1000000L
+
+  val ActiveOffering = Offering(OffId, OfferingName, None, Activation(status = true, Now + 1000), Category, None,
+    spatialExtent = SpatialExtent, temporalExtent = None, license = DefaultLicense, price = EUR5)
+
+  val AnyQuery = OfferingQuery(QueryId, OfferingQueryName, None, None, Some(Category), license = None, price = None)
+
+  def matches(offering: Offering = ActiveOffering, query: OfferingQuery = AnyQuery) =
+    OfferingPrefilter.matches(offering, query, Now)
+
+  "OfferingPrefilter" should "match active offerings which are not expired" in {
+    matches() shouldBe true
+    matches(offering = ActiveOffering.copy(activation = Activation(status = false, Now + 1000))) shouldBe false
+    matches(offering = ActiveOffering.copy(activation = Activation(status = true, Now - 1))) shouldBe false
+  }
+
+  it should "compare the city only if the query has no bounding box" in {
+    matches(query = AnyQuery.copy(spatialExtent = Some(Extent("City")))) shouldBe true
+    matches(query = AnyQuery.copy(spatialExtent = Some(Extent("City2")))) shouldBe false
+    matches(query = AnyQuery.copy(spatialExtent = Some(Extent("")))) shouldBe true
+    matches(query = AnyQuery.copy(spatialExtent = Some(Extent("City2",
+      Some(BoundingBox(Location(0, 0), Location(1, 1))))))) shouldBe true
+    matches(offering = ActiveOffering.copy(spatialExtent = None), query = AnyQuery.copy(spatialExtent = Some(Extent("City")))) shouldBe false
+  }
+
+  it should "match the license type" in {
+    matches(query = AnyQuery.copy(license = Some(OPEN_DATA_LICENSE))) shouldBe true
+    matches(query = AnyQuery.copy(license = Some(CREATIVE_COMMONS))) shouldBe false
+  }
+
+  it should "match offerings up to the price of the query in the same currency" in {
+    matches(query = AnyQuery.copy(price = Some(Price(PER_MONTH, Some(Money(5, EUR)))))) shouldBe true
+    matches(query = AnyQuery.copy(price = Some(Price(PER_MONTH, Some(Money(10, EUR)))))) shouldBe true
+    matches(query = AnyQuery.copy(price = Some(Price(PER_MONTH, Some(Money(4, EUR)))))) shouldBe false
+    matches(query = AnyQuery.copy(price = Some(Price(PER_MONTH, Some(Money(10, Currency("USD"))))))) shouldBe false
+    matches(query = AnyQuery.copy(price = Some(Price(PER_ACCESS, Some(Money(10, EUR)))))) shouldBe false
+  }
+
+  it should "match free offerings for any pricing model" in {
+    val free = ActiveOffering.copy(price = Price(FREE, Some(Money(0, EUR))))
+
+    matches(offering = free, query = AnyQuery.copy(price = Some(Price(PER_ACCESS, Some(Money(1, EUR)))))) shouldBe true
+    matches(offering = free, query = AnyQuery.copy(price = Some(Price(PER_MONTH, None)))) shouldBe true
+  }
+
+  it should "match free offerings without money as 0 EUR" in {
+    val free = ActiveOffering.copy(price = Price(FREE, None))
+
+    matches(offering = free, query = AnyQuery.copy(price = Some(Price(PER_ACCESS, Some(Money(1, EUR)))))) shouldBe true
+    matches(offering = free, query = AnyQuery.copy(price = Some(Price(PER_MONTH, None)))) shouldBe true
+    matches(offering = free, query = AnyQuery.copy(price = Some(Price(PER_MONTH, Some(Money(10, Currency("USD"))))))) shouldBe false
+  }
+}
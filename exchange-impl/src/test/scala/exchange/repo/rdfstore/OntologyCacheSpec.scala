@@ -0,0 +1,49 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.repo.rdfstore
+
+import java.io.File
+import java.nio.file.Files
+
+import org.apache.jena.vocabulary.RDF
+import org.scalatest.{FlatSpec, Matchers}
+
+import exchange.model.vocabs.BIGIOT
+
+class OntologyCacheSpec extends FlatSpec with Matchers {
+
+  val Key = "key"
+
+  def model() = SemanticSnapshot.emptyModel().add(BIGIOT.Offering, RDF.`type`, BIGIOT.OfferingCategory)
+
+  def cache() = {
+    val directory = Files.createTempDirectory("ontology").toFile
+    (directory, new OntologyCache(directory))
+  }
+
+  "OntologyCache" should "restore the stored models" in {
+    val (_, ontologyCache) = cache()
+    ontologyCache.store(Key, model(), model())
+
+    ontologyCache.contains(Key) shouldBe true
+    ontologyCache.load(Key, OntologyCache.INFERRED).isIsomorphicWith(model()) shouldBe true
+  }
+
+  it should "not restore a corrupt or empty entry" in {
+    val (directory, ontologyCache) = cache()
+    ontologyCache.store(Key, SemanticSnapshot.emptyModel(), model())
+    Files.write(new File(directory, s"$Key.${OntologyCache.INFERRED}.rt").toPath, "corrupt".getBytes)
+
+    ontologyCache.contains(Key) shouldBe true
+    ontologyCache.load(Key, OntologyCache.DOMAIN) shouldBe null
+    ontologyCache.load(Key, OntologyCache.INFERRED) shouldBe null
+  }
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.repo.rdfstore
+
+import org.apache.jena.rdf.model.ResourceFactory
+import org.apache.jena.vocabulary.{RDF, RDFS, XSD}
+import org.scalatest.{FlatSpec, Matchers}
+
+import exchange.model.vocabs.{BIGIOT, PREFIXES}
+
+class QueryFactorySpec extends FlatSpec with Matchers {
+
+  val Graph = "urn:test:graph"
+
+  val Offering = ResourceFactory.createResource(PREFIXES.BIGIOT_BASE_NS + "offering")
+
+  def model() = {
+    val model = SemanticSnapshot.emptyModel()
+    model.add(Offering, RDF.`type`, BIGIOT.Offering)
+    model.add(Offering, BIGIOT.offeringId, ResourceFactory.createTypedLiteral("Org-Prov-Off"))
+    model.add(Offering, RDFS.label, ResourceFactory.createTypedLiteral("say \"hi\"\n\\"))
+    model.add(Offering, RDFS.comment, ResourceFactory.createLangLiteral("Parken", "de"))
+    model
+  }
+
+  "QueryFactory.insertData" should "write string literals with their datatype" in {
+    val insert = QueryFactory.insertData(model(), Graph)
+
+    insert should include (s""""Org-Prov-Off"^^<${XSD.xstring.getURI}>""")
+    insert should include (s""""say \\"hi\\"\\n\\\\"^^<${XSD.xstring.getURI}>""")
+    insert should include ("\"Parken\"@de")
+  }
+
+  it should "insert triples which are found by their typed id" in {
+    val store = DatasetStore.inMemory()
+    store.update(QueryFactory.insertData(model(), Graph))
+
+    store.ask(s"""ASK FROM <$Graph> WHERE { ?o <${BIGIOT.offeringId.getURI}> "Org-Prov-Off"^^<${XSD.xstring.getURI}> }""") shouldBe true
+    store.construct(s"CONSTRUCT { ?s ?p ?o } FROM <$Graph> WHERE { ?s ?p ?o }").isIsomorphicWith(model()) shouldBe true
+  }
+}
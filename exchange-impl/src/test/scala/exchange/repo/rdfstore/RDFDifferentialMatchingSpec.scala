@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.repo.rdfstore
+
+import akka.http.scaladsl.model.DateTime
+import org.scalatest.Ignore
+
+import microservice.Meta
+import microservice.entity.Sep
+
+import exchange.api.consumer.ConsumerCreated
+import exchange.api.extent
+import exchange.api.license._
+import exchange.api.offering.{Activation, OfferingCreated, OfferingId}
+import exchange.api.offeringquery.{OfferingQueryCreated, OfferingQueryId}
+import exchange.api.organization.OrganizationCreated
+import exchange.api.price._
+import exchange.api.provider.ProviderCreated
+import exchange.api.semantics.{DataField, IntegerType, UndefinedType}
+import exchange.repo.ExchangeRepoMutations
+import exchange.repo.inmemory.MatchingIndex
+
+/** Compares the in-memory matching with the SPARQL matching of the RDF repo on the same offerings and queries */
+@Ignore
+class RDFDifferentialMatchingSpec extends RDFExchangeRepoSpec {
+
+  val Active = Activation(status = true, DateTime.now.clicks + 3600 * 1000)
+  val Cost = Price(PER_ACCESS, Some(Money(2, EUR)))
+  val FreeOfCharge = Price(FREE, Some(Money(0, EUR)))
+  val IntegerOutputDataFields = List(DataField("outfield", Category, IntegerType()))
+
+  def offeringId(name: String) = OfferingId(ProvId.value + Sep + name)
+  def queryId(name: String) = OfferingQueryId(ConsId.value + Sep + name)
+
+  val offerings = List(
+    OfferingCreated(offeringId("free"), ProvId, "free", CategoryUri, None, NoOfferingAccessWhiteList, OfferingEndpoints,
+      OutputDataFields, InputDataFields, None, None, None, SpatialExtent, TemporalExtent, DefaultLicense, FreeOfCharge, Active, Meta()),
+    OfferingCreated(offeringId("monthly"), ProvId, "monthly", CategoryUri, None, NoOfferingAccessWhiteList, OfferingEndpoints,
+      OutputDataFields, Nil, None, None, None, ChangedSpatialExtent, TemporalExtent, ChangedLicense, EUR5, Active, Meta()),
+    OfferingCreated(offeringId("access"), ProvId, "access", OtherCategoryUri, None, NoOfferingAccessWhiteList, OfferingEndpoints,
+      IntegerOutputDataFields, InputDataFields, None, None, None, SpatialExtent, TemporalExtent, DefaultLicense, Cost, Active, Meta()),
+    OfferingCreated(offeringId("nomoney"), ProvId, "nomoney", CategoryUri, None, NoOfferingAccessWhiteList, OfferingEndpoints,
+      OutputDataFields, InputDataFields, None, None, None, SpatialExtent, TemporalExtent, DefaultLicense, Free, Active, Meta()),
+    OfferingCreated(offeringId("inactive"), ProvId, "inactive", CategoryUri, None, NoOfferingAccessWhiteList, OfferingEndpoints,
+      OutputDataFields, InputDataFields, None, None, None, SpatialExtent, TemporalExtent, DefaultLicense, FreeOfCharge,
+      Activation(status = false), Meta())
+  )
+
+  val queries = List(
+    OfferingQueryCreated(queryId("category"), ConsId, "category", Some(CategoryUri), None,
+      Nil, Nil, None, None, None, None, Meta()),
+    OfferingQueryCreated(queryId("everything"), ConsId, "everything", None, None,
+      Nil, Nil, None, None, None, None, Meta()),
+    OfferingQueryCreated(queryId("monthly"), ConsId, "monthly", None, None,
+      Nil, Nil, None, None, None, Some(Price(PER_MONTH, Some(Money(10, EUR)))), Meta()),
+    OfferingQueryCreated(queryId("cheap"), ConsId, "cheap", None, None,
+      Nil, Nil, None, None, None, Some(Price(PER_ACCESS, Some(Money(1, EUR)))), Meta()),
+    OfferingQueryCreated(queryId("city"), ConsId, "city", None, None,
+      Nil, Nil, Some(extent.SpatialExtent("City")), None, DefaultLicenseOption, None, Meta()),
+    OfferingQueryCreated(queryId("integer"), ConsId, "integer", None, None,
+      IntegerOutputDataFields, Nil, None, None, None, None, Meta()),
+    OfferingQueryCreated(queryId("untyped"), ConsId, "untyped", None, None,
+      List(DataField("outfield", Category, UndefinedType())), InputDataFields, None, None, None, None, Meta())
+  )
+
+  def initRepos(repos: Seq[ExchangeRepoMutations]) = {
+    repos.foreach(_.organizationCreated(OrganizationCreated(OrgId, OrgName, Meta())))
+    repos.foreach(_.providerCreated(ProviderCreated(ProvId, OrgId, ProviderName, Secret, Meta())))
+    repos.foreach(_.consumerCreated(ConsumerCreated(ConsId, OrgId, ConsumerName, Secret, Meta())))
+    offerings foreach { ev => repos.foreach(_.offeringCreated(ev)) }
+    queries foreach { ev => repos.foreach(_.offeringQueryCreated(ev)) }
+  }
+
+  "In-memory matching" should "find the same offerings as the SPARQL matching" in { f =>
+    val index = MatchingIndex(for {
+      organization <- f.queryRepo.allOrganizations
+      provider <- organization.providers
+      offering <- provider.offerings
+    } yield offering, MatchingIndex.SparqlRules)
+
+    queries foreach { ev =>
+      val query = f.queryRepo.offeringQuery(ev.id).value
+      val inMemory = index.matchingOfferingIds(query, DateTime.now.clicks)
+      withClue(ev.name) {
+        inMemory.sorted shouldBe f.semanticRepo.matchingOfferingIds(ev.id).map(_.toString).sorted
+      }
+    }
+  }
+
+}
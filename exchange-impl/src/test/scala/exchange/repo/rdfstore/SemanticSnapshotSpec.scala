@@ -0,0 +1,67 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.repo.rdfstore
+
+import org.apache.jena.rdf.model.ResourceFactory
+import org.apache.jena.shared.AddDeniedException
+import org.apache.jena.vocabulary.{RDF, RDFS}
+import org.scalatest.{FlatSpec, Matchers}
+
+import exchange.model.vocabs.{BIGIOT, PREFIXES}
+
+class SemanticSnapshotSpec extends FlatSpec with Matchers {
+
+  val Mobility = ResourceFactory.createResource(PREFIXES.BIGIOT_BASE_NS + "Mobility")
+  val Parking = ResourceFactory.createResource(PREFIXES.BIGIOT_BASE_NS + "Parking")
+
+  def categories = {
+    val model = SemanticSnapshot.emptyModel()
+    model.add(Mobility, RDF.`type`, BIGIOT.OfferingCategory)
+    model.add(Mobility, BIGIOT.narrower, Parking)
+    model
+  }
+
+  val initial = SemanticSnapshot.EMPTY.`with`(categories, categories, SemanticSnapshot.emptyModel())
+
+  "SemanticSnapshot" should "apply patches without changing the published snapshot" in {
+    val patched = initial.patched(_.add(Parking, RDFS.label, "Parking"), null, null)
+
+    patched.getVersion shouldBe initial.getVersion + 1
+    patched.getCategoryOnlyModel.contains(Parking, RDFS.label) shouldBe true
+    patched.getCategoryOnlyModel.contains(Mobility, BIGIOT.narrower, Parking) shouldBe true
+    initial.getCategoryOnlyModel.contains(Parking, RDFS.label) shouldBe false
+    patched.getAllOfferingCategoryModel should be theSameInstanceAs initial.getAllOfferingCategoryModel
+  }
+
+  it should "remove triples in a layer only" in {
+    val patched = initial.patched(_.removeAll(null, BIGIOT.narrower, Parking), null, null)
+
+    patched.getCategoryOnlyModel.contains(Mobility, BIGIOT.narrower, Parking) shouldBe false
+    initial.getCategoryOnlyModel.contains(Mobility, BIGIOT.narrower, Parking) shouldBe true
+  }
+
+  it should "publish read-only models" in {
+    an[AddDeniedException] should be thrownBy initial.getCategoryOnlyModel.add(Parking, RDFS.label, "Parking")
+    an[AddDeniedException] should be thrownBy
+      initial.patched(_.add(Parking, RDFS.label, "Parking"), null, null).getCategoryOnlyModel.add(Mobility, RDFS.label, "Mobility")
+  }
+
+  it should "flatten the layers after MAX_LAYERS patches" in {
+    val patched = (1 to SemanticSnapshot.MAX_LAYERS).foldLeft(initial) { (snapshot, i) =>
+      snapshot.patched(_.add(ResourceFactory.createResource(PREFIXES.BIGIOT_BASE_NS + "Category" + i), RDF.`type`, BIGIOT.OfferingCategory), null, null)
+    }
+
+    patched.getLayers should be < SemanticSnapshot.MAX_LAYERS
+    patched.getCategoryOnlyModel.listSubjectsWithProperty(RDF.`type`, BIGIOT.OfferingCategory).toList should have size
+      (SemanticSnapshot.MAX_LAYERS + 1)
+    patched.getCategoryOnlyModel.contains(Mobility, BIGIOT.narrower, Parking) shouldBe true
+  }
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2016-2017 in alphabetical order:
+ * Atos IT Solutions and Services GmbH, National University of Ireland Galway, Siemens AG
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package exchange.repo.rdfstore
+
+import java.util.concurrent.atomic.AtomicInteger
+
+import scala.collection.JavaConverters._
+
+import org.apache.jena.query.{QuerySolution, ResultSet}
+import org.apache.jena.rdf.model.Model
+import org.apache.jena.sparql.core.ResultBinding
+import org.apache.jena.sparql.engine.binding.BindingFactory
+import org.scalatest.{FlatSpec, Matchers}
+
+class SolutionIteratorSpec extends FlatSpec with Matchers {
+
+  class Results(size: Int, failAt: Int = -1) extends ResultSet {
+    var row = 0
+    def hasNext = {
+      if (row == failAt) throw new RuntimeException("connection lost")
+      row < size
+    }
+    def next() = nextSolution()
+    def nextSolution(): QuerySolution = { row += 1; new ResultBinding(null, BindingFactory.binding()) }
+    def nextBinding() = { row += 1; BindingFactory.binding() }
+    def getRowNumber = row
+    def getResultVars = List.empty[String].asJava
+    def getResourceModel: Model = null
+  }
+
+  def iterator(results: ResultSet) = {
+    val closed = new AtomicInteger
+    (new SolutionIterator(results, () => closed.incrementAndGet()), closed)
+  }
+
+  "SolutionIterator" should "release the execution once the last solution was read" in {
+    val (solutions, closed) = iterator(new Results(2))
+
+    solutions.asScala.size shouldBe 2
+    closed.get shouldBe 1
+    solutions.hasNext shouldBe false
+    closed.get shouldBe 1
+  }
+
+  it should "release the execution when reading fails" in {
+    val (solutions, closed) = iterator(new Results(3, failAt = 1))
+
+    solutions.next()
+    a[RuntimeException] should be thrownBy solutions.hasNext
+    closed.get shouldBe 1
+    solutions.hasNext shouldBe false
+  }
+
+  it should "release the execution only once when closed early" in {
+    val (solutions, closed) = iterator(new Results(3))
+
+    solutions.next()
+    solutions.close()
+    solutions.close()
+    closed.get shouldBe 1
+    solutions.hasNext shouldBe false
+  }
+
+  it should "be empty and closed without a result" in {
+    SolutionIterator.empty().hasNext shouldBe false
+    a[NoSuchElementException] should be thrownBy SolutionIterator.empty().next()
+  }
+}